@@ -0,0 +1,63 @@
+package com.g4.chatbot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Admission control for LLM calls: per-model concurrency limit with a bounded wait queue
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.admission")
+@Data
+public class AdmissionConfig {
+    
+    private boolean enabled = true;
+    
+    // Concurrent generations per model (starting point when adaptive limits are on)
+    private int maxConcurrent = 4;
+    
+    // Per-model overrides of maxConcurrent, e.g. app.ai.admission.model-limits.llama3=8
+    private Map<String, Integer> modelLimits = new HashMap<>();
+    
+    // Requests allowed to wait per model; beyond that callers get 429
+    private int maxQueueSize = 50;
+    
+    // Longest a request may wait for a slot before it is rejected with 429
+    private long maxWaitSeconds = 60;
+    
+    private Adaptive adaptive = new Adaptive();
+    
+    private Fairness fairness = new Fairness();
+    
+    public int getLimitFor(String model) {
+        return modelLimits.getOrDefault(model, maxConcurrent);
+    }
+    
+    /**
+     * AIMD limit: grows by 1/limit per fast response, shrinks by backoffRatio when the time to
+     * first token exceeds latencyThresholdMs or the call fails
+     */
+    @Data
+    public static class Adaptive {
+        private boolean enabled = false;
+        private int minLimit = 1;
+        private int maxLimit = 16;
+        private long latencyThresholdMs = 5000;
+        private double backoffRatio = 0.7;
+    }
+    
+    /**
+     * Weighted fair queuing across callers waiting for the same model.
+     * Weights are per priority class ("admin", "user", "background" for compaction work); a class with
+     * weight 8 gets four slots for every one of a weight-2 caller while both have requests waiting.
+     */
+    @Data
+    public static class Fairness {
+        private boolean enabled = true;
+        private Map<String, Integer> weights = new HashMap<>(Map.of("admin", 8, "user", 2, "background", 1));
+    }
+}
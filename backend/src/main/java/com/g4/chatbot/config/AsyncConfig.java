@@ -0,0 +1,209 @@
+package com.g4.chatbot.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named executors for chat streaming and @Async logging, built according to {@link ExecutionConfig}.
+ * Every executor exposes executor.tasks.* gauges (tagged by name) so live task counts show up in /actuator/metrics.
+ */
+@Configuration
+@Slf4j
+public class AsyncConfig implements WebMvcConfigurer {
+
+    public static final String CHAT_EXECUTOR = "chatExecutor";
+    public static final String LOGGING_EXECUTOR = "loggingExecutor";
+    public static final String SUMMARY_EXECUTOR = "summaryExecutor";
+    public static final String STREAM_WRITER_EXECUTOR = "streamWriterExecutor";
+
+    @Autowired
+    private ExecutionConfig executionConfig;
+
+    @Autowired
+    private SummarizationConfig summarizationConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Runs streaming chat turns (DB prologue, SSE writes) off the request thread
+     */
+    @Bean(name = CHAT_EXECUTOR)
+    public AsyncTaskExecutor chatExecutor() {
+        return buildExecutor("chat", executionConfig.getChatPoolSize(), executionConfig.getChatQueueCapacity());
+    }
+
+    /**
+     * Reactor view of the chat executor for blocking steps (JPA, validation) inside reactive chat pipelines
+     */
+    @Bean
+    public Scheduler chatScheduler() {
+        return Schedulers.fromExecutor(chatExecutor());
+    }
+
+    /**
+     * Drains per-stream SSE outboxes, isolating slow clients from the Reactor Netty event loop. A drain holds its
+     * thread while an SSE write blocks, which StreamOutboxService bounds with the slow-client write timeout.
+     * Virtual mode runs every drain on a virtual thread of its own; platform mode has writer-threads threads and
+     * a FIFO queue of writer-queue-capacity drains waiting for one (a stream that finds it full is ended).
+     */
+    @Bean(name = STREAM_WRITER_EXECUTOR)
+    public AsyncTaskExecutor streamWriterExecutor(StreamingConfig streamingConfig) {
+        if (executionConfig.isVirtualThreadsActive()) {
+            // Not buildExecutor: its concurrency limit would make the event loop wait when enqueueing
+            return new VirtualThreadTaskExecutor("sse-writer-");
+        }
+        StreamingConfig.SlowClient slowClient = streamingConfig.getSlowClient();
+        return buildExecutor("sse-writer", slowClient.getWriterThreads(), slowClient.getWriterQueueCapacity());
+    }
+
+    /**
+     * Runs @Async security/audit logging; also the default for unqualified @Async methods
+     */
+    @Bean(name = {LOGGING_EXECUTOR, "taskExecutor"})
+    public AsyncTaskExecutor loggingExecutor() {
+        return buildExecutor("async-log", executionConfig.getAsyncPoolSize(), executionConfig.getAsyncQueueCapacity());
+    }
+
+    /**
+     * Runs background conversation compaction on low-priority platform threads.
+     * Work beyond the queue is dropped instead of pushing back on the chat path.
+     */
+    @Bean(name = SUMMARY_EXECUTOR)
+    public AsyncTaskExecutor summaryExecutor() {
+        TaskCounters counters = new TaskCounters();
+        registerGauges("summary", counters);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("summary-");
+        executor.setThreadPriority(Thread.MIN_PRIORITY);
+        executor.setCorePoolSize(summarizationConfig.getPoolSize());
+        executor.setMaxPoolSize(summarizationConfig.getPoolSize());
+        executor.setQueueCapacity(summarizationConfig.getQueueCapacity());
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setTaskDecorator(counters);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Hand Tomcat a virtual-thread executor when virtual mode is active.
+     * In platform mode Tomcat keeps its own bounded pool (server.tomcat.threads.max).
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> executionModeProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            if (executionConfig.isVirtualThreadsActive()) {
+                protocolHandler.setExecutor(new VirtualThreadTaskExecutor("tomcat-handler-"));
+                log.info("Tomcat request handling runs on virtual threads");
+            }
+        };
+    }
+
+    /**
+     * Async MVC processing (SseEmitter, reactive return values) shares the chat executor
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(chatExecutor());
+    }
+
+    private AsyncTaskExecutor buildExecutor(String name, int poolSize, int queueCapacity) {
+        TaskCounters counters = new TaskCounters();
+        registerGauges(name, counters);
+
+        if (executionConfig.isVirtualThreadsActive()) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(name + "-vt-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(executionConfig.getVirtualConcurrencyLimit());
+            executor.setTaskDecorator(counters);
+            log.info("Executor '{}' uses virtual threads (concurrency limit: {})",
+                    name, executionConfig.getVirtualConcurrencyLimit());
+            return executor;
+        }
+
+        if (executionConfig.getMode() == ExecutionConfig.Mode.VIRTUAL) {
+            log.warn("Virtual threads requested for '{}' but JVM {} does not support them, using a bounded platform pool",
+                    name, Runtime.version().feature());
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(name + "-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setTaskDecorator(counters);
+        executor.initialize();
+
+        Gauge.builder("executor.pool.threads", executor, ThreadPoolTaskExecutor::getPoolSize)
+                .tag("name", name)
+                .description("Live platform threads in the pool")
+                .register(meterRegistry);
+        Gauge.builder("executor.queue.size", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .tag("name", name)
+                .description("Tasks waiting for a pool thread")
+                .register(meterRegistry);
+
+        log.info("Executor '{}' uses a bounded platform pool (threads: {}, queue: {})", name, poolSize, queueCapacity);
+        return executor;
+    }
+
+    private void registerGauges(String name, TaskCounters counters) {
+        Gauge.builder("executor.tasks.active", counters.active, AtomicLong::get)
+                .tag("name", name)
+                .tag("mode", executionConfig.isVirtualThreadsActive() ? "virtual" : "platform")
+                .description("Tasks currently running (one thread each)")
+                .register(meterRegistry);
+        Gauge.builder("executor.tasks.submitted", counters.submitted, AtomicLong::get)
+                .tag("name", name)
+                .description("Tasks submitted since startup")
+                .register(meterRegistry);
+        Gauge.builder("executor.tasks.completed", counters.completed, AtomicLong::get)
+                .tag("name", name)
+                .description("Tasks finished since startup")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts submitted, running and completed tasks regardless of the executor implementation
+     */
+    private static class TaskCounters implements TaskDecorator {
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong active = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+
+        @Override
+        public Runnable decorate(Runnable runnable) {
+            submitted.incrementAndGet();
+            return () -> {
+                active.incrementAndGet();
+                try {
+                    runnable.run();
+                } finally {
+                    active.decrementAndGet();
+                    completed.incrementAndGet();
+                }
+            };
+        }
+    }
+}
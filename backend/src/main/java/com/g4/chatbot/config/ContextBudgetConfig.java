@@ -0,0 +1,39 @@
+package com.g4.chatbot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Token budget for the prompt sent to each model: context window minus the tokens reserved for the answer
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.context-budget")
+@Data
+public class ContextBudgetConfig {
+
+    private boolean enabled = true;
+
+    // Context window of models without an override
+    private int defaultContextTokens = 8192;
+
+    // Per-model context windows, e.g. app.ai.context-budget.model-context-tokens.llama3=8192
+    private Map<String, Integer> modelContextTokens = new HashMap<>();
+
+    // Left free for the generated answer
+    private int reservedOutputTokens = 1024;
+
+    // An older turn that does not fit is truncated only if at least this many tokens are left for it; otherwise it is dropped
+    private int minTruncatedTurnTokens = 64;
+
+    public int getContextTokensFor(String model) {
+        return modelContextTokens.getOrDefault(model, defaultContextTokens);
+    }
+
+    public int getBudgetFor(String model) {
+        return Math.max(0, getContextTokensFor(model) - reservedOutputTokens);
+    }
+}
@@ -0,0 +1,27 @@
+package com.g4.chatbot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Per-session cache of the conversation window sent to the model: in-process (L1) in front of a Redis list (L2)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.context-cache")
+@Data
+public class ContextCacheConfig {
+
+    private boolean enabled = true;
+
+    private long l1MaxSessions = 10000;
+
+    // With L2 enabled every L1 hit is checked against the session version in Redis, so other nodes' writes are seen at once
+    private long l1TtlSeconds = 60;
+
+    private boolean l2Enabled = true;
+
+    private long l2TtlSeconds = 1800;
+
+    private String keyPrefix = "chat:context:";
+}
@@ -0,0 +1,50 @@
+package com.g4.chatbot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Thread execution mode for chat turns, Tomcat request handling and @Async work.
+ * VIRTUAL needs a JDK 21+ runtime; on older runtimes the bounded platform pools are used instead.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.execution")
+@Data
+public class ExecutionConfig {
+
+    private Mode mode = Mode.PLATFORM;
+
+    // Platform mode: bounded pool for streaming chat turns
+    private int chatPoolSize = 64;
+    private int chatQueueCapacity = 256;
+
+    // Platform mode: bounded pool for async security/audit logging
+    private int asyncPoolSize = 4;
+    private int asyncQueueCapacity = 1000;
+
+    // Virtual mode: max concurrent tasks per executor (-1 = unlimited)
+    private int virtualConcurrencyLimit = -1;
+
+    // Report virtual threads pinned to their carrier for longer than the threshold
+    private boolean pinningDetection = true;
+    private long pinningThresholdMs = 20;
+
+    // Non-streaming chat, regenerate and edit: limit for the whole request (queue wait, generation, save); answered with 504
+    private long requestTimeoutMs = 300000;
+
+    /**
+     * True when virtual threads were requested and the running JVM supports them
+     */
+    public boolean isVirtualThreadsActive() {
+        return mode == Mode.VIRTUAL && isVirtualThreadsSupported();
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    public enum Mode {
+        VIRTUAL, PLATFORM
+    }
+}
@@ -0,0 +1,60 @@
+package com.g4.chatbot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Request hedging against stalled Ollama hosts: when the first response chunk is later than the model's
+ * recent p95, a duplicate goes to another backend (or a fallback model) and the first to answer wins
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.hedging")
+@Data
+public class HedgingConfig {
+
+    // Default for models without an override
+    private boolean enabled = false;
+
+    // Hedge once the first chunk is later than this percentile of recent first-chunk latencies
+    private double percentile = 0.95;
+
+    // Bounds of the derived delay
+    private long minDelayMs = 250;
+    private long maxDelayMs = 10000;
+
+    // Latency samples needed before a model is hedged
+    private int minSamples = 20;
+
+    // Extra requests allowed as a fraction of requests (0.05 = at most 5% extra load), with a small burst allowance
+    private double budgetRatio = 0.05;
+    private double budgetBurst = 5;
+
+    // Per-model settings, e.g. app.ai.hedging.models.llama3.fallback-model=llama3:8b
+    private Map<String, Model> models = new HashMap<>();
+
+    public boolean isEnabledFor(String model) {
+        Model override = models.get(model);
+        return override != null && override.getEnabled() != null ? override.getEnabled() : enabled;
+    }
+
+    public String getFallbackModelFor(String model) {
+        Model override = models.get(model);
+        return override != null && override.getFallbackModel() != null && !override.getFallbackModel().isBlank()
+                ? override.getFallbackModel() : null;
+    }
+
+    /**
+     * Hedging settings of one model
+     */
+    @Data
+    public static class Model {
+        private Boolean enabled;
+
+        // Hedged to when no other backend serves the model
+        private String fallbackModel;
+    }
+}
@@ -0,0 +1,56 @@
+package com.g4.chatbot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How models are kept loaded on the Ollama hosts and which runtime options every request carries.
+ * num_ctx follows the context budget of each model so Ollama's window matches the packed prompt.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.model-runtime")
+@Data
+public class ModelRuntimeConfig {
+
+    private boolean enabled = true;
+
+    // How long Ollama keeps a model loaded after its last request ("30m", "1h"; a negative duration such as "-1m" keeps it loaded)
+    private String keepAlive = "30m";
+
+    // Loaded on every backend serving them at startup
+    private List<String> preloadModels = new ArrayList<>();
+
+    // Load the session's model on its backend when the session is opened
+    private boolean warmOnSessionOpen = true;
+
+    // A model used or warmed by this node within this period is not warmed again when a session opens
+    private long warmIntervalSeconds = 60;
+
+    // Send num_ctx (context-budget window) with every request; num_predict is only sent when a model's options set it
+    private boolean matchContextBudget = true;
+
+    // Per-model overrides, e.g. app.ai.model-runtime.models.llama3.keep-alive=-1m
+    private Map<String, Model> models = new HashMap<>();
+
+    public String getKeepAliveFor(String model) {
+        Model override = models.get(model);
+        return override != null && override.getKeepAlive() != null ? override.getKeepAlive() : keepAlive;
+    }
+
+    /**
+     * Runtime options of one model
+     */
+    @Data
+    public static class Model {
+        private String keepAlive;
+
+        // Extra Ollama options (num_gpu, num_thread, num_predict, ...), sent as-is
+        private Map<String, Object> options = new HashMap<>();
+    }
+}
@@ -1,11 +1,17 @@
 package com.g4.chatbot.config;
 
+import com.g4.chatbot.dto.admin.OllamaBackendStatusDTO;
+import com.g4.chatbot.services.OllamaBackendPool;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.RedisTemplate;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Configuration
 public class MonitoringConfig {
 
@@ -38,24 +44,37 @@ public class MonitoringConfig {
     }
 
     /**
-     * Custom health indicator for AI service connectivity
+     * Health of the Ollama backends, from their circuit breakers and the background probe
+     * (no request is made while the health endpoint is called)
      */
     @Bean
-    public HealthIndicator aiServiceHealthIndicator() {
+    public HealthIndicator aiServiceHealthIndicator(OllamaBackendPool ollamaBackendPool) {
         return () -> {
-            try {
-                // This would typically check AI service connectivity
-                // For now, we'll just return UP
-                return Health.up()
-                        .withDetail("ai-service", "Available")
-                        .withDetail("provider", "OpenAI/Ollama")
-                        .build();
-            } catch (Exception e) {
-                return Health.down()
-                        .withDetail("ai-service", "Unavailable")
-                        .withDetail("error", e.getMessage())
-                        .build();
+            List<OllamaBackendStatusDTO> backends = ollamaBackendPool.getBackendStatus();
+            long closed = backends.stream().filter(b -> "CLOSED".equals(b.getCircuitState())).count();
+            boolean anyAvailable = backends.stream().anyMatch(OllamaBackendStatusDTO::getAvailable);
+            
+            Map<String, Object> details = new LinkedHashMap<>();
+            for (OllamaBackendStatusDTO backend : backends) {
+                Map<String, Object> detail = new LinkedHashMap<>();
+                detail.put("circuit", backend.getCircuitState());
+                detail.put("failureRate", backend.getFailureRate());
+                detail.put("slowCallRate", backend.getSlowCallRate());
+                detail.put("lastProbeLatencyMs", backend.getLastProbeLatencyMs());
+                detail.put("lastProbeAt", backend.getLastProbeAt());
+                detail.put("loadedModels", backend.getLoadedModels());
+                if (backend.getLastProbeError() != null) {
+                    detail.put("lastProbeError", backend.getLastProbeError());
+                }
+                details.put(backend.getUrl(), detail);
             }
+            
+            Health.Builder health = anyAvailable ? Health.up() : Health.down();
+            return health
+                    .withDetail("provider", "Ollama")
+                    .withDetail("closedCircuits", closed + "/" + backends.size())
+                    .withDetail("backends", details)
+                    .build();
         };
     }
-}
\ No newline at end of file
+}
@@ -4,21 +4,124 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 @ConfigurationProperties(prefix = "app.ai.ollama")
 @Data
 public class OllamaConfig {
-    
+
     private boolean enabled = true;
     private String baseUrl = "http://localhost:11434";
     private String defaultModel = "llama3";
+
+    // Models clients may choose besides the default model and those listed on backends (or loaded on them)
+    private List<String> models = new ArrayList<>();
     private String apiKey = "ollama";
-    
+
+    // A turn whose load_duration reaches this had to load the model (counted as a cold load)
+    private long coldLoadThresholdMs = 500;
+
+    // Model hosts; when empty a single backend at baseUrl is used
+    private List<Backend> backends = new ArrayList<>();
+
+    private Routing routing = new Routing();
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
     public String getChatEndpoint() {
         return baseUrl + "/api/chat";
     }
-    
+
     public String getGenerateEndpoint() {
         return baseUrl + "/api/generate";
     }
+
+    /**
+     * Backends to route to: the configured list, or baseUrl as the only backend
+     */
+    public List<Backend> getEffectiveBackends() {
+        if (!backends.isEmpty()) {
+            return backends;
+        }
+        Backend single = new Backend();
+        single.setUrl(baseUrl);
+        return List.of(single);
+    }
+
+    /**
+     * One Ollama host
+     */
+    @Data
+    public static class Backend {
+        private String url;
+
+        // Share of traffic relative to the other backends
+        private int weight = 1;
+
+        // Models this host serves; empty means any model
+        private List<String> models = new ArrayList<>();
+    }
+
+    /**
+     * Load balancing and passive health checking across backends
+     */
+    @Data
+    public static class Routing {
+        private Strategy strategy = Strategy.LEAST_OUTSTANDING;
+
+        // Weight of the newest sample in the latency average (0..1)
+        private double ewmaAlpha = 0.3;
+
+        // Consecutive failures that eject a backend from rotation (opens its circuit)
+        private int failureThreshold = 3;
+
+        // First ejection (open circuit) period; doubles on each repeated ejection up to maxEjectionSeconds
+        private long ejectionSeconds = 10;
+        private long maxEjectionSeconds = 300;
+
+        // Keep each chat session on one backend (rendezvous hashing on sessionId) so its prompt cache is reused
+        private boolean sessionAffinity = true;
+
+        // A session's backend is skipped once it carries more than this multiple of its fair share of in-flight requests
+        private double affinityLoadFactor = 1.25;
+
+        // A turn counts as a prompt-cache hit when Ollama evaluated less than this fraction of the estimated prompt tokens
+        private double promptCacheHitRatio = 0.5;
+    }
+
+    /**
+     * Per-backend circuit breaker over a sliding window of calls, and the background probe that feeds the health indicator
+     */
+    @Data
+    public static class CircuitBreaker {
+        // Calls in the sliding window, and calls needed before the rates are evaluated
+        private int windowSize = 20;
+        private int minimumCalls = 10;
+
+        // The circuit opens when this fraction of the window failed...
+        private double failureRateThreshold = 0.5;
+
+        // ...or when this fraction took longer than slowCallDurationMs to the first response
+        private long slowCallDurationMs = 30000;
+        private double slowCallRateThreshold = 0.8;
+
+        // Trial calls let through once the open period is over; success closes the circuit, failure reopens it
+        private int halfOpenPermittedCalls = 1;
+
+        // A call without a first response after this long fails (counts against the backend)
+        private long firstResponseTimeoutMs = 120000;
+        private long connectTimeoutMs = 5000;
+
+        // Background probe of every backend (/api/ps): latency, loaded models, half-open trials
+        private boolean probeEnabled = true;
+        private long probeIntervalMs = 10000;
+        private long probeTimeoutMs = 3000;
+    }
+
+    public enum Strategy {
+        LEAST_OUTSTANDING,  // fewest in-flight requests per unit of weight
+        EWMA_LATENCY        // lowest expected wait: latency average x (in-flight + 1) / weight
+    }
 }
@@ -0,0 +1,35 @@
+package com.g4.chatbot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exact-match cache of LLM answers: in-process (L1) in front of Redis (L2)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.response-cache")
+@Data
+public class ResponseCacheConfig {
+
+    // Opt-in: off unless enabled explicitly
+    private boolean enabled = false;
+
+    // Upper bound on the size of the in-process tier, in characters of cached answers
+    private long l1MaxChars = 16 * 1024 * 1024;
+
+    private long l1TtlSeconds = 600;
+
+    private boolean l2Enabled = true;
+
+    private long l2TtlSeconds = 86400;
+
+    // Longer answers are not cached
+    private int maxResponseChars = 32 * 1024;
+
+    // Sampling with temperature > 0 (or the model's default temperature) gives a different answer
+    // each time; such requests bypass the cache unless this is set
+    private boolean allowNonDeterministic = false;
+
+    private String keyPrefix = "llm:response:";
+}
@@ -0,0 +1,46 @@
+package com.g4.chatbot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Semantic response cache: answers reused for paraphrased prompts found through an HNSW index of embeddings
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.semantic-cache")
+@Data
+public class SemanticCacheConfig {
+
+    // Opt-in: off unless enabled explicitly
+    private boolean enabled = false;
+
+    // Ollama model used to embed prompts
+    private String embeddingModel = "nomic-embed-text";
+
+    // Cosine similarity a cached prompt needs to be served for a new one
+    private double similarityThreshold = 0.92;
+
+    // Similarity above which a new answer replaces the entry of an earlier prompt instead of adding a node
+    private double duplicateSimilarity = 0.995;
+
+    // Only match the first question of a conversation; later turns depend on history a single embedding does not capture
+    private boolean firstTurnOnly = true;
+
+    private long ttlSeconds = 86400;
+
+    // Entries per index (one index per model and system prompt version); a full index evicts its oldest entries
+    private int maxEntriesPerIndex = 50000;
+
+    private int maxResponseChars = 32 * 1024;
+
+    // HNSW parameters: links per node, and candidate list sizes when building and searching
+    private int m = 16;
+    private int efConstruction = 100;
+    private int efSearch = 64;
+
+    // Snapshots of the indexes, memory-mapped on startup
+    private String indexDirectory = "data/semantic-cache";
+
+    private long persistIntervalSeconds = 300;
+}
@@ -0,0 +1,113 @@
+package com.g4.chatbot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Settings for the streamed chat pipeline (SSE endpoints)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.streaming")
+@Data
+public class StreamingConfig {
+    
+    private Coalescing coalescing = new Coalescing();
+    
+    private SlowClient slowClient = new SlowClient();
+    
+    private Cancellation cancellation = new Cancellation();
+    
+    private Resume resume = new Resume();
+    
+    /**
+     * Micro-batching of Ollama tokens into fewer SSE frames.
+     * The first token is always flushed immediately so time-to-first-token is unchanged.
+     */
+    @Data
+    public static class Coalescing {
+        // NONE, TIME, SIZE or SENTENCE (overridable per request via ChatRequest.coalesce)
+        private CoalescePolicy policy = CoalescePolicy.TIME;
+        
+        // TIME: flush window measured from the oldest buffered token
+        private long windowMs = 30;
+        
+        // All policies: flush once this many UTF-8 bytes are buffered
+        private int maxBytes = 256;
+        
+        // SIZE/SENTENCE: never hold a token longer than this
+        private long maxDelayMs = 200;
+    }
+    
+    /**
+     * Per-stream bounded outbox between the Ollama flux and the SSE writer.
+     * Writes happen on a dedicated executor, so a slow client never stalls the shared event loop.
+     */
+    @Data
+    public static class SlowClient {
+        // Max queued SSE events per stream before the overflow policy applies
+        private int bufferSize = 128;
+        
+        // COALESCE merges tokens into the newest queued frame, DROP_TO_SUMMARY stops sending tokens
+        // and sends the full text once the answer is complete, ABORT ends the stream with an error event
+        private SlowClientPolicy policy = SlowClientPolicy.COALESCE;
+        
+        // COALESCE: largest merged frame in bytes. A client further behind, or one whose full outbox ends with
+        // a control event, is aborted instead, so the outbox never grows past buffer-size events
+        private int maxCoalescedBytes = 64 * 1024;
+        
+        // A stream is reported as lagging once its queue is this full (0-1)
+        private double laggingRatio = 0.5;
+        
+        // A single SSE write blocked this long (the client stopped reading) ends the stream and frees its writer
+        private long writeTimeoutMs = 10000;
+        
+        // Platform mode: streams writing at once, one thread each (virtual mode has no cap)
+        private int writerThreads = 200;
+        
+        // Platform mode: drains waiting for a writer thread, served in order; a stream that finds it full is ended
+        private int writerQueueCapacity = 1000;
+    }
+    
+    /**
+     * What happens when a client disconnects mid-answer (the Ollama request is always cancelled)
+     */
+    @Data
+    public static class Cancellation {
+        // PERSIST saves the partial answer (marked partial in metadata), DISCARD drops it
+        private PartialAnswerPolicy partialAnswerPolicy = PartialAnswerPolicy.PERSIST;
+    }
+    
+    /**
+     * Resumable streams: events get "streamId:seq" ids and recent ones are kept in a per-stream
+     * byte ring buffer, so a reconnect with Last-Event-ID replays what was missed
+     */
+    @Data
+    public static class Resume {
+        private boolean enabled = true;
+        
+        // Ring buffer size per stream (starts small and grows up to this)
+        private int maxBytesPerStream = 64 * 1024;
+        
+        // Cap across all buffered streams; finished streams are evicted oldest-first to stay under it
+        private long maxTotalBytes = 64L * 1024 * 1024;
+        
+        // How long a finished stream stays replayable
+        private long retentionSeconds = 60;
+        
+        // Keep generating this long after the last client detached, waiting for a reconnect (0 = cancel at once)
+        private long detachGraceSeconds = 15;
+    }
+    
+    public enum CoalescePolicy {
+        NONE, TIME, SIZE, SENTENCE
+    }
+    
+    public enum SlowClientPolicy {
+        COALESCE, DROP_TO_SUMMARY, ABORT
+    }
+    
+    public enum PartialAnswerPolicy {
+        PERSIST, DISCARD
+    }
+}
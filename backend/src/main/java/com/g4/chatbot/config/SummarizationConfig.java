@@ -0,0 +1,36 @@
+package com.g4.chatbot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Background compaction of long sessions: messages that fall out of the conversation window
+ * (app.ai.system-prompt.max-history-messages) are folded into a running summary by a low-priority worker
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.summarization")
+@Data
+public class SummarizationConfig {
+
+    private boolean enabled = true;
+
+    // Model that writes the summaries; empty uses the session's own model
+    private String model = "";
+
+    // Compaction runs once this many messages have left the window since the last summary
+    private int minBatchMessages = 10;
+
+    // Messages folded in per run; a larger backlog is worked off over the following turns
+    private int maxBatchMessages = 40;
+
+    private int maxSummaryChars = 2000;
+
+    // Longer messages are cut before they are handed to the summarizer
+    private int maxMessageChars = 2000;
+
+    private int poolSize = 1;
+
+    // Compaction requests beyond this are dropped; the next turn asks again
+    private int queueCapacity = 100;
+}
@@ -44,7 +44,8 @@ public class SystemPromptConfig {
             Now, assist the user with their request:
             """;
     
-    private int maxHistoryMessages = 20;
+    // Most recent messages considered for the prompt; the context packer then fits them to the model's token budget
+    private int maxHistoryMessages = 50;
     
     private boolean logInjectionAttempts = true;
     
@@ -0,0 +1,98 @@
+package com.g4.chatbot.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier thread (e.g. blocking inside a
+ * synchronized block of the JDBC driver) by listening to the JFR jdk.VirtualThreadPinned event.
+ * Only active when virtual threads are in use.
+ */
+@Component
+@Slf4j
+public class ThreadPinningMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_LOGGED_FRAMES = 8;
+
+    @Autowired
+    private ExecutionConfig executionConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private RecordingStream recordingStream;
+    private Counter pinnedCounter;
+    private Timer pinnedTimer;
+
+    @PostConstruct
+    public void start() {
+        if (!executionConfig.isVirtualThreadsActive() || !executionConfig.isPinningDetection()) {
+            return;
+        }
+
+        pinnedCounter = Counter.builder("executor.virtual.pinned")
+                .description("Virtual threads pinned to their carrier longer than the threshold")
+                .register(meterRegistry);
+        pinnedTimer = Timer.builder("executor.virtual.pinned.duration")
+                .description("Time virtual threads spent pinned")
+                .register(meterRegistry);
+
+        try {
+            recordingStream = new RecordingStream();
+            recordingStream.enable(PINNED_EVENT)
+                    .withThreshold(Duration.ofMillis(executionConfig.getPinningThresholdMs()))
+                    .withStackTrace();
+            recordingStream.onEvent(PINNED_EVENT, event -> {
+                pinnedCounter.increment();
+                pinnedTimer.record(event.getDuration());
+                log.warn("Virtual thread pinned for {} ms on {}:\n{}",
+                        event.getDuration().toMillis(),
+                        event.getThread() != null ? event.getThread().getJavaName() : "unknown",
+                        formatStackTrace(event.getStackTrace()));
+            });
+            recordingStream.startAsync();
+            log.info("Virtual thread pinning detection enabled (threshold: {} ms)", executionConfig.getPinningThresholdMs());
+        } catch (Exception e) {
+            log.warn("Could not start virtual thread pinning detection: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    private String formatStackTrace(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "  (no stack trace)";
+        }
+        StringBuilder sb = new StringBuilder();
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        for (int i = 0; i < Math.min(frames.size(), MAX_LOGGED_FRAMES); i++) {
+            RecordedFrame frame = frames.get(i);
+            sb.append("  at ")
+              .append(frame.getMethod().getType().getName())
+              .append('.')
+              .append(frame.getMethod().getName())
+              .append(':')
+              .append(frame.getLineNumber())
+              .append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package com.g4.chatbot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tokenizers used to count prompt and message tokens. Vocabularies are BPE rank files in the tiktoken format;
+ * models without a vocabulary use a character-based estimate.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.tokenizer")
+@Data
+public class TokenizerConfig {
+
+    // Pre-tokenization pattern of cl100k_base, also used by Llama 3
+    public static final String CL100K_PATTERN =
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+";
+
+    // Vocabulary of models without an entry in models; empty uses the estimate
+    private String defaultVocabulary = "";
+
+    // Vocabularies by name, e.g. app.ai.tokenizer.vocabularies.cl100k.location=file:/models/cl100k_base.tiktoken
+    private Map<String, Vocabulary> vocabularies = new HashMap<>();
+
+    // Vocabulary per model, e.g. app.ai.tokenizer.models.llama3=llama3 (a tag like llama3:8b falls back to llama3)
+    private Map<String, String> models = new HashMap<>();
+
+    public String getVocabularyFor(String model) {
+        if (model != null) {
+            String vocabulary = models.get(model);
+            if (vocabulary == null && model.indexOf(':') > 0) {
+                vocabulary = models.get(model.substring(0, model.indexOf(':')));
+            }
+            if (vocabulary != null) {
+                return vocabulary;
+            }
+        }
+        return defaultVocabulary;
+    }
+
+    @Data
+    public static class Vocabulary {
+        // Spring resource location (classpath: or file:) of the rank file: one "base64(token bytes) rank" per line
+        private String location;
+
+        private String pattern = CL100K_PATTERN;
+    }
+}
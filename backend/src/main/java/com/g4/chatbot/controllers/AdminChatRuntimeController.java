@@ -0,0 +1,66 @@
+package com.g4.chatbot.controllers;
+
+import com.g4.chatbot.dto.admin.ActiveStreamDTO;
+import com.g4.chatbot.dto.admin.AdmissionQueueDTO;
+import com.g4.chatbot.dto.admin.OllamaBackendStatusDTO;
+import com.g4.chatbot.services.AdmissionService;
+import com.g4.chatbot.services.OllamaBackendPool;
+import com.g4.chatbot.services.StreamOutboxService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Controller for inspecting the live chat/LLM runtime (open streams, backends, queues)
+ */
+@RestController
+@RequestMapping("/api/v1/admin/chat-runtime")
+@PreAuthorize("hasRole('ADMIN')")
+@Slf4j
+public class AdminChatRuntimeController {
+
+    @Autowired
+    private StreamOutboxService streamOutboxService;
+
+    @Autowired
+    private OllamaBackendPool ollamaBackendPool;
+
+    @Autowired
+    private AdmissionService admissionService;
+
+    /**
+     * List open chat streams with their outbox depth, most lagging first
+     * GET /api/v1/admin/chat-runtime/streams
+     */
+    @GetMapping("/streams")
+    public ResponseEntity<List<ActiveStreamDTO>> getActiveStreams() {
+        log.info("Admin requesting active chat streams");
+        return ResponseEntity.ok(streamOutboxService.getActiveStreams());
+    }
+
+    /**
+     * List Ollama backends with their load, latency and ejection state
+     * GET /api/v1/admin/chat-runtime/backends
+     */
+    @GetMapping("/backends")
+    public ResponseEntity<List<OllamaBackendStatusDTO>> getBackends() {
+        log.info("Admin requesting Ollama backend status");
+        return ResponseEntity.ok(ollamaBackendPool.getBackendStatus());
+    }
+
+    /**
+     * Per-model admission queues with per-user queue times
+     * GET /api/v1/admin/chat-runtime/queues
+     */
+    @GetMapping("/queues")
+    public ResponseEntity<List<AdmissionQueueDTO>> getQueues() {
+        log.info("Admin requesting LLM admission queues");
+        return ResponseEntity.ok(admissionService.getQueueStatus());
+    }
+}
@@ -2,38 +2,51 @@ package com.g4.chatbot.controllers;
 
 import com.g4.chatbot.dto.chat.ChatRequest;
 import com.g4.chatbot.dto.chat.ChatResponse;
+import com.g4.chatbot.services.AsyncRequestService;
 import com.g4.chatbot.services.ChatService;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
 @RestController
 @RequestMapping("/api/v1/chat")
 @Slf4j
 public class ChatController {
     
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+    
     @Autowired
     private ChatService chatService;
     
+    @Autowired
+    private AsyncRequestService asyncRequestService;
+    
     /**
      * Chat with streaming response (Server-Sent Events)
      * POST /api/v1/chat/stream
      * 
      * This endpoint returns a stream of chunks as the LLM generates the response.
      * Perfect for real-time chat experience where users see text appearing character by character.
+     * Reconnecting with a Last-Event-ID header resumes the interrupted stream instead of starting a new turn.
      */
     @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter chatStream(
             @Valid @RequestBody ChatRequest request,
+            @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId,
             Authentication authentication) {
         
         Long userId = (Long) authentication.getDetails();
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return chatService.resumeStreaming(userId, lastEventId);
+        }
         log.info("User {} initiating streaming chat", userId);
         
         return chatService.chatWithStreaming(userId, request);
@@ -43,19 +56,19 @@ public class ChatController {
      * Chat without streaming (wait for complete response)
      * POST /api/v1/chat
      * 
-     * This endpoint waits for the complete LLM response before returning.
-     * Simpler to use but less interactive than streaming.
+     * This endpoint answers with the complete LLM response.
+     * Simpler to use but less interactive than streaming. Handled asynchronously:
+     * no request thread is held while the model generates.
      */
     @PostMapping
-    public ResponseEntity<ChatResponse> chat(
+    public DeferredResult<ResponseEntity<ChatResponse>> chat(
             @Valid @RequestBody ChatRequest request,
             Authentication authentication) {
         
         Long userId = (Long) authentication.getDetails();
         log.info("User {} sending chat message", userId);
         
-        ChatResponse response = chatService.chat(userId, request);
-        return ResponseEntity.status(HttpStatus.OK).body(response);
+        return asyncRequestService.ok("/api/v1/chat", chatService.chat(userId, request));
     }
     
     /**
@@ -66,9 +79,13 @@ public class ChatController {
     public SseEmitter chatStreamForSession(
             @PathVariable String sessionId,
             @Valid @RequestBody ChatRequest request,
+            @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId,
             Authentication authentication) {
         
         Long userId = (Long) authentication.getDetails();
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return chatService.resumeStreaming(userId, lastEventId);
+        }
         log.info("User {} initiating streaming chat for session {}", userId, sessionId);
         
         // Override sessionId from path
@@ -82,7 +99,7 @@ public class ChatController {
      * POST /api/v1/sessions/{sessionId}/chat
      */
     @PostMapping("/sessions/{sessionId}")
-    public ResponseEntity<ChatResponse> chatForSession(
+    public DeferredResult<ResponseEntity<ChatResponse>> chatForSession(
             @PathVariable String sessionId,
             @Valid @RequestBody ChatRequest request,
             Authentication authentication) {
@@ -93,7 +110,51 @@ public class ChatController {
         // Override sessionId from path
         request.setSessionId(sessionId);
         
-        ChatResponse response = chatService.chat(userId, request);
-        return ResponseEntity.status(HttpStatus.OK).body(response);
+        return asyncRequestService.ok("/api/v1/chat/sessions", chatService.chat(userId, request));
+    }
+    
+    /**
+     * Chat with a fully reactive SSE stream
+     * POST /api/v1/chat/reactive/stream
+     * 
+     * Same event sequence as /stream (session, message, warning, done) but returned as a
+     * Flux<ServerSentEvent>, so no servlet or helper thread is held while the answer streams.
+     */
+    @PostMapping(value = "/reactive/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> chatStreamReactive(
+            @Valid @RequestBody ChatRequest request,
+            @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId,
+            Authentication authentication) {
+        
+        Long userId = (Long) authentication.getDetails();
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return chatService.resumeReactiveStreaming(userId, lastEventId);
+        }
+        log.info("User {} initiating reactive streaming chat", userId);
+        
+        return chatService.chatWithReactiveStreaming(userId, request);
+    }
+    
+    /**
+     * Reactive streaming chat for specific session
+     * POST /api/v1/chat/reactive/sessions/{sessionId}/stream
+     */
+    @PostMapping(value = "/reactive/sessions/{sessionId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> chatStreamReactiveForSession(
+            @PathVariable String sessionId,
+            @Valid @RequestBody ChatRequest request,
+            @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId,
+            Authentication authentication) {
+        
+        Long userId = (Long) authentication.getDetails();
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return chatService.resumeReactiveStreaming(userId, lastEventId);
+        }
+        log.info("User {} initiating reactive streaming chat for session {}", userId, sessionId);
+        
+        // Override sessionId from path
+        request.setSessionId(sessionId);
+        
+        return chatService.chatWithReactiveStreaming(userId, request);
     }
 }
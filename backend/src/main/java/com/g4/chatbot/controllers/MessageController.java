@@ -4,22 +4,35 @@ import com.g4.chatbot.dto.messages.MessageHistoryResponse;
 import com.g4.chatbot.dto.messages.MessageResponse;
 import com.g4.chatbot.dto.messages.RegenerateRequest;
 import com.g4.chatbot.dto.messages.UpdateMessageRequest;
+import com.g4.chatbot.services.AsyncRequestService;
+import com.g4.chatbot.services.ChatService;
 import com.g4.chatbot.services.MessageService;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/api/v1")
 @Slf4j
 public class MessageController {
     
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+    
     @Autowired
     private MessageService messageService;
     
+    @Autowired
+    private AsyncRequestService asyncRequestService;
+    
+    @Autowired
+    private ChatService chatService;
+    
     /**
      * GET /api/v1/sessions/{sessionId}/messages
      * Get all messages in a session (conversation history)
@@ -55,10 +68,10 @@ public class MessageController {
     /**
      * PUT /api/v1/messages/{messageId}
      * Update/edit a message (only USER messages)
-     * Optionally regenerate the assistant's response after edit
+     * Optionally regenerate the assistant's response after edit (answered asynchronously)
      */
     @PutMapping("/messages/{messageId}")
-    public ResponseEntity<MessageResponse> updateMessage(
+    public DeferredResult<ResponseEntity<MessageResponse>> updateMessage(
             @PathVariable Long messageId,
             @Valid @RequestBody UpdateMessageRequest request,
             Authentication authentication) {
@@ -67,8 +80,28 @@ public class MessageController {
         log.info("User {} updating message: {}, regenerate: {}", 
                 userId, messageId, request.getRegenerateResponse());
         
-        MessageResponse response = messageService.updateMessage(messageId, request, userId);
-        return ResponseEntity.ok(response);
+        return asyncRequestService.ok("/api/v1/messages", messageService.updateMessage(messageId, request, userId));
+    }
+    
+    /**
+     * PUT /api/v1/messages/{messageId}/stream
+     * Edit a USER message and stream the regenerated response (Server-Sent Events, same events as chat streaming).
+     * The edit and the new response are saved together once the response is complete.
+     */
+    @PutMapping(value = "/messages/{messageId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter updateMessageStream(
+            @PathVariable Long messageId,
+            @Valid @RequestBody UpdateMessageRequest request,
+            @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId,
+            Authentication authentication) {
+        
+        Long userId = (Long) authentication.getDetails();
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return chatService.resumeStreaming(userId, lastEventId);
+        }
+        log.info("User {} updating message {} with streamed regeneration", userId, messageId);
+        
+        return messageService.updateMessageStreaming(messageId, request, userId);
     }
     
     /**
@@ -90,10 +123,10 @@ public class MessageController {
     
     /**
      * POST /api/v1/sessions/{sessionId}/regenerate
-     * Regenerate the last assistant response in a session
+     * Regenerate the last assistant response in a session (answered asynchronously)
      */
     @PostMapping("/sessions/{sessionId}/regenerate")
-    public ResponseEntity<MessageResponse> regenerateLastResponse(
+    public DeferredResult<ResponseEntity<MessageResponse>> regenerateLastResponse(
             @PathVariable String sessionId,
             @RequestBody(required = false) RegenerateRequest request,
             Authentication authentication) {
@@ -104,8 +137,32 @@ public class MessageController {
         log.info("User {} regenerating last response for session: {}, model: {}", 
                 userId, sessionId, model);
         
-        MessageResponse response = messageService.regenerateLastResponse(sessionId, userId, model);
-        return ResponseEntity.ok(response);
+        return asyncRequestService.ok("/api/v1/sessions/regenerate",
+                messageService.regenerateLastResponse(sessionId, userId, model));
+    }
+    
+    /**
+     * POST /api/v1/sessions/{sessionId}/regenerate/stream
+     * Regenerate the last assistant response as a stream (Server-Sent Events, same events as chat streaming).
+     * The old response is replaced once the new one is complete.
+     */
+    @PostMapping(value = "/sessions/{sessionId}/regenerate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter regenerateLastResponseStream(
+            @PathVariable String sessionId,
+            @RequestBody(required = false) RegenerateRequest request,
+            @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId,
+            Authentication authentication) {
+        
+        Long userId = (Long) authentication.getDetails();
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return chatService.resumeStreaming(userId, lastEventId);
+        }
+        String model = request != null ? request.getModel() : null;
+        
+        log.info("User {} streaming regeneration of last response for session: {}, model: {}", 
+                userId, sessionId, model);
+        
+        return messageService.regenerateLastResponseStreaming(sessionId, userId, model);
     }
     
     /**
@@ -0,0 +1,26 @@
+package com.g4.chatbot.dto.admin;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Live view of one open chat stream and its outbox queue
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ActiveStreamDTO {
+    private String streamId;
+    private Long userId;
+    private Integer queueDepth;
+    private Integer capacity;
+    private Boolean lagging;
+    private Long overflowCount;
+    private String policy;
+    private LocalDateTime startedAt;
+}
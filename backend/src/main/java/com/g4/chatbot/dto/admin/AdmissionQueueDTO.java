@@ -0,0 +1,36 @@
+package com.g4.chatbot.dto.admin;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Admission state of one model: limit, running and waiting calls, per-caller queue times
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdmissionQueueDTO {
+    private String model;
+    private Double limit;
+    private Integer inFlight;
+    private Integer queued;
+    private List<FlowDTO> flows;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FlowDTO {
+        private Long userId;
+        private String priorityClass;
+        private Integer waiting;
+        private Long admitted;
+        private Long avgWaitMs;
+        private Long maxWaitMs;
+    }
+}
@@ -0,0 +1,34 @@
+package com.g4.chatbot.dto.admin;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Routing state of one Ollama backend
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OllamaBackendStatusDTO {
+    private String url;
+    private Integer weight;
+    private List<String> models;
+    private Integer inFlight;
+    private Double ewmaLatencyMs;
+    private Integer consecutiveFailures;
+    private Boolean available;
+    private Long ejectedForSeconds;
+    private String circuitState; // CLOSED, OPEN, HALF_OPEN
+    private Double failureRate;
+    private Double slowCallRate;
+    private Long lastProbeLatencyMs;
+    private LocalDateTime lastProbeAt;
+    private String lastProbeError;
+    private List<String> loadedModels;
+}
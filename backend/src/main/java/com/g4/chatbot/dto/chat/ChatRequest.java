@@ -1,6 +1,9 @@
 package com.g4.chatbot.dto.chat;
 
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -22,4 +25,11 @@ public class ChatRequest {
     
     @Size(max = 255, message = "Session title must not exceed 255 characters")
     private String sessionTitle; // Optional: title for new session (if sessionId not provided)
+    
+    @Pattern(regexp = "(?i)none|time|size|sentence", message = "Coalesce must be one of: none, time, size, sentence")
+    private String coalesce; // Optional: override SSE token coalescing policy for streaming endpoints
+    
+    @DecimalMin(value = "0.0", message = "Temperature must be between 0 and 2")
+    @DecimalMax(value = "2.0", message = "Temperature must be between 0 and 2")
+    private Double temperature; // Optional: sampling temperature; 0 makes the answer deterministic (and cacheable)
 }
@@ -0,0 +1,86 @@
+package com.g4.chatbot.dto.chat.stream;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Typed event of a streamed chat turn.
+ * The same event sequence backs both the SseEmitter and the Flux<ServerSentEvent> endpoints:
+ * session -> queued* -> message* -> warning? -> done
+ * A stream may instead end with summary (slow client caught up with the full text) or error.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatStreamEvent {
+    
+    private EventType type;
+    private Object data; // String for MESSAGE events, a Stream*Data payload otherwise
+    private String id;   // "streamId:seq" once published to a resumable stream, used as SSE id
+    
+    public ChatStreamEvent(EventType type, Object data) {
+        this.type = type;
+        this.data = data;
+    }
+    
+    public static ChatStreamEvent session(String sessionId, Long userMessageId) {
+        return new ChatStreamEvent(EventType.SESSION, new StreamSessionData(sessionId, userMessageId));
+    }
+    
+    public static ChatStreamEvent queued(int position) {
+        return new ChatStreamEvent(EventType.QUEUED, new StreamQueuedData(position));
+    }
+    
+    public static ChatStreamEvent message(String content) {
+        return new ChatStreamEvent(EventType.MESSAGE, content);
+    }
+    
+    public static ChatStreamEvent warning(String message) {
+        return new ChatStreamEvent(EventType.WARNING, new StreamWarningData(message));
+    }
+    
+    public static ChatStreamEvent done(Long assistantMessageId) {
+        return new ChatStreamEvent(EventType.DONE, new StreamDoneData(assistantMessageId));
+    }
+    
+    public static ChatStreamEvent summary(String content) {
+        return new ChatStreamEvent(EventType.SUMMARY, new StreamSummaryData(content));
+    }
+    
+    public static ChatStreamEvent error(String message) {
+        return new ChatStreamEvent(EventType.ERROR, new StreamErrorData(message));
+    }
+    
+    public ChatStreamEvent withId(String id) {
+        return new ChatStreamEvent(type, data, id);
+    }
+    
+    public boolean isMessage() {
+        return type == EventType.MESSAGE;
+    }
+    
+    public String getEventName() {
+        return type.getEventName();
+    }
+    
+    public enum EventType {
+        SESSION("session"),
+        QUEUED("queued"),
+        MESSAGE("message"),
+        WARNING("warning"),
+        DONE("done"),
+        SUMMARY("summary"),
+        ERROR("error");
+        
+        private final String eventName;
+        
+        EventType(String eventName) {
+            this.eventName = eventName;
+        }
+        
+        public String getEventName() {
+            return eventName;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.g4.chatbot.dto.chat.stream;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StreamDoneData {
+    private Long assistantMessageId;
+}
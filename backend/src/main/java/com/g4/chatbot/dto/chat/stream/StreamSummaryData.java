@@ -0,0 +1,15 @@
+package com.g4.chatbot.dto.chat.stream;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Full answer text sent to a lagging client in place of the tokens it could not keep up with
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StreamSummaryData {
+    private String content;
+}
@@ -1,11 +1,15 @@
 package com.g4.chatbot.dto.ollama;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 
 import java.util.List;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -15,4 +19,14 @@ public class OllamaChatRequest {
     private String model;
     private List<OllamaMessage> messages;
     private Boolean stream; // Enable streaming responses
+    
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, Object> options; // Model parameters such as temperature
+    
+    @JsonProperty("keep_alive")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String keepAlive; // How long the model stays loaded after this request
+    
+    @JsonIgnore
+    private Integer promptTokens; // Estimated by ContextPacker (null if the prompt was not packed); metrics only, not sent
 }
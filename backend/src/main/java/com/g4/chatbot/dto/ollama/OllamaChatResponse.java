@@ -1,5 +1,6 @@
 package com.g4.chatbot.dto.ollama;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -8,6 +9,7 @@ import lombok.AllArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class OllamaChatResponse {
     private String model;
     
@@ -18,6 +20,9 @@ public class OllamaChatResponse {
     
     private Boolean done;
     
+    @JsonProperty("done_reason")
+    private String doneReason; // "stop", "length", ... (final chunk only)
+    
     @JsonProperty("total_duration")
     private Long totalDuration;
     
@@ -0,0 +1,15 @@
+package com.g4.chatbot.dto.ollama;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OllamaEmbedRequest {
+    private String model; // Embedding model, e.g. nomic-embed-text
+    private String input;
+}
@@ -0,0 +1,17 @@
+package com.g4.chatbot.dto.ollama;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class OllamaEmbedResponse {
+    private String model;
+    private List<float[]> embeddings; // One vector per input
+}
@@ -0,0 +1,76 @@
+package com.g4.chatbot.dto.ollama;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Generation stats Ollama reports on the final chunk of a turn (durations in nanoseconds).
+ * Stored as the assistant message's metadata JSON.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class OllamaGenerationStats {
+
+    // Model that generated the answer (differs from the session's model when a fallback model answered)
+    private String model;
+
+    @JsonProperty("done_reason")
+    private String doneReason;
+
+    @JsonProperty("total_duration")
+    private Long totalDuration;
+
+    @JsonProperty("load_duration")
+    private Long loadDuration;
+
+    @JsonProperty("prompt_eval_count")
+    private Integer promptEvalCount;
+
+    @JsonProperty("prompt_eval_duration")
+    private Long promptEvalDuration;
+
+    @JsonProperty("eval_count")
+    private Integer evalCount;
+
+    @JsonProperty("eval_duration")
+    private Long evalDuration;
+
+    /**
+     * Stats of a final chunk, or null when the response carries none
+     */
+    public static OllamaGenerationStats from(OllamaChatResponse response) {
+        if (response == null || !Boolean.TRUE.equals(response.getDone())) {
+            return null;
+        }
+        return OllamaGenerationStats.builder()
+                .model(response.getModel())
+                .doneReason(response.getDoneReason())
+                .totalDuration(response.getTotalDuration())
+                .loadDuration(response.getLoadDuration())
+                .promptEvalCount(response.getPromptEvalCount())
+                .promptEvalDuration(response.getPromptEvalDuration())
+                .evalCount(response.getEvalCount())
+                .evalDuration(response.getEvalDuration())
+                .build();
+    }
+
+    /**
+     * Generation speed in tokens per second, or null when Ollama did not report it
+     */
+    @JsonProperty("tokens_per_second")
+    public Double getTokensPerSecond() {
+        if (evalCount == null || evalDuration == null || evalDuration <= 0) {
+            return null;
+        }
+        return Math.round(evalCount * 1e10 / evalDuration) / 10.0;
+    }
+}
@@ -0,0 +1,34 @@
+package com.g4.chatbot.dto.ollama;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Models currently loaded on an Ollama host (/api/ps)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class OllamaPsResponse {
+    private List<RunningModel> models;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class RunningModel {
+        private String name;
+        
+        @JsonProperty("size_vram")
+        private Long sizeVram;
+        
+        @JsonProperty("expires_at")
+        private String expiresAt;
+    }
+}
@@ -0,0 +1,11 @@
+package com.g4.chatbot.exception;
+
+/**
+ * The conversation changed while an answer was generated for it, so the answer was not saved; answered with 409
+ */
+public class ConversationChangedException extends RuntimeException {
+    
+    public ConversationChangedException(String message) {
+        super(message);
+    }
+}
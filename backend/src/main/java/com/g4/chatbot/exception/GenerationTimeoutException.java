@@ -0,0 +1,11 @@
+package com.g4.chatbot.exception;
+
+/**
+ * No answer from the model within the request timeout; answered with 504
+ */
+public class GenerationTimeoutException extends RuntimeException {
+    
+    public GenerationTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -6,6 +6,7 @@ import com.g4.chatbot.services.SecurityLogService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -186,6 +187,94 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
     }
     
+    /**
+     * Handle Too Many Requests Exception (429 - model saturated)
+     */
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<ErrorResponse> handleTooManyRequestsException(
+            TooManyRequestsException ex, 
+            HttpServletRequest request) {
+        
+        log.warn("Request rejected by admission control: {}", ex.getMessage());
+        
+        ErrorResponse errorResponse = new ErrorResponse(
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                "Too Many Requests",
+                ex.getMessage(),
+                request.getRequestURI(),
+                LocalDateTime.now()
+        );
+        
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(errorResponse);
+    }
+    
+    /**
+     * Handle Model Unavailable Exception (503 - circuit open on every backend of the model)
+     */
+    @ExceptionHandler(ModelUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleModelUnavailableException(
+            ModelUnavailableException ex, 
+            HttpServletRequest request) {
+        
+        log.warn("Request failed fast, model unavailable: {}", ex.getMessage());
+        
+        ErrorResponse errorResponse = new ErrorResponse(
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "Service Unavailable",
+                ex.getMessage(),
+                request.getRequestURI(),
+                LocalDateTime.now()
+        );
+        
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(errorResponse);
+    }
+    
+    /**
+     * Handle Generation Timeout Exception (504 - no answer within the request timeout)
+     */
+    @ExceptionHandler(GenerationTimeoutException.class)
+    public ResponseEntity<ErrorResponse> handleGenerationTimeoutException(
+            GenerationTimeoutException ex, 
+            HttpServletRequest request) {
+        
+        log.warn("Request timed out waiting for the model: {}", ex.getMessage());
+        
+        ErrorResponse errorResponse = new ErrorResponse(
+                HttpStatus.GATEWAY_TIMEOUT.value(),
+                "Gateway Timeout",
+                ex.getMessage(),
+                request.getRequestURI(),
+                LocalDateTime.now()
+        );
+        
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(errorResponse);
+    }
+    
+    /**
+     * Handle Conversation Changed Exception (409 - the answer was generated for a conversation that changed since)
+     */
+    @ExceptionHandler(ConversationChangedException.class)
+    public ResponseEntity<ErrorResponse> handleConversationChangedException(
+            ConversationChangedException ex, 
+            HttpServletRequest request) {
+        
+        log.warn("Answer dropped, conversation changed: {}", ex.getMessage());
+        
+        ErrorResponse errorResponse = new ErrorResponse(
+                HttpStatus.CONFLICT.value(),
+                "Conflict",
+                ex.getMessage(),
+                request.getRequestURI(),
+                LocalDateTime.now()
+        );
+        
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(errorResponse);
+    }
+    
     /**
      * Handle Prompt Security Exception (Prompt Injection Attempts)
      */
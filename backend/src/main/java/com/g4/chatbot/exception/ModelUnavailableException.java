@@ -0,0 +1,18 @@
+package com.g4.chatbot.exception;
+
+/**
+ * Every backend able to serve the model has an open circuit; answered with 503 and a Retry-After header
+ */
+public class ModelUnavailableException extends RuntimeException {
+    
+    private final long retryAfterSeconds;
+    
+    public ModelUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
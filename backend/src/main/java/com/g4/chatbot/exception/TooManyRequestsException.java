@@ -0,0 +1,18 @@
+package com.g4.chatbot.exception;
+
+/**
+ * Request rejected because the model is saturated; answered with 429 and a Retry-After header
+ */
+public class TooManyRequestsException extends RuntimeException {
+    
+    private final long retryAfterSeconds;
+    
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,40 @@
+package com.g4.chatbot.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Running summary of the messages of a session that have left its conversation window
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "conversation_summaries")
+public class ConversationSummary {
+    
+    @Id
+    @Column(name = "session_id", length = 36)
+    private String sessionId;
+    
+    @Lob
+    @Column(name = "summary", nullable = false, columnDefinition = "TEXT")
+    private String summary;
+    
+    // Id of the newest message folded into the summary; later messages are not covered yet
+    @Column(name = "covered_until_message_id", nullable = false)
+    private Long coveredUntilMessageId;
+    
+    @Column(name = "covered_messages", nullable = false)
+    private Integer coveredMessages = 0;
+    
+    @Column(name = "model", length = 50)
+    private String model;
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
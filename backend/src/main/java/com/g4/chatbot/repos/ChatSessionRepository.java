@@ -3,7 +3,9 @@ package com.g4.chatbot.repos;
 import com.g4.chatbot.models.ChatSession;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -46,6 +48,14 @@ public interface ChatSessionRepository extends JpaRepository<ChatSession, String
     @Query("SELECT cs FROM ChatSession cs WHERE cs.sessionId = :sessionId AND cs.userId = :userId")
     java.util.Optional<ChatSession> findBySessionIdAndUserId(@Param("sessionId") String sessionId, @Param("userId") Long userId);
     
+    /**
+     * Same as findBySessionIdAndUserId, holding the row lock until the transaction ends
+     * (serializes changes to a session's conversation)
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT cs FROM ChatSession cs WHERE cs.sessionId = :sessionId AND cs.userId = :userId")
+    java.util.Optional<ChatSession> lockBySessionIdAndUserId(@Param("sessionId") String sessionId, @Param("userId") Long userId);
+    
     // Admin management queries with filtering
     Page<ChatSession> findByUserId(Long userId, Pageable pageable);
     
@@ -0,0 +1,32 @@
+package com.g4.chatbot.repos;
+
+import com.g4.chatbot.models.ConversationSummary;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, String> {
+    
+    /**
+     * Read a session's summary for update, holding off concurrent discards until the transaction ends
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM ConversationSummary s WHERE s.sessionId = :sessionId")
+    Optional<ConversationSummary> lockBySessionId(@Param("sessionId") String sessionId);
+    
+    /**
+     * Delete the summary only if it covers the message; evaluated against the latest committed row
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ConversationSummary s WHERE s.sessionId = :sessionId AND s.coveredUntilMessageId >= :messageId")
+    int deleteIfCovers(@Param("sessionId") String sessionId, @Param("messageId") Long messageId);
+}
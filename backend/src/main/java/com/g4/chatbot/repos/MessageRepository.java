@@ -1,6 +1,7 @@
 package com.g4.chatbot.repos;
 
 import com.g4.chatbot.models.Message;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -10,6 +11,7 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
@@ -18,6 +20,44 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     
     Page<Message> findBySessionIdOrderByTimestampAsc(String sessionId, Pageable pageable);
     
+    /**
+     * Newest messages of a session first, reading only role and content (served by idx_messages_session_timestamp)
+     */
+    @Query("SELECT m.role AS role, m.content AS content FROM Message m WHERE m.sessionId = :sessionId ORDER BY m.timestamp DESC, m.id DESC")
+    List<ContextMessage> findRecentBySessionId(@Param("sessionId") String sessionId, Limit limit);
+    
+    /**
+     * Newest messages of a session before the given position (timestamp, id), reading only role and content
+     */
+    @Query("SELECT m.role AS role, m.content AS content FROM Message m WHERE m.sessionId = :sessionId " +
+           "AND (m.timestamp < :timestamp OR (m.timestamp = :timestamp AND m.id < :id)) ORDER BY m.timestamp DESC, m.id DESC")
+    List<ContextMessage> findRecentBeforeBySessionId(@Param("sessionId") String sessionId, 
+                                                    @Param("timestamp") LocalDateTime timestamp,
+                                                    @Param("id") Long id, Limit limit);
+    
+    Optional<Message> findFirstBySessionIdAndRoleOrderByTimestampDescIdDesc(String sessionId, Message.MessageRole role);
+    
+    /**
+     * Ids of the newest messages of a session, newest first
+     */
+    @Query("SELECT m.id FROM Message m WHERE m.sessionId = :sessionId ORDER BY m.timestamp DESC, m.id DESC")
+    List<Long> findRecentIdsBySessionId(@Param("sessionId") String sessionId, Limit limit);
+    
+    /**
+     * Ids of the messages of a session after the given position (timestamp, id)
+     */
+    @Query("SELECT m.id FROM Message m WHERE m.sessionId = :sessionId " +
+           "AND (m.timestamp > :timestamp OR (m.timestamp = :timestamp AND m.id > :id))")
+    List<Long> findIdsAfterBySessionId(@Param("sessionId") String sessionId, 
+                                       @Param("timestamp") LocalDateTime timestamp, @Param("id") Long id);
+    
+    /**
+     * Oldest messages of a session with an id in (afterId, untilId], in chronological order
+     */
+    @Query("SELECT m FROM Message m WHERE m.sessionId = :sessionId AND m.id > :afterId AND m.id <= :untilId ORDER BY m.timestamp ASC, m.id ASC")
+    List<Message> findRangeBySessionId(@Param("sessionId") String sessionId, @Param("afterId") Long afterId,
+                                       @Param("untilId") Long untilId, Limit limit);
+    
     @Query("SELECT m FROM Message m WHERE m.sessionId = :sessionId AND m.timestamp >= :since ORDER BY m.timestamp ASC")
     List<Message> findBySessionIdAndTimestampAfter(@Param("sessionId") String sessionId, @Param("since") LocalDateTime since);
     
@@ -61,4 +101,13 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     
     @Query("SELECT m FROM Message m JOIN m.chatSession cs WHERE cs.userId = :userId ORDER BY m.timestamp DESC")
     Page<Message> findByUserId(@Param("userId") Long userId, Pageable pageable);
+    
+    /**
+     * Projection of the columns a prompt needs
+     */
+    interface ContextMessage {
+        Message.MessageRole getRole();
+        
+        String getContent();
+    }
 }
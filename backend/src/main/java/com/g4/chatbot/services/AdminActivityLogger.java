@@ -1,6 +1,7 @@
 package com.g4.chatbot.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.g4.chatbot.config.AsyncConfig;
 import com.g4.chatbot.models.AdminActivityLog;
 import com.g4.chatbot.repos.AdminActivityLogRepository;
 import jakarta.servlet.http.HttpServletRequest;
@@ -30,7 +31,7 @@ public class AdminActivityLogger {
      * Log admin activity asynchronously
      * Uses separate transaction to ensure logging doesn't interfere with main operation
      */
-    @Async
+    @Async(AsyncConfig.LOGGING_EXECUTOR)
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void logActivity(Long adminId, String action, String resourceType, 
                            String resourceId, Map<String, Object> details,
@@ -50,6 +50,12 @@ public class AdminMessageManagementService {
     @Autowired
     private AdminActivityLogger adminActivityLogger;
 
+    @Autowired
+    private ConversationContextService conversationContextService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
     /**
      * Get all messages with optional filtering
      * Level 2 admins (moderators) and above can access
@@ -276,6 +282,8 @@ public class AdminMessageManagementService {
         }
 
         messageRepository.delete(message);
+        conversationContextService.invalidate(message.getSessionId());
+        conversationSummaryService.discardIfCovers(message.getSessionId(), messageId);
         
         // Log the activity
         adminActivityLogger.logActivity(adminId, "DELETE", "Message", messageId.toString(), details, request);
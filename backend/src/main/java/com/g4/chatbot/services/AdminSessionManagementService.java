@@ -49,6 +49,12 @@ public class AdminSessionManagementService {
     @Autowired
     private AdminActivityLogger activityLogger;
 
+    @Autowired
+    private ConversationContextService conversationContextService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
     /**
      * Get all chat sessions with optional filtering
      * Level 2 admins (moderators) and above can access
@@ -169,6 +175,8 @@ public class AdminSessionManagementService {
 
         // Delete session
         chatSessionRepository.delete(session);
+        conversationContextService.invalidate(sessionId);
+        conversationSummaryService.discard(sessionId);
 
         log.info("Session {} successfully deleted by admin {}", sessionId, adminId);
         
@@ -0,0 +1,520 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.AdmissionConfig;
+import com.g4.chatbot.dto.admin.AdmissionQueueDTO;
+import com.g4.chatbot.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Admission control in front of the model hosts. Each model has a concurrency limit (fixed or AIMD)
+ * and a bounded wait queue; callers beyond the queue, or waiting longer than the max wait, are
+ * rejected with {@link TooManyRequestsException} (429 + Retry-After). Waiting callers can follow
+ * their queue position, which streams relay as "queued" events.
+ * The queue is served by weighted fair queuing (self-clocked) across callers: each caller is a flow
+ * weighted by its priority class, so a user flooding the queue only delays their own requests.
+ */
+@Service
+@Slf4j
+public class AdmissionService {
+
+    @Autowired
+    private AdmissionConfig admissionConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private static final int MAX_TRACKED_FLOWS = 10_000;
+    private static final int MAX_REPORTED_FLOWS = 50;
+
+    private final Map<String, ModelLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * Create an admission ticket for one LLM call; nothing is queued until {@link Ticket#positions()} is subscribed.
+     * The priority class is taken from the current security context.
+     */
+    public Ticket ticket(String model, Long userId) {
+        return ticket(model, userId, currentPriorityClass());
+    }
+
+    /**
+     * Create an admission ticket for a caller of the given priority class (for work running off the request thread)
+     */
+    public Ticket ticket(String model, Long userId, String priorityClass) {
+        return new Ticket(admissionConfig.isEnabled() ? limiter(model) : null, userId, priorityClass);
+    }
+
+    /**
+     * Priority class of the authenticated caller: "admin" or "user"
+     */
+    public String currentPriorityClass() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getAuthorities().stream()
+                .anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()))) {
+            return "admin";
+        }
+        return "user";
+    }
+
+    /**
+     * Per-model limiter state with the callers currently waiting or recently served
+     */
+    public List<AdmissionQueueDTO> getQueueStatus() {
+        return limiters.values().stream()
+                .map(ModelLimiter::snapshot)
+                .sorted(Comparator.comparing(AdmissionQueueDTO::getModel))
+                .toList();
+    }
+
+    /**
+     * Fail fast with 429 when the model's wait queue is already full
+     */
+    public void checkCapacity(String model) {
+        if (!admissionConfig.isEnabled()) {
+            return;
+        }
+        ModelLimiter limiter = limiter(model);
+        synchronized (limiter) {
+            if (limiter.queue.size() >= admissionConfig.getMaxQueueSize()) {
+                limiter.rejectedQueueFull.increment();
+                throw limiter.rejection();
+            }
+        }
+    }
+
+    /**
+     * Run a blocking LLM call once admitted, waiting in the model's queue if needed
+     */
+    public <T> T callBlocking(String model, Long userId, Supplier<T> call) {
+        return callBlocking(model, userId, currentPriorityClass(), call);
+    }
+
+    /**
+     * Run a blocking LLM call for a caller of the given priority class (for work running off the request thread)
+     */
+    public <T> T callBlocking(String model, Long userId, String priorityClass, Supplier<T> call) {
+        Ticket ticket = ticket(model, userId, priorityClass);
+        ticket.positions().blockLast();
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            ticket.onFailure();
+            throw e;
+        } finally {
+            ticket.release();
+        }
+    }
+
+    /**
+     * Non-blocking admission: the call is subscribed once a slot is granted and the slot is released when it
+     * terminates or is cancelled. No thread waits in the queue.
+     */
+    public <T> Mono<T> call(String model, Long userId, String priorityClass, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            Ticket ticket = ticket(model, userId, priorityClass);
+            return ticket.positions()
+                    .then(Mono.defer(call))
+                    .doOnError(error -> {
+                        if (!(error instanceof TooManyRequestsException)) {
+                            ticket.onFailure();
+                        }
+                    })
+                    .doFinally(signal -> ticket.release());
+        });
+    }
+
+    /**
+     * Callers pass names resolved by {@link ModelCatalogService}, so limiters only exist for served models
+     */
+    private ModelLimiter limiter(String model) {
+        return limiters.computeIfAbsent(model, ModelLimiter::new);
+    }
+
+    private enum State { NEW, WAITING, GRANTED, DONE }
+
+    /**
+     * Queue-time statistics of one caller (flow) on one model
+     */
+    private static class FlowStats {
+        final Long userId;
+        final String priorityClass;
+        int waiting;
+        long admitted;
+        long totalWaitNanos;
+        long maxWaitNanos;
+
+        FlowStats(Long userId, String priorityClass) {
+            this.userId = userId;
+            this.priorityClass = priorityClass;
+        }
+
+        void recordAdmission(long waitNanos) {
+            admitted++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+
+        AdmissionQueueDTO.FlowDTO toDTO() {
+            return AdmissionQueueDTO.FlowDTO.builder()
+                    .userId(userId)
+                    .priorityClass(priorityClass)
+                    .waiting(waiting)
+                    .admitted(admitted)
+                    .avgWaitMs(admitted > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / admitted) : 0)
+                    .maxWaitMs(TimeUnit.NANOSECONDS.toMillis(maxWaitNanos))
+                    .build();
+        }
+    }
+
+    /**
+     * One caller's claim on a model slot
+     */
+    public class Ticket {
+        private final ModelLimiter limiter;
+        private final Long userId;
+        private final String priorityClass;
+        // Fair-queuing flow: admins and users have separate id spaces
+        private final String flowKey;
+        private final int weight;
+        private long seq;
+        private double finishTag;
+
+        private State state = State.NEW;
+        private FluxSink<Integer> sink;
+        private Disposable timeout;
+        private int lastPosition;
+        private long enqueuedAt;
+        private long grantedAt;
+        private boolean responded;
+
+        Ticket(ModelLimiter limiter, Long userId, String priorityClass) {
+            this.limiter = limiter;
+            this.userId = userId;
+            this.priorityClass = priorityClass;
+            this.flowKey = priorityClass + ":" + userId;
+            this.weight = Math.max(1, admissionConfig.getFairness().getWeights().getOrDefault(priorityClass, 1));
+        }
+
+        /**
+         * Queue positions (1 = next) while waiting; completes once a slot is granted, errors with
+         * {@link TooManyRequestsException} when the queue is full or the max wait is exceeded
+         */
+        public Flux<Integer> positions() {
+            if (limiter == null) {
+                return Flux.empty();
+            }
+            return Flux.create(sink -> {
+                sink.onCancel(this::release);
+                limiter.enqueue(this, sink);
+            });
+        }
+
+        /**
+         * First response chunk arrived; feeds the adaptive limit
+         */
+        public void onFirstResponse() {
+            if (limiter == null) {
+                return;
+            }
+            synchronized (limiter) {
+                if (responded || state != State.GRANTED) {
+                    return;
+                }
+                responded = true;
+            }
+            limiter.adapt(System.nanoTime() - grantedAt, false);
+        }
+
+        public void onFailure() {
+            if (limiter != null) {
+                limiter.adapt(0, true);
+            }
+        }
+
+        /**
+         * Give the slot back (or leave the queue); safe to call more than once
+         */
+        public void release() {
+            if (limiter != null) {
+                limiter.release(this);
+            }
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+    }
+
+    private class ModelLimiter {
+        final String model;
+        // Ordered by virtual finish tag (FIFO when fairness is off)
+        final TreeSet<Ticket> queue = new TreeSet<>(Comparator.comparingDouble((Ticket t) -> t.finishTag)
+                .thenComparingLong(t -> t.seq));
+        // Last finish tag per flow and the virtual time (tag of the most recently admitted ticket)
+        final Map<String, Double> lastFinish = new HashMap<>();
+        final Map<String, FlowStats> flowStats = new LinkedHashMap<>();
+        double virtualTime;
+        long sequence;
+        double limit;
+        int inFlight;
+        // Moving average of how long a slot is held, used for Retry-After
+        double avgHoldSeconds;
+
+        final Counter rejectedQueueFull;
+        final Counter rejectedTimeout;
+        final Timer waitTimer;
+
+        ModelLimiter(String model) {
+            this.model = model;
+            this.limit = Math.max(1, admissionConfig.getLimitFor(model));
+
+            Gauge.builder("llm.admission.inflight", this, l -> l.inFlight)
+                    .tag("model", model)
+                    .description("Admitted LLM calls currently running")
+                    .register(meterRegistry);
+            Gauge.builder("llm.admission.queue", this, l -> l.queue.size())
+                    .tag("model", model)
+                    .description("LLM calls waiting for a slot")
+                    .register(meterRegistry);
+            Gauge.builder("llm.admission.limit", this, l -> l.limit)
+                    .tag("model", model)
+                    .description("Current concurrency limit")
+                    .register(meterRegistry);
+            rejectedQueueFull = rejectionCounter("queue_full");
+            rejectedTimeout = rejectionCounter("timeout");
+            waitTimer = Timer.builder("llm.admission.wait")
+                    .tag("model", model)
+                    .description("Time spent waiting for a slot")
+                    .register(meterRegistry);
+        }
+
+        private Counter rejectionCounter(String reason) {
+            return Counter.builder("llm.admission.rejected")
+                    .tag("model", model)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+
+        void enqueue(Ticket ticket, FluxSink<Integer> sink) {
+            List<Runnable> signals = new ArrayList<>();
+            synchronized (this) {
+                if (ticket.state != State.NEW) {
+                    return;
+                }
+                ticket.sink = sink;
+                ticket.enqueuedAt = System.nanoTime();
+                assignFinishTag(ticket);
+                if (queue.isEmpty() && inFlight < currentLimit()) {
+                    grant(ticket, signals);
+                } else if (queue.size() >= admissionConfig.getMaxQueueSize()) {
+                    ticket.state = State.DONE;
+                    rejectedQueueFull.increment();
+                    TooManyRequestsException rejection = rejection();
+                    signals.add(() -> sink.error(rejection));
+                } else {
+                    ticket.state = State.WAITING;
+                    queue.add(ticket);
+                    flowStats(ticket).waiting++;
+                    ticket.timeout = Schedulers.parallel().schedule(() -> expire(ticket),
+                            admissionConfig.getMaxWaitSeconds(), TimeUnit.SECONDS);
+                    updatePositions(signals);
+                    log.debug("LLM call for model {} queued at position {} (in flight: {})", model, queue.size(), inFlight);
+                }
+            }
+            signals.forEach(Runnable::run);
+        }
+
+        void release(Ticket ticket) {
+            List<Runnable> signals = new ArrayList<>();
+            synchronized (this) {
+                if (ticket.state == State.GRANTED) {
+                    inFlight--;
+                    double held = (System.nanoTime() - ticket.grantedAt) / 1e9;
+                    avgHoldSeconds = avgHoldSeconds == 0 ? held : 0.2 * held + 0.8 * avgHoldSeconds;
+                    dispatch(signals);
+                } else if (ticket.state == State.WAITING) {
+                    queue.remove(ticket);
+                    flowStats(ticket).waiting--;
+                    ticket.timeout.dispose();
+                    updatePositions(signals);
+                }
+                ticket.state = State.DONE;
+            }
+            signals.forEach(Runnable::run);
+        }
+
+        private void expire(Ticket ticket) {
+            List<Runnable> signals = new ArrayList<>();
+            synchronized (this) {
+                if (ticket.state != State.WAITING) {
+                    return;
+                }
+                queue.remove(ticket);
+                flowStats(ticket).waiting--;
+                ticket.state = State.DONE;
+                rejectedTimeout.increment();
+                TooManyRequestsException rejection = rejection();
+                signals.add(() -> ticket.sink.error(rejection));
+                updatePositions(signals);
+            }
+            log.info("LLM call for model {} gave up after waiting {}s for a slot", model, admissionConfig.getMaxWaitSeconds());
+            signals.forEach(Runnable::run);
+        }
+
+        /**
+         * AIMD: additive increase per fast first response, multiplicative decrease on slow or failed calls
+         */
+        void adapt(long latencyNanos, boolean failed) {
+            AdmissionConfig.Adaptive adaptive = admissionConfig.getAdaptive();
+            if (!adaptive.isEnabled()) {
+                return;
+            }
+            List<Runnable> signals = new ArrayList<>();
+            synchronized (this) {
+                if (failed || TimeUnit.NANOSECONDS.toMillis(latencyNanos) > adaptive.getLatencyThresholdMs()) {
+                    limit = Math.max(adaptive.getMinLimit(), limit * adaptive.getBackoffRatio());
+                } else {
+                    limit = Math.min(adaptive.getMaxLimit(), limit + 1.0 / limit);
+                    dispatch(signals);
+                }
+            }
+            signals.forEach(Runnable::run);
+        }
+
+        private int currentLimit() {
+            return Math.max(1, (int) limit);
+        }
+
+        private void dispatch(List<Runnable> signals) {
+            boolean moved = false;
+            while (inFlight < currentLimit() && !queue.isEmpty()) {
+                grant(queue.pollFirst(), signals);
+                moved = true;
+            }
+            if (moved) {
+                updatePositions(signals);
+            }
+        }
+
+        /**
+         * Self-clocked fair queuing: a ticket finishes 1/weight after the later of the virtual time
+         * and its flow's previous ticket, so each backlogged flow gets its weighted share of slots
+         */
+        private void assignFinishTag(Ticket ticket) {
+            ticket.seq = ++sequence;
+            if (!admissionConfig.getFairness().isEnabled()) {
+                ticket.finishTag = ticket.seq;
+                return;
+            }
+            double start = Math.max(virtualTime, lastFinish.getOrDefault(ticket.flowKey, 0.0));
+            ticket.finishTag = start + 1.0 / ticket.weight;
+            lastFinish.put(ticket.flowKey, ticket.finishTag);
+        }
+
+        private void grant(Ticket ticket, List<Runnable> signals) {
+            inFlight++;
+            ticket.state = State.GRANTED;
+            ticket.grantedAt = System.nanoTime();
+            long waited = ticket.grantedAt - ticket.enqueuedAt;
+            waitTimer.record(waited, TimeUnit.NANOSECONDS);
+            Timer.builder("llm.admission.class.wait")
+                    .tag("model", model)
+                    .tag("class", ticket.priorityClass)
+                    .description("Time spent waiting for a slot per priority class")
+                    .register(meterRegistry)
+                    .record(waited, TimeUnit.NANOSECONDS);
+            flowStats(ticket).recordAdmission(waited);
+
+            if (admissionConfig.getFairness().isEnabled()) {
+                virtualTime = Math.max(virtualTime, ticket.finishTag);
+                if (lastFinish.size() > MAX_TRACKED_FLOWS) {
+                    // Flows whose last tag is behind the virtual time are idle and start fresh anyway
+                    lastFinish.values().removeIf(tag -> tag <= virtualTime);
+                }
+            }
+            if (ticket.timeout != null) {
+                ticket.timeout.dispose();
+            }
+            FluxSink<Integer> sink = ticket.sink;
+            signals.add(sink::complete);
+        }
+
+        private void updatePositions(List<Runnable> signals) {
+            int position = 1;
+            for (Ticket waiting : queue) {
+                if (waiting.lastPosition != position) {
+                    waiting.lastPosition = position;
+                    FluxSink<Integer> sink = waiting.sink;
+                    int current = position;
+                    signals.add(() -> sink.next(current));
+                }
+                position++;
+            }
+        }
+
+        private FlowStats flowStats(Ticket ticket) {
+            FlowStats stats = flowStats.get(ticket.flowKey);
+            if (stats == null) {
+                if (flowStats.size() >= MAX_TRACKED_FLOWS) {
+                    // Forget the oldest idle flow
+                    flowStats.entrySet().stream()
+                            .filter(e -> e.getValue().waiting == 0)
+                            .findFirst()
+                            .ifPresent(e -> flowStats.remove(e.getKey()));
+                }
+                stats = new FlowStats(ticket.userId, ticket.priorityClass);
+                flowStats.put(ticket.flowKey, stats);
+            }
+            return stats;
+        }
+
+        synchronized AdmissionQueueDTO snapshot() {
+            List<AdmissionQueueDTO.FlowDTO> flows = flowStats.values().stream()
+                    .sorted(Comparator.comparingInt((FlowStats f) -> f.waiting).reversed()
+                            .thenComparing(Comparator.comparingLong((FlowStats f) -> f.maxWaitNanos).reversed()))
+                    .limit(MAX_REPORTED_FLOWS)
+                    .map(FlowStats::toDTO)
+                    .toList();
+            return AdmissionQueueDTO.builder()
+                    .model(model)
+                    .limit(limit)
+                    .inFlight(inFlight)
+                    .queued(queue.size())
+                    .flows(flows)
+                    .build();
+        }
+
+        /**
+         * 429 with an estimate of when a slot frees up for a caller at the back of the queue
+         */
+        TooManyRequestsException rejection() {
+            double hold = Math.max(1, avgHoldSeconds);
+            long retryAfter = (long) Math.ceil(hold * (queue.size() + 1) / currentLimit());
+            return new TooManyRequestsException(
+                    "Model " + model + " is busy, please retry later", Math.max(1, retryAfter));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.ExecutionConfig;
+import com.g4.chatbot.exception.GenerationTimeoutException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers non-streaming chat requests asynchronously: the controller returns a DeferredResult, the servlet
+ * thread goes back to Tomcat and the response is written when the Mono completes.
+ * Each request gets an explicit timeout (504); a timed out or disconnected request cancels its Mono, which
+ * aborts the Ollama call and frees its admission slot.
+ */
+@Service
+@Slf4j
+public class AsyncRequestService {
+
+    @Autowired
+    private ExecutionConfig executionConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("chat.requests.pending", pending, AtomicInteger::get)
+                .description("Non-streaming chat requests waiting for their answer without holding a thread")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 200 with the Mono's value, or the error it fails with (handled by GlobalExceptionHandler)
+     */
+    public <T> DeferredResult<ResponseEntity<T>> ok(String endpoint, Mono<T> result) {
+        long timeoutMs = executionConfig.getRequestTimeoutMs();
+        DeferredResult<ResponseEntity<T>> deferred = new DeferredResult<>(timeoutMs);
+        pending.incrementAndGet();
+
+        Disposable subscription = result
+                .doFinally(signal -> pending.decrementAndGet())
+                .subscribe(
+                        value -> deferred.setResult(ResponseEntity.ok(value)),
+                        deferred::setErrorResult);
+
+        deferred.onTimeout(() -> {
+            subscription.dispose();
+            Counter.builder("chat.requests.timeouts")
+                    .tag("endpoint", endpoint)
+                    .description("Non-streaming chat requests that hit the request timeout")
+                    .register(meterRegistry)
+                    .increment();
+            log.warn("{} timed out after {} ms", endpoint, timeoutMs);
+            deferred.setErrorResult(new GenerationTimeoutException(
+                    "No response from the model within " + timeoutMs / 1000 + " seconds"));
+        });
+        // Client gone or container error: stop generating
+        deferred.onError(error -> subscription.dispose());
+        return deferred;
+    }
+}
@@ -1,5 +1,6 @@
 package com.g4.chatbot.services;
 
+import com.g4.chatbot.config.AsyncConfig;
 import com.g4.chatbot.models.AuthenticationErrorLog;
 import com.g4.chatbot.repos.AuthenticationErrorLogRepository;
 import lombok.extern.slf4j.Slf4j;
@@ -26,7 +27,7 @@ public class AuthErrorLogService {
     /**
      * Log authentication error asynchronously with separate transaction
      */
-    @Async
+    @Async(AsyncConfig.LOGGING_EXECUTOR)
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void logAuthError(
             AuthenticationErrorLog.ErrorType errorType,
@@ -70,7 +71,7 @@ public class AuthErrorLogService {
     /**
      * Log 401 Unauthorized error
      */
-    @Async
+    @Async(AsyncConfig.LOGGING_EXECUTOR)
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void log401(String ipAddress, String userAgent, String endpoint, String httpMethod, String errorMessage) {
         logAuthError(
@@ -89,7 +90,7 @@ public class AuthErrorLogService {
     /**
      * Log 403 Forbidden error
      */
-    @Async
+    @Async(AsyncConfig.LOGGING_EXECUTOR)
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void log403(Long userId, String username, String ipAddress, String userAgent, String endpoint, String httpMethod, String errorMessage, String attemptedAction) {
         logAuthError(
@@ -108,7 +109,7 @@ public class AuthErrorLogService {
     /**
      * Log 404 Not Found error (resource access attempt)
      */
-    @Async
+    @Async(AsyncConfig.LOGGING_EXECUTOR)
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void log404(Long userId, String username, String ipAddress, String userAgent, String endpoint, String httpMethod, String resourceType) {
         logAuthError(
@@ -127,7 +128,7 @@ public class AuthErrorLogService {
     /**
      * Log invalid token error
      */
-    @Async
+    @Async(AsyncConfig.LOGGING_EXECUTOR)
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void logInvalidToken(String ipAddress, String userAgent, String endpoint, String httpMethod, String tokenError) {
         logAuthError(
@@ -146,7 +147,7 @@ public class AuthErrorLogService {
     /**
      * Log access denied error
      */
-    @Async
+    @Async(AsyncConfig.LOGGING_EXECUTOR)
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void logAccessDenied(Long userId, String username, String ipAddress, String userAgent, String endpoint, String httpMethod, String reason) {
         logAuthError(
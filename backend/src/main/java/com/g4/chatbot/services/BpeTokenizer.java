@@ -0,0 +1,457 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.TokenizerConfig;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Byte-level BPE tokenizer for rank files in the tiktoken format (cl100k_base, Llama 3's tokenizer.model).
+ * Text is split by the vocabulary's pre-tokenization pattern; each piece is UTF-8 encoded and its bytes are
+ * merged lowest rank first, the same way tiktoken does. Tokens are looked up in an open-addressing hash over
+ * their bytes held in primitive arrays, and scratch arrays are borrowed from a small pool, so tokenizing
+ * allocates nothing per token (or per call, unless more callers run at once than the pool holds). The cl100k pattern is matched by hand, which is several times faster than
+ * java.util.regex; other patterns go through a reused Matcher.
+ * Not a Spring bean: {@link TokenizerService} loads one instance per vocabulary.
+ */
+public class BpeTokenizer implements Tokenizer {
+
+    private static final int NO_RANK = Integer.MAX_VALUE;
+
+    // Scratch buffers kept for reuse: enough for every core to tokenize at once
+    private static final int SCRATCH_POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    // Arrays grown past this for one huge piece are dropped when the scratch goes back to the pool
+    private static final int MAX_RETAINED_LENGTH = 16 * 1024;
+
+    private final String name;
+    private final Pattern pattern;
+    private final boolean cl100kSplit;
+
+    // Token bytes back to back: token i spans tokenBytes[tokenOffsets[i], tokenOffsets[i + 1])
+    private final byte[] tokenBytes;
+    private final int[] tokenOffsets;
+    private final int[] tokenRanks;
+
+    // Slot -> token index + 1 (0 marks a free slot), with each token's full hash to skip most byte comparisons
+    private final int[] slots;
+    private final int[] slotHashes;
+
+    // Not a ThreadLocal: virtual threads would each start with an empty one
+    private final ArrayBlockingQueue<Scratch> scratchPool = new ArrayBlockingQueue<>(SCRATCH_POOL_SIZE);
+
+    private BpeTokenizer(String name, String pattern, List<byte[]> tokens, List<Integer> ranks) {
+        this.name = name;
+        this.cl100kSplit = TokenizerConfig.CL100K_PATTERN.equals(pattern);
+        this.pattern = cl100kSplit ? null : Pattern.compile(pattern, Pattern.UNICODE_CHARACTER_CLASS);
+
+        int totalBytes = 0;
+        for (byte[] token : tokens) {
+            totalBytes += token.length;
+        }
+        tokenBytes = new byte[totalBytes];
+        tokenOffsets = new int[tokens.size() + 1];
+        tokenRanks = new int[tokens.size()];
+        // Power of two, at most half full
+        slots = new int[Integer.highestOneBit(Math.max(2, tokens.size()) * 4 - 1)];
+        slotHashes = new int[slots.length];
+
+        int offset = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            byte[] token = tokens.get(i);
+            System.arraycopy(token, 0, tokenBytes, offset, token.length);
+            tokenOffsets[i] = offset;
+            offset += token.length;
+            tokenOffsets[i + 1] = offset;
+            tokenRanks[i] = ranks.get(i);
+
+            int hash = hash(token, 0, token.length);
+            int mask = slots.length - 1;
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+            slotHashes[slot] = hash;
+        }
+    }
+
+    /**
+     * Read a rank file: one "base64(token bytes) rank" pair per line
+     */
+    public static BpeTokenizer load(String name, InputStream in, String pattern) throws IOException {
+        List<byte[]> tokens = new ArrayList<>();
+        List<Integer> ranks = new ArrayList<>();
+        Base64.Decoder base64 = Base64.getDecoder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            int space = line.lastIndexOf(' ');
+            if (space <= 0) {
+                throw new IOException("Malformed vocabulary line " + lineNumber + " in " + name);
+            }
+            try {
+                tokens.add(base64.decode(line.substring(0, space)));
+                ranks.add(Integer.parseInt(line.substring(space + 1).trim()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed vocabulary line " + lineNumber + " in " + name, e);
+            }
+        }
+        return new BpeTokenizer(name, pattern, tokens, ranks);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public int getVocabularySize() {
+        return tokenRanks.length;
+    }
+
+    @Override
+    public int countTokens(CharSequence text) {
+        return encode(text, null);
+    }
+
+    /**
+     * Pass each token id (rank) to the sink, in order; returns the number of tokens
+     */
+    public int encode(CharSequence text, IntConsumer sink) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        Scratch s = scratchPool.poll();
+        if (s == null) {
+            s = new Scratch(pattern != null ? pattern.matcher("") : null);
+        }
+        try {
+            return cl100kSplit ? encodeCl100k(s, text, sink) : encodeMatched(s, text, sink);
+        } finally {
+            s.shrink();
+            scratchPool.offer(s);
+        }
+    }
+
+    private int encodeCl100k(Scratch s, CharSequence text, IntConsumer sink) {
+        int count = 0;
+        int end = text.length();
+        for (int start = 0; start < end; ) {
+            int pieceEnd = cl100kPieceEnd(text, start, end);
+            count += mergePiece(s, s.utf8(text, start, pieceEnd), sink);
+            start = pieceEnd;
+        }
+        return count;
+    }
+
+    private int encodeMatched(Scratch s, CharSequence text, IntConsumer sink) {
+        int count = 0;
+        Matcher matcher = s.matcher.reset(text);
+        try {
+            while (matcher.find()) {
+                count += mergePiece(s, s.utf8(text, matcher.start(), matcher.end()), sink);
+            }
+        } finally {
+            // Do not keep the caller's text reachable from the pool
+            matcher.reset("");
+        }
+        return count;
+    }
+
+    /**
+     * Byte pair merge of one piece (tiktoken's algorithm): parts are delimited by positions, and ranks[i]
+     * is the rank of parts i and i + 1 merged. The lowest rank is merged until no pair is in the vocabulary.
+     */
+    private int mergePiece(Scratch s, int length, IntConsumer sink) {
+        byte[] bytes = s.bytes;
+        int whole = rank(bytes, 0, length);
+        if (whole != NO_RANK) {
+            if (sink != null) {
+                sink.accept(whole);
+            }
+            return 1;
+        }
+
+        s.ensureParts(length + 1);
+        int[] positions = s.positions;
+        int[] ranks = s.ranks;
+        for (int i = 0; i <= length; i++) {
+            positions[i] = i;
+            ranks[i] = i + 2 <= length ? rank(bytes, i, i + 2) : NO_RANK;
+        }
+
+        int parts = length + 1;
+        while (true) {
+            int min = NO_RANK;
+            int at = -1;
+            for (int i = 0; i < parts - 1; i++) {
+                if (ranks[i] < min) {
+                    min = ranks[i];
+                    at = i;
+                }
+            }
+            if (at < 0) {
+                break;
+            }
+            // Ranks around the merge, computed as if position at + 1 were already gone
+            if (at > 0) {
+                ranks[at - 1] = at + 2 < parts ? rank(bytes, positions[at - 1], positions[at + 2]) : NO_RANK;
+            }
+            ranks[at] = at + 3 < parts ? rank(bytes, positions[at], positions[at + 3]) : NO_RANK;
+            System.arraycopy(positions, at + 2, positions, at + 1, parts - at - 2);
+            System.arraycopy(ranks, at + 2, ranks, at + 1, parts - at - 2);
+            parts--;
+        }
+
+        if (sink != null) {
+            for (int i = 0; i < parts - 1; i++) {
+                sink.accept(rank(bytes, positions[i], positions[i + 1]));
+            }
+        }
+        return parts - 1;
+    }
+
+    /**
+     * Rank of bytes[from, to), or NO_RANK if they are not a token
+     */
+    private int rank(byte[] bytes, int from, int to) {
+        int hash = hash(bytes, from, to);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int token = slots[slot];
+            if (token == 0) {
+                return NO_RANK;
+            }
+            if (slotHashes[slot] == hash) {
+                int start = tokenOffsets[token - 1];
+                int end = tokenOffsets[token];
+                if (Arrays.equals(tokenBytes, start, end, bytes, from, to)) {
+                    return tokenRanks[token - 1];
+                }
+            }
+        }
+    }
+
+    /**
+     * FNV-1a over the bytes, finished with the murmur3 mix so the low bits used for the slot are well spread
+     */
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            h = (h ^ (bytes[i] & 0xFF)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * End of the piece starting at i under {@link TokenizerConfig#CL100K_PATTERN}, trying its alternatives in order:
+     * 's|'t|'re|'ve|'m|'ll|'d, [^\r\n\p{L}\p{N}]?\p{L}+, \p{N}{1,3}, ' ?[^\s\p{L}\p{N}]+[\r\n]*',
+     * \s*[\r\n]+, \s+(?!\S), \s+
+     */
+    static int cl100kPieceEnd(CharSequence text, int i, int end) {
+        int c = Character.codePointAt(text, i);
+        int next = i + Character.charCount(c);
+
+        if (c == '\'' && next < end) {
+            int contraction = contractionLength(text, next, end);
+            if (contraction > 0) {
+                return next + contraction;
+            }
+        }
+
+        if (isLetter(c)) {
+            return skipLetters(text, next, end);
+        }
+        if (c != '\r' && c != '\n' && !isNumber(c) && next < end && isLetter(Character.codePointAt(text, next))) {
+            return skipLetters(text, next, end);
+        }
+
+        if (isNumber(c)) {
+            int j = next;
+            for (int digits = 1; digits < 3 && j < end; digits++) {
+                int d = Character.codePointAt(text, j);
+                if (!isNumber(d)) {
+                    break;
+                }
+                j += Character.charCount(d);
+            }
+            return j;
+        }
+
+        int symbolsStart = c == ' ' ? next : i;
+        if (symbolsStart < end && isSymbol(Character.codePointAt(text, symbolsStart))) {
+            int j = symbolsStart;
+            while (j < end) {
+                int d = Character.codePointAt(text, j);
+                if (!isSymbol(d)) {
+                    break;
+                }
+                j += Character.charCount(d);
+            }
+            while (j < end && (text.charAt(j) == '\r' || text.charAt(j) == '\n')) {
+                j++;
+            }
+            return j;
+        }
+
+        // Whitespace run (all White_Space characters are in the BMP)
+        int j = i;
+        int lastNewline = -1;
+        while (j < end && isWhitespace(text.charAt(j))) {
+            if (text.charAt(j) == '\r' || text.charAt(j) == '\n') {
+                lastNewline = j;
+            }
+            j++;
+        }
+        if (lastNewline >= 0) {
+            return lastNewline + 1;
+        }
+        if (j == end || j - 1 == i) {
+            return j;
+        }
+        // Leave the last whitespace character to prefix the next piece
+        return j - 1;
+    }
+
+    /**
+     * Length of s, t, re, ve, m, ll or d (any case) after an apostrophe, or 0
+     */
+    private static int contractionLength(CharSequence text, int i, int end) {
+        char first = Character.toLowerCase(text.charAt(i));
+        if (first == 's' || first == '\u017F' || first == 't' || first == 'm' || first == 'd') {
+            return 1;
+        }
+        if (i + 1 < end) {
+            char second = Character.toLowerCase(text.charAt(i + 1));
+            if ((first == 'r' || first == 'v') && second == 'e' || first == 'l' && second == 'l') {
+                return 2;
+            }
+        }
+        return 0;
+    }
+
+    private static int skipLetters(CharSequence text, int j, int end) {
+        while (j < end) {
+            int c = Character.codePointAt(text, j);
+            if (!isLetter(c)) {
+                break;
+            }
+            j += Character.charCount(c);
+        }
+        return j;
+    }
+
+    private static boolean isLetter(int c) {
+        return c < 0x80 ? (c | 0x20) >= 'a' && (c | 0x20) <= 'z' : Character.isLetter(c);
+    }
+
+    private static boolean isNumber(int c) {
+        if (c < 0x80) {
+            return c >= '0' && c <= '9';
+        }
+        int type = Character.getType(c);
+        return type == Character.DECIMAL_DIGIT_NUMBER || type == Character.LETTER_NUMBER
+                || type == Character.OTHER_NUMBER;
+    }
+
+    /**
+     * Unicode White_Space, which is what \s means with UNICODE_CHARACTER_CLASS
+     */
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || (c >= 0x09 && c <= 0x0D) || c == 0x85 || c == 0xA0 || c == 0x1680
+                || (c >= 0x2000 && c <= 0x200A) || c == 0x2028 || c == 0x2029 || c == 0x202F
+                || c == 0x205F || c == 0x3000;
+    }
+
+    private static boolean isSymbol(int c) {
+        return !isWhitespace(c) && !isLetter(c) && !isNumber(c);
+    }
+
+    /**
+     * Working memory of one encode call, grown when a longer piece comes along and then reused
+     */
+    private static class Scratch {
+        final Matcher matcher;
+        byte[] bytes = new byte[256];
+        int[] positions = new int[256];
+        int[] ranks = new int[256];
+
+        Scratch(Matcher matcher) {
+            this.matcher = matcher;
+        }
+
+        /**
+         * Back to the initial size if a huge piece grew the arrays, so the pool does not pin them
+         */
+        void shrink() {
+            if (bytes.length > MAX_RETAINED_LENGTH) {
+                bytes = new byte[256];
+            }
+            if (positions.length > MAX_RETAINED_LENGTH) {
+                positions = new int[256];
+                ranks = new int[256];
+            }
+        }
+
+        void ensureParts(int size) {
+            if (positions.length < size) {
+                positions = new int[Math.max(size, positions.length * 2)];
+                ranks = new int[positions.length];
+            }
+        }
+
+        /**
+         * UTF-8 encode text[from, to) into bytes (unpaired surrogates become '?', as String.getBytes does)
+         */
+        int utf8(CharSequence text, int from, int to) {
+            int capacity = (to - from) * 3;
+            if (bytes.length < capacity) {
+                bytes = new byte[Math.max(capacity, bytes.length * 2)];
+            }
+            byte[] out = bytes;
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    out[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    out[n++] = (byte) (0xC0 | (c >> 6));
+                    out[n++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    out[n++] = (byte) (0xF0 | (codePoint >> 18));
+                    out[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    out[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    out[n++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    out[n++] = '?';
+                } else {
+                    out[n++] = (byte) (0xE0 | (c >> 12));
+                    out[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    out[n++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return n;
+        }
+    }
+}
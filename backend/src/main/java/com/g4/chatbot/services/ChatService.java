@@ -1,26 +1,49 @@
 package com.g4.chatbot.services;
 
+import com.g4.chatbot.config.StreamingConfig;
 import com.g4.chatbot.dto.chat.ChatRequest;
 import com.g4.chatbot.dto.chat.ChatResponse;
+import com.g4.chatbot.dto.chat.stream.ChatStreamEvent;
+import com.g4.chatbot.dto.ollama.OllamaChatResponse;
 import com.g4.chatbot.dto.ollama.OllamaMessage;
 import com.g4.chatbot.dto.session.CreateSessionRequest;
 import com.g4.chatbot.dto.session.SessionResponse;
 import com.g4.chatbot.exception.BadRequestException;
+import com.g4.chatbot.exception.ConversationChangedException;
 import com.g4.chatbot.exception.ResourceNotFoundException;
+import com.g4.chatbot.exception.ModelUnavailableException;
+import com.g4.chatbot.exception.TooManyRequestsException;
 import com.g4.chatbot.models.ChatSession;
 import com.g4.chatbot.models.Message;
 import com.g4.chatbot.repos.ChatSessionRepository;
 import com.g4.chatbot.repos.MessageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -44,163 +67,451 @@ public class ChatService {
     @Autowired
     private OutputValidationService outputValidationService;
     
+    @Autowired
+    private TokenCoalescer tokenCoalescer;
+    
+    @Autowired
+    private StreamOutboxService streamOutboxService;
+    
+    @Autowired
+    private StreamReplayService streamReplayService;
+    
+    @Autowired
+    private AdmissionService admissionService;
+    
+    @Autowired
+    private ModelCatalogService modelCatalogService;
+    
+    @Autowired
+    private ResponseCacheService responseCacheService;
+    
+    @Autowired
+    private ConversationContextService conversationContextService;
+    
+    @Autowired
+    private ContextPacker contextPacker;
+    
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+    
+    @Autowired
+    private TokenizerService tokenizerService;
+    
+    @Autowired
+    private Scheduler chatScheduler;
+    
+    @Autowired
+    private StreamingConfig streamingConfig;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    // Message.metadata marker for answers cut short by a client disconnect
+    private static final String PARTIAL_ANSWER_METADATA = "{\"partial\":true,\"reason\":\"client_cancelled\"}";
+    
+    // Message.metadata marker for answers served from the response cache
+    private static final String CACHED_ANSWER_METADATA = "{\"cached\":true}";
+    
     /**
      * Handle chat with streaming response (Server-Sent Events)
      */
     public SseEmitter chatWithStreaming(Long userId, ChatRequest request) {
         log.info("Starting streaming chat for user: {}", userId);
         
-        // SECURITY: Validate and sanitize user input before processing
-        promptValidationService.validateUserInput(request.getMessage());
-        String sanitizedMessage = promptValidationService.sanitizeInput(request.getMessage());
-        request.setMessage(sanitizedMessage);
+        return toSseEmitter(streamChat(userId, request, "/api/chat/stream"), userId);
+    }
+    
+    /**
+     * Reattach a client to a stream it was disconnected from (SseEmitter flavour)
+     */
+    public SseEmitter resumeStreaming(Long userId, String lastEventId) {
+        log.info("Resuming streaming chat for user {} after event {}", userId, lastEventId);
+        
+        return toSseEmitter(resumeStream(userId, lastEventId), userId);
+    }
+    
+    /**
+     * Handle chat with a fully reactive stream of Server-Sent Events.
+     * No servlet or helper thread is held while tokens are flowing.
+     */
+    public Flux<ServerSentEvent<Object>> chatWithReactiveStreaming(Long userId, ChatRequest request) {
+        log.info("Starting reactive streaming chat for user: {}", userId);
+        
+        return toServerSentEvents(streamChat(userId, request, "/api/chat/reactive/stream"), userId);
+    }
+    
+    /**
+     * Reattach a client to a stream it was disconnected from (reactive flavour)
+     */
+    public Flux<ServerSentEvent<Object>> resumeReactiveStreaming(Long userId, String lastEventId) {
+        log.info("Resuming reactive streaming chat for user {} after event {}", userId, lastEventId);
         
+        return toServerSentEvents(resumeStream(userId, lastEventId), userId);
+    }
+    
+    private SseEmitter toSseEmitter(Flux<ChatStreamEvent> events, Long userId) {
         SseEmitter emitter = new SseEmitter(300000L); // 5 minute timeout
+        Disposable.Swap subscription = Disposables.swap();
         
-        // Run in separate thread to avoid blocking
-        new Thread(() -> {
-            try {
-                // 1. Get or create session
-                String sessionId = getOrCreateSession(userId, request);
-                log.info("Using session: {} (requested: {})", sessionId, request.getSessionId());
-                
-                // 2. Get conversation history BEFORE saving new message
-                List<Message> history = messageRepository.findBySessionIdOrderByTimestampAsc(sessionId);
-                log.debug("Fetched {} messages from history for session {}", history.size(), sessionId);
-                
-                // Log what we fetched from DB
-                for (int i = 0; i < history.size(); i++) {
-                    Message msg = history.get(i);
-                    log.info("DB Message {}: role={}, length={}, id={}", 
-                        i+1, msg.getRole(), msg.getContent().length(), msg.getId());
-                }
-                
-                List<OllamaMessage> ollamaMessages = new java.util.ArrayList<>(ollamaService.buildMessageHistory(history));
-                log.debug("Built {} Ollama messages from history", ollamaMessages.size());
-                
-                // 3. Add current user message to the conversation
-                ollamaMessages.add(OllamaMessage.builder()
-                        .role("user")
-                        .content(request.getMessage())
-                        .build());
-                
-                log.info("Sending {} total messages to Ollama (including current message)", ollamaMessages.size());
-                for (int i = 0; i < ollamaMessages.size(); i++) {
-                    OllamaMessage msg = ollamaMessages.get(i);
-                    log.info("Message {}: role={}, length={}", i+1, msg.getRole(), msg.getContent().length());
-                    // Log first 200 chars of each message
-                    String preview = msg.getContent().length() > 200 
-                        ? msg.getContent().substring(0, 200) + "..." 
-                        : msg.getContent();
-                    log.info("  Content preview: {}", preview);
-                }
-                
-                // 4. Save user message to DB
-                Message userMessage = saveUserMessage(sessionId, request.getMessage(), request.getModel());
-                
-                // 5. Send session info first
-                emitter.send(SseEmitter.event()
-                        .name("session")
-                        .data("{\"sessionId\":\"" + sessionId + "\",\"userMessageId\":" + userMessage.getId() + "}"));
-                
-                // 6. Stream LLM response
-                StringBuilder fullResponse = new StringBuilder();
-                AtomicReference<Long> assistantMessageId = new AtomicReference<>();
-                
-                ollamaService.chatStream(
-                        request.getModel() != null ? request.getModel() : 
-                        chatSessionRepository.findById(sessionId).map(ChatSession::getModel).orElse("llama3"),
-                        ollamaMessages
-                ).subscribe(
-                        chunk -> {
-                            try {
-                                // Parse the JSON chunk to extract just the content
-                                String content = parseChunkContent(chunk);
-                                if (content != null && !content.isEmpty()) {
-                                    fullResponse.append(content);
-                                    emitter.send(SseEmitter.event()
-                                            .name("message")
-                                            .data(content));
-                                }
-                            } catch (IOException e) {
-                                log.error("Error sending SSE chunk", e);
-                                emitter.completeWithError(e);
-                            }
-                        },
-                        error -> {
-                            log.error("Error in streaming", error);
-                            emitter.completeWithError(error);
-                        },
-                        () -> {
-                            try {
-                                String finalResponse = fullResponse.toString();
-                                
-                                // SECURITY: Validate AI output for security violations
-                                OutputValidationService.OutputValidationResult validationResult = 
-                                    outputValidationService.validateOutput(
-                                        finalResponse, 
-                                        userId, 
-                                        request.getMessage(),
-                                        null, // IP address - can be added if HttpServletRequest is passed
-                                        null, // User agent - can be added if HttpServletRequest is passed
-                                        "/api/chat/stream"
-                                    );
-                                
-                                // Use validated/sanitized output
-                                String safeResponse = validationResult.getOutput();
-                                
-                                // 7. Save assistant message with validated output
-                                Message assistantMessage = saveAssistantMessage(
-                                        sessionId, 
-                                        safeResponse, 
-                                        request.getModel()
-                                );
-                                assistantMessageId.set(assistantMessage.getId());
-                                
-                                // If output was blocked, send warning event
-                                if (!validationResult.isSafe()) {
-                                    emitter.send(SseEmitter.event()
-                                            .name("warning")
-                                            .data("{\"message\":\"Response was filtered for security reasons\"}"));
-                                }
-                                
-                                // 8. Update session stats
-                                updateSessionStats(sessionId);
-                                
-                                // 9. Send completion event
-                                emitter.send(SseEmitter.event()
-                                        .name("done")
-                                        .data("{\"assistantMessageId\":" + assistantMessage.getId() + "}"));
-                                
-                                emitter.complete();
-                                log.info("Streaming chat completed for user: {}", userId);
-                            } catch (Exception e) {
-                                log.error("Error completing streaming", e);
-                                emitter.completeWithError(e);
-                            }
+        // Client disconnect, timeout or write failure cancels the pipeline, which cancels the Ollama request
+        emitter.onCompletion(subscription::dispose);
+        emitter.onTimeout(() -> {
+            log.info("Streaming chat timed out for user: {}", userId);
+            subscription.dispose();
+        });
+        emitter.onError(error -> {
+            log.info("Streaming chat connection closed for user {}: {}", userId, error.getMessage());
+            subscription.dispose();
+        });
+        
+        subscription.update(events.subscribe(
+                event -> {
+                    try {
+                        SseEmitter.SseEventBuilder sseEvent = SseEmitter.event()
+                                .name(event.getEventName())
+                                .data(event.getData());
+                        if (event.getId() != null) {
+                            sseEvent.id(event.getId());
                         }
-                );
+                        emitter.send(sseEvent);
+                    } catch (IOException e) {
+                        log.warn("Error sending SSE event, cancelling stream: {}", e.getMessage());
+                        subscription.dispose();
+                        emitter.completeWithError(e);
+                    }
+                },
+                error -> {
+                    log.error("Error in chat streaming", error);
+                    emitter.completeWithError(error);
+                },
+                () -> {
+                    emitter.complete();
+                    log.info("Streaming chat completed for user: {}", userId);
+                }
+        ));
+        
+        return emitter;
+    }
+    
+    private Flux<ServerSentEvent<Object>> toServerSentEvents(Flux<ChatStreamEvent> events, Long userId) {
+        return events
+                .map(event -> ServerSentEvent.builder(event.getData())
+                        .id(event.getId())
+                        .event(event.getEventName())
+                        .build())
+                .doOnComplete(() -> log.info("Reactive streaming chat completed for user: {}", userId))
+                .doOnError(error -> log.error("Error in reactive chat streaming", error));
+    }
+    
+    /**
+     * Build the typed event sequence of a streamed chat turn: session -> message* -> warning? -> done.
+     * Blocking steps (DB prologue, output validation, persistence) run on the chat scheduler,
+     * tokens are relayed straight from the Ollama flux into the stream's outbox.
+     */
+    public Flux<ChatStreamEvent> streamChat(Long userId, ChatRequest request, String endpoint) {
+        long start = System.nanoTime();
+        
+        // SECURITY: input is validated (and 429 checked) before the SSE response starts, while the session loads
+        Mono<ChatHistory> history = validateAndOpenSession(userId, request);
+        // Captured here: the rest of the pipeline runs off the request thread
+        String priorityClass = admissionService.currentPriorityClass();
+        
+        String streamId = UUID.randomUUID().toString();
+        
+        Flux<ChatStreamEvent> events = history
+                .map(loaded -> prepareChatContext(loaded, request))
+                .flatMapMany(context -> {
+                    // Deterministic prompts answered before are replayed from the response cache
+                    ResponseCacheService.Lookup cacheLookup = 
+                            responseCacheService.lookup(context.model, context.ollamaMessages, request.getTemperature());
+                    if (cacheLookup.getResponse() != null) {
+                        return streamCachedTurn(userId, request, context, cacheLookup.getResponse(), endpoint);
+                    }
+                    
+                    // The user message is inserted while the Ollama request goes out; events stay in order
+                    // (the session event carries its id) and the answer is only saved after it
+                    return Flux.mergeSequential(
+                            context.userMessage.map(message -> ChatStreamEvent.session(context.sessionId, message.getId())),
+                            generate(userId, priorityClass, context.sessionId, context.model, context.ollamaMessages,
+                                    ollamaService.optionsFor(request.getTemperature()), request.getCoalesce(),
+                                    context.userMessage,
+                                    (answer, generation) -> completeStreamedTurn(userId, request, context, answer, 
+                                            endpoint, cacheLookup, null, generation),
+                                    partial -> handleCancelledTurn(userId, request, context, partial, endpoint)));
+                })
+                .doOnNext(firstTokenTimer(start, endpoint));
+        
+        // Generation is owned by the replay buffer so a reconnect with Last-Event-ID can pick it up again;
+        // each attached client gets its own bounded outbox drained on the SSE writer executor
+        return streamOutboxService.isolate(streamReplayService.publish(streamId, userId, events), streamId, userId);
+    }
+    
+    /**
+     * Stream a generation prepared by another endpoint (regenerate, edit) through the chat pipeline:
+     * session -> queued* -> message* -> warning? -> done, resumable with Last-Event-ID.
+     * Nothing is persisted unless the answer completes; the validated answer is then handed to the
+     * generation's commit, and a cancelled or failed stream leaves the conversation untouched.
+     */
+    public SseEmitter generateWithStreaming(Long userId, StreamedGeneration turn, String endpoint) {
+        log.info("Starting streamed generation for user {} in session {}", userId, turn.sessionId);
+        
+        String priorityClass = admissionService.currentPriorityClass();
+        String streamId = UUID.randomUUID().toString();
+        
+        Flux<ChatStreamEvent> events = Flux.defer(() -> Flux.concat(
+                Mono.just(ChatStreamEvent.session(turn.sessionId, turn.userMessageId)),
+                generate(userId, priorityClass, turn.sessionId, turn.model, turn.ollamaMessages, null, null, Mono.empty(),
+                        (answer, generation) -> completeGeneration(userId, turn, answer, endpoint, generation),
+                        partial -> log.info("Streamed generation cancelled in session {} after {} chars, conversation left unchanged",
+                                turn.sessionId, partial.length()))));
+        
+        return toSseEmitter(streamOutboxService.isolate(
+                streamReplayService.publish(streamId, userId, events), streamId, userId), userId);
+    }
+    
+    /**
+     * Generation step shared by every streamed turn: wait for a model slot (relaying queue positions),
+     * relay coalesced tokens, then run complete on the chat scheduler with the full answer and the final chunk
+     * (not before saved, a prologue write running alongside the generation, has completed).
+     * onCancelled gets the answer so far when the client goes away before generation finished.
+     */
+    private Flux<ChatStreamEvent> generate(Long userId, String priorityClass, String sessionId, String model,
+                                           List<OllamaMessage> ollamaMessages, Map<String, Object> options,
+                                           String coalesce, Mono<?> saved,
+                                           BiFunction<String, OllamaChatResponse, List<ChatStreamEvent>> complete,
+                                           Consumer<String> onCancelled) {
+        StringBuffer fullResponse = new StringBuffer();
+        AtomicBoolean generationFinished = new AtomicBoolean();
+        AtomicReference<OllamaChatResponse> finalChunk = new AtomicReference<>();
+        
+        // Wait for a model slot, telling the client its queue position meanwhile
+        AdmissionService.Ticket ticket = admissionService.ticket(model, userId, priorityClass);
+        Flux<ChatStreamEvent> queued = ticket.positions().map(ChatStreamEvent::queued);
+        
+        Flux<String> tokens = ollamaService.chatStream(model, ollamaMessages, sessionId, options)
+                .doOnNext(chunk -> {
+                    ticket.onFirstResponse();
+                    // The final chunk carries the generation stats
+                    if (Boolean.TRUE.equals(chunk.getDone())) {
+                        finalChunk.set(chunk);
+                    }
+                })
+                .doOnError(error -> ticket.onFailure())
+                .doFinally(signal -> ticket.release())
+                .map(this::chunkContent)
+                .filter(content -> !content.isEmpty())
+                .doOnNext(fullResponse::append)
+                .doOnComplete(() -> generationFinished.set(true));
+        
+        // Batch tokens into fewer SSE frames (first token is never delayed)
+        Flux<ChatStreamEvent> messages = tokenCoalescer
+                .coalesce(tokens, tokenCoalescer.resolvePolicy(coalesce))
+                .map(ChatStreamEvent::message);
+        
+        Flux<ChatStreamEvent> completion = saved
+                .then(Mono.fromCallable(() -> complete.apply(fullResponse.toString(), finalChunk.get()))
+                        .subscribeOn(chatScheduler))
+                .flatMapMany(Flux::fromIterable);
+        
+        return Flux.concat(queued, messages, completion)
+                .onErrorResume(e -> e instanceof TooManyRequestsException || e instanceof ModelUnavailableException
+                                || e instanceof ConversationChangedException,
+                        e -> Mono.just(ChatStreamEvent.error(e.getMessage())))
+                .doFinally(signal -> ticket.release())
+                .doOnCancel(() -> {
+                    // Cancelled mid-generation: the Ollama request is already cancelled upstream
+                    if (!generationFinished.get()) {
+                        onCancelled.accept(fullResponse.toString());
+                    }
+                });
+    }
+    
+    /**
+     * Event sequence of a turn answered from the response cache: the same session -> message* -> done
+     * events as a generated answer, without taking a model slot
+     */
+    private Flux<ChatStreamEvent> streamCachedTurn(Long userId, ChatRequest request, ChatContext context,
+                                                   String cachedResponse, String endpoint) {
+        // Split at word boundaries so the coalescer frames the answer like a live generation
+        Flux<String> tokens = Flux.fromArray(cachedResponse.split("(?<=\\s)"));
+        Flux<ChatStreamEvent> messages = tokenCoalescer
+                .coalesce(tokens, tokenCoalescer.resolvePolicy(request.getCoalesce()))
+                .map(ChatStreamEvent::message);
+        
+        Flux<ChatStreamEvent> completion = Mono.fromCallable(() ->
+                        completeStreamedTurn(userId, request, context, cachedResponse, endpoint, 
+                                ResponseCacheService.Lookup.NONE, CACHED_ANSWER_METADATA, null))
+                .subscribeOn(chatScheduler)
+                .flatMapMany(Flux::fromIterable);
+        
+        return Flux.concat(
+                context.userMessage.map(message -> ChatStreamEvent.session(context.sessionId, message.getId())),
+                messages,
+                completion);
+    }
+    
+    /**
+     * Replay the events missed since lastEventId, then follow the live tail of the stream
+     */
+    private Flux<ChatStreamEvent> resumeStream(Long userId, String lastEventId) {
+        Flux<ChatStreamEvent> events = streamReplayService.resume(lastEventId, userId);
+        String streamId = lastEventId.substring(0, lastEventId.lastIndexOf(':'));
+        return streamOutboxService.isolate(events, streamId, userId);
+    }
+    
+    /**
+     * Account for a stream cancelled before generation finished and, depending on the
+     * partial-answer policy, persist what the client had received so far
+     */
+    private void handleCancelledTurn(Long userId, ChatRequest request, ChatContext context,
+                                     String partialResponse, String endpoint) {
+        StreamingConfig.PartialAnswerPolicy policy = streamingConfig.getCancellation().getPartialAnswerPolicy();
+        boolean persist = policy == StreamingConfig.PartialAnswerPolicy.PERSIST && !partialResponse.isBlank();
+        
+        log.info("Stream cancelled for user {} in session {} after {} chars (persist partial: {})",
+                userId, context.sessionId, partialResponse.length(), persist);
+        
+        meterRegistry.counter("chat.stream.cancelled", "policy", policy.name()).increment();
+        // Tokenizing is CPU work; the cancelling thread may be a server I/O thread
+        chatScheduler.schedule(() -> meterRegistry.counter("chat.stream.cancelled.tokens", "persisted", String.valueOf(persist))
+                .increment(countTokens(partialResponse, context.model)));
+        
+        if (!persist) {
+            return;
+        }
+        
+        // Saved after the turn's user message, whose insert may still be running
+        context.userMessage.publishOn(chatScheduler).subscribe(userMessage -> {
+            try {
+                // SECURITY: Partial output goes through the same validation as a complete answer
+                OutputValidationService.OutputValidationResult validationResult = 
+                    outputValidationService.validateOutput(
+                        partialResponse, userId, request.getMessage(), null, null, endpoint);
                 
+                saveAssistantMessage(context.sessionId, validationResult.getOutput(), context.model, 
+                        PARTIAL_ANSWER_METADATA, null);
+                updateSessionStats(context.sessionId);
             } catch (Exception e) {
-                log.error("Error in chat streaming", e);
-                emitter.completeWithError(e);
+                log.error("Failed to persist partial answer for session {}", context.sessionId, e);
             }
-        }).start();
+        }, error -> log.warn("User message of session {} was not saved, dropping partial answer: {}", 
+                context.sessionId, error.getMessage()));
+    }
+    
+    /**
+     * Validate and persist the streamed answer, returning the closing events.
+     * A safe generated answer is stored in the response cache.
+     * The generation stats of the final Ollama chunk (null for a cached answer) become the message metadata.
+     */
+    private List<ChatStreamEvent> completeStreamedTurn(Long userId, ChatRequest request, ChatContext context,
+                                                       String finalResponse, String endpoint,
+                                                       ResponseCacheService.Lookup cacheLookup, String metadata,
+                                                       OllamaChatResponse generation) {
+        // SECURITY: Validate AI output for security violations
+        OutputValidationService.OutputValidationResult validationResult = 
+            outputValidationService.validateOutput(
+                finalResponse, 
+                userId, 
+                request.getMessage(),
+                null, // IP address - can be added if HttpServletRequest is passed
+                null, // User agent - can be added if HttpServletRequest is passed
+                endpoint
+            );
         
-        return emitter;
+        // Save assistant message with validated output and update session stats
+        Message assistantMessage = saveAssistantMessage(context.sessionId, validationResult.getOutput(), context.model, 
+                metadata, generation);
+        updateSessionStats(context.sessionId);
+        
+        if (validationResult.isSafe()) {
+            responseCacheService.store(cacheLookup, validationResult.getOutput());
+        }
+        
+        return closingEvents(validationResult, assistantMessage);
+    }
+    
+    /**
+     * Validate a streamed generation's answer and commit it, returning the closing events
+     */
+    private List<ChatStreamEvent> completeGeneration(Long userId, StreamedGeneration turn, String finalResponse,
+                                                     String endpoint, OllamaChatResponse generation) {
+        // SECURITY: Validate AI output for security violations
+        OutputValidationService.OutputValidationResult validationResult = 
+            outputValidationService.validateOutput(finalResponse, userId, turn.prompt, null, null, endpoint);
+        
+        Message assistantMessage = turn.commit.apply(validationResult.getOutput(), generation);
+        return closingEvents(validationResult, assistantMessage);
+    }
+    
+    private List<ChatStreamEvent> closingEvents(OutputValidationService.OutputValidationResult validationResult,
+                                                Message assistantMessage) {
+        List<ChatStreamEvent> events = new ArrayList<>();
+        
+        // If output was blocked, send warning event
+        if (!validationResult.isSafe()) {
+            events.add(ChatStreamEvent.warning("Response was filtered for security reasons"));
+        }
+        
+        events.add(ChatStreamEvent.done(assistantMessage.getId()));
+        return events;
+    }
+    
+    /**
+     * A generation prepared outside the chat flow (regenerate, edit) and streamed by {@link #generateWithStreaming}.
+     * commit receives the validated answer and the final Ollama chunk, applies the turn's changes together
+     * with saving the answer, and returns the saved assistant message.
+     */
+    public static class StreamedGeneration {
+        final String sessionId;
+        final Long userMessageId;
+        final String model;
+        final List<OllamaMessage> ollamaMessages;
+        final String prompt;
+        final BiFunction<String, OllamaChatResponse, Message> commit;
+        
+        public StreamedGeneration(String sessionId, Long userMessageId, String model, List<OllamaMessage> ollamaMessages,
+                                  String prompt, BiFunction<String, OllamaChatResponse, Message> commit) {
+            this.sessionId = sessionId;
+            this.userMessageId = userMessageId;
+            this.model = model;
+            this.ollamaMessages = ollamaMessages;
+            this.prompt = prompt;
+            this.commit = commit;
+        }
+    }
+    
+    /**
+     * Session row, conversation window and summary of a turn, read once before the prompt is built
+     */
+    private static class ChatHistory {
+        final String sessionId;
+        final boolean isNewSession;
+        final String sessionModel;
+        final List<OllamaMessage> window;
+        final String summary;
+        
+        ChatHistory(String sessionId, boolean isNewSession, String sessionModel, 
+                    List<OllamaMessage> window, String summary) {
+            this.sessionId = sessionId;
+            this.isNewSession = isNewSession;
+            this.sessionModel = sessionModel;
+            this.window = window;
+            this.summary = summary;
+        }
     }
     
     /**
-     * Helper class to hold chat context between transaction boundaries
+     * Helper class to hold chat context between transaction boundaries.
+     * userMessage is the deferred insert of the user's message: it runs once, when first subscribed.
      */
     private static class ChatContext {
         final String sessionId;
         final boolean isNewSession;
-        final Message userMessage;
+        final Mono<Message> userMessage;
         final List<OllamaMessage> ollamaMessages;
         final String model;
         
-        ChatContext(String sessionId, boolean isNewSession, Message userMessage, 
+        ChatContext(String sessionId, boolean isNewSession, Mono<Message> userMessage, 
                    List<OllamaMessage> ollamaMessages, String model) {
             this.sessionId = sessionId;
             this.isNewSession = isNewSession;
@@ -211,83 +522,185 @@ public class ChatService {
     }
     
     /**
-     * Handle chat without streaming (wait for complete response)
-     * Split into separate transactions to avoid holding DB connection during Ollama call
+     * Handle chat without streaming (complete response in one body).
+     * Split into separate transactions to avoid holding DB connection during Ollama call; the Ollama call
+     * itself holds no thread, and validation and persistence run on the chat scheduler once it answers.
      */
-    public ChatResponse chat(Long userId, ChatRequest request) {
+    public Mono<ChatResponse> chat(Long userId, ChatRequest request) {
         log.info("Processing non-streaming chat for user: {}", userId);
         
-        // SECURITY: Validate and sanitize user input before processing
-        promptValidationService.validateUserInput(request.getMessage());
-        String sanitizedMessage = promptValidationService.sanitizeInput(request.getMessage());
-        request.setMessage(sanitizedMessage);
+        // SECURITY: Validate and sanitize user input before processing (the session loads meanwhile)
+        Mono<ChatHistory> history = validateAndOpenSession(userId, request);
+        // Captured here: the answer is handled off the request thread
+        String priorityClass = admissionService.currentPriorityClass();
+        
+        Mono<ChatResponse> response = history
+                // Step 1: Prepare chat context (fast DB operations)
+                .map(loaded -> prepareChatContext(loaded, request))
+                .flatMap(context -> {
+                    // Step 2: Serve from the response cache, or call Ollama (long-running, admitted per model) -
+                    // NO DB transaction held; the user message is inserted meanwhile
+                    ResponseCacheService.Lookup cacheLookup = 
+                            responseCacheService.lookup(context.model, context.ollamaMessages, request.getTemperature());
+                    if (cacheLookup.getResponse() != null) {
+                        return context.userMessage
+                                .map(userMessage -> completeTurn(userId, request, context, userMessage, cacheLookup, 
+                                        cacheLookup.getResponse(), null));
+                    }
+                    return Mono.zip(
+                                    admissionService.call(context.model, userId, priorityClass,
+                                            () -> ollamaService.chatCompletionAsync(context.model, context.ollamaMessages, 
+                                                    context.sessionId, ollamaService.optionsFor(request.getTemperature()))),
+                                    context.userMessage)
+                            .publishOn(chatScheduler)
+                            .map(answered -> completeTurn(userId, request, context, answered.getT2(), cacheLookup, 
+                                    answered.getT1().getMessage().getContent(), answered.getT1()));
+                });
+        
+        return response.onErrorMap(e -> !(e instanceof TooManyRequestsException || e instanceof ModelUnavailableException),
+                e -> {
+                    log.error("Error processing chat", e);
+                    return new RuntimeException("Failed to process chat: " + e.getMessage());
+                });
+    }
+    
+    /**
+     * Validate, save and cache the answer of a non-streamed turn (generation is null for a cached answer)
+     */
+    private ChatResponse completeTurn(Long userId, ChatRequest request, ChatContext context, Message userMessage,
+                                      ResponseCacheService.Lookup cacheLookup, String assistantResponse,
+                                      OllamaChatResponse generation) {
+        // SECURITY: Validate AI output for security violations
+        OutputValidationService.OutputValidationResult validationResult = 
+            outputValidationService.validateOutput(
+                assistantResponse, 
+                userId, 
+                request.getMessage(),
+                null, // IP address - can be added if HttpServletRequest is passed
+                null, // User agent - can be added if HttpServletRequest is passed
+                "/api/chat"
+            );
+        
+        // Use validated/sanitized output
+        String safeResponse = validationResult.getOutput();
+        
+        // Step 3: Save result and update stats in a transaction (fast DB operations)
+        ChatResponse response = saveChatResponseInTransaction(
+            context.sessionId, userMessage, safeResponse, 
+            context.model, context.isNewSession,
+            generation == null ? CACHED_ANSWER_METADATA : null, generation
+        );
         
+        // Add security warning if output was filtered
+        if (!validationResult.isSafe()) {
+            log.warn("AI output was filtered for user {} due to security violations", userId);
+        } else {
+            responseCacheService.store(cacheLookup, safeResponse);
+        }
+        
+        return response;
+    }
+    
+    /**
+     * Early admission check when the model is known without a DB lookup
+     * (explicit model, or a new session which starts on the default model)
+     */
+    private void rejectIfModelSaturated(ChatRequest request) {
+        if (request.getModel() != null) {
+            admissionService.checkCapacity(request.getModel());
+        } else if (request.getSessionId() == null) {
+            admissionService.checkCapacity(modelCatalogService.getDefaultModel());
+        }
+    }
+    
+    /**
+     * Validate and sanitize the user's input and run the early 429 check, while an existing session's row
+     * is already being read on the chat scheduler (its window and summary follow once the row shows the caller
+     * owns it). A new session is only created once the input passed validation.
+     */
+    private Mono<ChatHistory> validateAndOpenSession(Long userId, ChatRequest request) {
+        boolean isNewSession = request.getSessionId() == null || request.getSessionId().isEmpty();
+        CompletableFuture<ChatHistory> prefetched = isNewSession ? null 
+                : loadHistory(userId, request.getSessionId()).toFuture();
         try {
-            // Step 1: Prepare chat context in a transaction (fast DB operations)
-            ChatContext context = prepareChatContextInTransaction(userId, request);
-            
-            // Step 2: Call Ollama (long-running) - NO DB transaction held
-            String assistantResponse = ollamaService.chat(context.model, context.ollamaMessages);
-            
-            // SECURITY: Validate AI output for security violations
-            OutputValidationService.OutputValidationResult validationResult = 
-                outputValidationService.validateOutput(
-                    assistantResponse, 
-                    userId, 
-                    request.getMessage(),
-                    null, // IP address - can be added if HttpServletRequest is passed
-                    null, // User agent - can be added if HttpServletRequest is passed
-                    "/api/chat"
-                );
-            
-            // Use validated/sanitized output
-            String safeResponse = validationResult.getOutput();
+            // Unknown models are rejected (400) before they get an admission queue of their own
+            if (request.getModel() != null) {
+                request.setModel(modelCatalogService.resolve(request.getModel()));
+            }
             
-            // Step 3: Save result and update stats in a transaction (fast DB operations)
-            ChatResponse response = saveChatResponseInTransaction(
-                context.sessionId, context.userMessage, safeResponse, 
-                context.model, context.isNewSession
-            );
+            // SECURITY: Validate and sanitize user input before processing
+            promptValidationService.validateUserInput(request.getMessage());
+            String sanitizedMessage = promptValidationService.sanitizeInput(request.getMessage());
+            request.setMessage(sanitizedMessage);
             
-            // Add security warning if output was filtered
-            if (!validationResult.isSafe()) {
-                log.warn("AI output was filtered for user {} due to security violations", userId);
+            // Reject with 429 before the response starts when the model's wait queue is full
+            rejectIfModelSaturated(request);
+        } catch (RuntimeException e) {
+            if (prefetched != null) {
+                prefetched.cancel(true);
             }
-            
-            return response;
-                    
-        } catch (Exception e) {
-            log.error("Error processing chat", e);
-            throw new RuntimeException("Failed to process chat: " + e.getMessage());
+            throw e;
         }
+        
+        return isNewSession 
+                ? Mono.fromCallable(() -> createSessionHistory(userId, request)).subscribeOn(chatScheduler)
+                : Mono.fromFuture(prefetched);
     }
     
     /**
-     * Prepare chat context within a transaction
+     * Read an existing session's row, then (once it shows the caller owns the session) its conversation window
+     * (cached per session, DB only on a cold miss) and summary concurrently. The session row is read once, and
+     * another user's history is never loaded or cached.
      */
-    @Transactional
-    private ChatContext prepareChatContextInTransaction(Long userId, ChatRequest request) {
-        // 1. Get or create session
-        String sessionId = getOrCreateSession(userId, request);
-        boolean isNewSession = request.getSessionId() == null;
-        log.info("Using session: {} (isNew: {}, requested: {})", 
-            sessionId, isNewSession, request.getSessionId());
+    private Mono<ChatHistory> loadHistory(Long userId, String sessionId) {
+        Mono<List<OllamaMessage>> window = Mono.fromCallable(() -> conversationContextService.getWindow(sessionId))
+                .subscribeOn(chatScheduler);
+        Mono<Optional<String>> summary = Mono.fromCallable(() -> Optional.ofNullable(conversationSummaryService.getSummary(sessionId)))
+                .subscribeOn(chatScheduler);
         
-        // 2. Get conversation history BEFORE saving new message
-        List<Message> history = messageRepository.findBySessionIdOrderByTimestampAsc(sessionId);
-        log.debug("Fetched {} messages from history for session {}", history.size(), sessionId);
+        return Mono.fromCallable(() -> chatSessionRepository.findById(sessionId)
+                        .orElseThrow(() -> new ResourceNotFoundException("Session not found: " + sessionId)))
+                .subscribeOn(chatScheduler)
+                .flatMap(session -> {
+                    // Verify session belongs to user
+                    if (!session.getUserId().equals(userId)) {
+                        return Mono.error(new BadRequestException("Session does not belong to user"));
+                    }
+                    return Mono.zip(window, summary)
+                            .map(loaded -> {
+                                log.debug("Using {} messages of history for session {}", loaded.getT1().size(), sessionId);
+                                return new ChatHistory(sessionId, false, session.getModel(), loaded.getT1(), 
+                                        loaded.getT2().orElse(null));
+                            });
+                });
+    }
+    
+    /**
+     * Create the session of a first message; it has no history to load
+     */
+    private ChatHistory createSessionHistory(Long userId, ChatRequest request) {
+        CreateSessionRequest createRequest = new CreateSessionRequest();
+        createRequest.setTitle(request.getSessionTitle() != null ? request.getSessionTitle() : "New Chat");
+        createRequest.setModel(modelCatalogService.resolve(request.getModel()));
+        createRequest.setIsPublic(false);
         
-        // Log what we fetched from DB
-        for (int i = 0; i < history.size(); i++) {
-            Message msg = history.get(i);
-            log.info("DB Message {}: role={}, length={}, id={}", 
-                i+1, msg.getRole(), msg.getContent().length(), msg.getId());
-        }
+        SessionResponse newSession = chatSessionService.createSession(userId, createRequest);
+        log.info("Auto-created new session: {}", newSession.getSessionId());
+        conversationContextService.initEmpty(newSession.getSessionId());
+        return new ChatHistory(newSession.getSessionId(), true, newSession.getModel(), List.of(), null);
+    }
+    
+    /**
+     * Build the prompt of a turn from its loaded history; the user message insert is deferred to the generation
+     */
+    private ChatContext prepareChatContext(ChatHistory history, ChatRequest request) {
+        log.info("Using session: {} (isNew: {}, requested: {})", 
+            history.sessionId, history.isNewSession, request.getSessionId());
         
-        List<OllamaMessage> ollamaMessages = new java.util.ArrayList<>(ollamaService.buildMessageHistory(history));
+        List<OllamaMessage> ollamaMessages = new ArrayList<>(ollamaService.withSystemPrompt(history.window, history.summary));
         log.debug("Built {} Ollama messages from history", ollamaMessages.size());
         
-        // 3. Add current user message to the conversation
+        // Add current user message to the conversation
         ollamaMessages.add(OllamaMessage.builder()
                 .role("user")
                 .content(request.getMessage())
@@ -304,14 +717,36 @@ public class ChatService {
             log.info("  Content preview: {}", preview);
         }
         
-        // 4. Save user message to DB
-        Message userMessage = saveUserMessage(sessionId, request.getMessage(), request.getModel());
+        // Model from the request, or the session row read with the history
+        String model = request.getModel() != null ? request.getModel() 
+                : modelCatalogService.resolveStored(history.sessionModel);
         
-        // 5. Determine model to use
-        String model = request.getModel() != null ? request.getModel() : 
-                      chatSessionRepository.findById(sessionId).map(ChatSession::getModel).orElse("llama3");
+        // Saved when the turn first subscribes to it, alongside the Ollama request
+        Mono<Message> userMessage = Mono.fromCallable(() -> 
+                        saveUserMessage(history.sessionId, request.getMessage(), request.getModel()))
+                .subscribeOn(chatScheduler)
+                .cache();
         
-        return new ChatContext(sessionId, isNewSession, userMessage, ollamaMessages, model);
+        // Fit system prompt, history and the new message into the model's token budget
+        return new ChatContext(history.sessionId, history.isNewSession, userMessage, 
+                contextPacker.pack(model, ollamaMessages), model);
+    }
+    
+    /**
+     * Record the time from request to first answer token of a streamed turn
+     */
+    private Consumer<ChatStreamEvent> firstTokenTimer(long start, String endpoint) {
+        AtomicBoolean first = new AtomicBoolean(true);
+        return event -> {
+            if (event.isMessage() && first.compareAndSet(true, false)) {
+                Timer.builder("chat.stream.time.to.first.token")
+                        .tag("endpoint", endpoint)
+                        .description("Time from a streamed chat request to its first answer token")
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
     }
     
     /**
@@ -320,9 +755,10 @@ public class ChatService {
     @Transactional
     private ChatResponse saveChatResponseInTransaction(String sessionId, Message userMessage, 
                                                        String assistantResponse, String model, 
-                                                       boolean isNewSession) {
+                                                       boolean isNewSession, String metadata,
+                                                       OllamaChatResponse generation) {
         // 6. Save assistant message
-        Message assistantMessage = saveAssistantMessage(sessionId, assistantResponse, model);
+        Message assistantMessage = saveAssistantMessage(sessionId, assistantResponse, model, metadata, generation);
         
         // 7. Update session stats
         updateSessionStats(sessionId);
@@ -341,33 +777,6 @@ public class ChatService {
                 .build();
     }
     
-    /**
-     * Get existing session or create new one
-     */
-    private String getOrCreateSession(Long userId, ChatRequest request) {
-        if (request.getSessionId() != null && !request.getSessionId().isEmpty()) {
-            // Verify session exists and belongs to user
-            ChatSession session = chatSessionRepository.findById(request.getSessionId())
-                    .orElseThrow(() -> new ResourceNotFoundException("Session not found: " + request.getSessionId()));
-            
-            if (!session.getUserId().equals(userId)) {
-                throw new BadRequestException("Session does not belong to user");
-            }
-            
-            return session.getSessionId();
-        } else {
-            // Create new session
-            CreateSessionRequest createRequest = new CreateSessionRequest();
-            createRequest.setTitle(request.getSessionTitle() != null ? request.getSessionTitle() : "New Chat");
-            createRequest.setModel(request.getModel() != null ? request.getModel() : "llama3");
-            createRequest.setIsPublic(false);
-            
-            SessionResponse newSession = chatSessionService.createSession(userId, createRequest);
-            log.info("Auto-created new session: {}", newSession.getSessionId());
-            return newSession.getSessionId();
-        }
-    }
-    
     /**
      * Save user message to database
      */
@@ -378,18 +787,21 @@ public class ChatService {
         message.setRole(Message.MessageRole.USER);
         message.setContent(content);
         message.setModel(model);
-        message.setTokenCount(estimateTokenCount(content));
+        message.setTokenCount(countTokens(content, model));
         message.setTimestamp(LocalDateTime.now());
         
         Message saved = messageRepository.save(message);
+        conversationContextService.append(saved);
         log.debug("Saved user message: {} with content length: {}", saved.getId(), saved.getContent().length());
         return saved;
     }
     
     /**
-     * Save assistant message to database
+     * Save assistant message to database.
+     * A generated answer stores Ollama's generation stats as metadata and its real eval_count as token count.
      */
-    private Message saveAssistantMessage(String sessionId, String content, String model) {
+    private Message saveAssistantMessage(String sessionId, String content, String model, String metadata,
+                                         OllamaChatResponse generation) {
         log.info("Saving assistant message: {} chars", content.length());
         log.debug("Assistant content preview: {}", 
             content.length() > 200 ? content.substring(0, 200) + "..." : content);
@@ -399,10 +811,14 @@ public class ChatService {
         message.setRole(Message.MessageRole.ASSISTANT);
         message.setContent(content);
         message.setModel(model);
-        message.setTokenCount(estimateTokenCount(content));
+        String generationMetadata = ollamaService.generationMetadata(generation);
+        message.setMetadata(generationMetadata != null ? generationMetadata : metadata);
+        message.setTokenCount(generation != null && generation.getEvalCount() != null 
+                ? generation.getEvalCount() : countTokens(content, model));
         message.setTimestamp(LocalDateTime.now());
         
         Message saved = messageRepository.save(message);
+        conversationContextService.append(saved);
         log.info("Saved assistant message: {} with content length: {}", saved.getId(), saved.getContent().length());
         return saved;
     }
@@ -423,36 +839,25 @@ public class ChatService {
         
         chatSessionRepository.save(session);
         log.debug("Updated session stats - messages: {}, tokens: {}", messageCount, totalTokens);
+        
+        // Older messages may have left the window: fold them into the summary in the background
+        conversationSummaryService.requestCompaction(session);
     }
     
     /**
-     * Estimate token count (rough approximation: 1 token ≈ 4 characters)
+     * Token count of a text with the model's tokenizer
      */
-    private Integer estimateTokenCount(String text) {
-        if (text == null) return 0;
-        return text.length() / 4;
+    private Integer countTokens(String text, String model) {
+        return tokenizerService.countTokens(model, text);
     }
     
     /**
-     * Parse content from Ollama streaming chunk
+     * Text carried by a decoded Ollama stream chunk (empty for the final stats chunk)
      */
-    private String parseChunkContent(String chunk) {
-        try {
-            // Ollama returns JSON: {"model":"llama3","message":{"role":"assistant","content":"text"},"done":false}
-            if (chunk.contains("\"content\":\"")) {
-                int start = chunk.indexOf("\"content\":\"") + 11;
-                int end = chunk.indexOf("\"", start);
-                if (end > start) {
-                    return chunk.substring(start, end)
-                            .replace("\\n", "\n")
-                            .replace("\\\"", "\"")
-                            .replace("\\\\", "\\");
-                }
-            }
-            return "";
-        } catch (Exception e) {
-            log.warn("Failed to parse chunk: {}", chunk);
+    private String chunkContent(OllamaChatResponse chunk) {
+        if (chunk.getMessage() == null || chunk.getMessage().getContent() == null) {
             return "";
         }
+        return chunk.getMessage().getContent();
     }
 }
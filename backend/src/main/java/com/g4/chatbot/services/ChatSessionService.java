@@ -30,6 +30,12 @@ public class ChatSessionService {
     @Autowired
     private MessageRepository messageRepository;
     
+    @Autowired
+    private ModelRuntimeService modelRuntimeService;
+    
+    @Autowired
+    private ModelCatalogService modelCatalogService;
+    
     /**
      * Create a new chat session for a user
      */
@@ -41,7 +47,7 @@ public class ChatSessionService {
         session.setSessionId(UUID.randomUUID().toString());
         session.setUserId(userId);
         session.setTitle(request.getTitle() != null ? request.getTitle() : "New Chat");
-        session.setModel(request.getModel() != null ? request.getModel() : "gpt-3.5-turbo");
+        session.setModel(modelCatalogService.resolve(request.getModel()));
         session.setIsPublic(request.getIsPublic() != null ? request.getIsPublic() : false);
         session.setStatus(ChatSession.SessionStatus.ACTIVE);
         session.setMessageCount(0);
@@ -49,6 +55,7 @@ public class ChatSessionService {
         
         ChatSession savedSession = chatSessionRepository.save(session);
         log.info("Chat session created successfully: {}", savedSession.getSessionId());
+        modelRuntimeService.warmForSession(savedSession.getModel(), savedSession.getSessionId());
         
         return SessionResponse.fromEntity(savedSession);
     }
@@ -73,6 +80,9 @@ public class ChatSessionService {
         session.setLastAccessedAt(LocalDateTime.now());
         chatSessionRepository.save(session);
         
+        // Load the model before the first turn so it does not pay for a cold start
+        modelRuntimeService.warmForSession(session.getModel(), sessionId);
+        
         return SessionResponse.fromEntity(session);
     }
     
@@ -134,7 +144,7 @@ public class ChatSessionService {
             session.setTitle(request.getTitle());
         }
         if (request.getModel() != null) {
-            session.setModel(request.getModel());
+            session.setModel(modelCatalogService.resolve(request.getModel()));
         }
         if (request.getIsPublic() != null) {
             session.setIsPublic(request.getIsPublic());
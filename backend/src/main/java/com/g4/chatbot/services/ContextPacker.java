@@ -0,0 +1,178 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.ContextBudgetConfig;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fits a prompt (system prompt, history, newest user message) into the model's token budget.
+ * The system prompt and the newest message are always kept. Older turns are added newest first
+ * while they fit; the first turn that does not fit is truncated if enough budget is left, and
+ * everything older is dropped. A user message and the answer after it are kept or dropped together.
+ * A prompt that already fits is returned as is, without copying. The result carries its estimated
+ * token count, so later steps (prompt-cache metrics) do not tokenize the prompt again.
+ */
+@Service
+@Slf4j
+public class ContextPacker {
+
+    // Role and separator tokens the chat template adds around each message
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private static final String TRUNCATION_MARKER = " [...]";
+
+    @Autowired
+    private ContextBudgetConfig contextBudgetConfig;
+
+    @Autowired
+    private TokenizerService tokenizerService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    public List<OllamaMessage> pack(String model, List<OllamaMessage> messages) {
+        if (!contextBudgetConfig.isEnabled() || messages.size() < 2) {
+            return messages;
+        }
+
+        Tokenizer tokenizer = tokenizerService.forModel(model);
+        int budget = contextBudgetConfig.getBudgetFor(model);
+        // Each message is tokenized once; the turn walk and the truncation read these counts
+        int[] counts = new int[messages.size()];
+        int total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = tokens(tokenizer, messages.get(i));
+            total += counts[i];
+        }
+        if (total <= budget) {
+            recordPromptTokens(model, total);
+            return new PackedPrompt(messages, total);
+        }
+
+        int newest = messages.size() - 1;
+        int historyStart = "system".equals(messages.get(0).getRole()) ? 1 : 0;
+        int used = counts[newest] + (historyStart == 1 ? counts[0] : 0);
+
+        // Walk turns backwards: [turnStart, keptFrom) is the turn before the part already kept
+        int keptFrom = newest;
+        int truncatedFrom = keptFrom;
+        int truncatedAllowance = 0;
+        while (keptFrom > historyStart) {
+            int turnStart = keptFrom - 1;
+            while (turnStart > historyStart && !"user".equals(messages.get(turnStart).getRole())) {
+                turnStart--;
+            }
+            int turnTokens = 0;
+            for (int i = turnStart; i < keptFrom; i++) {
+                turnTokens += counts[i];
+            }
+
+            if (used + turnTokens <= budget) {
+                used += turnTokens;
+                keptFrom = turnStart;
+                continue;
+            }
+            int left = budget - used;
+            if (left >= contextBudgetConfig.getMinTruncatedTurnTokens()) {
+                truncatedFrom = turnStart;
+                truncatedAllowance = left;
+                used += left;
+            }
+            break;
+        }
+        if (truncatedAllowance == 0) {
+            truncatedFrom = keptFrom;
+        }
+
+        List<OllamaMessage> packed = new ArrayList<>(historyStart + (newest - truncatedFrom) + 1);
+        if (historyStart == 1) {
+            packed.add(messages.get(0));
+        }
+        if (truncatedAllowance > 0) {
+            addTruncatedTurn(tokenizer, packed, messages, counts, truncatedFrom, keptFrom, truncatedAllowance);
+        }
+        for (int i = keptFrom; i <= newest; i++) {
+            packed.add(messages.get(i));
+        }
+
+        int dropped = truncatedFrom - historyStart;
+        int truncated = keptFrom - truncatedFrom;
+        meterRegistry.counter("chat.context.packed.messages", "action", "dropped").increment(dropped);
+        meterRegistry.counter("chat.context.packed.messages", "action", "truncated").increment(truncated);
+        recordPromptTokens(model, used);
+        log.debug("Packed prompt for {} into {} of {} tokens: dropped {} and truncated {} older messages",
+                model, used, budget, dropped, truncated);
+        return new PackedPrompt(packed, used);
+    }
+
+    /**
+     * Shorten every message of the turn in proportion to its size so the turn fits the allowance
+     */
+    private void addTruncatedTurn(Tokenizer tokenizer, List<OllamaMessage> packed, List<OllamaMessage> messages,
+                                  int[] counts, int from, int to, int allowance) {
+        int turnTokens = 0;
+        for (int i = from; i < to; i++) {
+            turnTokens += counts[i];
+        }
+        int markerTokens = tokenizer.countTokens(TRUNCATION_MARKER);
+        for (int i = from; i < to; i++) {
+            OllamaMessage message = messages.get(i);
+            int messageTokens = counts[i];
+            long share = (long) allowance * messageTokens / turnTokens;
+            String content = message.getContent();
+            // Cut at the message's own characters-per-token ratio, which differs between prose, code and scripts
+            int contentTokens = Math.max(1, messageTokens - MESSAGE_OVERHEAD_TOKENS);
+            long keptTokens = share - MESSAGE_OVERHEAD_TOKENS - markerTokens;
+            int maxChars = (int) Math.max(0, keptTokens * content.length() / contentTokens);
+            if (content.length() > maxChars) {
+                content = content.substring(0, maxChars) + TRUNCATION_MARKER;
+            }
+            packed.add(OllamaMessage.builder().role(message.getRole()).content(content).build());
+        }
+    }
+
+    /**
+     * Prompt tokens of a message: its content plus the chat template overhead
+     */
+    private static int tokens(Tokenizer tokenizer, OllamaMessage message) {
+        return tokenizer.countTokens(message.getContent()) + MESSAGE_OVERHEAD_TOKENS;
+    }
+
+    private void recordPromptTokens(String model, int tokens) {
+        meterRegistry.summary("chat.context.prompt.tokens", "model", model).record(tokens);
+    }
+
+    /**
+     * Read-only view of a packed prompt with its token count as estimated while packing
+     */
+    public static class PackedPrompt extends AbstractList<OllamaMessage> {
+        private final List<OllamaMessage> messages;
+        private final int promptTokens;
+
+        PackedPrompt(List<OllamaMessage> messages, int promptTokens) {
+            this.messages = messages;
+            this.promptTokens = promptTokens;
+        }
+
+        public int getPromptTokens() {
+            return promptTokens;
+        }
+
+        @Override
+        public OllamaMessage get(int index) {
+            return messages.get(index);
+        }
+
+        @Override
+        public int size() {
+            return messages.size();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.ContextCacheConfig;
+import com.g4.chatbot.config.SystemPromptConfig;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import com.g4.chatbot.models.Message;
+import com.g4.chatbot.repos.MessageRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache of each session's conversation window (the last maxHistoryMessages messages in Ollama format,
+ * without the system prompt), so a turn does not reload the whole session from the database.
+ * Held in-process with a Redis list behind it for other nodes. Saved messages are appended to the
+ * cached window; edits, deletes and regenerations invalidate it and the next turn reloads it once.
+ * Every change also bumps a per-session version in Redis, and an in-process window is only used while
+ * its version is current, so a change made on one node is seen by the next turn on any node.
+ */
+@Service
+@Slf4j
+public class ConversationContextService {
+
+    @Autowired
+    private ContextCacheConfig contextCacheConfig;
+
+    @Autowired
+    private SystemPromptConfig systemPromptConfig;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private OllamaService ollamaService;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private static final long NO_VERSION = -1;
+
+    private Cache<String, CachedWindow> local;
+
+    @PostConstruct
+    public void init() {
+        local = Caffeine.newBuilder()
+                .maximumSize(contextCacheConfig.getL1MaxSessions())
+                .expireAfterWrite(Duration.ofSeconds(contextCacheConfig.getL1TtlSeconds()))
+                .build();
+    }
+
+    /**
+     * Conversation window of a session, loading it from the database only on a cold miss
+     */
+    public List<OllamaMessage> getWindow(String sessionId) {
+        if (!contextCacheConfig.isEnabled()) {
+            return loadWindow(sessionId);
+        }
+
+        // Read before the window itself, so a change landing in between leaves the stored copy outdated, never current
+        long version = remoteVersion(sessionId);
+        CachedWindow cached = local.getIfPresent(sessionId);
+        if (cached != null && (version == NO_VERSION || cached.version == version)) {
+            count("l1");
+            return cached.messages;
+        }
+
+        List<OllamaMessage> window = readRemote(sessionId);
+        if (window != null) {
+            count("l2");
+            local.put(sessionId, new CachedWindow(version, window));
+            return window;
+        }
+
+        count("miss");
+        window = loadWindow(sessionId);
+        local.put(sessionId, new CachedWindow(version, window));
+        writeRemote(sessionId, window);
+        return window;
+    }
+
+    /**
+     * Window ending just before a message (the prompt of an edit), read from the database without caching.
+     * One slot is left for the edited message itself.
+     */
+    public List<OllamaMessage> getWindowBefore(Message message) {
+        List<MessageRepository.ContextMessage> recent = messageRepository.findRecentBeforeBySessionId(
+                message.getSessionId(), message.getTimestamp(), message.getId(),
+                Limit.of(Math.max(1, systemPromptConfig.getMaxHistoryMessages() - 1)));
+        return chronological(recent);
+    }
+
+    /**
+     * Start the window of a session created just now, which has no history to load
+     */
+    public void initEmpty(String sessionId) {
+        if (contextCacheConfig.isEnabled()) {
+            local.put(sessionId, new CachedWindow(remoteVersion(sessionId), List.of()));
+        }
+    }
+
+    /**
+     * Append a message just saved to the session's cached window (if cached)
+     */
+    public void append(Message message) {
+        if (!contextCacheConfig.isEnabled()) {
+            return;
+        }
+        OllamaMessage appended = ollamaService.toOllamaMessage(message);
+        int maxMessages = systemPromptConfig.getMaxHistoryMessages();
+
+        long version = NO_VERSION;
+        if (contextCacheConfig.isL2Enabled()) {
+            String key = key(message.getSessionId());
+            try {
+                Long size = redisTemplate.opsForList().rightPushIfPresent(key, appended);
+                if (size != null && size > 0) {
+                    redisTemplate.opsForList().trim(key, -maxMessages, -1);
+                    redisTemplate.expire(key, Duration.ofSeconds(contextCacheConfig.getL2TtlSeconds()));
+                }
+                version = bumpVersion(message.getSessionId());
+            } catch (Exception e) {
+                log.warn("Could not append to cached context of session {}, dropping it: {}",
+                        message.getSessionId(), e.getMessage());
+                invalidate(message.getSessionId());
+                return;
+            }
+        }
+
+        long newVersion = version;
+        local.asMap().computeIfPresent(message.getSessionId(), (sessionId, cached) -> {
+            // Another node changed the session since this copy was read: let the next turn reload it
+            if (newVersion != NO_VERSION && cached.version != newVersion - 1) {
+                return null;
+            }
+            List<OllamaMessage> updated = new ArrayList<>(cached.messages.size() + 1);
+            updated.addAll(cached.messages);
+            updated.add(appended);
+            return new CachedWindow(newVersion == NO_VERSION ? cached.version : newVersion,
+                    List.copyOf(updated.subList(Math.max(0, updated.size() - maxMessages), updated.size())));
+        });
+    }
+
+    /**
+     * Drop the cached window after messages of the session were edited or deleted
+     */
+    public void invalidate(String sessionId) {
+        local.invalidate(sessionId);
+        if (contextCacheConfig.isL2Enabled()) {
+            try {
+                redisTemplate.delete(key(sessionId));
+                bumpVersion(sessionId);
+            } catch (Exception e) {
+                log.warn("Could not invalidate cached context of session {}: {}", sessionId, e.getMessage());
+            }
+        }
+        log.debug("Invalidated cached context of session {}", sessionId);
+    }
+
+    /**
+     * Read only the newest maxHistoryMessages rows (role and content) and put them back in chronological order
+     */
+    private List<OllamaMessage> loadWindow(String sessionId) {
+        List<MessageRepository.ContextMessage> recent = messageRepository.findRecentBySessionId(
+                sessionId, Limit.of(systemPromptConfig.getMaxHistoryMessages()));
+        log.debug("Loaded {} messages from history for session {}", recent.size(), sessionId);
+        return chronological(recent);
+    }
+
+    private List<OllamaMessage> chronological(List<MessageRepository.ContextMessage> recent) {
+        List<OllamaMessage> window = new ArrayList<>(recent.size());
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            window.add(ollamaService.toOllamaMessage(recent.get(i).getRole(), recent.get(i).getContent()));
+        }
+        return List.copyOf(window);
+    }
+
+    private List<OllamaMessage> readRemote(String sessionId) {
+        if (!contextCacheConfig.isL2Enabled()) {
+            return null;
+        }
+        try {
+            List<Object> values = redisTemplate.opsForList().range(key(sessionId), 0, -1);
+            if (values == null || values.isEmpty()) {
+                return null;
+            }
+            return values.stream().map(OllamaMessage.class::cast).toList();
+        } catch (Exception e) {
+            log.warn("Could not read cached context of session {}: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRemote(String sessionId, List<OllamaMessage> window) {
+        if (!contextCacheConfig.isL2Enabled() || window.isEmpty()) {
+            return;
+        }
+        String key = key(sessionId);
+        try {
+            redisTemplate.delete(key);
+            redisTemplate.opsForList().rightPushAll(key, new ArrayList<Object>(window));
+            redisTemplate.expire(key, Duration.ofSeconds(contextCacheConfig.getL2TtlSeconds()));
+        } catch (Exception e) {
+            log.warn("Could not cache context of session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * Current version of a session's window, NO_VERSION without L2 (single node) or when Redis cannot be reached
+     */
+    private long remoteVersion(String sessionId) {
+        if (!contextCacheConfig.isL2Enabled()) {
+            return NO_VERSION;
+        }
+        try {
+            // A plain read: a missing counter is version 0 and is only created, with its expiry, by bumpVersion
+            Object version = redisTemplate.opsForValue().get(versionKey(sessionId));
+            return version instanceof Number number ? number.longValue() : 0;
+        } catch (Exception e) {
+            log.warn("Could not read context version of session {}: {}", sessionId, e.getMessage());
+            return NO_VERSION;
+        }
+    }
+
+    /**
+     * Mark every node's in-process copy of the window as outdated; called after the Redis list was changed
+     */
+    private long bumpVersion(String sessionId) {
+        String key = versionKey(sessionId);
+        Long version = redisTemplate.opsForValue().increment(key);
+        // Outlives any L1 entry, so a counter that expired and restarts at 0 cannot match an old copy
+        redisTemplate.expire(key, Duration.ofSeconds(
+                Math.max(contextCacheConfig.getL1TtlSeconds(), contextCacheConfig.getL2TtlSeconds())));
+        return version != null ? version : NO_VERSION;
+    }
+
+    private String versionKey(String sessionId) {
+        return key(sessionId) + ":version";
+    }
+
+    private String key(String sessionId) {
+        return contextCacheConfig.getKeyPrefix() + sessionId;
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("chat.context.cache", "result", result).increment();
+    }
+
+    /**
+     * In-process copy of a window with the session version it was read at
+     */
+    private static class CachedWindow {
+        final long version;
+        final List<OllamaMessage> messages;
+
+        CachedWindow(long version, List<OllamaMessage> messages) {
+            this.version = version;
+            this.messages = messages;
+        }
+    }
+}
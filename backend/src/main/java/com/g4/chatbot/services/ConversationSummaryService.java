@@ -0,0 +1,353 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.AsyncConfig;
+import com.g4.chatbot.config.ContextCacheConfig;
+import com.g4.chatbot.config.SummarizationConfig;
+import com.g4.chatbot.config.SystemPromptConfig;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import com.g4.chatbot.models.ChatSession;
+import com.g4.chatbot.models.ConversationSummary;
+import com.g4.chatbot.models.Message;
+import com.g4.chatbot.repos.ConversationSummaryRepository;
+import com.g4.chatbot.repos.MessageRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compacts long sessions: messages that have left the conversation window are folded into a running
+ * summary, which is sent to the model as a memory block next to the system prompt.
+ * Compaction is requested after each turn and runs on the low-priority summary executor; it only
+ * reads messages not covered yet, so each run costs one bounded model call. Nothing on the chat path
+ * waits for it: a turn uses whatever summary exists at that moment.
+ * Summaries are cached in-process; every save or discard bumps a per-session version in Redis, and a
+ * cached summary is only used while its version is current, so no node keeps a discarded summary.
+ */
+@Service
+@Slf4j
+public class ConversationSummaryService {
+
+    private static final String SUMMARIZER_PROMPT = """
+            You maintain a running summary of a conversation between a user and an assistant.
+            Merge the new messages into the existing summary. Keep facts, names, numbers, decisions,
+            code identifiers, open questions and preferences the user stated; leave out pleasantries.
+            Write in the language of the conversation, in short plain sentences or bullet points,
+            at most %d characters. Reply with the summary only.""";
+
+    // Cached marker for sessions without a summary, so short sessions do not hit the database every turn
+    private static final String NO_SUMMARY = "";
+
+    private static final long NO_VERSION = -1;
+
+    @Autowired
+    private SummarizationConfig summarizationConfig;
+
+    @Autowired
+    private SystemPromptConfig systemPromptConfig;
+
+    @Autowired
+    private ContextCacheConfig contextCacheConfig;
+
+    @Autowired
+    private ConversationSummaryRepository conversationSummaryRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private OllamaService ollamaService;
+
+    @Autowired
+    private AdmissionService admissionService;
+
+    @Autowired
+    @Qualifier(AsyncConfig.SUMMARY_EXECUTOR)
+    private AsyncTaskExecutor summaryExecutor;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private Cache<String, CachedSummary> summaries;
+
+    private Timer summarizeTimer;
+
+    @PostConstruct
+    public void init() {
+        summaries = Caffeine.newBuilder()
+                .maximumSize(contextCacheConfig.getL1MaxSessions())
+                .expireAfterWrite(Duration.ofSeconds(contextCacheConfig.getL1TtlSeconds()))
+                .build();
+        summarizeTimer = Timer.builder("chat.summary.duration")
+                .description("Time of one compaction run, including the wait for admission")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Current summary of a session, or null when nothing has been compacted yet
+     */
+    public String getSummary(String sessionId) {
+        if (!summarizationConfig.isEnabled()) {
+            return null;
+        }
+        // Read before the row, so a discard landing in between leaves the cached copy outdated, never current
+        long version = remoteVersion(sessionId);
+        CachedSummary cached = summaries.getIfPresent(sessionId);
+        if (cached == null || (version != NO_VERSION && cached.version != version)) {
+            cached = new CachedSummary(version, conversationSummaryRepository.findById(sessionId)
+                    .map(ConversationSummary::getSummary)
+                    .orElse(NO_SUMMARY));
+            summaries.put(sessionId, cached);
+        }
+        return cached.summary.isEmpty() ? null : cached.summary;
+    }
+
+    /**
+     * Queue a compaction run if the session has outgrown its window. Returns immediately;
+     * a run already queued for the session, or a full queue, makes this a no-op.
+     */
+    public void requestCompaction(ChatSession session) {
+        if (!summarizationConfig.isEnabled() || session.getMessageCount() <=
+                systemPromptConfig.getMaxHistoryMessages() + summarizationConfig.getMinBatchMessages()) {
+            return;
+        }
+        String sessionId = session.getSessionId();
+        Long userId = session.getUserId();
+        String model = session.getModel();
+        if (!inFlight.add(sessionId)) {
+            return;
+        }
+        try {
+            summaryExecutor.execute(() -> {
+                try {
+                    compact(sessionId, userId, model);
+                } catch (Exception e) {
+                    count("failed");
+                    log.warn("Compaction of session {} failed: {}", sessionId, e.getMessage());
+                } finally {
+                    inFlight.remove(sessionId);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            inFlight.remove(sessionId);
+            count("rejected");
+            log.debug("Compaction queue full, skipped session {}", sessionId);
+        }
+    }
+
+    /**
+     * Drop the summary when a message it covers was edited or deleted; it is rebuilt from the start
+     */
+    public void discardIfCovers(String sessionId, Long messageId) {
+        // One conditional delete, so it waits for a compaction run saving right now and then sees its result
+        if (conversationSummaryRepository.deleteIfCovers(sessionId, messageId) > 0) {
+            changed(sessionId);
+            log.debug("Discarded conversation summary of session {}", sessionId);
+        }
+    }
+
+    /**
+     * True when the session's summary was built from the message (it must not be used once that message changes)
+     */
+    public boolean covers(String sessionId, Long messageId) {
+        return conversationSummaryRepository.findById(sessionId)
+                .filter(summary -> messageId <= summary.getCoveredUntilMessageId())
+                .isPresent();
+    }
+
+    public void discard(String sessionId) {
+        conversationSummaryRepository.deleteById(sessionId);
+        changed(sessionId);
+        log.debug("Discarded conversation summary of session {}", sessionId);
+    }
+
+    /**
+     * Fold the next batch of messages that left the window into the summary
+     */
+    private void compact(String sessionId, Long userId, String sessionModel) {
+        int windowSize = systemPromptConfig.getMaxHistoryMessages();
+        List<Long> recentIds = messageRepository.findRecentIdsBySessionId(sessionId, Limit.of(windowSize + 1));
+        if (recentIds.size() <= windowSize) {
+            return;
+        }
+        // Newest message outside the window
+        Long untilId = recentIds.get(windowSize);
+
+        ConversationSummary current = conversationSummaryRepository.findById(sessionId).orElse(null);
+        Long afterId = current != null ? current.getCoveredUntilMessageId() : 0L;
+        List<Message> batch = messageRepository.findRangeBySessionId(
+                sessionId, afterId, untilId, Limit.of(summarizationConfig.getMaxBatchMessages()));
+        if (batch.size() < summarizationConfig.getMinBatchMessages()) {
+            return;
+        }
+
+        String model = summarizationConfig.getModel() == null || summarizationConfig.getModel().isBlank()
+                ? sessionModel : summarizationConfig.getModel();
+        List<OllamaMessage> prompt = List.of(
+                OllamaMessage.builder().role("system")
+                        .content(SUMMARIZER_PROMPT.formatted(summarizationConfig.getMaxSummaryChars())).build(),
+                OllamaMessage.builder().role("user")
+                        .content(summarizerInput(current, batch)).build());
+
+        String summary = summarizeTimer.record(() -> admissionService.callBlocking(model, userId, "background",
+                () -> ollamaService.chat(model, prompt, sessionId)));
+        if (summary == null || summary.isBlank()) {
+            count("empty");
+            return;
+        }
+        summary = summary.strip();
+        if (summary.length() > summarizationConfig.getMaxSummaryChars()) {
+            summary = summary.substring(0, summarizationConfig.getMaxSummaryChars());
+        }
+
+        ConversationSummary updated = saveIfUnchanged(sessionId, current, batch, summary, model);
+        if (updated == null) {
+            count("stale");
+            log.info("Dropped compaction of session {}: its messages or summary changed during the model call", sessionId);
+            return;
+        }
+        // Not put in the cache: a discard may already have deleted the row again
+        changed(sessionId);
+
+        count("completed");
+        meterRegistry.counter("chat.summary.messages").increment(batch.size());
+        log.info("Compacted {} messages of session {} into a {} char summary ({} messages covered)",
+                batch.size(), sessionId, summary.length(), updated.getCoveredMessages());
+    }
+
+    /**
+     * Save the new summary unless the session changed while the model was summarizing: the stored summary must
+     * still be the one that was read, and every message of the batch must still exist with the content that was sent.
+     * Returns null (nothing written) otherwise.
+     */
+    private ConversationSummary saveIfUnchanged(String sessionId, ConversationSummary current, List<Message> batch,
+                                                String summary, String model) {
+        Long afterId = current != null ? current.getCoveredUntilMessageId() : 0L;
+        Long untilId = batch.get(batch.size() - 1).getId();
+        return transactionTemplate.execute(status -> {
+            // Locked first, so the batch below is read after any edit whose discard this lock waited for
+            ConversationSummary latest = conversationSummaryRepository.lockBySessionId(sessionId).orElse(null);
+            Long latestAfterId = latest != null ? latest.getCoveredUntilMessageId() : 0L;
+            if ((latest == null) != (current == null) || !latestAfterId.equals(afterId)) {
+                return null;
+            }
+            List<Message> reread = messageRepository.findRangeBySessionId(
+                    sessionId, afterId, untilId, Limit.of(batch.size() + 1));
+            if (reread.size() != batch.size()) {
+                return null;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                if (!reread.get(i).getId().equals(batch.get(i).getId())
+                        || !reread.get(i).getContent().equals(batch.get(i).getContent())) {
+                    return null;
+                }
+            }
+
+            ConversationSummary updated = latest != null ? latest : new ConversationSummary();
+            updated.setSessionId(sessionId);
+            updated.setSummary(summary);
+            updated.setCoveredUntilMessageId(untilId);
+            updated.setCoveredMessages((latest != null ? latest.getCoveredMessages() : 0) + batch.size());
+            updated.setModel(model);
+            updated.setUpdatedAt(LocalDateTime.now());
+            return conversationSummaryRepository.save(updated);
+        });
+    }
+
+    /**
+     * Drop this node's copy and mark every other node's copy as outdated; called after the row changed
+     */
+    private void changed(String sessionId) {
+        summaries.invalidate(sessionId);
+        if (!contextCacheConfig.isL2Enabled()) {
+            return;
+        }
+        String key = versionKey(sessionId);
+        try {
+            redisTemplate.opsForValue().increment(key);
+            // Expires only once every copy read at an older count has expired, so a restarted count cannot match one
+            redisTemplate.expire(key, Duration.ofSeconds(
+                    Math.max(contextCacheConfig.getL1TtlSeconds(), contextCacheConfig.getL2TtlSeconds())));
+        } catch (Exception e) {
+            log.warn("Could not bump summary version of session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * Current summary version of a session (0 before its first change), NO_VERSION without L2 (single node)
+     * or when Redis cannot be reached
+     */
+    private long remoteVersion(String sessionId) {
+        if (!contextCacheConfig.isL2Enabled()) {
+            return NO_VERSION;
+        }
+        try {
+            Object version = redisTemplate.opsForValue().get(versionKey(sessionId));
+            return version instanceof Number number ? number.longValue() : 0;
+        } catch (Exception e) {
+            log.warn("Could not read summary version of session {}: {}", sessionId, e.getMessage());
+            return NO_VERSION;
+        }
+    }
+
+    private String versionKey(String sessionId) {
+        return contextCacheConfig.getKeyPrefix() + sessionId + ":summary-version";
+    }
+
+    private String summarizerInput(ConversationSummary current, List<Message> batch) {
+        StringBuilder input = new StringBuilder("Existing summary:\n")
+                .append(current != null ? current.getSummary() : "(none)")
+                .append("\n\nNew messages:\n");
+        int maxChars = summarizationConfig.getMaxMessageChars();
+        for (Message message : batch) {
+            String content = message.getContent();
+            if (content.length() > maxChars) {
+                content = content.substring(0, maxChars) + " [...]";
+            }
+            input.append(message.getRole() == Message.MessageRole.USER ? "User: " : "Assistant: ")
+                    .append(content).append('\n');
+        }
+        return input.toString();
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("chat.summary.runs", "result", result).increment();
+    }
+
+    /**
+     * In-process copy of a summary (NO_SUMMARY when there is none) with the version it was read at
+     */
+    private static class CachedSummary {
+        final long version;
+        final String summary;
+
+        CachedSummary(long version, String summary) {
+            this.version = version;
+            this.summary = summary;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.g4.chatbot.services;
+
+/**
+ * Fallback for models without a vocabulary: about 4 ASCII characters per token, and each other character
+ * counted as its UTF-8 length minus one (1 for Cyrillic or accented Latin, 2 for CJK, 3 for emoji).
+ * Closer to real BPE counts than length / 4 for non-Latin text, and mostly on the high side.
+ */
+public class EstimateTokenizer implements Tokenizer {
+
+    public static final EstimateTokenizer INSTANCE = new EstimateTokenizer();
+
+    @Override
+    public String getName() {
+        return "estimate";
+    }
+
+    @Override
+    public int countTokens(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                ascii++;
+            } else if (c < 0x800) {
+                other += 1;
+            } else if (Character.isHighSurrogate(c)) {
+                other += 3;
+            } else if (!Character.isLowSurrogate(c)) {
+                other += 2;
+            }
+        }
+        return (ascii + 3) / 4 + other;
+    }
+}
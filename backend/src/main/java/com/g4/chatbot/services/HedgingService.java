@@ -0,0 +1,197 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.HedgingConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hedged Ollama calls. The primary call runs as usual; if its first element has not arrived after the model's
+ * recent p95 time to first element, a hedge call is started and whichever emits first is kept, the other one
+ * is cancelled (which aborts its HTTP request).
+ * Hedges are paid for from a per-model token bucket that earns budgetRatio tokens per call, so they add at most
+ * that fraction of extra load. Streaming and non-streaming calls keep separate latency samples.
+ */
+@Service
+@Slf4j
+public class HedgingService {
+
+    private static final int SAMPLE_WINDOW = 256;
+
+    // The percentile is recomputed after this many new samples
+    private static final int RECOMPUTE_EVERY = 16;
+
+    @Autowired
+    private HedgingConfig hedgingConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, ModelState> states = new ConcurrentHashMap<>();
+
+    /**
+     * A hedge call and what it targets ("backend" for another host, "fallback_model")
+     */
+    public static class Hedge<T> {
+        final String target;
+        final Flux<T> response;
+
+        public Hedge(String target, Flux<T> response) {
+            this.target = target;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Run the primary call, hedged with the call supplied by hedge (null when there is nothing to hedge to)
+     */
+    public <T> Flux<T> hedge(String model, boolean streaming, Flux<T> primary, Supplier<Hedge<T>> hedge) {
+        if (!hedgingConfig.isEnabledFor(model)) {
+            return primary;
+        }
+        return Flux.defer(() -> {
+            ModelState state = states.computeIfAbsent(model + (streaming ? "|stream" : "|complete"),
+                    key -> new ModelState(model, streaming));
+            state.deposit();
+            count("ollama.hedge.requests", model, null, null);
+
+            AtomicReference<String> winner = new AtomicReference<>();
+            AtomicBoolean fired = new AtomicBoolean();
+            Flux<T> timedPrimary = timed(primary, state, winner, "primary");
+
+            Duration delay = state.delay();
+            if (delay == null) {
+                return timedPrimary;
+            }
+
+            Flux<T> delayedHedge = Mono.delay(delay).flatMapMany(tick -> {
+                if (!state.tryAcquire()) {
+                    count("ollama.hedge.skipped", model, "reason", "budget");
+                    return Flux.never();
+                }
+                Hedge<T> call = hedge.get();
+                if (call == null) {
+                    state.refund();
+                    count("ollama.hedge.skipped", model, "reason", "no_target");
+                    return Flux.never();
+                }
+                fired.set(true);
+                count("ollama.hedge.fired", model, "target", call.target);
+                log.debug("No first response from {} after {} ms, hedging to {}", model, delay.toMillis(), call.target);
+                return call.response.doOnNext(item -> winner.compareAndSet(null, "hedge"));
+            });
+
+            return Flux.firstWithSignal(timedPrimary, delayedHedge)
+                    .doFinally(signal -> {
+                        if (fired.get() && winner.get() != null) {
+                            count("ollama.hedge.wins", model, "winner", winner.get());
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Time to first element of the primary call; a call cancelled before its first element contributes the
+     * time it had waited so far, so stalls are not left out of the percentile
+     */
+    private <T> Flux<T> timed(Flux<T> call, ModelState state, AtomicReference<String> winner, String name) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean(true);
+            return call
+                    .doOnNext(item -> {
+                        if (first.compareAndSet(true, false)) {
+                            state.record(System.nanoTime() - start);
+                            winner.compareAndSet(null, name);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (first.compareAndSet(true, false)) {
+                            state.record(System.nanoTime() - start);
+                        }
+                    });
+        });
+    }
+
+    private void count(String name, String model, String tag, String value) {
+        Counter.Builder counter = Counter.builder(name).tag("model", model);
+        if (tag != null) {
+            counter.tag(tag, value);
+        }
+        counter.register(meterRegistry).increment();
+    }
+
+    /**
+     * Recent first-element latencies and hedge budget of one model and call type
+     */
+    private class ModelState {
+        private final long[] samples = new long[SAMPLE_WINDOW];
+        private int size;
+        private int next;
+        private int sinceRecompute;
+        private volatile long delayNanos = -1;
+        private double tokens;
+
+        ModelState(String model, boolean streaming) {
+            Gauge.builder("ollama.hedge.delay", this, s -> s.delayNanos < 0 ? 0 : s.delayNanos / 1_000_000.0)
+                    .tag("model", model)
+                    .tag("streaming", String.valueOf(streaming))
+                    .baseUnit("milliseconds")
+                    .description("Current hedging delay (percentile of recent time to first response)")
+                    .register(meterRegistry);
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % SAMPLE_WINDOW;
+            size = Math.min(size + 1, SAMPLE_WINDOW);
+            if (size >= hedgingConfig.getMinSamples() && (++sinceRecompute >= RECOMPUTE_EVERY || delayNanos < 0)) {
+                sinceRecompute = 0;
+                long[] sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(hedgingConfig.getPercentile() * size) - 1;
+                delayNanos = sorted[Math.max(0, Math.min(size - 1, index))];
+            }
+        }
+
+        Duration delay() {
+            long nanos = delayNanos;
+            if (nanos < 0) {
+                return null;
+            }
+            long millis = Math.max(hedgingConfig.getMinDelayMs(),
+                    Math.min(hedgingConfig.getMaxDelayMs(), TimeUnit.NANOSECONDS.toMillis(nanos)));
+            return Duration.ofMillis(millis);
+        }
+
+        synchronized void deposit() {
+            tokens = Math.min(hedgingConfig.getBudgetBurst(), tokens + hedgingConfig.getBudgetRatio());
+        }
+
+        synchronized boolean tryAcquire() {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized void refund() {
+            tokens += 1;
+        }
+    }
+}
@@ -0,0 +1,615 @@
+package com.g4.chatbot.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximate nearest-neighbour index (HNSW) over unit vectors, scored by cosine similarity.
+ * Each entry carries a cached answer and its creation time.
+ * <p>
+ * Removed entries stay in the graph as routing nodes but are never returned; {@link #compact()} rebuilds
+ * the graph from the live entries once enough of them pile up. Entry ids are only stable between
+ * compactions, so a {@link Match} can only be removed or replaced in the generation it was found in.
+ * <p>
+ * Snapshots are written with {@link #save(Path)} and opened with {@link #load(Path, int)}, which maps the file
+ * instead of reading it: vectors and answers of the snapshot are read straight from the page cache and
+ * only the graph links are copied to the heap. Entries added afterwards live on the heap until the next save.
+ */
+public class HnswIndex {
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int FORMAT_VERSION = 2; // 2 adds the removed flags after the creation times
+    private static final int HEADER_BYTES = 7 * Integer.BYTES;
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Entries [0, mappedCount) are backed by the mapped snapshot
+    private MappedByteBuffer mapped;
+    private FloatBuffer mappedVectors;
+    private int mappedCount;
+    private int mappedAnswerOffsetsPos;
+    private int mappedAnswersPos;
+
+    private final List<float[]> heapVectors = new ArrayList<>();
+    private final List<String> heapAnswers = new ArrayList<>();
+    private final List<Long> createdAt = new ArrayList<>();
+
+    // Answers replaced in place on entries of the mapped snapshot
+    private final Map<Integer, String> replacedAnswers = new HashMap<>();
+
+    // links.get(node)[level] = {count, neighbour ids...}
+    private final List<int[][]> links = new ArrayList<>();
+
+    private final BitSet removed = new BitSet();
+    private int removedCount;
+    private int generation;
+
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(int dimension, int m, int efConstruction) {
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Live entries
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return links.size() - removedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removed entries still held in the graph until the next {@link #compact()}
+     */
+    public int removedCount() {
+        lock.readLock().lock();
+        try {
+            return removedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Closest live entry to the query, or null when there is none
+     */
+    public Match nearest(float[] query, int efSearch) {
+        List<Match> matches = search(query, efSearch);
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    /**
+     * Live entries among the efSearch candidates closest to the query, most similar first
+     */
+    public List<Match> search(float[] query, int efSearch) {
+        float[] q = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return List.of();
+            }
+            int current = greedyDescent(q, 0);
+            List<Candidate> found = searchLayer(q, current, Math.max(efSearch, 1), 0);
+            found.sort(Comparator.comparingDouble((Candidate c) -> c.distance));
+
+            List<Match> matches = new ArrayList<>(found.size());
+            for (Candidate candidate : found) {
+                if (!removed.get(candidate.id)) {
+                    matches.add(new Match(candidate.id, generation, 1.0f - candidate.distance,
+                            answer(candidate.id), createdAt.get(candidate.id)));
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Insert a vector with its answer, returning the new entry id
+     */
+    public int add(float[] vector, String answer, long createdAtMillis) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.length);
+        }
+        float[] v = normalize(vector);
+        lock.writeLock().lock();
+        try {
+            return insert(v, answer, createdAtMillis);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Give a live entry a new answer and creation time, keeping its vector.
+     * False when the entry was removed or the index compacted since the match was found.
+     */
+    public boolean replace(Match match, String answer, long createdAtMillis) {
+        lock.writeLock().lock();
+        try {
+            if (match.generation != generation || removed.get(match.id)) {
+                return false;
+            }
+            if (match.id < mappedCount) {
+                replacedAnswers.put(match.id, answer);
+            } else {
+                heapAnswers.set(match.id - mappedCount, answer);
+            }
+            createdAt.set(match.id, createdAtMillis);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a matched entry; false when it is already gone
+     */
+    public boolean remove(Match match) {
+        lock.writeLock().lock();
+        try {
+            return match.generation == generation && markRemoved(match.id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the entries at least maxAgeMillis old, returning how many were removed
+     */
+    public int removeOlderThan(long maxAgeMillis, long nowMillis) {
+        lock.writeLock().lock();
+        try {
+            int count = 0;
+            for (int id = 0; id < links.size(); id++) {
+                if (nowMillis - createdAt.get(id) >= maxAgeMillis && markRemoved(id)) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the n oldest live entries, returning how many were removed
+     */
+    public int evictOldest(int n) {
+        lock.writeLock().lock();
+        try {
+            List<Integer> live = new ArrayList<>(links.size() - removedCount);
+            for (int id = 0; id < links.size(); id++) {
+                if (!removed.get(id)) {
+                    live.add(id);
+                }
+            }
+            live.sort(Comparator.comparingLong(createdAt::get));
+            int count = Math.min(n, live.size());
+            for (int i = 0; i < count; i++) {
+                markRemoved(live.get(i));
+            }
+            return count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the graph from the live entries, dropping removed ones and the mapped snapshot.
+     * Entry ids change, so matches found before no longer remove or replace anything.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            List<Integer> live = new ArrayList<>(links.size() - removedCount);
+            for (int id = 0; id < links.size(); id++) {
+                if (!removed.get(id)) {
+                    live.add(id);
+                }
+            }
+            List<float[]> vectors = new ArrayList<>(live.size());
+            List<String> answers = new ArrayList<>(live.size());
+            List<Long> times = new ArrayList<>(live.size());
+            for (int id : live) {
+                vectors.add(id < mappedCount ? vector(id) : heapVectors.get(id - mappedCount));
+                answers.add(answer(id));
+                times.add(createdAt.get(id));
+            }
+
+            mapped = null;
+            mappedVectors = null;
+            mappedCount = 0;
+            heapVectors.clear();
+            heapAnswers.clear();
+            createdAt.clear();
+            replacedAnswers.clear();
+            links.clear();
+            removed.clear();
+            removedCount = 0;
+            entryPoint = -1;
+            maxLevel = -1;
+            generation++;
+
+            for (int i = 0; i < vectors.size(); i++) {
+                insert(vectors.get(i), answers.get(i), times.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write a snapshot of the index (atomically replacing the file)
+     */
+    public void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            int count = links.size();
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(dimension);
+            out.writeInt(m);
+            out.writeInt(count);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+
+            for (int id = 0; id < count; id++) {
+                for (int i = 0; i < dimension; i++) {
+                    out.writeFloat(component(id, i));
+                }
+            }
+            for (int id = 0; id < count; id++) {
+                out.writeLong(createdAt.get(id));
+            }
+            for (int id = 0; id < count; id++) {
+                out.writeByte(removed.get(id) ? 1 : 0);
+            }
+
+            List<byte[]> answers = new ArrayList<>(count);
+            long offset = 0;
+            out.writeLong(offset);
+            for (int id = 0; id < count; id++) {
+                byte[] bytes = answer(id).getBytes(StandardCharsets.UTF_8);
+                answers.add(bytes);
+                offset += bytes.length;
+                out.writeLong(offset);
+            }
+
+            for (int[][] nodeLinks : links) {
+                out.writeInt(nodeLinks.length);
+                for (int[] levelLinks : nodeLinks) {
+                    out.writeInt(levelLinks[0]);
+                    for (int i = 1; i <= levelLinks[0]; i++) {
+                        out.writeInt(levelLinks[i]);
+                    }
+                }
+            }
+            for (byte[] bytes : answers) {
+                out.write(bytes);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Open a snapshot written by {@link #save(Path)} by memory-mapping it
+     */
+    public static HnswIndex load(Path file, int efConstruction) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Index snapshot too large to map: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        int version;
+        if (buffer.getInt() != MAGIC || (version = buffer.getInt()) < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Not an index snapshot: " + file);
+        }
+        HnswIndex index = new HnswIndex(buffer.getInt(), buffer.getInt(), efConstruction);
+        int count = buffer.getInt();
+        index.entryPoint = buffer.getInt();
+        index.maxLevel = buffer.getInt();
+
+        int vectorBytes = count * index.dimension * Float.BYTES;
+        index.mapped = buffer;
+        index.mappedCount = count;
+        index.mappedVectors = buffer.slice(HEADER_BYTES, vectorBytes).asFloatBuffer();
+
+        buffer.position(HEADER_BYTES + vectorBytes);
+        for (int id = 0; id < count; id++) {
+            index.createdAt.add(buffer.getLong());
+        }
+        if (version >= 2) {
+            for (int id = 0; id < count; id++) {
+                if (buffer.get() != 0) {
+                    index.markRemoved(id);
+                }
+            }
+        }
+        index.mappedAnswerOffsetsPos = buffer.position();
+        buffer.position(buffer.position() + (count + 1) * Long.BYTES);
+
+        for (int id = 0; id < count; id++) {
+            int levels = buffer.getInt();
+            int[][] nodeLinks = new int[levels][];
+            for (int l = 0; l < levels; l++) {
+                int[] levelLinks = new int[1 + (l == 0 ? index.maxM0 : index.m)];
+                levelLinks[0] = buffer.getInt();
+                for (int i = 1; i <= levelLinks[0]; i++) {
+                    levelLinks[i] = buffer.getInt();
+                }
+                nodeLinks[l] = levelLinks;
+            }
+            index.links.add(nodeLinks);
+        }
+        index.mappedAnswersPos = buffer.position();
+        return index;
+    }
+
+    /**
+     * Link a normalized vector into the graph; the caller holds the write lock
+     */
+    private int insert(float[] v, String answer, long createdAtMillis) {
+        int id = links.size();
+        int level = (int) Math.floor(-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+
+        heapVectors.add(v);
+        heapAnswers.add(answer);
+        createdAt.add(createdAtMillis);
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[1 + (l == 0 ? maxM0 : m)];
+        }
+        links.add(nodeLinks);
+
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return id;
+        }
+
+        int current = greedyDescent(v, level + 1);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(v, current, efConstruction, l);
+            candidates.sort(Comparator.comparingDouble((Candidate c) -> c.distance));
+            int maxConn = l == 0 ? maxM0 : m;
+            for (int i = 0; i < Math.min(m, candidates.size()); i++) {
+                int neighbour = candidates.get(i).id;
+                connect(id, neighbour, l, maxConn);
+                connect(neighbour, id, l, maxConn);
+            }
+            current = candidates.get(0).id;
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = id;
+        }
+        return id;
+    }
+
+    private boolean markRemoved(int id) {
+        if (removed.get(id)) {
+            return false;
+        }
+        removed.set(id);
+        removedCount++;
+        return true;
+    }
+
+    /**
+     * Walk down from the top layer to stopLevel, always moving to the closest neighbour
+     */
+    private int greedyDescent(float[] q, int stopLevel) {
+        int current = entryPoint;
+        float currentDistance = distance(q, current);
+        for (int l = maxLevel; l >= stopLevel; l--) {
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                int[] levelLinks = links.get(current)[l];
+                for (int i = 1; i <= levelLinks[0]; i++) {
+                    float d = distance(q, levelLinks[i]);
+                    if (d < currentDistance) {
+                        currentDistance = d;
+                        current = levelLinks[i];
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    private List<Candidate> searchLayer(float[] q, int entry, int ef, int level) {
+        BitSet visited = new BitSet(links.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.distance));
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.distance).reversed());
+
+        Candidate start = new Candidate(entry, distance(q, entry));
+        visited.set(entry);
+        candidates.add(start);
+        results.add(start);
+
+        while (!candidates.isEmpty()) {
+            Candidate closest = candidates.poll();
+            if (closest.distance > results.peek().distance && results.size() >= ef) {
+                break;
+            }
+            int[][] nodeLinks = links.get(closest.id);
+            if (level >= nodeLinks.length) {
+                continue;
+            }
+            int[] levelLinks = nodeLinks[level];
+            for (int i = 1; i <= levelLinks[0]; i++) {
+                int neighbour = levelLinks[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float d = distance(q, neighbour);
+                if (results.size() < ef || d < results.peek().distance) {
+                    Candidate candidate = new Candidate(neighbour, d);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Add target to the node's links at level; a full list keeps its maxConn closest entries
+     */
+    private void connect(int node, int target, int level, int maxConn) {
+        int[] levelLinks = links.get(node)[level];
+        int count = levelLinks[0];
+        if (count < maxConn) {
+            levelLinks[count + 1] = target;
+            levelLinks[0] = count + 1;
+            return;
+        }
+
+        float[] base = vector(node);
+        List<Candidate> all = new ArrayList<>(count + 1);
+        for (int i = 1; i <= count; i++) {
+            all.add(new Candidate(levelLinks[i], distance(base, levelLinks[i])));
+        }
+        all.add(new Candidate(target, distance(base, target)));
+        all.sort(Comparator.comparingDouble((Candidate c) -> c.distance));
+        for (int i = 0; i < maxConn; i++) {
+            levelLinks[i + 1] = all.get(i).id;
+        }
+    }
+
+    private float distance(float[] q, int id) {
+        float dot = 0;
+        if (id < mappedCount) {
+            int base = id * dimension;
+            for (int i = 0; i < dimension; i++) {
+                dot += q[i] * mappedVectors.get(base + i);
+            }
+        } else {
+            float[] v = heapVectors.get(id - mappedCount);
+            for (int i = 0; i < dimension; i++) {
+                dot += q[i] * v[i];
+            }
+        }
+        return 1.0f - dot;
+    }
+
+    private float component(int id, int i) {
+        return id < mappedCount ? mappedVectors.get(id * dimension + i) : heapVectors.get(id - mappedCount)[i];
+    }
+
+    private float[] vector(int id) {
+        if (id >= mappedCount) {
+            return heapVectors.get(id - mappedCount);
+        }
+        float[] v = new float[dimension];
+        mappedVectors.get(id * dimension, v);
+        return v;
+    }
+
+    private String answer(int id) {
+        if (id >= mappedCount) {
+            return heapAnswers.get(id - mappedCount);
+        }
+        String replaced = replacedAnswers.get(id);
+        if (replaced != null) {
+            return replaced;
+        }
+        long start = mapped.getLong(mappedAnswerOffsetsPos + id * Long.BYTES);
+        long end = mapped.getLong(mappedAnswerOffsetsPos + (id + 1) * Long.BYTES);
+        byte[] bytes = new byte[(int) (end - start)];
+        mapped.get(mappedAnswersPos + (int) start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float x : vector) {
+            norm += x * x;
+        }
+        float scale = norm > 0 ? (float) (1.0 / Math.sqrt(norm)) : 0f;
+        float[] unit = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            unit[i] = vector[i] * scale;
+        }
+        return unit;
+    }
+
+    private static final class Candidate {
+        final int id;
+        final float distance;
+
+        Candidate(int id, float distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Nearest entry found for a query
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Match {
+        private final int id;
+        private final int generation;
+        private final float similarity;
+        private final String answer;
+        private final long createdAtMillis;
+    }
+}
@@ -3,15 +3,23 @@ package com.g4.chatbot.services;
 import com.g4.chatbot.dto.messages.MessageHistoryResponse;
 import com.g4.chatbot.dto.messages.MessageResponse;
 import com.g4.chatbot.dto.messages.UpdateMessageRequest;
+import com.g4.chatbot.dto.ollama.OllamaChatResponse;
 import com.g4.chatbot.dto.ollama.OllamaMessage;
+import com.g4.chatbot.exception.BadRequestException;
+import com.g4.chatbot.exception.ConversationChangedException;
 import com.g4.chatbot.models.ChatSession;
 import com.g4.chatbot.models.Message;
 import com.g4.chatbot.repos.ChatSessionRepository;
 import com.g4.chatbot.repos.MessageRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -31,9 +39,36 @@ public class MessageService {
     @Autowired
     private OllamaService ollamaService;
     
+    @Autowired
+    private AdmissionService admissionService;
+    
+    @Autowired
+    private ModelCatalogService modelCatalogService;
+    
     @Autowired
     private PromptValidationService promptValidationService;
     
+    @Autowired
+    private ConversationContextService conversationContextService;
+    
+    @Autowired
+    private ContextPacker contextPacker;
+    
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+    
+    @Autowired
+    private TokenizerService tokenizerService;
+    
+    @Autowired
+    private Scheduler chatScheduler;
+    
+    @Autowired
+    private ChatService chatService;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
     /**
      * Helper class to hold regeneration context between transaction boundaries
      */
@@ -91,9 +126,9 @@ public class MessageService {
     
     /**
      * Update a message (edit content)
-     * Only USER messages can be edited
+     * Only USER messages can be edited; with regenerateResponse the Mono completes once the new answer is saved
      */
-    public MessageResponse updateMessage(Long messageId, UpdateMessageRequest request, Long userId) {
+    public Mono<MessageResponse> updateMessage(Long messageId, UpdateMessageRequest request, Long userId) {
         log.info("Updating message: {} for user: {}", messageId, userId);
         
         // SECURITY: Validate and sanitize the updated message content
@@ -108,11 +143,11 @@ public class MessageService {
         if (Boolean.TRUE.equals(request.getRegenerateResponse())) {
             log.info("Regenerating assistant response after message edit");
             deleteSubsequentMessagesInTransaction(updated, userId);
-            // This calls Ollama (long-running) - no DB transaction held
-            regenerateFromMessage(updated, userId);
+            // This calls Ollama (long-running) - no DB transaction or thread held
+            return regenerateFromMessage(updated, userId).thenReturn(MessageResponse.from(updated));
         }
         
-        return MessageResponse.from(updated);
+        return Mono.just(MessageResponse.from(updated));
     }
     
     /**
@@ -136,6 +171,8 @@ public class MessageService {
         // Update the message content
         message.setContent(request.getContent());
         Message updated = messageRepository.save(message);
+        conversationContextService.invalidate(message.getSessionId());
+        conversationSummaryService.discardIfCovers(message.getSessionId(), messageId);
         
         log.info("Message {} updated successfully", messageId);
         return updated;
@@ -195,6 +232,8 @@ public class MessageService {
         
         messageRepository.delete(message);
         chatSessionRepository.save(session);
+        conversationContextService.invalidate(message.getSessionId());
+        conversationSummaryService.discardIfCovers(message.getSessionId(), messageId);
         
         log.info("Message {} deleted successfully", messageId);
     }
@@ -202,20 +241,25 @@ public class MessageService {
     /**
      * Regenerate the last assistant response in a session
      */
-    public MessageResponse regenerateLastResponse(String sessionId, Long userId, String model) {
+    public Mono<MessageResponse> regenerateLastResponse(String sessionId, Long userId, String model) {
         log.info("Regenerating last response for session: {}, user: {}", sessionId, userId);
         
-        // Step 1: Delete last assistant message in a transaction
-        RegenerationContext context = deleteLastAssistantMessageInTransaction(sessionId, userId, model);
-        
-        // Step 2: Call Ollama (long-running) - NO DB transaction held
-        String assistantResponse = ollamaService.chat(context.modelToUse, context.ollamaMessages);
-        
-        // Step 3: Save new message in a transaction
-        Message saved = saveRegeneratedMessageInTransaction(sessionId, context.modelToUse, assistantResponse, userId);
+        // Reject before touching the conversation when the requested model is unknown (400) or saturated
+        String requestedModel = model != null ? modelCatalogService.resolve(model) : null;
+        if (requestedModel != null) {
+            admissionService.checkCapacity(requestedModel);
+        }
         
-        log.info("Response regenerated successfully, new message ID: {}", saved.getId());
-        return MessageResponse.from(saved);
+        // Step 1: Delete last assistant message in a transaction
+        RegenerationContext context = deleteLastAssistantMessageInTransaction(sessionId, userId, requestedModel);
+        
+        // Step 2: Call Ollama (long-running, admitted per model) - NO DB transaction or thread held
+        // Step 3: Save new message in a transaction, on the chat scheduler once Ollama answers
+        return generate(context, sessionId, userId)
+                .map(saved -> {
+                    log.info("Response regenerated successfully, new message ID: {}", saved.getId());
+                    return MessageResponse.from(saved);
+                });
     }
     
     /**
@@ -227,26 +271,10 @@ public class MessageService {
         ChatSession session = chatSessionRepository.findBySessionIdAndUserId(sessionId, userId)
                 .orElseThrow(() -> new RuntimeException("Session not found or access denied"));
         
-        List<Message> messages = messageRepository.findBySessionIdOrderByTimestampAsc(sessionId);
-        
-        if (messages.isEmpty()) {
-            throw new RuntimeException("No messages found in session");
-        }
-        
-        // Find the last assistant message
-        Message lastAssistantMessage = null;
-        
-        for (int i = messages.size() - 1; i >= 0; i--) {
-            Message msg = messages.get(i);
-            if (msg.getRole() == Message.MessageRole.ASSISTANT) {
-                lastAssistantMessage = msg;
-                break;
-            }
-        }
-        
-        if (lastAssistantMessage == null) {
-            throw new RuntimeException("No assistant message found to regenerate");
-        }
+        // Find the last assistant message (single-row lookup instead of loading the session)
+        Message lastAssistantMessage = messageRepository
+                .findFirstBySessionIdAndRoleOrderByTimestampDescIdDesc(sessionId, Message.MessageRole.ASSISTANT)
+                .orElseThrow(() -> new RuntimeException("No assistant message found to regenerate"));
         
         // Delete the last assistant message
         messageRepository.delete(lastAssistantMessage);
@@ -254,27 +282,26 @@ public class MessageService {
         session.setTokenUsage(session.getTokenUsage() - 
                 (lastAssistantMessage.getTokenCount() != null ? lastAssistantMessage.getTokenCount() : 0));
         chatSessionRepository.save(session);
+        conversationContextService.invalidate(sessionId);
         
         // Rebuild history without the deleted message
-        List<Message> historyForRegeneration = messageRepository.findBySessionIdOrderByTimestampAsc(sessionId);
-        
-        // Build Ollama messages from history
-        List<OllamaMessage> ollamaMessages = new ArrayList<>(ollamaService.buildMessageHistory(historyForRegeneration));
+        List<OllamaMessage> ollamaMessages = new ArrayList<>(
+                ollamaService.withSystemPrompt(conversationContextService.getWindow(sessionId),
+                        conversationSummaryService.getSummary(sessionId)));
         
         // Use the specified model or session's model or default
-        String modelToUse = model != null ? model : 
-                           (session.getModel() != null ? session.getModel() : "llama3");
+        String modelToUse = model != null ? model : modelCatalogService.resolveStored(session.getModel());
         
         log.info("Regenerating with model: {}, history size: {}", modelToUse, ollamaMessages.size());
         
-        return new RegenerationContext(ollamaMessages, modelToUse);
+        return new RegenerationContext(contextPacker.pack(modelToUse, ollamaMessages), modelToUse);
     }
     
     /**
-     * Internal method to save regenerated message
+     * Internal method to save regenerated message, with Ollama's generation stats as metadata
      */
     @Transactional
-    private Message saveRegeneratedMessageInTransaction(String sessionId, String model, String assistantResponse, Long userId) {
+    private Message saveRegeneratedMessageInTransaction(String sessionId, String model, OllamaChatResponse generation, Long userId) {
         ChatSession session = chatSessionRepository.findBySessionIdAndUserId(sessionId, userId)
                 .orElseThrow(() -> new RuntimeException("Session not found"));
         
@@ -282,12 +309,15 @@ public class MessageService {
         Message newAssistantMessage = new Message();
         newAssistantMessage.setSessionId(sessionId);
         newAssistantMessage.setRole(Message.MessageRole.ASSISTANT);
-        newAssistantMessage.setContent(assistantResponse);
+        newAssistantMessage.setContent(generation.getMessage().getContent());
         newAssistantMessage.setModel(model);
-        newAssistantMessage.setTokenCount(assistantResponse.length() / 4); // Rough estimate
+        newAssistantMessage.setMetadata(ollamaService.generationMetadata(generation));
+        newAssistantMessage.setTokenCount(generation.getEvalCount() != null ? generation.getEvalCount()
+                : tokenizerService.countTokens(model, generation.getMessage().getContent()));
         newAssistantMessage.setTimestamp(LocalDateTime.now());
         
         Message saved = messageRepository.save(newAssistantMessage);
+        conversationContextService.append(saved);
         
         // Update session stats
         session.setMessageCount(session.getMessageCount() + 1);
@@ -302,19 +332,25 @@ public class MessageService {
      * Regenerate from a specific message (used after editing)
      * Split into separate transactions to avoid holding DB connection during Ollama call
      */
-    private void regenerateFromMessage(Message userMessage, Long userId) {
+    private Mono<Message> regenerateFromMessage(Message userMessage, Long userId) {
         String sessionId = userMessage.getSessionId();
         
         // Step 1: Prepare context in a transaction
         RegenerationContext context = prepareRegenerationContextInTransaction(userMessage, userId);
         
-        // Step 2: Call Ollama (long-running) - NO DB transaction held
-        String assistantResponse = ollamaService.chat(context.modelToUse, context.ollamaMessages);
-        
-        // Step 3: Save result in a transaction
-        saveRegeneratedMessageInTransaction(sessionId, context.modelToUse, assistantResponse, userId);
-        
-        log.info("Generated new response after message edit");
+        // Step 2 and 3: Call Ollama, then save the result in a transaction
+        return generate(context, sessionId, userId)
+                .doOnNext(saved -> log.info("Generated new response after message edit"));
+    }
+    
+    /**
+     * Admitted, non-blocking Ollama call for a regeneration; the answer is saved on the chat scheduler
+     */
+    private Mono<Message> generate(RegenerationContext context, String sessionId, Long userId) {
+        return admissionService.call(context.modelToUse, userId, admissionService.currentPriorityClass(),
+                        () -> ollamaService.chatCompletionAsync(context.modelToUse, context.ollamaMessages, sessionId, null))
+                .publishOn(chatScheduler)
+                .map(generation -> saveRegeneratedMessageInTransaction(sessionId, context.modelToUse, generation, userId));
     }
     
     /**
@@ -324,27 +360,160 @@ public class MessageService {
     private RegenerationContext prepareRegenerationContextInTransaction(Message userMessage, Long userId) {
         String sessionId = userMessage.getSessionId();
         
-        // Get all messages up to this point
-        List<Message> allMessages = messageRepository.findBySessionIdOrderByTimestampAsc(sessionId);
-        List<Message> messagesUpToThis = new ArrayList<>();
+        // Messages after the edited one were deleted, so the session window ends with it
+        List<OllamaMessage> ollamaMessages = new ArrayList<>(
+                ollamaService.withSystemPrompt(conversationContextService.getWindow(sessionId),
+                        conversationSummaryService.getSummary(sessionId)));
         
-        for (Message msg : allMessages) {
-            messagesUpToThis.add(msg);
-            if (msg.getId().equals(userMessage.getId())) {
-                break;
-            }
+        // Get session info
+        ChatSession session = chatSessionRepository.findBySessionIdAndUserId(sessionId, userId)
+                .orElseThrow(() -> new RuntimeException("Session not found"));
+        
+        String modelToUse = modelCatalogService.resolveStored(session.getModel());
+        
+        return new RegenerationContext(contextPacker.pack(modelToUse, ollamaMessages), modelToUse);
+    }
+    
+    /**
+     * Regenerate the last assistant response as a stream of Server-Sent Events.
+     * The old answer stays until the new one is complete; it is then replaced in one transaction,
+     * unless the conversation moved on meanwhile (409, nothing is saved).
+     */
+    public SseEmitter regenerateLastResponseStreaming(String sessionId, Long userId, String model) {
+        log.info("Streaming regeneration of last response for session: {}, user: {}", sessionId, userId);
+        
+        ChatSession session = chatSessionRepository.findBySessionIdAndUserId(sessionId, userId)
+                .orElseThrow(() -> new RuntimeException("Session not found or access denied"));
+        String modelToUse = model != null ? modelCatalogService.resolve(model) 
+                : modelCatalogService.resolveStored(session.getModel());
+        admissionService.checkCapacity(modelToUse);
+        
+        // Single-row lookups: the answer being replaced must be the newest message of the session
+        Long replacedId = messageRepository
+                .findFirstBySessionIdAndRoleOrderByTimestampDescIdDesc(sessionId, Message.MessageRole.ASSISTANT)
+                .orElseThrow(() -> new RuntimeException("No assistant message found to regenerate"))
+                .getId();
+        if (!isNewestMessage(sessionId, replacedId)) {
+            throw new BadRequestException("Only the last answer of a conversation can be regenerated");
         }
+        Message userMessage = messageRepository
+                .findFirstBySessionIdAndRoleOrderByTimestampDescIdDesc(sessionId, Message.MessageRole.USER)
+                .orElse(null);
+        
+        // The prompt is the cached conversation window without the answer being replaced
+        List<OllamaMessage> window = conversationContextService.getWindow(sessionId);
+        List<OllamaMessage> ollamaMessages = new ArrayList<>(ollamaService.withSystemPrompt(
+                window.subList(0, Math.max(0, window.size() - 1)), conversationSummaryService.getSummary(sessionId)));
+        
+        ChatService.StreamedGeneration turn = new ChatService.StreamedGeneration(sessionId,
+                userMessage != null ? userMessage.getId() : null, modelToUse,
+                contextPacker.pack(modelToUse, ollamaMessages),
+                userMessage != null ? userMessage.getContent() : "",
+                (content, generation) -> commitStreamedAnswer(sessionId, userId, modelToUse, content, generation, () -> {
+                    // Checked under the session lock: a concurrent regenerate or a new turn got there first
+                    if (!isNewestMessage(sessionId, replacedId)) {
+                        throw new ConversationChangedException(
+                                "The conversation changed while the answer was generated; it was not saved");
+                    }
+                    messageRepository.deleteById(replacedId);
+                }));
+        
+        return chatService.generateWithStreaming(userId, turn, "/api/v1/sessions/regenerate/stream");
+    }
+    
+    /**
+     * Edit a user message and stream the new answer as Server-Sent Events.
+     * Nothing changes until the answer is complete; the edit, the removal of the messages after it
+     * and the new answer are then committed in one transaction.
+     */
+    public SseEmitter updateMessageStreaming(Long messageId, UpdateMessageRequest request, Long userId) {
+        log.info("Updating message: {} for user: {} with streamed regeneration", messageId, userId);
         
-        // Build Ollama messages
-        List<OllamaMessage> ollamaMessages = new ArrayList<>(ollamaService.buildMessageHistory(messagesUpToThis));
+        // SECURITY: Validate and sanitize the updated message content
+        promptValidationService.validateUserInput(request.getContent());
+        String sanitizedContent = promptValidationService.sanitizeInput(request.getContent());
         
-        // Get session info
+        Message message = messageRepository.findById(messageId)
+                .orElseThrow(() -> new RuntimeException("Message not found"));
+        String sessionId = message.getSessionId();
         ChatSession session = chatSessionRepository.findBySessionIdAndUserId(sessionId, userId)
-                .orElseThrow(() -> new RuntimeException("Session not found"));
+                .orElseThrow(() -> new RuntimeException("Access denied"));
         
-        String modelToUse = session.getModel() != null ? session.getModel() : "llama3";
+        // Only allow editing USER messages
+        if (message.getRole() != Message.MessageRole.USER) {
+            throw new RuntimeException("Only user messages can be edited");
+        }
         
-        return new RegenerationContext(ollamaMessages, modelToUse);
+        String modelToUse = modelCatalogService.resolveStored(session.getModel());
+        admissionService.checkCapacity(modelToUse);
+        
+        // The prompt is the window up to the edited message (newest rows only), with its new content
+        List<OllamaMessage> history = new ArrayList<>(conversationContextService.getWindowBefore(message));
+        history.add(OllamaMessage.builder().role("user").content(sanitizedContent).build());
+        
+        // A summary built from the edited message no longer describes the conversation
+        String summary = conversationSummaryService.covers(sessionId, messageId) 
+                ? null : conversationSummaryService.getSummary(sessionId);
+        List<OllamaMessage> ollamaMessages = new ArrayList<>(ollamaService.withSystemPrompt(history, summary));
+        
+        ChatService.StreamedGeneration turn = new ChatService.StreamedGeneration(sessionId, messageId, modelToUse,
+                contextPacker.pack(modelToUse, ollamaMessages), sanitizedContent,
+                (content, generation) -> {
+                    Message saved = commitStreamedAnswer(sessionId, userId, modelToUse, content, generation, () -> {
+                        Message current = messageRepository.findById(messageId)
+                                .orElseThrow(() -> new ConversationChangedException(
+                                        "The edited message was deleted while the answer was generated"));
+                        current.setContent(sanitizedContent);
+                        messageRepository.save(current);
+                        // One bulk delete of everything after the edited message
+                        messageRepository.deleteAllByIdInBatch(messageRepository.findIdsAfterBySessionId(
+                                sessionId, current.getTimestamp(), messageId));
+                    });
+                    conversationSummaryService.discardIfCovers(sessionId, messageId);
+                    return saved;
+                });
+        
+        return chatService.generateWithStreaming(userId, turn, "/api/v1/messages/stream");
+    }
+    
+    /**
+     * Apply a streamed turn's changes and save its answer in one transaction, then refresh session stats
+     * and drop the session's cached window.
+     * The session row is locked first, so concurrent commits to one conversation run one after the other.
+     */
+    private Message commitStreamedAnswer(String sessionId, Long userId, String model, String content,
+                                         OllamaChatResponse generation, Runnable changes) {
+        Message saved = transactionTemplate.execute(status -> {
+            ChatSession session = chatSessionRepository.lockBySessionIdAndUserId(sessionId, userId)
+                    .orElseThrow(() -> new RuntimeException("Session not found"));
+            changes.run();
+            
+            Message answer = new Message();
+            answer.setSessionId(sessionId);
+            answer.setRole(Message.MessageRole.ASSISTANT);
+            answer.setContent(content);
+            answer.setModel(model);
+            answer.setMetadata(ollamaService.generationMetadata(generation));
+            answer.setTokenCount(generation != null && generation.getEvalCount() != null ? generation.getEvalCount()
+                    : tokenizerService.countTokens(model, content));
+            answer.setTimestamp(LocalDateTime.now());
+            Message result = messageRepository.save(answer);
+            
+            Long totalTokens = messageRepository.sumTokenCountBySessionId(sessionId);
+            session.setMessageCount((int) messageRepository.countBySessionId(sessionId));
+            session.setTokenUsage(totalTokens != null ? totalTokens : 0L);
+            session.setUpdatedAt(LocalDateTime.now());
+            chatSessionRepository.save(session);
+            return result;
+        });
+        conversationContextService.invalidate(sessionId);
+        log.info("Committed streamed answer {} in session {}", saved.getId(), sessionId);
+        return saved;
+    }
+    
+    private boolean isNewestMessage(String sessionId, Long messageId) {
+        List<Long> newest = messageRepository.findRecentIdsBySessionId(sessionId, Limit.of(1));
+        return !newest.isEmpty() && newest.get(0).equals(messageId);
     }
     
     /**
@@ -383,6 +552,8 @@ public class MessageService {
             session.setMessageCount(session.getMessageCount() - toDelete.size());
             session.setTokenUsage(session.getTokenUsage() - totalTokens);
             chatSessionRepository.save(session);
+            conversationContextService.invalidate(fromMessage.getSessionId());
+            conversationSummaryService.discardIfCovers(fromMessage.getSessionId(), fromMessage.getId());
         }
     }
     
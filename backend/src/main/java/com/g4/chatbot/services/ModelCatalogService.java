@@ -0,0 +1,88 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.OllamaConfig;
+import com.g4.chatbot.exception.BadRequestException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Resolves model names sent by clients to the models this deployment serves: the default model,
+ * app.ai.ollama.models, and the models listed on (or loaded by) the backends.
+ * Names are matched case-insensitively, ignoring surrounding whitespace and Ollama's ":latest" tag,
+ * so per-model limits, queues and meters only ever exist for real models.
+ */
+@Service
+@Slf4j
+public class ModelCatalogService {
+
+    private static final String LATEST_TAG = ":latest";
+
+    @Autowired
+    private OllamaConfig ollamaConfig;
+
+    @Autowired
+    private OllamaBackendPool backendPool;
+
+    public String getDefaultModel() {
+        return ollamaConfig.getDefaultModel();
+    }
+
+    /**
+     * Configured name of a requested model, the default model when none was requested;
+     * 400 for a model that is not served
+     */
+    public String resolve(String requested) {
+        if (requested == null || requested.isBlank()) {
+            return getDefaultModel();
+        }
+        String resolved = find(requested);
+        if (resolved == null) {
+            throw new BadRequestException("Unknown model: " + requested.strip());
+        }
+        return resolved;
+    }
+
+    /**
+     * Model of a stored session; names no longer served fall back to the default model
+     */
+    public String resolveStored(String stored) {
+        if (stored == null || stored.isBlank()) {
+            return getDefaultModel();
+        }
+        String resolved = find(stored);
+        if (resolved == null) {
+            log.debug("Session model {} is not served, using {}", stored, getDefaultModel());
+            return getDefaultModel();
+        }
+        return resolved;
+    }
+
+    private String find(String name) {
+        String key = normalize(name);
+        for (String model : knownModels()) {
+            if (normalize(model).equals(key)) {
+                return model;
+            }
+        }
+        return null;
+    }
+
+    private Set<String> knownModels() {
+        Set<String> models = new LinkedHashSet<>();
+        models.add(getDefaultModel());
+        models.addAll(ollamaConfig.getModels());
+        models.addAll(backendPool.servedModels());
+        return models;
+    }
+
+    private static String normalize(String name) {
+        String normalized = name.strip().toLowerCase(Locale.ROOT);
+        return normalized.endsWith(LATEST_TAG) 
+                ? normalized.substring(0, normalized.length() - LATEST_TAG.length()) : normalized;
+    }
+}
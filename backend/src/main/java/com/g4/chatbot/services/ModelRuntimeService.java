@@ -0,0 +1,162 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.ContextBudgetConfig;
+import com.g4.chatbot.config.ModelRuntimeConfig;
+import com.g4.chatbot.dto.ollama.OllamaChatRequest;
+import com.g4.chatbot.dto.ollama.OllamaChatResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps models resident on the Ollama hosts: configured models are loaded at startup, a session's model is
+ * loaded on its backend when the session is opened, and every request carries keep_alive so hot models stay
+ * loaded between turns.
+ * Also supplies the runtime options of each model. All requests for a model must use the same num_ctx,
+ * otherwise Ollama reloads the model, so num_ctx comes from the context budget used for packing. Answer length is
+ * not capped unless a model's options set num_predict.
+ */
+@Service
+@Slf4j
+public class ModelRuntimeService {
+
+    @Autowired
+    private ModelRuntimeConfig modelRuntimeConfig;
+
+    @Autowired
+    private ContextBudgetConfig contextBudgetConfig;
+
+    @Autowired
+    private OllamaBackendPool backendPool;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Last time each model was used or warmed by this node (System.nanoTime)
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+
+    /**
+     * Options of a request: context-budget window, per-model options, then the request's own options on top
+     */
+    public Map<String, Object> optionsFor(String model, Map<String, Object> requestOptions) {
+        Map<String, Object> options = new LinkedHashMap<>();
+        if (modelRuntimeConfig.isEnabled()) {
+            if (modelRuntimeConfig.isMatchContextBudget() && contextBudgetConfig.isEnabled()) {
+                options.put("num_ctx", contextBudgetConfig.getContextTokensFor(model));
+            }
+            ModelRuntimeConfig.Model override = modelRuntimeConfig.getModels().get(model);
+            if (override != null) {
+                options.putAll(override.getOptions());
+            }
+        }
+        if (requestOptions != null) {
+            options.putAll(requestOptions);
+        }
+        return options.isEmpty() ? null : options;
+    }
+
+    public String keepAliveFor(String model) {
+        return modelRuntimeConfig.isEnabled() ? modelRuntimeConfig.getKeepAliveFor(model) : null;
+    }
+
+    /**
+     * Note that a request for the model was sent, which also keeps it loaded
+     */
+    public void markUsed(String model) {
+        lastUsed.put(model, System.nanoTime());
+    }
+
+    /**
+     * Load a session's model on the backend the session is routed to, unless the model was used recently.
+     * Returns immediately; the load runs in the background.
+     */
+    public void warmForSession(String model, String sessionId) {
+        if (!modelRuntimeConfig.isEnabled() || !modelRuntimeConfig.isWarmOnSessionOpen() || model == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        long interval = TimeUnit.SECONDS.toNanos(modelRuntimeConfig.getWarmIntervalSeconds());
+        Long previous = lastUsed.get(model);
+        if (previous != null && now - previous < interval) {
+            return;
+        }
+        lastUsed.put(model, now);
+        warm(model, "session", backendPool.routeMono(model, sessionId, client -> load(client, model)))
+                .subscribe();
+    }
+
+    /**
+     * Load the configured models on every backend serving them
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadModels() {
+        List<String> models = modelRuntimeConfig.getPreloadModels();
+        if (!modelRuntimeConfig.isEnabled() || models.isEmpty()) {
+            return;
+        }
+        log.info("Preloading models {}", models);
+        for (String model : models) {
+            lastUsed.put(model, System.nanoTime());
+            warm(model, "startup", backendPool.routeToEach(model, client -> load(client, model)).then())
+                    .subscribe();
+        }
+    }
+
+    /**
+     * A chat request without messages: Ollama loads the model (with the same options as real turns) and returns
+     */
+    private Mono<OllamaChatResponse> load(WebClient client, String model) {
+        OllamaChatRequest request = OllamaChatRequest.builder()
+                .model(model)
+                .messages(List.of())
+                .stream(false)
+                .options(optionsFor(model, null))
+                .keepAlive(keepAliveFor(model))
+                .build();
+        return client.post()
+                .uri("/api/chat")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(OllamaChatResponse.class);
+    }
+
+    private Mono<Void> warm(String model, String reason, Mono<?> load) {
+        long start = System.nanoTime();
+        return load
+                .doOnSuccess(response -> {
+                    record(model, reason, "success", start);
+                    log.debug("Warmed model {} ({}) in {} ms", model, reason,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                })
+                .doOnError(error -> {
+                    record(model, reason, "failure", start);
+                    log.warn("Could not warm model {} ({}): {}", model, reason, error.getMessage());
+                })
+                .onErrorResume(error -> Mono.empty())
+                .then();
+    }
+
+    private void record(String model, String reason, String result, long start) {
+        Timer.builder("ollama.model.warmup")
+                .tag("model", model)
+                .tag("reason", reason)
+                .tag("result", result)
+                .description("Model loads requested ahead of traffic")
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,660 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.OllamaConfig;
+import com.g4.chatbot.dto.admin.OllamaBackendStatusDTO;
+import com.g4.chatbot.dto.ollama.OllamaPsResponse;
+import com.g4.chatbot.exception.ModelUnavailableException;
+import io.netty.channel.ChannelOption;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Routes Ollama calls across the configured model hosts.
+ * Each call goes to the best available backend serving the model (least outstanding requests or
+ * EWMA latency, scaled by weight). Each backend has a circuit breaker: repeated failures, or a high failure
+ * or slow-call rate, open it for an exponentially growing period, after which trial calls and the background
+ * probe decide whether it closes. When every backend of a model is open, calls fail fast (503).
+ * Calls carrying an affinity key (the chat session id) are pinned to a backend by weighted rendezvous
+ * hashing, so consecutive turns of a session reuse that host's prompt cache; the pinned backend is
+ * skipped (next in rank order is used) while it is ejected or above its bounded share of the load.
+ */
+@Service
+@Slf4j
+public class OllamaBackendPool {
+
+    // Upper bound for a single decoded JSON object (a full non-streaming answer)
+    private static final int MAX_RESPONSE_BYTES = 16 * 1024 * 1024;
+
+    @Autowired
+    private OllamaConfig ollamaConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private List<Backend> backends;
+
+    private Counter affinityPrimaryCounter;
+    private Counter affinityFailoverCounter;
+    private Counter affinityOverflowCounter;
+
+    @PostConstruct
+    public void init() {
+        backends = ollamaConfig.getEffectiveBackends().stream()
+                .map(Backend::new)
+                .toList();
+        affinityPrimaryCounter = affinityCounter("primary");
+        affinityFailoverCounter = affinityCounter("failover");
+        affinityOverflowCounter = affinityCounter("overflow");
+        log.info("Ollama backend pool: {} backend(s), strategy {}, session affinity {}",
+                backends.size(), ollamaConfig.getRouting().getStrategy(),
+                ollamaConfig.getRouting().isSessionAffinity() ? "on" : "off");
+    }
+
+    private Counter affinityCounter(String result) {
+        return Counter.builder("ollama.routing.affinity")
+                .tag("result", result)
+                .description("Session-affine routing decisions (primary backend, next in rank, or load-based fallback)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run a streaming call on the selected backend; in-flight count, latency and health are tracked per call
+     */
+    public <T> Flux<T> route(String model, Function<WebClient, Flux<T>> call) {
+        return route(model, null, call);
+    }
+
+    /**
+     * Like {@link #route(String, Function)}, keeping calls with the same affinity key on the same backend
+     */
+    public <T> Flux<T> route(String model, String affinityKey, Function<WebClient, Flux<T>> call) {
+        return route(model, affinityKey, null, call);
+    }
+    
+    /**
+     * Like {@link #route(String, String, Function)}, avoiding the backends in tried (unless no other one serves
+     * the model) and adding the selected backend to it; used to send a hedge to a different host
+     */
+    public <T> Flux<T> route(String model, String affinityKey, Set<String> tried, Function<WebClient, Flux<T>> call) {
+        return Flux.defer(() -> {
+            Backend backend = select(model, affinityKey, tried);
+            if (tried != null) {
+                tried.add(backend.url);
+            }
+            return backend.track(call.apply(backend.client));
+        });
+    }
+
+    /**
+     * Whether a backend in rotation serves the model besides those in tried
+     */
+    public boolean hasAlternative(String model, Set<String> tried) {
+        long now = System.nanoTime();
+        return backends.stream()
+                .anyMatch(b -> b.serves(model) && !tried.contains(b.url) && b.isAvailable(now));
+    }
+
+    /**
+     * Single-response variant of {@link #route}
+     */
+    public <T> Mono<T> routeMono(String model, Function<WebClient, Mono<T>> call) {
+        return routeMono(model, null, call);
+    }
+
+    public <T> Mono<T> routeMono(String model, String affinityKey, Function<WebClient, Mono<T>> call) {
+        return route(model, affinityKey, client -> call.apply(client).flux()).singleOrEmpty();
+    }
+
+    /**
+     * Run a single-response call on every backend serving the model (all backends when none claims it),
+     * regardless of load; ejected backends are skipped
+     */
+    public <T> Flux<T> routeToEach(String model, Function<WebClient, Mono<T>> call) {
+        return Flux.defer(() -> {
+            long now = System.nanoTime();
+            List<Backend> candidates = backends.stream().filter(b -> b.serves(model)).toList();
+            if (candidates.isEmpty()) {
+                candidates = backends;
+            }
+            // A failing backend does not cancel the calls to the others
+            return Flux.fromIterable(candidates)
+                    .filter(backend -> backend.isAvailable(now))
+                    .flatMapDelayError(backend -> backend.track(call.apply(backend.client).flux()),
+                            candidates.size(), 1);
+        });
+    }
+
+    /**
+     * Models listed on backends or reported loaded by their last probe
+     */
+    public Set<String> servedModels() {
+        Set<String> models = new LinkedHashSet<>();
+        for (Backend backend : backends) {
+            models.addAll(backend.models);
+            models.addAll(backend.loadedModels);
+        }
+        return models;
+    }
+
+    public List<OllamaBackendStatusDTO> getBackendStatus() {
+        long now = System.nanoTime();
+        return backends.stream()
+                .map(b -> OllamaBackendStatusDTO.builder()
+                        .url(b.url)
+                        .weight(b.weight)
+                        .models(b.models)
+                        .inFlight(b.inFlight.get())
+                        .ewmaLatencyMs(b.ewmaMs)
+                        .consecutiveFailures(b.consecutiveFailures.get())
+                        .available(b.isAvailable(now))
+                        .ejectedForSeconds(b.state == CircuitState.OPEN
+                                ? Math.max(0, TimeUnit.NANOSECONDS.toSeconds(b.ejectedUntil - now)) : 0L)
+                        .circuitState(b.state.name())
+                        .failureRate(b.failureRate())
+                        .slowCallRate(b.slowCallRate())
+                        .lastProbeLatencyMs(b.lastProbeLatencyMs)
+                        .lastProbeAt(b.lastProbeAt)
+                        .lastProbeError(b.lastProbeError)
+                        .loadedModels(b.loadedModels)
+                        .build())
+                .toList();
+    }
+
+    /**
+     * Probe every backend in the background, so health reporting and half-open trials never wait on a request
+     */
+    @Scheduled(fixedDelayString = "${app.ai.ollama.circuit-breaker.probe-interval-ms:10000}")
+    public void probeBackends() {
+        if (!ollamaConfig.getCircuitBreaker().isProbeEnabled()) {
+            return;
+        }
+        backends.forEach(backend -> backend.probe().subscribe());
+    }
+
+    /**
+     * Whether any backend currently accepts calls
+     */
+    public boolean isAnyAvailable() {
+        long now = System.nanoTime();
+        return backends.stream().anyMatch(b -> b.isAvailable(now));
+    }
+
+    List<Backend> getBackends() {
+        return backends;
+    }
+
+    Backend select(String model) {
+        return select(model, null);
+    }
+
+    Backend select(String model, String affinityKey) {
+        return select(model, affinityKey, null);
+    }
+
+    Backend select(String model, String affinityKey, Set<String> tried) {
+        List<Backend> candidates = backends.stream().filter(b -> b.serves(model)).toList();
+        if (candidates.isEmpty()) {
+            // No host claims the model, let any of them try
+            candidates = backends;
+        }
+        if (tried != null && !tried.isEmpty()) {
+            List<Backend> untried = candidates.stream().filter(b -> !tried.contains(b.url)).toList();
+            if (!untried.isEmpty()) {
+                candidates = untried;
+            }
+        }
+
+        long now = System.nanoTime();
+        if (affinityKey != null && candidates.size() > 1 && ollamaConfig.getRouting().isSessionAffinity()) {
+            Backend affine = selectByAffinity(candidates, affinityKey, now);
+            if (affine != null) {
+                return affine;
+            }
+            affinityOverflowCounter.increment();
+        }
+        return selectLeastLoaded(model, candidates, now);
+    }
+
+    /**
+     * Weighted rendezvous hashing with bounded load: walk backends in the key's rank order and take the
+     * first one that is in rotation and below loadFactor x its weighted share of the in-flight requests.
+     * Adding or removing a backend only moves the keys that rank it first.
+     */
+    private Backend selectByAffinity(List<Backend> candidates, String affinityKey, long now) {
+        long keyHash = hash64(affinityKey);
+        List<Backend> ranked = candidates.stream()
+                .sorted(Comparator.comparingDouble((Backend b) -> b.rendezvousScore(keyHash)).reversed())
+                .toList();
+
+        int totalInFlight = 0;
+        int totalWeight = 0;
+        for (Backend backend : candidates) {
+            if (backend.isAvailable(now)) {
+                totalInFlight += backend.inFlight.get();
+                totalWeight += backend.weight;
+            }
+        }
+        double loadFactor = ollamaConfig.getRouting().getAffinityLoadFactor();
+
+        for (int i = 0; i < ranked.size(); i++) {
+            Backend backend = ranked.get(i);
+            if (!backend.isAvailable(now)) {
+                continue;
+            }
+            double bound = Math.ceil(loadFactor * (totalInFlight + 1) * backend.weight / totalWeight);
+            if (backend.inFlight.get() + 1 <= bound) {
+                (i == 0 ? affinityPrimaryCounter : affinityFailoverCounter).increment();
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pick the available backend with the lowest score; ties are broken by a random starting point
+     */
+    private Backend selectLeastLoaded(String model, List<Backend> candidates, long now) {
+        double defaultLatency = candidates.stream()
+                .filter(b -> b.ewmaMs > 0)
+                .mapToDouble(b -> b.ewmaMs)
+                .average()
+                .orElse(1.0);
+
+        Backend best = null;
+        double bestScore = Double.MAX_VALUE;
+        int offset = ThreadLocalRandom.current().nextInt(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            Backend backend = candidates.get((offset + i) % candidates.size());
+            if (!backend.isAvailable(now)) {
+                continue;
+            }
+            double score = backend.score(defaultLatency);
+            if (score < bestScore) {
+                best = backend;
+                bestScore = score;
+            }
+        }
+
+        if (best == null) {
+            // Every circuit is open: fail fast instead of waiting on a dead host
+            long retryAfterNanos = candidates.stream()
+                    .mapToLong(b -> b.ejectedUntil - now)
+                    .min()
+                    .orElse(0);
+            Counter.builder("ollama.backend.rejected")
+                    .tag("model", String.valueOf(model))
+                    .description("Calls failed fast because every backend of the model had an open circuit")
+                    .register(meterRegistry)
+                    .increment();
+            throw new ModelUnavailableException("Model " + model + " is temporarily unavailable, please retry shortly",
+                    Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos) + 1));
+        }
+        return best;
+    }
+
+    enum CircuitState { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * One Ollama host with its circuit breaker. CLOSED: calls flow and their outcomes fill a sliding window;
+     * too many consecutive failures, or a failure or slow-call rate above threshold, opens the circuit.
+     * OPEN: no calls for an exponentially growing period. HALF_OPEN: a few trial calls (or the background probe)
+     * decide whether the circuit closes again or reopens.
+     */
+    class Backend {
+        private static final byte OUTCOME_OK = 0;
+        private static final byte OUTCOME_FAILED = 1;
+        private static final byte OUTCOME_SLOW = 2;
+
+        final String url;
+        final int weight;
+        final List<String> models;
+        final WebClient client;
+        private final long urlHash;
+
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        volatile double ewmaMs;
+        volatile CircuitState state = CircuitState.CLOSED;
+        // End of the current open period
+        volatile long ejectedUntil;
+        private int ejections;
+        private final AtomicInteger halfOpenTrials = new AtomicInteger();
+
+        // Sliding window of call outcomes (guarded by this)
+        private final byte[] outcomes;
+        private int outcomeCount;
+        private int outcomeNext;
+        private int failedInWindow;
+        private int slowInWindow;
+
+        // Last background probe
+        volatile Long lastProbeLatencyMs;
+        volatile LocalDateTime lastProbeAt;
+        volatile String lastProbeError;
+        volatile List<String> loadedModels = List.of();
+
+        private final Timer latencyTimer;
+        private final Counter failureCounter;
+        private final Counter ejectionCounter;
+
+        Backend(OllamaConfig.Backend config) {
+            OllamaConfig.CircuitBreaker breaker = ollamaConfig.getCircuitBreaker();
+            this.url = config.getUrl();
+            this.weight = Math.max(1, config.getWeight());
+            this.models = List.copyOf(config.getModels());
+            this.ejectedUntil = System.nanoTime();
+            this.urlHash = hash64(url);
+            this.outcomes = new byte[Math.max(1, breaker.getWindowSize())];
+            HttpClient httpClient = HttpClient.create()
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) breaker.getConnectTimeoutMs());
+            this.client = WebClient.builder()
+                    .baseUrl(url)
+                    .clientConnector(new ReactorClientHttpConnector(httpClient))
+                    .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(MAX_RESPONSE_BYTES))
+                    .build();
+
+            Gauge.builder("ollama.backend.inflight", inFlight, AtomicInteger::get)
+                    .tag("backend", url)
+                    .description("Requests currently running on the backend")
+                    .register(meterRegistry);
+            Gauge.builder("ollama.backend.latency.ewma", this, b -> b.ewmaMs)
+                    .tag("backend", url)
+                    .baseUnit("milliseconds")
+                    .description("Moving average of time to first response chunk")
+                    .register(meterRegistry);
+            Gauge.builder("ollama.backend.available", this, b -> b.isAvailable(System.nanoTime()) ? 1 : 0)
+                    .tag("backend", url)
+                    .description("1 while the backend is in rotation, 0 while ejected")
+                    .register(meterRegistry);
+            Gauge.builder("ollama.backend.circuit.state", this, b -> b.state.ordinal())
+                    .tag("backend", url)
+                    .description("Circuit state: 0 closed, 1 open, 2 half-open")
+                    .register(meterRegistry);
+            latencyTimer = Timer.builder("ollama.backend.latency")
+                    .tag("backend", url)
+                    .description("Time to first response chunk")
+                    .register(meterRegistry);
+            failureCounter = Counter.builder("ollama.backend.failures")
+                    .tag("backend", url)
+                    .register(meterRegistry);
+            ejectionCounter = Counter.builder("ollama.backend.ejections")
+                    .tag("backend", url)
+                    .register(meterRegistry);
+        }
+
+        boolean serves(String model) {
+            return models.isEmpty() || model == null || models.contains(model);
+        }
+
+        /**
+         * Whether a call may be sent now: circuit closed, open period over, or a half-open trial slot free
+         */
+        boolean isAvailable(long now) {
+            return switch (state) {
+                case CLOSED -> true;
+                case OPEN -> now - ejectedUntil >= 0;
+                case HALF_OPEN -> halfOpenTrials.get() < ollamaConfig.getCircuitBreaker().getHalfOpenPermittedCalls();
+            };
+        }
+
+        /**
+         * Weighted rendezvous score of this backend for a key; the highest score owns the key
+         */
+        double rendezvousScore(long keyHash) {
+            long mixed = mix64(keyHash ^ urlHash);
+            // Uniform in (0, 1]
+            double u = ((mixed >>> 11) + 1) * 0x1.0p-53;
+            return -weight / Math.log(u);
+        }
+
+        double score(double defaultLatency) {
+            double load = (inFlight.get() + 1.0) / weight;
+            if (ollamaConfig.getRouting().getStrategy() == OllamaConfig.Strategy.EWMA_LATENCY) {
+                return (ewmaMs > 0 ? ewmaMs : defaultLatency) * load;
+            }
+            return load;
+        }
+
+        <T> Flux<T> track(Flux<T> response) {
+            return Flux.defer(() -> {
+                boolean trial = beginCall(System.nanoTime());
+                inFlight.incrementAndGet();
+                long start = System.nanoTime();
+                AtomicBoolean firstChunk = new AtomicBoolean(true);
+                Duration firstResponseTimeout = Duration.ofMillis(ollamaConfig.getCircuitBreaker().getFirstResponseTimeoutMs());
+                return response
+                        .timeout(Mono.delay(firstResponseTimeout), item -> Mono.never())
+                        .doOnNext(item -> {
+                            if (firstChunk.compareAndSet(true, false)) {
+                                onSuccess(System.nanoTime() - start);
+                            }
+                        })
+                        .doOnComplete(() -> {
+                            if (firstChunk.compareAndSet(true, false)) {
+                                onSuccess(System.nanoTime() - start);
+                            }
+                        })
+                        .doOnError(this::onFailure)
+                        .doFinally(signal -> {
+                            inFlight.decrementAndGet();
+                            if (trial) {
+                                halfOpenTrials.decrementAndGet();
+                            }
+                        });
+            });
+        }
+
+        /**
+         * Background health check: latency and loaded models, and the trial call of a half-open circuit
+         */
+        Mono<Void> probe() {
+            long now = System.nanoTime();
+            if (state == CircuitState.OPEN && now - ejectedUntil < 0) {
+                return Mono.empty();
+            }
+            long timeoutMs = ollamaConfig.getCircuitBreaker().getProbeTimeoutMs();
+            return Mono.defer(() -> {
+                        beginProbe(System.nanoTime());
+                        long start = System.nanoTime();
+                        return client.get()
+                                .uri("/api/ps")
+                                .retrieve()
+                                .bodyToMono(OllamaPsResponse.class)
+                                .timeout(Duration.ofMillis(timeoutMs))
+                                .doOnSuccess(ps -> {
+                                    lastProbeLatencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                                    lastProbeAt = LocalDateTime.now();
+                                    lastProbeError = null;
+                                    loadedModels = ps == null || ps.getModels() == null ? List.of()
+                                            : ps.getModels().stream().map(OllamaPsResponse.RunningModel::getName).toList();
+                                    synchronized (this) {
+                                        if (state == CircuitState.HALF_OPEN) {
+                                            close("probe succeeded");
+                                        }
+                                    }
+                                })
+                                .doOnError(error -> {
+                                    lastProbeLatencyMs = null;
+                                    lastProbeAt = LocalDateTime.now();
+                                    lastProbeError = error.getMessage() != null ? error.getMessage() : error.toString();
+                                    onFailure(error);
+                                });
+                    })
+                    .onErrorResume(error -> Mono.empty())
+                    .then();
+        }
+
+        /**
+         * Move an expired open circuit to half-open; returns whether this call is one of its trials
+         */
+        private synchronized boolean beginCall(long now) {
+            if (state == CircuitState.OPEN && now - ejectedUntil >= 0) {
+                transition(CircuitState.HALF_OPEN);
+            }
+            if (state == CircuitState.HALF_OPEN) {
+                halfOpenTrials.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void beginProbe(long now) {
+            if (state == CircuitState.OPEN && now - ejectedUntil >= 0) {
+                transition(CircuitState.HALF_OPEN);
+            }
+        }
+
+        private void onSuccess(long latencyNanos) {
+            latencyTimer.record(latencyNanos, TimeUnit.NANOSECONDS);
+            double sample = latencyNanos / 1_000_000.0;
+            double alpha = ollamaConfig.getRouting().getEwmaAlpha();
+            ewmaMs = ewmaMs > 0 ? alpha * sample + (1 - alpha) * ewmaMs : sample;
+
+            consecutiveFailures.set(0);
+            boolean slow = latencyNanos > TimeUnit.MILLISECONDS.toNanos(
+                    ollamaConfig.getCircuitBreaker().getSlowCallDurationMs());
+            synchronized (this) {
+                if (state == CircuitState.HALF_OPEN) {
+                    close("trial call succeeded");
+                } else if (state == CircuitState.CLOSED) {
+                    recordOutcome(slow ? OUTCOME_SLOW : OUTCOME_OK);
+                }
+            }
+        }
+
+        private void onFailure(Throwable error) {
+            if (error instanceof WebClientResponseException response && response.getStatusCode().is4xxClientError()) {
+                // The request was bad (e.g. unknown model), the host itself is fine
+                return;
+            }
+            failureCounter.increment();
+            int failures = consecutiveFailures.incrementAndGet();
+            synchronized (this) {
+                if (state == CircuitState.OPEN) {
+                    // Calls started before the circuit opened
+                    return;
+                }
+                if (state == CircuitState.HALF_OPEN) {
+                    open("trial call failed: " + error.getMessage());
+                    return;
+                }
+                recordOutcome(OUTCOME_FAILED);
+                if (state == CircuitState.CLOSED && failures >= ollamaConfig.getRouting().getFailureThreshold()) {
+                    open(failures + " consecutive failures: " + error.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Add an outcome to the window and open the circuit when a rate crosses its threshold (caller holds the lock)
+         */
+        private void recordOutcome(byte outcome) {
+            if (outcomeCount == outcomes.length) {
+                byte evicted = outcomes[outcomeNext];
+                failedInWindow -= evicted == OUTCOME_FAILED ? 1 : 0;
+                slowInWindow -= evicted == OUTCOME_SLOW ? 1 : 0;
+            } else {
+                outcomeCount++;
+            }
+            outcomes[outcomeNext] = outcome;
+            outcomeNext = (outcomeNext + 1) % outcomes.length;
+            failedInWindow += outcome == OUTCOME_FAILED ? 1 : 0;
+            slowInWindow += outcome == OUTCOME_SLOW ? 1 : 0;
+
+            OllamaConfig.CircuitBreaker breaker = ollamaConfig.getCircuitBreaker();
+            if (state != CircuitState.CLOSED || outcomeCount < breaker.getMinimumCalls()) {
+                return;
+            }
+            if (failureRate() >= breaker.getFailureRateThreshold()) {
+                open(String.format("failure rate %.0f%% over the last %d calls", failureRate() * 100, outcomeCount));
+            } else if (slowCallRate() >= breaker.getSlowCallRateThreshold()) {
+                open(String.format("slow call rate %.0f%% over the last %d calls", slowCallRate() * 100, outcomeCount));
+            }
+        }
+
+        synchronized double failureRate() {
+            return outcomeCount == 0 ? 0 : (double) failedInWindow / outcomeCount;
+        }
+
+        synchronized double slowCallRate() {
+            return outcomeCount == 0 ? 0 : (double) slowInWindow / outcomeCount;
+        }
+
+        private void open(String reason) {
+            OllamaConfig.Routing routing = ollamaConfig.getRouting();
+            long seconds = Math.min(routing.getMaxEjectionSeconds(),
+                    routing.getEjectionSeconds() << Math.min(ejections, 20));
+            ejections++;
+            ejectedUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            transition(CircuitState.OPEN);
+            ejectionCounter.increment();
+            log.warn("Opening circuit of Ollama backend {} for {}s after {}", url, seconds, reason);
+        }
+
+        private void close(String reason) {
+            ejections = 0;
+            consecutiveFailures.set(0);
+            transition(CircuitState.CLOSED);
+            log.info("Ollama backend {} is healthy again ({}), circuit closed", url, reason);
+        }
+
+        private void transition(CircuitState next) {
+            state = next;
+            outcomeCount = 0;
+            outcomeNext = 0;
+            failedInWindow = 0;
+            slowInWindow = 0;
+            Counter.builder("ollama.backend.circuit.transitions")
+                    .tag("backend", url)
+                    .tag("state", next.name())
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the string's chars
+     */
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix64(hash);
+    }
+
+    /**
+     * SplitMix64 finalizer, spreads nearby inputs across the whole range
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,207 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.ResponseCacheConfig;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Exact-match cache of LLM answers for deterministic prompts.
+ * The key is model + hash of the system prompt + the normalized conversation, so two new sessions
+ * asking the same first question share one generation. Lookups go to an in-process Caffeine tier
+ * first and fall back to Redis; Redis being down only turns hits into misses. Exact misses are
+ * tried against the {@link SemanticCacheService} when it is enabled.
+ */
+@Service
+@Slf4j
+public class ResponseCacheService {
+
+    @Autowired
+    private ResponseCacheConfig cacheConfig;
+
+    @Autowired
+    private SemanticCacheService semanticCacheService;
+
+    @Autowired
+    private TokenizerService tokenizerService;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, String> local;
+
+    @PostConstruct
+    public void init() {
+        local = Caffeine.newBuilder()
+                .maximumWeight(cacheConfig.getL1MaxChars())
+                .weigher((String key, String value) -> value.length())
+                .expireAfterWrite(Duration.ofSeconds(cacheConfig.getL1TtlSeconds()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "llm.response.cache.l1");
+    }
+
+    /**
+     * Look the request up in the exact tiers, then the semantic tier.
+     * Requests sampled with temperature > 0 (or the model default) bypass the cache unless allowed.
+     */
+    public Lookup lookup(String model, List<OllamaMessage> messages, Double temperature) {
+        if (!cacheConfig.isEnabled() && !semanticCacheService.isEnabled()) {
+            return Lookup.NONE;
+        }
+        boolean deterministic = temperature != null && temperature == 0.0;
+        if (!deterministic && !cacheConfig.isAllowNonDeterministic()) {
+            count("bypass", "none");
+            return Lookup.NONE;
+        }
+
+        String key = cacheConfig.isEnabled() ? keyFor(model, messages, temperature) : null;
+        String response = null;
+        String tier = "none";
+        if (key != null) {
+            response = local.getIfPresent(key);
+            tier = "l1";
+            if (response == null && cacheConfig.isL2Enabled()) {
+                response = readRemote(key);
+                tier = "l2";
+                if (response != null) {
+                    local.put(key, response);
+                }
+            }
+        }
+
+        SemanticCacheService.Probe probe = null;
+        if (response == null) {
+            probe = semanticCacheService.probe(model, messages);
+            response = probe != null ? probe.getAnswer() : null;
+            tier = "semantic";
+        }
+
+        if (response == null) {
+            count("miss", "none");
+            return new Lookup(key, probe, null);
+        }
+
+        count("hit", tier);
+        Counter.builder("llm.response.cache.saved.tokens")
+                .tag("model", model)
+                .description("Completion tokens served from the response cache instead of the model")
+                .register(meterRegistry)
+                .increment(tokenizerService.countTokens(model, response));
+        log.debug("Response cache hit ({}) for model {}", tier, model);
+        return new Lookup(key, probe, response);
+    }
+
+    /**
+     * Store a complete, validated answer generated after a miss
+     */
+    public void store(Lookup lookup, String response) {
+        if (lookup.getResponse() != null || response == null || response.isBlank()) {
+            return;
+        }
+        semanticCacheService.store(lookup.getProbe(), response);
+
+        String key = lookup.getKey();
+        if (key == null || response.length() > cacheConfig.getMaxResponseChars()) {
+            return;
+        }
+        local.put(key, response);
+        if (cacheConfig.isL2Enabled()) {
+            try {
+                redisTemplate.opsForValue().set(key, response, Duration.ofSeconds(cacheConfig.getL2TtlSeconds()));
+            } catch (Exception e) {
+                log.warn("Could not write response cache entry to Redis: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Exact-match key: model, system prompt hash, temperature and the normalized conversation
+     */
+    private String keyFor(String model, List<OllamaMessage> messages, Double temperature) {
+        StringBuilder systemPrompt = new StringBuilder();
+        StringBuilder conversation = new StringBuilder();
+        for (OllamaMessage message : messages) {
+            if ("system".equals(message.getRole())) {
+                systemPrompt.append(message.getContent()).append('\u0000');
+            } else {
+                conversation.append(message.getRole()).append('\u0000')
+                        .append(normalize(message.getContent())).append('\u0000');
+            }
+        }
+
+        String material = model + '\u0000' + sha256(systemPrompt.toString()) + '\u0000'
+                + temperature + '\u0000' + conversation;
+        return cacheConfig.getKeyPrefix() + sha256(material);
+    }
+
+    private String readRemote(String key) {
+        try {
+            Object value = redisTemplate.opsForValue().get(key);
+            return value instanceof String text ? text : null;
+        } catch (Exception e) {
+            log.warn("Could not read response cache entry from Redis: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void count(String result, String tier) {
+        Counter.builder("llm.response.cache.requests")
+                .tag("result", result)
+                .tag("tier", tier)
+                .description("Response cache lookups by outcome; hit rate = hit / (hit + miss)")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Collapse whitespace runs so trivially different spellings of the same message share a key
+     */
+    private static String normalize(String content) {
+        return content == null ? "" : content.strip().replaceAll("\\s+", " ");
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Result of a cache lookup, kept by the caller until the answer is known
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Lookup {
+        static final Lookup NONE = new Lookup(null, null, null);
+
+        private final String key;
+        private final SemanticCacheService.Probe probe;
+
+        // Cached answer, null on a miss
+        private final String response;
+    }
+}
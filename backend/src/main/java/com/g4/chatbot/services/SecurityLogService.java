@@ -1,5 +1,6 @@
 package com.g4.chatbot.services;
 
+import com.g4.chatbot.config.AsyncConfig;
 import com.g4.chatbot.config.SystemPromptConfig;
 import com.g4.chatbot.models.PromptInjectionLog;
 import com.g4.chatbot.repos.PromptInjectionLogRepository;
@@ -43,7 +44,7 @@ public class SecurityLogService {
     /**
      * Log a prompt injection attempt asynchronously
      */
-    @Async
+    @Async(AsyncConfig.LOGGING_EXECUTOR)
     public void logPromptInjectionAttempt(Long userId, String detectedPattern, String message, String ipAddress, String userAgent) {
         logPromptInjectionAttempt(userId, detectedPattern, message, ipAddress, userAgent, null);
     }
@@ -51,7 +52,7 @@ public class SecurityLogService {
     /**
      * Log a prompt injection attempt asynchronously with endpoint info
      */
-    @Async
+    @Async(AsyncConfig.LOGGING_EXECUTOR)
     public void logPromptInjectionAttempt(Long userId, String detectedPattern, String message, String ipAddress, String userAgent, String endpoint) {
         if (!systemPromptConfig.isLogInjectionAttempts()) {
             return;
@@ -84,7 +85,7 @@ public class SecurityLogService {
     /**
      * Save injection attempt to database
      */
-    @Async
+    @Async(AsyncConfig.LOGGING_EXECUTOR)
     protected void saveToDatabase(Long userId, String detectedPattern, String message, 
                                    String ipAddress, String userAgent, String endpoint,
                                    PromptInjectionLog.Severity severity, int attemptCount) {
@@ -113,7 +114,7 @@ public class SecurityLogService {
     /**
      * Send email alert to admin(s)
      */
-    @Async
+    @Async(AsyncConfig.LOGGING_EXECUTOR)
     protected void sendEmailAlert(Long userId, String detectedPattern, String message, 
                                    String ipAddress, int attemptCount, PromptInjectionLog.Severity severity) {
         try {
@@ -277,7 +278,7 @@ public class SecurityLogService {
     /**
      * Log output validation violation (AI revealing system prompt, breaking character, etc.)
      */
-    @Async
+    @Async(AsyncConfig.LOGGING_EXECUTOR)
     public void logOutputViolation(Long userId, java.util.List<String> violations, String userMessage, 
                                      String aiOutput, String ipAddress, String userAgent, String endpoint) {
         if (!systemPromptConfig.isLogInjectionAttempts()) {
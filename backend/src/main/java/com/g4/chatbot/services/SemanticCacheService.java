@@ -0,0 +1,264 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.SemanticCacheConfig;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Semantic response cache: prompts are embedded through Ollama and matched against earlier prompts
+ * in an in-process HNSW index, so paraphrases of a question already answered reuse that answer.
+ * There is one index per model and system prompt version; changing either starts from an empty index.
+ * A repeated prompt refreshes its entry in place, a full index evicts its oldest entries, and expired
+ * entries are swept (and the graph rebuilt once removed entries outnumber live ones) before each snapshot.
+ * Indexes are snapshotted to disk periodically and memory-mapped again on startup.
+ */
+@Service
+@Slf4j
+public class SemanticCacheService {
+
+    private static final String SNAPSHOT_SUFFIX = ".hnsw";
+
+    @Autowired
+    private SemanticCacheConfig semanticCacheConfig;
+
+    @Autowired
+    private OllamaService ollamaService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, HnswIndex> indexes = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    private Timer embedTimer;
+    private DistributionSummary similarity;
+
+    @PostConstruct
+    public void init() {
+        embedTimer = Timer.builder("llm.semantic.cache.embed")
+                .description("Time to embed a prompt for the semantic cache lookup")
+                .register(meterRegistry);
+        similarity = DistributionSummary.builder("llm.semantic.cache.similarity")
+                .description("Cosine similarity of the nearest cached prompt")
+                .register(meterRegistry);
+        meterRegistry.gauge("llm.semantic.cache.entries", indexes,
+                map -> map.values().stream().mapToInt(HnswIndex::size).sum());
+    }
+
+    public boolean isEnabled() {
+        return semanticCacheConfig.isEnabled();
+    }
+
+    /**
+     * Embed the prompt and look for a similar one in the index of its model and system prompt.
+     * Returns null when the prompt is not eligible or embedding failed; otherwise a probe carrying
+     * the cached answer on a hit, to be passed to {@link #store} after a miss.
+     */
+    public Probe probe(String model, List<OllamaMessage> messages) {
+        if (!semanticCacheConfig.isEnabled()) {
+            return null;
+        }
+
+        StringBuilder systemPrompt = new StringBuilder();
+        StringBuilder prompt = new StringBuilder();
+        int turns = 0;
+        for (OllamaMessage message : messages) {
+            if ("system".equals(message.getRole())) {
+                systemPrompt.append(message.getContent()).append('\u0000');
+            } else {
+                prompt.append(message.getContent().strip()).append('\n');
+                turns++;
+            }
+        }
+        if (turns == 0 || (semanticCacheConfig.isFirstTurnOnly() && turns > 1)) {
+            return null;
+        }
+
+        float[] vector;
+        try {
+            vector = embedTimer.recordCallable(() ->
+                    ollamaService.embed(semanticCacheConfig.getEmbeddingModel(), prompt.toString()));
+        } catch (Exception e) {
+            log.warn("Semantic cache lookup skipped, embedding failed: {}", e.getMessage());
+            return null;
+        }
+
+        String scope = scopeOf(model, systemPrompt.toString());
+        HnswIndex index = indexFor(scope, vector.length);
+        List<HnswIndex.Match> matches = index.search(vector, semanticCacheConfig.getEfSearch());
+        if (matches.isEmpty()) {
+            return new Probe(scope, vector, null);
+        }
+
+        similarity.record(matches.get(0).getSimilarity());
+        long now = System.currentTimeMillis();
+        long ttlMillis = TimeUnit.SECONDS.toMillis(semanticCacheConfig.getTtlSeconds());
+        for (HnswIndex.Match match : matches) {
+            if (match.getSimilarity() < semanticCacheConfig.getSimilarityThreshold()) {
+                break;
+            }
+            if (now - match.getCreatedAtMillis() < ttlMillis) {
+                log.debug("Semantic cache hit for model {} (similarity {})", model, match.getSimilarity());
+                return new Probe(scope, vector, match.getAnswer());
+            }
+            // Expired: try the next candidate. A copy of this prompt is left for store to refresh in place
+            if (match.getSimilarity() < semanticCacheConfig.getDuplicateSimilarity() && index.remove(match)) {
+                meterRegistry.counter("llm.semantic.cache.evicted", "reason", "expired").increment();
+                dirty.add(scope);
+            }
+        }
+        return new Probe(scope, vector, null);
+    }
+
+    /**
+     * Add the answer generated after a miss to the probe's index, or refresh the entry of the same prompt
+     */
+    public void store(Probe probe, String answer) {
+        if (probe == null || probe.getAnswer() != null || answer == null || answer.isBlank()
+                || answer.length() > semanticCacheConfig.getMaxResponseChars()) {
+            return;
+        }
+
+        HnswIndex index = indexFor(probe.scope, probe.vector.length);
+        long now = System.currentTimeMillis();
+        dirty.add(probe.scope);
+        for (HnswIndex.Match match : index.search(probe.vector, semanticCacheConfig.getEfSearch())) {
+            if (match.getSimilarity() < semanticCacheConfig.getDuplicateSimilarity()) {
+                break;
+            }
+            if (index.replace(match, answer, now)) {
+                return;
+            }
+        }
+
+        int max = semanticCacheConfig.getMaxEntriesPerIndex();
+        if (index.size() >= max) {
+            // Evict a batch so a full index does not pay for a scan on every store
+            int evicted = index.evictOldest(index.size() - max + Math.max(1, max / 100));
+            meterRegistry.counter("llm.semantic.cache.evicted", "reason", "full").increment(evicted);
+        }
+        index.add(probe.vector, answer, now);
+    }
+
+    /**
+     * Sweep expired entries, then snapshot indexes changed since the last run
+     */
+    @Scheduled(fixedDelayString = "${app.ai.semantic-cache.persist-interval-seconds:300}", timeUnit = TimeUnit.SECONDS)
+    public void persist() {
+        sweep();
+        for (String scope : List.copyOf(dirty)) {
+            dirty.remove(scope);
+            try {
+                Path dir = Paths.get(semanticCacheConfig.getIndexDirectory());
+                Files.createDirectories(dir);
+                indexes.get(scope).save(dir.resolve(scope + SNAPSHOT_SUFFIX));
+            } catch (IOException e) {
+                dirty.add(scope);
+                log.error("Failed to persist semantic cache index {}", scope, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        persist();
+    }
+
+    /**
+     * Remove expired entries and rebuild indexes where removed entries outnumber live ones
+     */
+    void sweep() {
+        long now = System.currentTimeMillis();
+        long ttlMillis = TimeUnit.SECONDS.toMillis(semanticCacheConfig.getTtlSeconds());
+        indexes.forEach((scope, index) -> {
+            int expired = index.removeOlderThan(ttlMillis, now);
+            if (expired > 0) {
+                meterRegistry.counter("llm.semantic.cache.evicted", "reason", "expired").increment(expired);
+                dirty.add(scope);
+            }
+            if (index.removedCount() > index.size()) {
+                index.compact();
+                log.info("Compacted semantic cache index {} to {} entries", scope, index.size());
+                dirty.add(scope);
+            }
+        });
+    }
+
+    /**
+     * Index of a scope: already open, mapped from its snapshot, or new
+     */
+    private HnswIndex indexFor(String scope, int dimension) {
+        HnswIndex index = indexes.computeIfAbsent(scope, key -> {
+            Path snapshot = Paths.get(semanticCacheConfig.getIndexDirectory(), key + SNAPSHOT_SUFFIX);
+            if (Files.exists(snapshot)) {
+                try {
+                    HnswIndex loaded = HnswIndex.load(snapshot, semanticCacheConfig.getEfConstruction());
+                    log.info("Mapped semantic cache index {} with {} entries", key, loaded.size());
+                    return loaded;
+                } catch (IOException e) {
+                    log.warn("Ignoring unreadable semantic cache snapshot {}: {}", snapshot, e.getMessage());
+                }
+            }
+            return newIndex(dimension);
+        });
+
+        // The embedding model changed its output size: start over
+        if (index.getDimension() != dimension) {
+            index = newIndex(dimension);
+            indexes.put(scope, index);
+        }
+        return index;
+    }
+
+    private HnswIndex newIndex(int dimension) {
+        return new HnswIndex(dimension, semanticCacheConfig.getM(), semanticCacheConfig.getEfConstruction());
+    }
+
+    /**
+     * Index name for a model, embedding model and system prompt version
+     */
+    private String scopeOf(String model, String systemPrompt) {
+        String material = model + '\u0000' + semanticCacheConfig.getEmbeddingModel() + '\u0000' + systemPrompt;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(material.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Outcome of a lookup: where the prompt belongs and, on a hit, the cached answer
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Probe {
+        private final String scope;
+        private final float[] vector;
+        private final String answer;
+    }
+}
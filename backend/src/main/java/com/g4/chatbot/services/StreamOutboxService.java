@@ -0,0 +1,413 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.AsyncConfig;
+import com.g4.chatbot.config.StreamingConfig;
+import com.g4.chatbot.dto.admin.ActiveStreamDTO;
+import com.g4.chatbot.dto.chat.stream.ChatStreamEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives every chat stream a bounded outbox that is drained on the dedicated SSE writer executor.
+ * The producer side (Reactor Netty thread delivering Ollama chunks) only enqueues. A drain holds a writer thread
+ * while a write blocks on a client whose socket is full; a watchdog ends any stream whose write has been blocked
+ * longer than the write timeout (interrupting the write), so stalled clients cannot keep writers forever.
+ * When an outbox is full the configured slow-client policy applies.
+ */
+@Service
+@Slf4j
+public class StreamOutboxService {
+
+    @Autowired
+    private StreamingConfig streamingConfig;
+
+    @Autowired
+    @Qualifier(AsyncConfig.STREAM_WRITER_EXECUTOR)
+    private Executor writerExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // One outbox per attached client; a resumed stream may briefly have several
+    private final Set<Outbox> activeOutboxes = ConcurrentHashMap.newKeySet();
+
+    private Counter overflowCounter;
+
+    private Disposable watchdog;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("chat.stream.active", activeOutboxes, Set::size)
+                .description("Open chat streams")
+                .register(meterRegistry);
+        Gauge.builder("chat.stream.queue.depth.max", this, s -> s.activeOutboxes.stream()
+                        .mapToInt(Outbox::depth).max().orElse(0))
+                .description("Deepest per-stream outbox queue")
+                .register(meterRegistry);
+        Gauge.builder("chat.stream.lagging", this, s -> s.activeOutboxes.stream()
+                        .filter(Outbox::isLagging).count())
+                .description("Streams whose outbox is above the lagging threshold")
+                .register(meterRegistry);
+        overflowCounter = Counter.builder("chat.stream.overflow")
+                .tag("policy", streamingConfig.getSlowClient().getPolicy().name())
+                .description("Events that hit a full outbox")
+                .register(meterRegistry);
+
+        long timeoutMs = streamingConfig.getSlowClient().getWriteTimeoutMs();
+        long periodMs = Math.max(10, timeoutMs / 4);
+        watchdog = Schedulers.parallel().schedulePeriodically(this::abortStalledWrites, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.dispose();
+    }
+
+    /**
+     * Decouple a stream's producer from its SSE writer through a bounded outbox
+     */
+    public Flux<ChatStreamEvent> isolate(Flux<ChatStreamEvent> events, String streamId, Long userId) {
+        StreamingConfig.SlowClient settings = streamingConfig.getSlowClient();
+
+        return Flux.create(sink -> {
+            Outbox outbox = new Outbox(streamId, userId, sink, settings.getBufferSize(), settings.getPolicy());
+            activeOutboxes.add(outbox);
+
+            sink.onRequest(n -> outbox.drain());
+            sink.onDispose(() -> {
+                outbox.upstream.dispose();
+                activeOutboxes.remove(outbox);
+            });
+
+            outbox.upstream.update(events.subscribe(outbox::offer, outbox::fail, outbox::finish));
+        });
+    }
+
+    /**
+     * End every stream whose current write has been blocked longer than the write timeout
+     */
+    private void abortStalledWrites() {
+        long now = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(streamingConfig.getSlowClient().getWriteTimeoutMs());
+        for (Outbox outbox : activeOutboxes) {
+            outbox.abortIfStalled(now, timeout);
+        }
+    }
+
+    private void countAbort(String reason) {
+        Counter.builder("chat.stream.aborted")
+                .tag("reason", reason)
+                .description("Streams aborted because the client could not keep up")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Snapshot of open streams, most backed-up first
+     */
+    public List<ActiveStreamDTO> getActiveStreams() {
+        return activeOutboxes.stream()
+                .sorted(Comparator.comparingInt(Outbox::depth).reversed())
+                .map(outbox -> ActiveStreamDTO.builder()
+                        .streamId(outbox.streamId)
+                        .userId(outbox.userId)
+                        .queueDepth(outbox.depth())
+                        .capacity(outbox.capacity)
+                        .lagging(outbox.isLagging())
+                        .overflowCount(outbox.overflowCount)
+                        .policy(outbox.policy.name())
+                        .startedAt(outbox.startedAt)
+                        .build())
+                .toList();
+    }
+
+    private class Outbox {
+        final String streamId;
+        final Long userId;
+        final int capacity;
+        final StreamingConfig.SlowClientPolicy policy;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final Disposable.Swap upstream = Disposables.swap();
+
+        private final FluxSink<ChatStreamEvent> sink;
+        private final ArrayDeque<ChatStreamEvent> queue = new ArrayDeque<>();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        // Thread blocked in the current write and since when; guarded by writeLock so an interrupt never outlives it
+        private final Object writeLock = new Object();
+        private Thread writer;
+        private long writeStartedAt;
+        private boolean stalled;
+
+        // Text seen so far, only kept for DROP_TO_SUMMARY
+        private final StringBuilder fullText = new StringBuilder();
+        // COALESCE: UTF-8 size of the newest queued frame once tokens were merged into it (-1 until then)
+        private int tailBytes = -1;
+        // Id of the newest event taken from upstream, carried by merged/summary events so Last-Event-ID stays accurate
+        private String lastId;
+
+        private volatile long overflowCount;
+        private boolean dropping;
+        private boolean done;
+        private Throwable error;
+
+        Outbox(String streamId, Long userId, FluxSink<ChatStreamEvent> sink, int capacity,
+               StreamingConfig.SlowClientPolicy policy) {
+            this.streamId = streamId;
+            this.userId = userId;
+            this.sink = sink;
+            this.capacity = capacity;
+            this.policy = policy;
+        }
+
+        synchronized int depth() {
+            return queue.size();
+        }
+
+        boolean isLagging() {
+            return depth() >= capacity * streamingConfig.getSlowClient().getLaggingRatio();
+        }
+
+        void offer(ChatStreamEvent event) {
+            boolean abort = false;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (event.getId() != null) {
+                    lastId = event.getId();
+                }
+                if (!event.isMessage()) {
+                    // Control events are few and always delivered
+                    flushSummaryIfDropping();
+                    queue.addLast(event);
+                    tailBytes = -1;
+                } else {
+                    if (policy == StreamingConfig.SlowClientPolicy.DROP_TO_SUMMARY) {
+                        fullText.append((String) event.getData());
+                    }
+                    if (dropping) {
+                        return;
+                    }
+                    if (queue.size() < capacity) {
+                        queue.addLast(event);
+                        tailBytes = -1;
+                    } else {
+                        overflowCount++;
+                        overflowCounter.increment();
+                        abort = handleOverflow(event);
+                    }
+                }
+            }
+            if (abort) {
+                log.warn("Aborting stream {} of user {}: client could not keep up ({} queued events)",
+                        streamId, userId, capacity);
+                countAbort("overflow");
+                upstream.dispose();
+            }
+            drain();
+        }
+
+        /**
+         * Apply the slow-client policy to a message event that found the queue full; true if the stream must be aborted
+         */
+        private boolean handleOverflow(ChatStreamEvent event) {
+            switch (policy) {
+                case COALESCE -> {
+                    ChatStreamEvent last = queue.peekLast();
+                    if (last != null && last.isMessage()) {
+                        if (tailBytes < 0) {
+                            tailBytes = TokenCoalescer.utf8Length((String) last.getData());
+                        }
+                        int merged = tailBytes + TokenCoalescer.utf8Length((String) event.getData());
+                        if (merged <= streamingConfig.getSlowClient().getMaxCoalescedBytes()) {
+                            queue.pollLast();
+                            queue.addLast(ChatStreamEvent.message((String) last.getData() + event.getData()).withId(event.getId()));
+                            tailBytes = merged;
+                            return false;
+                        }
+                    }
+                    // Nothing to merge into (a control event is newest) or the merged frame is at its cap: the
+                    // client is too far behind to keep the outbox bounded
+                    return abortOverflow();
+                }
+                case DROP_TO_SUMMARY -> {
+                    log.debug("Stream {} is lagging, holding tokens until the summary", streamId);
+                    dropping = true;
+                    return false;
+                }
+                default -> {
+                    return abortOverflow();
+                }
+            }
+        }
+
+        private boolean abortOverflow() {
+            queue.clear();
+            queue.addLast(ChatStreamEvent.error("Stream aborted: client is not reading fast enough"));
+            done = true;
+            return true;
+        }
+
+        private void flushSummaryIfDropping() {
+            if (dropping) {
+                dropping = false;
+                queue.addLast(ChatStreamEvent.summary(fullText.toString()).withId(lastId));
+            }
+        }
+
+        void finish() {
+            synchronized (this) {
+                flushSummaryIfDropping();
+                done = true;
+            }
+            drain();
+        }
+
+        void fail(Throwable t) {
+            synchronized (this) {
+                error = t;
+                done = true;
+            }
+            drain();
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    writerExecutor.execute(this::drainLoop);
+                } catch (RejectedExecutionException e) {
+                    // No drain is running (this call owns it), so the sink can be ended from here
+                    log.warn("Aborting stream {} of user {}: no SSE writer available", streamId, userId);
+                    countAbort("writers-busy");
+                    end();
+                    sink.error(new IllegalStateException("Stream aborted: server is too busy to send it"));
+                }
+            }
+        }
+
+        /**
+         * Called by the watchdog: if the current write has been blocked too long, end the stream and interrupt the write
+         */
+        void abortIfStalled(long now, long timeout) {
+            synchronized (writeLock) {
+                if (writer == null || stalled || now - writeStartedAt < timeout) {
+                    return;
+                }
+                stalled = true;
+                // Counted before the interrupt, which is what lets the stream's error reach its subscriber
+                log.warn("Aborting stream {} of user {}: a write was blocked for over {} ms", streamId, userId,
+                        TimeUnit.NANOSECONDS.toMillis(timeout));
+                countAbort("write-timeout");
+                writer.interrupt();
+            }
+            end();
+        }
+
+        private void end() {
+            synchronized (this) {
+                queue.clear();
+                done = true;
+            }
+            upstream.dispose();
+        }
+
+        /**
+         * Write one event, which may block on a client whose socket is full; false once the stream was
+         * ended for a write that blocked too long
+         */
+        private boolean write(ChatStreamEvent event) {
+            synchronized (writeLock) {
+                if (stalled) {
+                    return false;
+                }
+                writer = Thread.currentThread();
+                writeStartedAt = System.nanoTime();
+            }
+            try {
+                sink.next(event);
+            } finally {
+                synchronized (writeLock) {
+                    writer = null;
+                    if (stalled) {
+                        // Clear the watchdog's interrupt if the write returned on its own
+                        Thread.interrupted();
+                    }
+                }
+            }
+            boolean aborted;
+            synchronized (writeLock) {
+                aborted = stalled;
+            }
+            if (aborted) {
+                sink.error(new IllegalStateException("Stream aborted: client is not reading"));
+            }
+            return !aborted;
+        }
+
+        /**
+         * Runs on a writer thread; emits queued events as far as downstream demand allows
+         */
+        private void drainLoop() {
+            int missed = 1;
+            for (;;) {
+                for (;;) {
+                    if (sink.isCancelled()) {
+                        return;
+                    }
+                    ChatStreamEvent next;
+                    synchronized (this) {
+                        if (queue.isEmpty()) {
+                            if (done) {
+                                if (error != null) {
+                                    sink.error(error);
+                                } else {
+                                    sink.complete();
+                                }
+                                return;
+                            }
+                            break;
+                        }
+                        if (sink.requestedFromDownstream() == 0) {
+                            break;
+                        }
+                        next = queue.pollFirst();
+                        if (queue.isEmpty()) {
+                            tailBytes = -1;
+                        }
+                    }
+                    if (!write(next)) {
+                        return;
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
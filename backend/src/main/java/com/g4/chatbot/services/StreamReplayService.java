@@ -0,0 +1,428 @@
+package com.g4.chatbot.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.g4.chatbot.config.StreamingConfig;
+import com.g4.chatbot.dto.chat.stream.ChatStreamEvent;
+import com.g4.chatbot.exception.BadRequestException;
+import com.g4.chatbot.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes chat streams resumable. A published stream's generation is owned here rather than by the
+ * HTTP connection: every event gets a "streamId:seq" id and is appended to a bounded per-stream ring
+ * of UTF-8 encoded records. Clients attach and detach freely; reconnecting with Last-Event-ID replays
+ * the missed events from the ring and then follows the live tail. When no client is attached the
+ * generation keeps running for a grace period before it is cancelled.
+ */
+@Service
+@Slf4j
+public class StreamReplayService {
+
+    private static final int INITIAL_RING_BYTES = 4 * 1024;
+
+    @Autowired
+    private StreamingConfig streamingConfig;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, ReplayStream> streams = new ConcurrentHashMap<>();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    private Counter resumedCounter;
+    private Counter replayedCounter;
+    private Counter gapCounter;
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("chat.stream.replay.streams", streams, Map::size)
+                .description("Streams held for replay (live or recently finished)")
+                .register(meterRegistry);
+        Gauge.builder("chat.stream.replay.bytes", bufferedBytes, AtomicLong::get)
+                .description("Bytes allocated by replay ring buffers")
+                .register(meterRegistry);
+        resumedCounter = Counter.builder("chat.stream.resumed")
+                .description("Reconnects that resumed a stream via Last-Event-ID")
+                .register(meterRegistry);
+        replayedCounter = Counter.builder("chat.stream.replayed.events")
+                .description("Events replayed to reconnecting clients")
+                .register(meterRegistry);
+        gapCounter = Counter.builder("chat.stream.replay.gaps")
+                .description("Resumes whose missed events had already left the ring buffer")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return streamingConfig.getResume().isEnabled();
+    }
+
+    /**
+     * Start the generation as a resumable stream and attach the first client to it.
+     * Falls back to the plain (connection-owned) stream when resume is disabled or the memory cap is reached.
+     */
+    public Flux<ChatStreamEvent> publish(String streamId, Long userId, Flux<ChatStreamEvent> generation) {
+        if (!isEnabled() || !reserve(INITIAL_RING_BYTES)) {
+            return generation;
+        }
+
+        ReplayStream stream = new ReplayStream(streamId, userId);
+        streams.put(streamId, stream);
+        // Nobody is attached until the returned Flux is subscribed
+        stream.startGraceTimer();
+        stream.generation.update(generation.subscribe(stream::onEvent, stream::onError, stream::onComplete));
+
+        return stream.attach(0);
+    }
+
+    /**
+     * Reattach to a stream after a disconnect, replaying everything after the given Last-Event-ID
+     */
+    public Flux<ChatStreamEvent> resume(String lastEventId, Long userId) {
+        int separator = lastEventId.lastIndexOf(':');
+        long lastSeq;
+        try {
+            lastSeq = Long.parseLong(lastEventId.substring(separator + 1).trim());
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new BadRequestException("Invalid Last-Event-ID: " + lastEventId);
+        }
+        if (separator <= 0) {
+            throw new BadRequestException("Invalid Last-Event-ID: " + lastEventId);
+        }
+
+        ReplayStream stream = streams.get(lastEventId.substring(0, separator).trim());
+        if (stream == null || !stream.userId.equals(userId)) {
+            throw new ResourceNotFoundException("Stream not found or no longer resumable");
+        }
+
+        resumedCounter.increment();
+        log.debug("User {} resuming stream {} after event {}", userId, stream.streamId, lastSeq);
+        return stream.attach(lastSeq);
+    }
+
+    /**
+     * Account for ring memory against the global cap, evicting finished streams (oldest first) if needed
+     */
+    private boolean reserve(int bytes) {
+        long max = streamingConfig.getResume().getMaxTotalBytes();
+        if (bufferedBytes.get() + bytes > max) {
+            List<ReplayStream> finished = streams.values().stream()
+                    .filter(ReplayStream::isFinished)
+                    .sorted(Comparator.comparingLong(s -> s.finishedAt))
+                    .toList();
+            for (ReplayStream stream : finished) {
+                if (bufferedBytes.get() + bytes <= max) {
+                    break;
+                }
+                evict(stream);
+            }
+        }
+        if (bufferedBytes.addAndGet(bytes) > max) {
+            bufferedBytes.addAndGet(-bytes);
+            log.warn("Replay buffer cap of {} bytes reached", max);
+            return false;
+        }
+        return true;
+    }
+
+    private void evict(ReplayStream stream) {
+        if (streams.remove(stream.streamId, stream)) {
+            bufferedBytes.addAndGet(-stream.ring.capacity());
+            stream.release();
+        }
+    }
+
+    private class ReplayStream {
+        final String streamId;
+        final Long userId;
+        final EventRing ring = new EventRing();
+        final Disposable.Swap generation = Disposables.swap();
+
+        private final List<FluxSink<ChatStreamEvent>> subscribers = new ArrayList<>();
+        private final Disposable.Swap timer = Disposables.swap();
+        private long nextSeq = 1;
+        private boolean finished;
+        private Throwable error;
+        volatile long finishedAt;
+
+        ReplayStream(String streamId, Long userId) {
+            this.streamId = streamId;
+            this.userId = userId;
+        }
+
+        boolean isFinished() {
+            return finishedAt != 0;
+        }
+
+        synchronized void onEvent(ChatStreamEvent event) {
+            long seq = nextSeq++;
+            ChatStreamEvent stamped = event.withId(streamId + ":" + seq);
+            ring.append(seq, stamped);
+            for (FluxSink<ChatStreamEvent> sink : List.copyOf(subscribers)) {
+                sink.next(stamped);
+            }
+        }
+
+        synchronized void onComplete() {
+            finish();
+            List<FluxSink<ChatStreamEvent>> attached = List.copyOf(subscribers);
+            subscribers.clear();
+            attached.forEach(FluxSink::complete);
+        }
+
+        synchronized void onError(Throwable t) {
+            error = t;
+            finish();
+            List<FluxSink<ChatStreamEvent>> attached = List.copyOf(subscribers);
+            subscribers.clear();
+            attached.forEach(sink -> sink.error(t));
+        }
+
+        private void finish() {
+            finished = true;
+            finishedAt = System.nanoTime();
+            timer.update(Schedulers.parallel().schedule(() -> evict(this),
+                    streamingConfig.getResume().getRetentionSeconds(), TimeUnit.SECONDS));
+        }
+
+        /**
+         * Replay the ring after lastSeq, then follow the live tail (or terminate if the generation is over)
+         */
+        Flux<ChatStreamEvent> attach(long lastSeq) {
+            return Flux.create(sink -> {
+                synchronized (this) {
+                    if (lastSeq > 0) {
+                        if (lastSeq + 1 < ring.firstSeq()) {
+                            gapCounter.increment();
+                            sink.next(ChatStreamEvent.error("Missed events are no longer available, please retry the message"));
+                            sink.complete();
+                            return;
+                        }
+                        List<ChatStreamEvent> missed = ring.readAfter(lastSeq);
+                        replayedCounter.increment(missed.size());
+                        missed.forEach(sink::next);
+                    } else {
+                        ring.readAfter(0).forEach(sink::next);
+                    }
+
+                    if (finished) {
+                        if (error != null) {
+                            sink.error(error);
+                        } else {
+                            sink.complete();
+                        }
+                        return;
+                    }
+                    subscribers.add(sink);
+                    timer.update(null);
+                }
+                sink.onDispose(() -> detach(sink));
+            }, FluxSink.OverflowStrategy.BUFFER);
+        }
+
+        private synchronized void detach(FluxSink<ChatStreamEvent> sink) {
+            if (subscribers.remove(sink) && subscribers.isEmpty() && !finished) {
+                startGraceTimer();
+            }
+        }
+
+        /**
+         * Cancel the generation unless a client attaches within the grace period
+         */
+        synchronized void startGraceTimer() {
+            long grace = streamingConfig.getResume().getDetachGraceSeconds();
+            if (grace <= 0) {
+                cancelIfUnattended();
+                return;
+            }
+            timer.update(Schedulers.parallel().schedule(this::cancelIfUnattended, grace, TimeUnit.SECONDS));
+        }
+
+        private synchronized void cancelIfUnattended() {
+            if (!subscribers.isEmpty() || finished) {
+                return;
+            }
+            log.debug("No client reattached to stream {}, cancelling generation", streamId);
+            // Runs the generation's cancel hooks (partial answer handling); the ring stays replayable until retention ends
+            generation.dispose();
+            finish();
+        }
+
+        void release() {
+            timer.dispose();
+            generation.dispose();
+        }
+
+        /**
+         * Ring of encoded events: [seq:8][type:1][length:4][utf-8 payload]. Grows from a small initial size
+         * up to the per-stream cap, after which the oldest records are overwritten.
+         */
+        private class EventRing {
+            private static final int HEADER_BYTES = 13;
+
+            private byte[] buffer = new byte[INITIAL_RING_BYTES];
+            private int head;   // offset of the oldest record
+            private int used;
+            private long firstSeq = 1;
+
+            int capacity() {
+                return buffer.length;
+            }
+
+            long firstSeq() {
+                return firstSeq;
+            }
+
+            void append(long seq, ChatStreamEvent event) {
+                byte[] payload = encode(event).getBytes(StandardCharsets.UTF_8);
+                int size = HEADER_BYTES + payload.length;
+
+                if (used + size > buffer.length) {
+                    grow(used + size);
+                }
+                if (size > buffer.length) {
+                    // Larger than the whole ring: it cannot be replayed, nor can anything before it
+                    head = 0;
+                    used = 0;
+                    firstSeq = seq + 1;
+                    return;
+                }
+                while (used + size > buffer.length) {
+                    dropOldest();
+                }
+                if (used == 0) {
+                    firstSeq = seq;
+                }
+
+                int pos = (head + used) % buffer.length;
+                pos = putLong(pos, seq);
+                buffer[pos] = (byte) event.getType().ordinal();
+                pos = (pos + 1) % buffer.length;
+                pos = putInt(pos, payload.length);
+                put(pos, payload);
+                used += size;
+            }
+
+            List<ChatStreamEvent> readAfter(long lastSeq) {
+                List<ChatStreamEvent> events = new ArrayList<>();
+                int pos = head;
+                int remaining = used;
+                while (remaining > 0) {
+                    long seq = getLong(pos);
+                    ChatStreamEvent.EventType type = ChatStreamEvent.EventType.values()[buffer[(pos + 8) % buffer.length]];
+                    int length = getInt((pos + 9) % buffer.length);
+                    int payloadPos = (pos + HEADER_BYTES) % buffer.length;
+                    if (seq > lastSeq) {
+                        String payload = new String(get(payloadPos, length), StandardCharsets.UTF_8);
+                        // Non-message payloads stay as their JSON text; SSE writes it out unchanged
+                        events.add(new ChatStreamEvent(type, payload, streamId + ":" + seq));
+                    }
+                    pos = (payloadPos + length) % buffer.length;
+                    remaining -= HEADER_BYTES + length;
+                }
+                return events;
+            }
+
+            private void grow(int needed) {
+                int max = Math.max(INITIAL_RING_BYTES, streamingConfig.getResume().getMaxBytesPerStream());
+                int target = Math.min(max, Math.max(needed, buffer.length * 2));
+                if (target <= buffer.length || !reserve(target - buffer.length)) {
+                    return;
+                }
+                byte[] grown = new byte[target];
+                byte[] content = get(head, used);
+                System.arraycopy(content, 0, grown, 0, used);
+                buffer = grown;
+                head = 0;
+            }
+
+            private void dropOldest() {
+                int length = getInt((head + 9) % buffer.length);
+                int size = HEADER_BYTES + length;
+                head = (head + size) % buffer.length;
+                used -= size;
+                firstSeq = used > 0 ? getLong(head) : firstSeq + 1;
+            }
+
+            private String encode(ChatStreamEvent event) {
+                if (event.getData() instanceof String text) {
+                    return text;
+                }
+                try {
+                    return objectMapper.writeValueAsString(event.getData());
+                } catch (JsonProcessingException e) {
+                    throw new IllegalStateException("Could not encode stream event", e);
+                }
+            }
+
+            private int putLong(int pos, long value) {
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    buffer[pos] = (byte) (value >>> shift);
+                    pos = (pos + 1) % buffer.length;
+                }
+                return pos;
+            }
+
+            private int putInt(int pos, int value) {
+                for (int shift = 24; shift >= 0; shift -= 8) {
+                    buffer[pos] = (byte) (value >>> shift);
+                    pos = (pos + 1) % buffer.length;
+                }
+                return pos;
+            }
+
+            private void put(int pos, byte[] bytes) {
+                int first = Math.min(bytes.length, buffer.length - pos);
+                System.arraycopy(bytes, 0, buffer, pos, first);
+                System.arraycopy(bytes, first, buffer, 0, bytes.length - first);
+            }
+
+            private long getLong(int pos) {
+                long value = 0;
+                for (int i = 0; i < 8; i++) {
+                    value = (value << 8) | (buffer[(pos + i) % buffer.length] & 0xFF);
+                }
+                return value;
+            }
+
+            private int getInt(int pos) {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    value = (value << 8) | (buffer[(pos + i) % buffer.length] & 0xFF);
+                }
+                return value;
+            }
+
+            private byte[] get(int pos, int length) {
+                byte[] bytes = new byte[length];
+                int first = Math.min(length, buffer.length - pos);
+                System.arraycopy(buffer, pos, bytes, 0, first);
+                System.arraycopy(buffer, 0, bytes, first, length - first);
+                return bytes;
+            }
+        }
+    }
+}
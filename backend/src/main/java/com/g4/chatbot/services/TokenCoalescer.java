@@ -0,0 +1,166 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.StreamingConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces streamed LLM tokens into larger SSE frames to cut per-token writes, flushes and
+ * browser re-renders. The first token of a stream is always emitted on its own.
+ */
+@Service
+@Slf4j
+public class TokenCoalescer {
+    
+    @Autowired
+    private StreamingConfig streamingConfig;
+    
+    // Flush timers; tests swap in a virtual-time scheduler
+    private Scheduler timerScheduler = Schedulers.parallel();
+    
+    /**
+     * Resolve the policy for a request: explicit override if given, configured default otherwise
+     */
+    public StreamingConfig.CoalescePolicy resolvePolicy(String override) {
+        if (override == null || override.isBlank()) {
+            return streamingConfig.getCoalescing().getPolicy();
+        }
+        return StreamingConfig.CoalescePolicy.valueOf(override.trim().toUpperCase(Locale.ENGLISH));
+    }
+    
+    /**
+     * Apply the coalescing policy to a token flux
+     */
+    public Flux<String> coalesce(Flux<String> tokens, StreamingConfig.CoalescePolicy policy) {
+        if (policy == StreamingConfig.CoalescePolicy.NONE) {
+            return tokens;
+        }
+        
+        StreamingConfig.Coalescing settings = streamingConfig.getCoalescing();
+        long flushDelayMs = policy == StreamingConfig.CoalescePolicy.TIME 
+                ? settings.getWindowMs() 
+                : settings.getMaxDelayMs();
+        
+        return Flux.create(sink -> {
+            Batch batch = new Batch(sink, policy, settings.getMaxBytes(), flushDelayMs);
+            Disposable upstream = tokens.subscribe(batch::onToken, batch::onError, batch::onComplete);
+            sink.onDispose(() -> {
+                upstream.dispose();
+                batch.cancelTimer();
+            });
+        });
+    }
+    
+    /**
+     * Per-stream buffer; upstream tokens and timer flushes are serialized on the instance lock
+     */
+    private class Batch {
+        private final FluxSink<String> sink;
+        private final StreamingConfig.CoalescePolicy policy;
+        private final int maxBytes;
+        private final long flushDelayMs;
+        
+        private final StringBuilder buffer = new StringBuilder();
+        private int bufferedBytes;
+        private boolean firstTokenSent;
+        private Disposable timer;
+        
+        Batch(FluxSink<String> sink, StreamingConfig.CoalescePolicy policy, int maxBytes, long flushDelayMs) {
+            this.sink = sink;
+            this.policy = policy;
+            this.maxBytes = maxBytes;
+            this.flushDelayMs = flushDelayMs;
+        }
+        
+        synchronized void onToken(String token) {
+            if (!firstTokenSent) {
+                // Keep time-to-first-token unchanged
+                firstTokenSent = true;
+                sink.next(token);
+                return;
+            }
+            
+            buffer.append(token);
+            bufferedBytes += utf8Length(token);
+            
+            if (bufferedBytes >= maxBytes 
+                    || (policy == StreamingConfig.CoalescePolicy.SENTENCE && endsSentence(buffer))) {
+                flush();
+            } else if (timer == null) {
+                timer = timerScheduler.schedule(this::onTimer, flushDelayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        
+        synchronized void onTimer() {
+            timer = null;
+            flush();
+        }
+        
+        synchronized void onError(Throwable error) {
+            flush();
+            sink.error(error);
+        }
+        
+        synchronized void onComplete() {
+            flush();
+            sink.complete();
+        }
+        
+        synchronized void cancelTimer() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+        }
+        
+        private void flush() {
+            cancelTimer();
+            if (buffer.length() == 0) {
+                return;
+            }
+            String frame = buffer.toString();
+            buffer.setLength(0);
+            bufferedBytes = 0;
+            sink.next(frame);
+        }
+    }
+    
+    private static boolean endsSentence(CharSequence text) {
+        int i = text.length() - 1;
+        while (i >= 0 && text.charAt(i) == ' ') {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        char c = text.charAt(i);
+        return c == '.' || c == '!' || c == '?' || c == '\n' || c == ':' || c == ';';
+    }
+    
+    static int utf8Length(String s) {
+        int bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,11 @@
+package com.g4.chatbot.services;
+
+/**
+ * Counts the tokens a model sees for a piece of text. Implementations are thread-safe.
+ */
+public interface Tokenizer {
+
+    String getName();
+
+    int countTokens(CharSequence text);
+}
@@ -0,0 +1,69 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.TokenizerConfig;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Picks the tokenizer of each model. Configured vocabularies are loaded once at startup;
+ * a vocabulary that is missing or unreadable falls back to {@link EstimateTokenizer} with a warning.
+ */
+@Service
+@Slf4j
+public class TokenizerService {
+
+    @Autowired
+    private TokenizerConfig tokenizerConfig;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    private final Map<String, Tokenizer> vocabularies = new ConcurrentHashMap<>();
+    private final Map<String, Tokenizer> models = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        tokenizerConfig.getVocabularies().forEach((name, vocabulary) -> vocabularies.put(name, load(name, vocabulary)));
+    }
+
+    public Tokenizer forModel(String model) {
+        return models.computeIfAbsent(model != null ? model : "", key -> {
+            String vocabulary = tokenizerConfig.getVocabularyFor(model);
+            if (vocabulary == null || vocabulary.isBlank()) {
+                return EstimateTokenizer.INSTANCE;
+            }
+            Tokenizer tokenizer = vocabularies.get(vocabulary);
+            if (tokenizer == null) {
+                log.warn("Model {} uses unknown tokenizer vocabulary '{}', estimating its tokens", key, vocabulary);
+                return EstimateTokenizer.INSTANCE;
+            }
+            return tokenizer;
+        });
+    }
+
+    public int countTokens(String model, String text) {
+        return text == null ? 0 : forModel(model).countTokens(text);
+    }
+
+    private Tokenizer load(String name, TokenizerConfig.Vocabulary vocabulary) {
+        long start = System.nanoTime();
+        try (InputStream in = resourceLoader.getResource(vocabulary.getLocation()).getInputStream()) {
+            BpeTokenizer tokenizer = BpeTokenizer.load(name, in, vocabulary.getPattern());
+            log.info("Loaded tokenizer vocabulary '{}' ({} tokens) in {} ms", name, tokenizer.getVocabularySize(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return tokenizer;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not load tokenizer vocabulary '{}' from {}, estimating its tokens: {}",
+                    name, vocabulary.getLocation(), e.getMessage());
+            return EstimateTokenizer.INSTANCE;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.g4.chatbot.repos;
+
+import com.g4.chatbot.models.ChatSession;
+import com.g4.chatbot.models.Message;
+import com.g4.chatbot.models.User;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares loading a whole session and keeping the last N messages with the bounded
+ * last-N projection query, across session sizes (embedded H2; timings are printed).
+ * The equality check always runs; the timing rounds are skipped in normal builds,
+ * run them with: mvn test -Dtest=MessageHistoryQueryBenchmarkTest -Djmh=true
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+class MessageHistoryQueryBenchmarkTest {
+
+    private static final int WINDOW = 20;
+    private static final int[] SESSION_SIZES = {20, 200, 2000};
+    private static final int ROUNDS = 30;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void boundedQueryReturnsSameWindow() {
+        for (int size : new int[] {WINDOW - 1, WINDOW, WINDOW + 1}) {
+            String sessionId = seedSession(size);
+
+            assertEquals(fullLoadWindow(sessionId), boundedWindow(sessionId), "bounded query must return the same window");
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "jmh", matches = "true")
+    void boundedQueryIsFasterThanLoadingTheSession() {
+        System.out.printf("%-10s %16s %16s%n", "messages", "full load (ms)", "last-N (ms)");
+        for (int size : SESSION_SIZES) {
+            String sessionId = seedSession(size);
+
+            List<String> expected = fullLoadWindow(sessionId);
+            List<String> actual = boundedWindow(sessionId);
+            assertEquals(expected, actual, "bounded query must return the same window");
+
+            double fullMs = averageMillis(() -> fullLoadWindow(sessionId));
+            double boundedMs = averageMillis(() -> boundedWindow(sessionId));
+            System.out.printf("%-10d %16.3f %16.3f%n", size, fullMs, boundedMs);
+        }
+    }
+
+    private List<String> fullLoadWindow(String sessionId) {
+        List<Message> all = messageRepository.findBySessionIdOrderByTimestampAsc(sessionId);
+        return all.subList(Math.max(0, all.size() - WINDOW), all.size()).stream()
+                .map(Message::getContent)
+                .toList();
+    }
+
+    private List<String> boundedWindow(String sessionId) {
+        List<MessageRepository.ContextMessage> recent = messageRepository.findRecentBySessionId(sessionId, Limit.of(WINDOW));
+        List<String> window = new ArrayList<>(recent.size());
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            window.add(recent.get(i).getContent());
+        }
+        return window;
+    }
+
+    private double averageMillis(Supplier<List<String>> query) {
+        // Warm up, then measure with a cleared persistence context so every round reads from the database
+        query.get();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            entityManager.clear();
+            query.get();
+        }
+        return (System.nanoTime() - start) / 1e6 / ROUNDS;
+    }
+
+    private String seedSession(int size) {
+        User user = new User();
+        String name = "bench-" + UUID.randomUUID();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPasswordHash("hash");
+        user.setSalt("salt");
+        entityManager.persist(user);
+
+        ChatSession session = new ChatSession();
+        session.setSessionId(UUID.randomUUID().toString());
+        session.setUserId(user.getId());
+        session.setTitle("benchmark");
+        session.setModel("llama3");
+        entityManager.persist(session);
+
+        String filler = "x".repeat(400);
+        for (int i = 0; i < size; i++) {
+            Message message = new Message();
+            message.setSessionId(session.getSessionId());
+            message.setRole(i % 2 == 0 ? Message.MessageRole.USER : Message.MessageRole.ASSISTANT);
+            message.setContent("message " + i + " " + filler);
+            message.setMetadata("{\"n\":" + i + "}");
+            entityManager.persist(message);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return session.getSessionId();
+    }
+}
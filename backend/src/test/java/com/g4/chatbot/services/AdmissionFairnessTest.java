@@ -0,0 +1,109 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.AdmissionConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Discrete-time simulation of the admission queue: every admitted call takes one tick.
+ * One user floods the model with requests while light users send one request now and then.
+ */
+class AdmissionFairnessTest {
+
+    private static final int LIMIT = 2;
+    private static final int FLOOD = 40;
+    private static final int LIGHT_USERS = 8;
+
+    private int tick;
+    private final List<AdmissionService.Ticket> running = new ArrayList<>();
+
+    @Test
+    void lightUsersStayFastWhileOneUserFloods() {
+        Map<Long, Integer> lightWaits = simulate(true);
+
+        lightWaits.values().forEach(wait -> assertTrue(wait <= 1, "light user waited " + wait + " ticks: " + lightWaits));
+    }
+
+    @Test
+    void fifoQueueMakesLightUsersWaitBehindTheFlood() {
+        Map<Long, Integer> lightWaits = simulate(false);
+
+        // Same workload without fairness: everybody queues behind the flood
+        assertTrue(lightWaits.values().stream().allMatch(wait -> wait >= 5), "expected long waits: " + lightWaits);
+    }
+
+    @Test
+    void higherPriorityClassGetsLargerShare() {
+        AdmissionService service = service(true);
+        List<String> admittedOrder = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            submit(service.ticket("llama3", 1L, "user"), () -> admittedOrder.add("user"));
+            submit(service.ticket("llama3", 2L, "admin"), () -> admittedOrder.add("admin"));
+        }
+        while (admittedOrder.size() < 20) {
+            releaseRunning();
+        }
+
+        // Weight 8 vs 2: the admin's ten requests are served within the first fourteen slots
+        long adminsEarly = admittedOrder.subList(0, 14).stream().filter("admin"::equals).count();
+        assertEquals(10, adminsEarly, "admission order: " + admittedOrder);
+    }
+
+    private Map<Long, Integer> simulate(boolean fairness) {
+        AdmissionService service = service(fairness);
+        Map<Long, Integer> lightWaits = new HashMap<>();
+
+        for (int i = 0; i < FLOOD; i++) {
+            submit(service.ticket("llama3", 1L, "user"), () -> { });
+        }
+        for (tick = 0; tick < FLOOD; tick++) {
+            if (tick % 2 == 0 && tick / 2 < LIGHT_USERS) {
+                long userId = 100L + tick / 2;
+                int submittedAt = tick;
+                submit(service.ticket("llama3", userId, "user"), () -> lightWaits.put(userId, tick - submittedAt));
+            }
+            releaseRunning();
+        }
+        assertEquals(LIGHT_USERS, lightWaits.size(), "all light users should have been admitted");
+        return lightWaits;
+    }
+
+    private void submit(AdmissionService.Ticket ticket, Runnable onAdmitted) {
+        ticket.positions().subscribe(position -> { }, error -> { }, () -> {
+            running.add(ticket);
+            onAdmitted.run();
+        });
+    }
+
+    /**
+     * Finish every running call; freed slots go to the next tickets in queue order
+     */
+    private void releaseRunning() {
+        List<AdmissionService.Ticket> finished = new ArrayList<>(running);
+        running.clear();
+        finished.forEach(AdmissionService.Ticket::release);
+    }
+
+    private AdmissionService service(boolean fairness) {
+        AdmissionConfig config = new AdmissionConfig();
+        config.setMaxConcurrent(LIMIT);
+        config.setMaxQueueSize(1000);
+        config.setMaxWaitSeconds(600);
+        config.getFairness().setEnabled(fairness);
+
+        AdmissionService service = new AdmissionService();
+        ReflectionTestUtils.setField(service, "admissionConfig", config);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        return service;
+    }
+}
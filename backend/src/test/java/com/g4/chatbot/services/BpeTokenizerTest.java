@@ -0,0 +1,162 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.TokenizerConfig;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks BpeTokenizer against the reference cl100k_base encoding of JTokkit (a tiktoken port), using the
+ * vocabulary file shipped in the JTokkit jar
+ */
+class BpeTokenizerTest {
+
+    private static final String CL100K_RESOURCE = "/com/knuddels/jtokkit/cl100k_base.tiktoken";
+
+    private static BpeTokenizer tokenizer;
+    // Same vocabulary with the pattern spelled differently, so pieces are split by java.util.regex
+    private static BpeTokenizer regexTokenizer;
+    private static Encoding reference;
+
+    @BeforeAll
+    static void load() throws IOException {
+        try (InputStream in = BpeTokenizerTest.class.getResourceAsStream(CL100K_RESOURCE)) {
+            tokenizer = BpeTokenizer.load("cl100k", in, TokenizerConfig.CL100K_PATTERN);
+        }
+        try (InputStream in = BpeTokenizerTest.class.getResourceAsStream(CL100K_RESOURCE)) {
+            regexTokenizer = BpeTokenizer.load("cl100k-regex", in, "(?:" + TokenizerConfig.CL100K_PATTERN + ")");
+        }
+        reference = Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+    }
+
+    @Test
+    void loadsTheWholeVocabulary() {
+        assertEquals(100256, tokenizer.getVocabularySize());
+    }
+
+    @Test
+    void matchesReferenceTokensOnSamples() {
+        List<String> samples = List.of(
+                "",
+                "Hello, world!",
+                "The quick brown fox jumps over the lazy dog. I'LL be there; we'd've known, they're sure.",
+                "Merhaba dünya! Yapay zekâ ile sohbet etmek çok eğlenceli, değil mi? Şimdi ığdır'a gidiyoruz.",
+                "Привет, мир! Как дела? Съешь же ещё этих мягких французских булок.",
+                "你好，世界！今天天气很好，我们去公园散步吧。日本語のテキストも混ぜます。",
+                "مرحبا بالعالم — שלום עולם — नमस्ते दुनिया",
+                "Emoji 😀👍🏽👨‍👩‍👧 and flags 🇹🇷🇺🇸 mixed in",
+                "Numbers 1234567 3.14159 -42 1e10 0x7FFF_FFFF 2024-07-19",
+                "    indented\n\n\n\ttabs\r\n  trailing   \n",
+                "public static int main(String[] args) { return args.length > 0 ? 1 : 0; } // done",
+                "{\"role\":\"assistant\",\"content\":\"G\\u00fcnayd\\u0131n\"}",
+                "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa",
+                "!!!???...,,,;;;:::---___===+++***&&&^^^%%%$$$###@@@",
+                "tabs\t\tand\u00a0no-break\u2003spaces\u3000 \n \n  x  ",
+                "Roman \u2167 and \u00bd, Arabic-Indic \u0661\u0662\u0663\u0664",
+                "'s 'S 'tis 'RE 'Ve 'm 'LL 'd 'x '");
+        for (String sample : samples) {
+            assertSameTokens(sample);
+        }
+    }
+
+    @Test
+    void matchesReferenceTokensOnSourceCode() throws IOException {
+        String source = Files.readString(Path.of("src/main/java/com/g4/chatbot/services/BpeTokenizer.java"));
+        assertSameTokens(source);
+    }
+
+    @Test
+    void matchesReferenceTokensOnRandomText() {
+        Random random = new Random(42);
+        // ASCII, Latin-1 and Latin Extended, Cyrillic, Arabic-Indic digits, Unicode spaces, letter and other
+        // numbers, CJK, emoji
+        int[][] ranges = {{0x20, 0x7E}, {0xA0, 0x24F}, {0x400, 0x4FF}, {0x660, 0x669}, {0x2000, 0x200A},
+                {0x2160, 0x2188}, {0xB2, 0xBE}, {0x3000, 0x3000}, {0x4E00, 0x9FFF}, {0x1F300, 0x1F64F}};
+        String[] fragments = {"'s", "'LL", "'Re", "'ve", "'x", "\r\n", "  \n ", "\t", "123456", " ...", "?!\n\n"};
+        for (int sample = 0; sample < 2000; sample++) {
+            StringBuilder text = new StringBuilder();
+            int length = 1 + random.nextInt(80);
+            for (int i = 0; i < length; i++) {
+                int[] range = random.nextInt(3) == 0 ? ranges[random.nextInt(ranges.length)] : ranges[0];
+                text.appendCodePoint(range[0] + random.nextInt(range[1] - range[0] + 1));
+                if (random.nextInt(8) == 0) {
+                    text.append(random.nextBoolean() ? ' ' : '\n');
+                }
+                if (random.nextInt(12) == 0) {
+                    text.append(fragments[random.nextInt(fragments.length)]);
+                }
+            }
+            assertSameTokens(text.toString());
+        }
+    }
+
+    @Test
+    void concurrentCallersGetTheirOwnScratch() throws InterruptedException {
+        String text = "The quick brown fox jumps over the lazy dog. Съешь же ещё этих мягких французских булок. 你好，世界！";
+        int expected = reference.countTokensOrdinary(text);
+        // More threads than the scratch pool holds
+        ExecutorService executor = Executors.newFixedThreadPool(64);
+        List<Future<Integer>> counts = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            counts.add(executor.submit(() -> tokenizer.countTokens(text) + regexTokenizer.countTokens(text)));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        for (Future<Integer> count : counts) {
+            assertEquals(2 * expected, assertDoesNotThrow(() -> count.get()));
+        }
+    }
+
+    @Test
+    void hugePieceDoesNotLeaveGrownScratchInThePool() {
+        // One 100k-character piece grows the scratch arrays far beyond their usual size
+        assertEquals(reference.countTokensOrdinary("a".repeat(100_000)), tokenizer.countTokens("a".repeat(100_000)));
+
+        Queue<?> pool = (Queue<?>) ReflectionTestUtils.getField(tokenizer, "scratchPool");
+        for (Object scratch : pool) {
+            assertTrue(((byte[]) ReflectionTestUtils.getField(scratch, "bytes")).length <= 16 * 1024);
+            assertTrue(((int[]) ReflectionTestUtils.getField(scratch, "positions")).length <= 16 * 1024);
+        }
+    }
+
+    @Test
+    void lengthEstimateUndercountsNonLatinText() {
+        String chinese = "你好，世界！今天天气很好，我们去公园散步吧。";
+        int actual = tokenizer.countTokens(chinese);
+        assertTrue(actual > chinese.length() / 4 * 3, "cl100k tokens: " + actual);
+        assertTrue(EstimateTokenizer.INSTANCE.countTokens(chinese) >= actual,
+                "the fallback estimate should not undercount CJK text");
+    }
+
+    private static void assertSameTokens(String text) {
+        List<Integer> ids = new ArrayList<>();
+        int count = tokenizer.encode(text, ids::add);
+
+        int[] expected = reference.encodeOrdinary(text).toArray();
+        assertArrayEquals(expected, ids.stream().mapToInt(Integer::intValue).toArray(), "tokens of: " + text);
+        assertEquals(expected.length, count);
+        assertEquals(expected.length, tokenizer.countTokens(text));
+        assertEquals(expected.length, regexTokenizer.countTokens(text), "regex split of: " + text);
+    }
+}
@@ -0,0 +1,229 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.AdmissionConfig;
+import com.g4.chatbot.config.OllamaConfig;
+import com.g4.chatbot.config.StreamingConfig;
+import com.g4.chatbot.dto.chat.ChatRequest;
+import com.g4.chatbot.dto.chat.stream.ChatStreamEvent;
+import com.g4.chatbot.dto.chat.stream.StreamSessionData;
+import com.g4.chatbot.dto.ollama.OllamaChatResponse;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import com.g4.chatbot.exception.BadRequestException;
+import com.g4.chatbot.models.ChatSession;
+import com.g4.chatbot.models.Message;
+import com.g4.chatbot.repos.ChatSessionRepository;
+import com.g4.chatbot.repos.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Time to first token of a streamed turn on an existing session, with every prologue step
+ * (input validation, session row, window, summary, user message insert) given a fixed latency
+ * and Ollama answering after a fixed prompt-evaluation delay (timings are printed).
+ * A sequential prologue pays the sum of the steps plus the extra session read for the model.
+ */
+class ChatPrologueLatencyTest {
+
+    private static final long STEP_MS = 40;
+    private static final long PROMPT_EVAL_MS = 50;
+    private static final int ROUNDS = 5;
+
+    private final ChatSessionRepository chatSessionRepository = mock(ChatSessionRepository.class);
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final OllamaService ollamaService = mock(OllamaService.class);
+    private final ConversationContextService conversationContextService = mock(ConversationContextService.class);
+    private final ConversationSummaryService conversationSummaryService = mock(ConversationSummaryService.class);
+    private final ChatService chatService = new ChatService();
+    private final AtomicLong messageIds = new AtomicLong();
+    private final AtomicInteger sessionReads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ChatSession session = new ChatSession();
+        session.setSessionId("session-1");
+        session.setUserId(7L);
+        session.setModel("llama3");
+        when(chatSessionRepository.findById("session-1")).thenAnswer(slow(invocation -> {
+            sessionReads.incrementAndGet();
+            return Optional.of(session);
+        }));
+        ChatSession foreign = new ChatSession();
+        foreign.setSessionId("session-2");
+        foreign.setUserId(8L);
+        foreign.setModel("llama3");
+        when(chatSessionRepository.findById("session-2")).thenReturn(Optional.of(foreign));
+        when(messageRepository.save(any(Message.class))).thenAnswer(slow(invocation -> {
+            Message message = invocation.getArgument(0);
+            message.setId(messageIds.incrementAndGet());
+            return message;
+        }));
+
+        PromptValidationService promptValidationService = mock(PromptValidationService.class);
+        doAnswer(slow(invocation -> null)).when(promptValidationService).validateUserInput(anyString());
+        when(promptValidationService.sanitizeInput(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        when(conversationContextService.getWindow("session-1")).thenAnswer(slow(invocation -> List.of(
+                OllamaMessage.builder().role("user").content("Hi").build(),
+                OllamaMessage.builder().role("assistant").content("Hello!").build())));
+        when(conversationSummaryService.getSummary("session-1")).thenAnswer(slow(invocation -> null));
+
+        when(ollamaService.withSystemPrompt(any(), isNull())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(ollamaService.chatStream(eq("llama3"), any(), eq("session-1"), any()))
+                .thenAnswer(invocation -> Flux.just(chunk("Paris", false), chunk(" it is.", false), chunk("", true))
+                        .delaySubscription(Duration.ofMillis(PROMPT_EVAL_MS)));
+
+        ContextPacker contextPacker = mock(ContextPacker.class);
+        when(contextPacker.pack(anyString(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        ResponseCacheService responseCacheService = mock(ResponseCacheService.class);
+        when(responseCacheService.lookup(anyString(), any(), any())).thenReturn(ResponseCacheService.Lookup.NONE);
+        OutputValidationService outputValidationService = mock(OutputValidationService.class);
+        when(outputValidationService.validateOutput(anyString(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> OutputValidationService.OutputValidationResult.safe(invocation.getArgument(0)));
+        TokenCoalescer tokenCoalescer = mock(TokenCoalescer.class);
+        when(tokenCoalescer.coalesce(any(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+        StreamReplayService streamReplayService = mock(StreamReplayService.class);
+        when(streamReplayService.publish(anyString(), any(), any())).thenAnswer(invocation -> invocation.getArgument(2));
+        StreamOutboxService streamOutboxService = mock(StreamOutboxService.class);
+        when(streamOutboxService.isolate(any(), anyString(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        AdmissionConfig admissionConfig = new AdmissionConfig();
+        admissionConfig.setEnabled(false);
+        AdmissionService admissionService = new AdmissionService();
+        ReflectionTestUtils.setField(admissionService, "admissionConfig", admissionConfig);
+
+        ReflectionTestUtils.setField(chatService, "chatSessionRepository", chatSessionRepository);
+        ReflectionTestUtils.setField(chatService, "messageRepository", messageRepository);
+        ReflectionTestUtils.setField(chatService, "ollamaService", ollamaService);
+        ReflectionTestUtils.setField(chatService, "promptValidationService", promptValidationService);
+        ReflectionTestUtils.setField(chatService, "outputValidationService", outputValidationService);
+        ReflectionTestUtils.setField(chatService, "conversationContextService", conversationContextService);
+        ReflectionTestUtils.setField(chatService, "conversationSummaryService", conversationSummaryService);
+        ReflectionTestUtils.setField(chatService, "contextPacker", contextPacker);
+        ReflectionTestUtils.setField(chatService, "responseCacheService", responseCacheService);
+        ReflectionTestUtils.setField(chatService, "tokenCoalescer", tokenCoalescer);
+        ReflectionTestUtils.setField(chatService, "streamReplayService", streamReplayService);
+        ReflectionTestUtils.setField(chatService, "streamOutboxService", streamOutboxService);
+        ReflectionTestUtils.setField(chatService, "admissionService", admissionService);
+        ReflectionTestUtils.setField(chatService, "modelCatalogService", modelCatalog());
+        ReflectionTestUtils.setField(chatService, "tokenizerService", mock(TokenizerService.class));
+        ReflectionTestUtils.setField(chatService, "streamingConfig", new StreamingConfig());
+        ReflectionTestUtils.setField(chatService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(chatService, "chatScheduler", Schedulers.boundedElastic());
+    }
+
+    @Test
+    void pipelinedPrologueCutsTimeToFirstToken() {
+        long[] firstToken = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            sessionReads.set(0);
+            long start = System.nanoTime();
+            AtomicLong firstTokenAt = new AtomicLong();
+            AtomicInteger readsBeforeFirstToken = new AtomicInteger();
+            List<ChatStreamEvent> events = chatService.streamChat(7L, request(), "/test")
+                    .doOnNext(event -> {
+                        if (event.isMessage() && firstTokenAt.compareAndSet(0, System.nanoTime())) {
+                            readsBeforeFirstToken.set(sessionReads.get());
+                        }
+                    })
+                    .collectList()
+                    .block(Duration.ofSeconds(5));
+            firstToken[i] = (firstTokenAt.get() - start) / 1_000_000;
+
+            // The session row is read once before the first token (updateSessionStats reads it again after)
+            assertEquals(1, readsBeforeFirstToken.get());
+            assertEquals(ChatStreamEvent.EventType.SESSION, events.get(0).getType());
+        }
+        Arrays.sort(firstToken);
+        long median = firstToken[ROUNDS / 2];
+        long sequential = 6 * STEP_MS + PROMPT_EVAL_MS;
+
+        System.out.printf("%-32s %6d ms%n", "sequential prologue (expected)", sequential);
+        System.out.printf("%-32s %6d ms%n", "pipelined prologue (median)", median);
+
+        assertTrue(median < sequential - 2 * STEP_MS, "time to first token " + median + " ms");
+    }
+
+    @Test
+    void answerIsSavedAfterTheDeferredUserMessage() {
+        List<ChatStreamEvent> events = chatService.streamChat(7L, request(), "/test")
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        ChatStreamEvent session = events.get(0);
+        ChatStreamEvent done = events.get(events.size() - 1);
+        assertEquals(ChatStreamEvent.EventType.SESSION, session.getType());
+        assertEquals(ChatStreamEvent.EventType.DONE, done.getType());
+        assertEquals(1L, ((StreamSessionData) session.getData()).getUserMessageId());
+        assertEquals(2L, messageIds.get(), "user message then answer");
+    }
+
+    @Test
+    void anotherUsersHistoryIsNotReadForTheirSessionId() {
+        ChatRequest request = request();
+        request.setSessionId("session-2");
+
+        assertThrows(BadRequestException.class, () -> chatService.streamChat(7L, request, "/test")
+                .collectList()
+                .block(Duration.ofSeconds(5)));
+
+        verify(conversationContextService, never()).getWindow(anyString());
+        verify(conversationSummaryService, never()).getSummary(anyString());
+    }
+
+    private ModelCatalogService modelCatalog() {
+        OllamaBackendPool backendPool = mock(OllamaBackendPool.class);
+        when(backendPool.servedModels()).thenReturn(Set.of());
+        ModelCatalogService modelCatalogService = new ModelCatalogService();
+        ReflectionTestUtils.setField(modelCatalogService, "ollamaConfig", new OllamaConfig());
+        ReflectionTestUtils.setField(modelCatalogService, "backendPool", backendPool);
+        return modelCatalogService;
+    }
+
+    private ChatRequest request() {
+        ChatRequest request = new ChatRequest();
+        request.setSessionId("session-1");
+        request.setMessage("What is the capital of France?");
+        return request;
+    }
+
+    private static OllamaChatResponse chunk(String content, boolean done) {
+        OllamaChatResponse chunk = new OllamaChatResponse();
+        chunk.setMessage(OllamaMessage.builder().role("assistant").content(content).build());
+        chunk.setDone(done);
+        return chunk;
+    }
+
+    private static <T> Answer<T> slow(Answer<T> answer) {
+        return (InvocationOnMock invocation) -> {
+            Thread.sleep(STEP_MS);
+            return answer.answer(invocation);
+        };
+    }
+}
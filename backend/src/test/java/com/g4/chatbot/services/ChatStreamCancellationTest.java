@@ -0,0 +1,210 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.AdmissionConfig;
+import com.g4.chatbot.config.OllamaConfig;
+import com.g4.chatbot.config.StreamingConfig;
+import com.g4.chatbot.dto.chat.ChatRequest;
+import com.g4.chatbot.dto.ollama.OllamaChatResponse;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import com.g4.chatbot.models.ChatSession;
+import com.g4.chatbot.models.Message;
+import com.g4.chatbot.repos.ChatSessionRepository;
+import com.g4.chatbot.repos.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * A streamed turn whose client goes away after two tokens, while the user message insert (200 ms) is
+ * still running on the chat scheduler
+ */
+class ChatStreamCancellationTest {
+
+    private static final String PARTIAL = "Paris it is.";
+
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final StreamingConfig streamingConfig = new StreamingConfig();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Scheduler chatScheduler = Schedulers.newSingle("chat");
+    private final ChatService chatService = new ChatService();
+    private final AtomicLong messageIds = new AtomicLong();
+    private final CountDownLatch tokensSent = new CountDownLatch(1);
+    private final CountDownLatch partialCounted = new CountDownLatch(1);
+    private final List<String> countingThreads = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ChatSession session = new ChatSession();
+        session.setSessionId("session-1");
+        session.setUserId(7L);
+        session.setModel("llama3");
+        ChatSessionRepository chatSessionRepository = mock(ChatSessionRepository.class);
+        when(chatSessionRepository.findById("session-1")).thenReturn(Optional.of(session));
+        when(messageRepository.save(any(Message.class))).thenAnswer(invocation -> {
+            Message message = invocation.getArgument(0);
+            if (message.getRole() == Message.MessageRole.USER) {
+                Thread.sleep(200);
+            }
+            message.setId(messageIds.incrementAndGet());
+            return message;
+        });
+
+        PromptValidationService promptValidationService = mock(PromptValidationService.class);
+        when(promptValidationService.sanitizeInput(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        ConversationContextService conversationContextService = mock(ConversationContextService.class);
+        when(conversationContextService.getWindow("session-1")).thenReturn(List.of());
+
+        OllamaService ollamaService = mock(OllamaService.class);
+        when(ollamaService.withSystemPrompt(any(), isNull())).thenAnswer(invocation -> invocation.getArgument(0));
+        // Two tokens, then the model keeps generating until the stream is cancelled
+        when(ollamaService.chatStream(eq("llama3"), any(), eq("session-1"), any()))
+                .thenAnswer(invocation -> Flux.just(chunk("Paris"), chunk(" it is."))
+                        .doOnComplete(tokensSent::countDown)
+                        .concatWith(Flux.never()));
+
+        TokenizerService tokenizerService = mock(TokenizerService.class);
+        when(tokenizerService.countTokens(anyString(), anyString())).thenAnswer(invocation -> {
+            if (PARTIAL.equals(invocation.getArgument(1))) {
+                countingThreads.add(Thread.currentThread().getName());
+                partialCounted.countDown();
+            }
+            return 3;
+        });
+
+        ContextPacker contextPacker = mock(ContextPacker.class);
+        when(contextPacker.pack(anyString(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        ResponseCacheService responseCacheService = mock(ResponseCacheService.class);
+        when(responseCacheService.lookup(anyString(), any(), any())).thenReturn(ResponseCacheService.Lookup.NONE);
+        OutputValidationService outputValidationService = mock(OutputValidationService.class);
+        when(outputValidationService.validateOutput(anyString(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> OutputValidationService.OutputValidationResult.safe(invocation.getArgument(0)));
+        TokenCoalescer tokenCoalescer = mock(TokenCoalescer.class);
+        when(tokenCoalescer.coalesce(any(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+        StreamReplayService streamReplayService = mock(StreamReplayService.class);
+        when(streamReplayService.publish(anyString(), any(), any())).thenAnswer(invocation -> invocation.getArgument(2));
+        StreamOutboxService streamOutboxService = mock(StreamOutboxService.class);
+        when(streamOutboxService.isolate(any(), anyString(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        AdmissionConfig admissionConfig = new AdmissionConfig();
+        admissionConfig.setEnabled(false);
+        AdmissionService admissionService = new AdmissionService();
+        ReflectionTestUtils.setField(admissionService, "admissionConfig", admissionConfig);
+
+        ReflectionTestUtils.setField(chatService, "chatSessionRepository", chatSessionRepository);
+        ReflectionTestUtils.setField(chatService, "messageRepository", messageRepository);
+        ReflectionTestUtils.setField(chatService, "ollamaService", ollamaService);
+        ReflectionTestUtils.setField(chatService, "promptValidationService", promptValidationService);
+        ReflectionTestUtils.setField(chatService, "outputValidationService", outputValidationService);
+        ReflectionTestUtils.setField(chatService, "conversationContextService", conversationContextService);
+        ReflectionTestUtils.setField(chatService, "conversationSummaryService", mock(ConversationSummaryService.class));
+        ReflectionTestUtils.setField(chatService, "contextPacker", contextPacker);
+        ReflectionTestUtils.setField(chatService, "responseCacheService", responseCacheService);
+        ReflectionTestUtils.setField(chatService, "tokenCoalescer", tokenCoalescer);
+        ReflectionTestUtils.setField(chatService, "streamReplayService", streamReplayService);
+        ReflectionTestUtils.setField(chatService, "streamOutboxService", streamOutboxService);
+        ReflectionTestUtils.setField(chatService, "admissionService", admissionService);
+        ReflectionTestUtils.setField(chatService, "modelCatalogService", modelCatalog());
+        ReflectionTestUtils.setField(chatService, "tokenizerService", tokenizerService);
+        ReflectionTestUtils.setField(chatService, "streamingConfig", streamingConfig);
+        ReflectionTestUtils.setField(chatService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(chatService, "chatScheduler", chatScheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        chatScheduler.dispose();
+    }
+
+    @Test
+    void persistSavesThePartialAnswerAfterTheUserMessage() throws InterruptedException {
+        streamingConfig.getCancellation().setPartialAnswerPolicy(StreamingConfig.PartialAnswerPolicy.PERSIST);
+
+        cancelAfterTwoTokens();
+
+        ArgumentCaptor<Message> saved = ArgumentCaptor.forClass(Message.class);
+        verify(messageRepository, timeout(2000).times(2)).save(saved.capture());
+        Message userMessage = saved.getAllValues().get(0);
+        Message partialAnswer = saved.getAllValues().get(1);
+        assertEquals(Message.MessageRole.USER, userMessage.getRole());
+        assertEquals(Message.MessageRole.ASSISTANT, partialAnswer.getRole());
+        assertEquals(PARTIAL, partialAnswer.getContent());
+        assertTrue(partialAnswer.getMetadata().contains("\"partial\":true"));
+        assertTrue(partialAnswer.getId() > userMessage.getId());
+
+        assertTrue(partialCounted.await(2, TimeUnit.SECONDS));
+        assertEquals(1.0, meterRegistry.counter("chat.stream.cancelled", "policy", "PERSIST").count());
+        assertEquals(3.0, meterRegistry.counter("chat.stream.cancelled.tokens", "persisted", "true").count());
+    }
+
+    @Test
+    void discardKeepsOnlyTheUserMessage() throws InterruptedException {
+        streamingConfig.getCancellation().setPartialAnswerPolicy(StreamingConfig.PartialAnswerPolicy.DISCARD);
+
+        cancelAfterTwoTokens();
+
+        assertTrue(partialCounted.await(2, TimeUnit.SECONDS));
+        verify(messageRepository, after(300).times(1)).save(any(Message.class));
+        assertEquals(1.0, meterRegistry.counter("chat.stream.cancelled", "policy", "DISCARD").count());
+        assertEquals(3.0, meterRegistry.counter("chat.stream.cancelled.tokens", "persisted", "false").count());
+    }
+
+    @Test
+    void partialAnswerIsNotTokenizedOnTheCancellingThread() throws InterruptedException {
+        cancelAfterTwoTokens();
+
+        assertTrue(partialCounted.await(2, TimeUnit.SECONDS));
+        assertTrue(countingThreads.stream().allMatch(thread -> thread.startsWith("chat")), countingThreads.toString());
+    }
+
+    private void cancelAfterTwoTokens() throws InterruptedException {
+        ChatRequest request = new ChatRequest();
+        request.setSessionId("session-1");
+        request.setMessage("What is the capital of France?");
+        Disposable client = chatService.streamChat(7L, request, "/test").subscribe();
+        assertTrue(tokensSent.await(2, TimeUnit.SECONDS));
+        client.dispose();
+    }
+
+    private ModelCatalogService modelCatalog() {
+        OllamaBackendPool backendPool = mock(OllamaBackendPool.class);
+        when(backendPool.servedModels()).thenReturn(Set.of());
+        ModelCatalogService modelCatalogService = new ModelCatalogService();
+        ReflectionTestUtils.setField(modelCatalogService, "ollamaConfig", new OllamaConfig());
+        ReflectionTestUtils.setField(modelCatalogService, "backendPool", backendPool);
+        return modelCatalogService;
+    }
+
+    private static OllamaChatResponse chunk(String content) {
+        OllamaChatResponse chunk = new OllamaChatResponse();
+        chunk.setMessage(OllamaMessage.builder().role("assistant").content(content).build());
+        chunk.setDone(false);
+        return chunk;
+    }
+}
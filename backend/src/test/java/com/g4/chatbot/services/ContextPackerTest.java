@@ -0,0 +1,121 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.ContextBudgetConfig;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Packing with the estimating tokenizer: a 40-character message costs 14 tokens and a 400-character one 104
+ * (content at 4 characters per token plus the template overhead)
+ */
+class ContextPackerTest {
+
+    private static final OllamaMessage SYSTEM = message("system", 40);
+    private static final OllamaMessage NEWEST = message("user", 40);
+    private static final List<OllamaMessage> PROMPT = List.of(SYSTEM,
+            message("user", 400), message("assistant", 400),
+            message("user", 400), message("assistant", 400),
+            NEWEST);
+
+    private final ContextBudgetConfig contextBudgetConfig = new ContextBudgetConfig();
+    private final AtomicInteger tokenizerCalls = new AtomicInteger();
+    private final ContextPacker contextPacker = new ContextPacker();
+
+    @BeforeEach
+    void setUp() {
+        contextBudgetConfig.setReservedOutputTokens(0);
+        TokenizerService tokenizerService = mock(TokenizerService.class);
+        when(tokenizerService.forModel("llama3")).thenReturn(new Tokenizer() {
+            @Override
+            public String getName() {
+                return "counting";
+            }
+
+            @Override
+            public int countTokens(CharSequence text) {
+                tokenizerCalls.incrementAndGet();
+                return EstimateTokenizer.INSTANCE.countTokens(text);
+            }
+        });
+        ReflectionTestUtils.setField(contextPacker, "contextBudgetConfig", contextBudgetConfig);
+        ReflectionTestUtils.setField(contextPacker, "tokenizerService", tokenizerService);
+        ReflectionTestUtils.setField(contextPacker, "meterRegistry", new SimpleMeterRegistry());
+    }
+
+    @Test
+    void promptThatFitsIsKeptWhole() {
+        ContextPacker.PackedPrompt packed = pack(444);
+
+        assertEquals(PROMPT, packed);
+        assertEquals(444, packed.getPromptTokens());
+    }
+
+    @Test
+    void systemPromptAndNewestMessageAreKeptEvenOverBudget() {
+        ContextPacker.PackedPrompt packed = pack(10);
+
+        assertEquals(List.of(SYSTEM, NEWEST), packed);
+        assertEquals(28, packed.getPromptTokens());
+    }
+
+    @Test
+    void turnIsDroppedWholeWhenOnlyItsAnswerWouldFit() {
+        contextBudgetConfig.setMinTruncatedTurnTokens(1000);
+
+        // 154 tokens left for history: the last answer (104) would fit, its question with it would not
+        ContextPacker.PackedPrompt packed = pack(182);
+
+        assertEquals(List.of(SYSTEM, NEWEST), packed);
+        assertEquals(28, packed.getPromptTokens());
+    }
+
+    @Test
+    void truncatedTurnFitsTheBudget() {
+        contextBudgetConfig.setMinTruncatedTurnTokens(64);
+
+        // The last turn fits whole (236 tokens), leaving 64 for the first one
+        ContextPacker.PackedPrompt packed = pack(300);
+
+        assertEquals(6, packed.size());
+        assertSame(SYSTEM, packed.get(0));
+        assertEquals(List.of("system", "user", "assistant", "user", "assistant", "user"),
+                packed.stream().map(OllamaMessage::getRole).toList());
+        assertTrue(packed.get(1).getContent().endsWith(" [...]"));
+        assertTrue(packed.get(2).getContent().endsWith(" [...]"));
+        assertEquals(PROMPT.subList(3, 6), packed.subList(3, 6));
+        int recounted = packed.stream().mapToInt(m -> EstimateTokenizer.INSTANCE.countTokens(m.getContent()) + 4).sum();
+        assertTrue(recounted <= 300, "packed prompt has " + recounted + " tokens");
+        assertTrue(packed.getPromptTokens() <= 300);
+    }
+
+    @Test
+    void everyMessageIsTokenizedOnce() {
+        contextBudgetConfig.setMinTruncatedTurnTokens(64);
+
+        pack(300);
+
+        // Six messages plus the truncation marker
+        assertEquals(7, tokenizerCalls.get());
+    }
+
+    private ContextPacker.PackedPrompt pack(int budget) {
+        contextBudgetConfig.setDefaultContextTokens(budget);
+        return (ContextPacker.PackedPrompt) contextPacker.pack("llama3", PROMPT);
+    }
+
+    private static OllamaMessage message(String role, int chars) {
+        return OllamaMessage.builder().role(role).content(role.charAt(0) + "x".repeat(chars - 1)).build();
+    }
+}
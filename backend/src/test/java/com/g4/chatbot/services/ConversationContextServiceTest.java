@@ -0,0 +1,140 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.ContextCacheConfig;
+import com.g4.chatbot.config.SystemPromptConfig;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import com.g4.chatbot.models.Message;
+import com.g4.chatbot.repos.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Two nodes sharing one Redis (version counters only, the L2 list is never found) and one database
+ */
+class ConversationContextServiceTest {
+
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final AtomicReference<String> storedAnswer = new AtomicReference<>("Hello!");
+    private final RedisTemplate<String, Object> redisTemplate = sharedRedis();
+
+    private ConversationContextService nodeA;
+    private ConversationContextService nodeB;
+
+    @BeforeEach
+    void setUp() {
+        when(messageRepository.findRecentBySessionId(eq("session-1"), any())).thenAnswer(invocation -> List.of(
+                contextMessage(Message.MessageRole.ASSISTANT, storedAnswer.get()),
+                contextMessage(Message.MessageRole.USER, "Hi")));
+        nodeA = node();
+        nodeB = node();
+    }
+
+    @Test
+    void editOnOneNodeIsSeenByTheOtherNodesNextTurn() {
+        assertEquals("Hello!", nodeA.getWindow("session-1").get(1).getContent());
+        assertEquals("Hello!", nodeB.getWindow("session-1").get(1).getContent());
+
+        storedAnswer.set("Hi there!");
+        nodeA.invalidate("session-1");
+
+        assertEquals("Hi there!", nodeB.getWindow("session-1").get(1).getContent());
+    }
+
+    @Test
+    void unchangedSessionIsServedFromMemory() {
+        nodeA.getWindow("session-1");
+        nodeA.getWindow("session-1");
+
+        SimpleMeterRegistry meterRegistry = (SimpleMeterRegistry) ReflectionTestUtils.getField(nodeA, "meterRegistry");
+        assertEquals(1.0, meterRegistry.counter("chat.context.cache", "result", "l1").count());
+        assertEquals(1.0, meterRegistry.counter("chat.context.cache", "result", "miss").count());
+    }
+
+    @Test
+    void readingDoesNotCreateTheVersionKey() {
+        nodeA.getWindow("session-1");
+        nodeB.getWindow("session-1");
+
+        assertTrue(versions.isEmpty(), versions.toString());
+    }
+
+    @Test
+    void appendOnOneNodeIsSeenByTheOther() {
+        nodeA.getWindow("session-1");
+        nodeB.getWindow("session-1");
+
+        Message message = new Message();
+        message.setSessionId("session-1");
+        message.setRole(Message.MessageRole.USER);
+        message.setContent("What is the capital of France?");
+        nodeA.append(message);
+        when(messageRepository.findRecentBySessionId(eq("session-1"), any())).thenAnswer(invocation -> List.of(
+                contextMessage(Message.MessageRole.USER, "What is the capital of France?"),
+                contextMessage(Message.MessageRole.ASSISTANT, "Hello!"),
+                contextMessage(Message.MessageRole.USER, "Hi")));
+
+        List<OllamaMessage> onA = nodeA.getWindow("session-1");
+        List<OllamaMessage> onB = nodeB.getWindow("session-1");
+        assertEquals(3, onA.size());
+        assertEquals(onA, onB);
+    }
+
+    private ConversationContextService node() {
+        ConversationContextService service = new ConversationContextService();
+        ReflectionTestUtils.setField(service, "contextCacheConfig", new ContextCacheConfig());
+        ReflectionTestUtils.setField(service, "systemPromptConfig", new SystemPromptConfig());
+        ReflectionTestUtils.setField(service, "messageRepository", messageRepository);
+        ReflectionTestUtils.setField(service, "ollamaService", new OllamaService());
+        ReflectionTestUtils.setField(service, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        service.init();
+        return service;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisTemplate<String, Object> sharedRedis() {
+        RedisTemplate<String, Object> template = mock(RedisTemplate.class);
+        ValueOperations<String, Object> values = mock(ValueOperations.class);
+        ListOperations<String, Object> lists = mock(ListOperations.class);
+        when(template.opsForValue()).thenReturn(values);
+        when(template.opsForList()).thenReturn(lists);
+        when(values.get(anyString())).thenAnswer(invocation -> versions.get(invocation.<String>getArgument(0)));
+        when(values.increment(anyString())).thenAnswer(invocation ->
+                versions.merge(invocation.getArgument(0), 1L, Long::sum));
+        when(lists.rightPushIfPresent(anyString(), any())).thenReturn(0L);
+        return template;
+    }
+
+    private static MessageRepository.ContextMessage contextMessage(Message.MessageRole role, String content) {
+        return new MessageRepository.ContextMessage() {
+            @Override
+            public Message.MessageRole getRole() {
+                return role;
+            }
+
+            @Override
+            public String getContent() {
+                return content;
+            }
+        };
+    }
+}
@@ -0,0 +1,203 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.AdmissionConfig;
+import com.g4.chatbot.config.ContextCacheConfig;
+import com.g4.chatbot.config.SummarizationConfig;
+import com.g4.chatbot.config.SystemPromptConfig;
+import com.g4.chatbot.models.ChatSession;
+import com.g4.chatbot.models.ConversationSummary;
+import com.g4.chatbot.models.Message;
+import com.g4.chatbot.repos.ConversationSummaryRepository;
+import com.g4.chatbot.repos.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compaction runs (executed inline) where messages change while the model is summarizing, and nodes
+ * sharing one Redis (summary versions only) and one database
+ */
+class ConversationSummaryServiceTest {
+
+    private final ConversationSummaryRepository summaryRepository = mock(ConversationSummaryRepository.class);
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final OllamaService ollamaService = mock(OllamaService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // Summary versions in the Redis shared by every node
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final RedisTemplate<String, Object> redisTemplate = sharedRedis();
+    private final ConversationSummaryService summaryService = node();
+
+    // What the database holds for the batch (ids 1 and 2) after the model call
+    private final List<Message> storedBatch = new ArrayList<>();
+    // The session's summary row
+    private final AtomicReference<ConversationSummary> storedSummary = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        when(messageRepository.findRecentIdsBySessionId(eq("session-1"), any())).thenReturn(List.of(4L, 3L, 2L));
+        when(messageRepository.findRangeBySessionId(eq("session-1"), eq(0L), eq(2L), any()))
+                .thenReturn(List.of(message(1L, "My name is Ada"), message(2L, "Nice to meet you, Ada")))
+                .thenAnswer(invocation -> storedBatch);
+        when(summaryRepository.findById("session-1")).thenAnswer(invocation -> Optional.ofNullable(storedSummary.get()));
+        when(summaryRepository.lockBySessionId("session-1")).thenReturn(Optional.empty());
+        when(summaryRepository.save(any())).thenAnswer(invocation -> {
+            storedSummary.set(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        when(summaryRepository.deleteIfCovers("session-1", 1L)).thenAnswer(invocation ->
+                storedSummary.getAndSet(null) != null ? 1 : 0);
+        when(ollamaService.chat(anyString(), anyList(), eq("session-1"))).thenReturn("The user is called Ada.");
+    }
+
+    @Test
+    void unchangedBatchIsSaved() {
+        storedBatch.addAll(List.of(message(1L, "My name is Ada"), message(2L, "Nice to meet you, Ada")));
+
+        summaryService.requestCompaction(session());
+
+        verify(summaryRepository).save(any(ConversationSummary.class));
+        assertEquals("The user is called Ada.", summaryService.getSummary("session-1"));
+    }
+
+    @Test
+    void summaryOfAnEditedMessageIsDropped() {
+        storedBatch.addAll(List.of(message(1L, "My name is Grace"), message(2L, "Nice to meet you, Ada")));
+
+        summaryService.requestCompaction(session());
+
+        verify(summaryRepository, never()).save(any());
+        assertEquals(1.0, meterRegistry.counter("chat.summary.runs", "result", "stale").count());
+    }
+
+    @Test
+    void summaryOfADeletedMessageIsDropped() {
+        storedBatch.add(message(2L, "Nice to meet you, Ada"));
+
+        summaryService.requestCompaction(session());
+
+        verify(summaryRepository, never()).save(any());
+    }
+
+    @Test
+    void summaryIsDroppedWhenAnotherRunOrADiscardChangedTheRow() {
+        storedBatch.addAll(List.of(message(1L, "My name is Ada"), message(2L, "Nice to meet you, Ada")));
+        ConversationSummary other = new ConversationSummary();
+        other.setSessionId("session-1");
+        other.setSummary("Someone else's run");
+        other.setCoveredUntilMessageId(2L);
+        when(summaryRepository.lockBySessionId("session-1")).thenReturn(Optional.of(other));
+
+        summaryService.requestCompaction(session());
+
+        verify(summaryRepository, never()).save(any());
+    }
+
+    @Test
+    void summaryDiscardedOnOneNodeIsNotServedByAnother() {
+        storedBatch.addAll(List.of(message(1L, "My name is Ada"), message(2L, "Nice to meet you, Ada")));
+        ConversationSummaryService otherNode = node();
+        summaryService.requestCompaction(session());
+        assertEquals("The user is called Ada.", otherNode.getSummary("session-1"));
+
+        // Message 1 is edited through this node
+        summaryService.discardIfCovers("session-1", 1L);
+
+        assertNull(otherNode.getSummary("session-1"));
+    }
+
+    @Test
+    void unchangedSummaryIsServedFromMemory() {
+        storedBatch.addAll(List.of(message(1L, "My name is Ada"), message(2L, "Nice to meet you, Ada")));
+        summaryService.requestCompaction(session());
+
+        summaryService.getSummary("session-1");
+        summaryService.getSummary("session-1");
+
+        // Once by the compaction run, once by the first read
+        verify(summaryRepository, times(2)).findById("session-1");
+    }
+
+    private ConversationSummaryService node() {
+        SystemPromptConfig systemPromptConfig = new SystemPromptConfig();
+        systemPromptConfig.setMaxHistoryMessages(2);
+        SummarizationConfig summarizationConfig = new SummarizationConfig();
+        summarizationConfig.setMinBatchMessages(2);
+        AdmissionConfig admissionConfig = new AdmissionConfig();
+        admissionConfig.setEnabled(false);
+        AdmissionService admissionService = new AdmissionService();
+        ReflectionTestUtils.setField(admissionService, "admissionConfig", admissionConfig);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+
+        ConversationSummaryService service = new ConversationSummaryService();
+        ReflectionTestUtils.setField(service, "summarizationConfig", summarizationConfig);
+        ReflectionTestUtils.setField(service, "systemPromptConfig", systemPromptConfig);
+        ReflectionTestUtils.setField(service, "contextCacheConfig", new ContextCacheConfig());
+        ReflectionTestUtils.setField(service, "conversationSummaryRepository", summaryRepository);
+        ReflectionTestUtils.setField(service, "messageRepository", messageRepository);
+        ReflectionTestUtils.setField(service, "ollamaService", ollamaService);
+        ReflectionTestUtils.setField(service, "admissionService", admissionService);
+        ReflectionTestUtils.setField(service, "summaryExecutor", new TaskExecutorAdapter(Runnable::run));
+        ReflectionTestUtils.setField(service, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(service, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        service.init();
+        return service;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisTemplate<String, Object> sharedRedis() {
+        RedisTemplate<String, Object> template = mock(RedisTemplate.class);
+        ValueOperations<String, Object> values = mock(ValueOperations.class);
+        when(template.opsForValue()).thenReturn(values);
+        when(values.get(anyString())).thenAnswer(invocation -> versions.get(invocation.<String>getArgument(0)));
+        when(values.increment(anyString())).thenAnswer(invocation ->
+                versions.merge(invocation.getArgument(0), 1L, Long::sum));
+        return template;
+    }
+
+    private static ChatSession session() {
+        ChatSession session = new ChatSession();
+        session.setSessionId("session-1");
+        session.setUserId(7L);
+        session.setModel("llama3");
+        session.setMessageCount(5);
+        return session;
+    }
+
+    private static Message message(Long id, String content) {
+        Message message = new Message();
+        message.setId(id);
+        message.setSessionId("session-1");
+        message.setRole(id % 2 == 1 ? Message.MessageRole.USER : Message.MessageRole.ASSISTANT);
+        message.setContent(content);
+        return message;
+    }
+}
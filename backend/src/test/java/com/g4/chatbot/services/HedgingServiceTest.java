@@ -0,0 +1,90 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.HedgingConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Races stub calls through HedgingService
+ */
+class HedgingServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HedgingConfig config = new HedgingConfig();
+    private final HedgingService hedgingService = new HedgingService();
+
+    @BeforeEach
+    void setUp() {
+        config.setEnabled(true);
+        config.setMinSamples(5);
+        config.setMinDelayMs(20);
+        config.setBudgetRatio(1.0);
+        ReflectionTestUtils.setField(hedgingService, "hedgingConfig", config);
+        ReflectionTestUtils.setField(hedgingService, "meterRegistry", meterRegistry);
+    }
+
+    @Test
+    void hedgeWinsAgainstStalledPrimaryWhichIsCancelled() {
+        warmUp(10);
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        Flux<String> stalled = Flux.<String>never().doOnCancel(() -> primaryCancelled.set(true));
+
+        String answer = hedgingService.hedge("llama3", true, stalled,
+                        () -> new HedgingService.Hedge<>("backend", Flux.just("hedge")))
+                .blockFirst(Duration.ofSeconds(5));
+
+        assertEquals("hedge", answer);
+        assertTrue(primaryCancelled.get());
+        assertEquals(1.0, meterRegistry.counter("ollama.hedge.fired", "model", "llama3", "target", "backend").count());
+        assertEquals(1.0, meterRegistry.counter("ollama.hedge.wins", "model", "llama3", "winner", "hedge").count());
+    }
+
+    @Test
+    void fastPrimaryIsNotHedged() {
+        warmUp(10);
+        AtomicInteger hedges = new AtomicInteger();
+
+        String answer = hedgingService.hedge("llama3", true, Flux.just("primary"), () -> {
+            hedges.incrementAndGet();
+            return new HedgingService.Hedge<>("backend", Flux.just("hedge"));
+        }).blockLast(Duration.ofSeconds(5));
+
+        assertEquals("primary", answer);
+        assertEquals(0, hedges.get());
+    }
+
+    @Test
+    void hedgesStayWithinBudget() {
+        config.setBudgetRatio(0.1);
+        config.setBudgetBurst(1);
+        warmUp(10);
+
+        for (int i = 0; i < 20; i++) {
+            Flux<String> slow = Mono.delay(Duration.ofMillis(60)).map(tick -> "primary").flux();
+            hedgingService.hedge("llama3", true, slow,
+                    () -> new HedgingService.Hedge<>("backend", Flux.just("hedge"))).blockLast(Duration.ofSeconds(5));
+        }
+
+        double fired = meterRegistry.counter("ollama.hedge.fired", "model", "llama3", "target", "backend").count();
+        double requests = meterRegistry.counter("ollama.hedge.requests", "model", "llama3").count();
+        assertTrue(fired >= 1 && fired <= 0.1 * requests + 1, "fired " + fired + " of " + requests);
+    }
+
+    // Fast calls so the model has a p95 below the minimum delay
+    private void warmUp(int calls) {
+        for (int i = 0; i < calls; i++) {
+            hedgingService.hedge("llama3", true, Flux.just("warm"), () -> null).blockLast();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.g4.chatbot.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTest {
+
+    private static final int DIMENSION = 32;
+
+    private final Random random = new Random(7);
+
+    @Test
+    void nearestMatchesBruteForce() {
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 100);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            float[] v = randomVector();
+            vectors.add(v);
+            index.add(v, "answer-" + i, i);
+        }
+
+        int queries = 200;
+        int found = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector();
+            HnswIndex.Match match = index.nearest(query, 64);
+            if (match.getId() == bruteForceNearest(vectors, query)) {
+                found++;
+            }
+        }
+        double recall = (double) found / queries;
+        System.out.printf("recall@1 against brute force: %.3f%n", recall);
+        assertTrue(recall >= 0.95, "recall " + recall);
+    }
+
+    @Test
+    void removedEntriesAreSkippedAndCompacted() {
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 100);
+        float[] target = randomVector();
+        index.add(target, "stale", 1);
+        for (int i = 0; i < 200; i++) {
+            index.add(randomVector(), "other-" + i, 2 + i);
+        }
+
+        HnswIndex.Match stale = index.nearest(target, 64);
+        assertEquals("stale", stale.getAnswer());
+        assertTrue(index.remove(stale));
+        assertFalse(index.remove(stale));
+        assertFalse("stale".equals(index.nearest(target, 64).getAnswer()));
+        assertEquals(200, index.size());
+
+        // Oldest first: "other-0" and "other-1" go
+        assertEquals(2, index.evictOldest(2));
+        assertEquals(3, index.removedCount());
+
+        index.compact();
+        assertEquals(198, index.size());
+        assertEquals(0, index.removedCount());
+        // Matches found before the rebuild point at renumbered entries
+        assertFalse(index.replace(stale, "late", 5));
+    }
+
+    @Test
+    void snapshotRoundTripThroughMappedFile(@TempDir Path dir) throws Exception {
+        HnswIndex index = new HnswIndex(DIMENSION, 8, 50);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            float[] v = randomVector();
+            vectors.add(v);
+            index.add(v, "answer-" + i + " ü", 1000L + i);
+        }
+        index.remove(index.nearest(vectors.get(10), 64));
+        index.replace(index.nearest(vectors.get(20), 64), "replaced", 5000L);
+
+        Path file = dir.resolve("scope.hnsw");
+        index.save(file);
+        HnswIndex loaded = HnswIndex.load(file, 50);
+
+        assertEquals(DIMENSION, loaded.getDimension());
+        assertEquals(299, loaded.size());
+        assertEquals(1, loaded.removedCount());
+        for (int i = 0; i < vectors.size(); i++) {
+            HnswIndex.Match before = index.nearest(vectors.get(i), 64);
+            HnswIndex.Match after = loaded.nearest(vectors.get(i), 64);
+            assertEquals(before.getId(), after.getId());
+            assertEquals(before.getAnswer(), after.getAnswer());
+            assertEquals(before.getCreatedAtMillis(), after.getCreatedAtMillis());
+        }
+        HnswIndex.Match replaced = loaded.nearest(vectors.get(20), 64);
+        assertEquals("replaced", replaced.getAnswer());
+        assertEquals(5000L, replaced.getCreatedAtMillis());
+
+        // Mapped entries can be replaced, and entries added after loading are saved along with them
+        assertTrue(loaded.replace(loaded.nearest(vectors.get(30), 64), "mapped replaced", 6000L));
+        float[] extra = randomVector();
+        loaded.add(extra, "after load", 7000L);
+        Path second = dir.resolve("second.hnsw");
+        loaded.save(second);
+        HnswIndex reloaded = HnswIndex.load(second, 50);
+        assertEquals(300, reloaded.size());
+        assertEquals("mapped replaced", reloaded.nearest(vectors.get(30), 64).getAnswer());
+        assertEquals("after load", reloaded.nearest(extra, 64).getAnswer());
+    }
+
+    @Test
+    void concurrentAddsAndSearches() throws Exception {
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 100);
+        int writers = 4;
+        int perWriter = 250;
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < writers * perWriter; i++) {
+            vectors.add(randomVector());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(writers + 4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int offset = w * perWriter;
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int i = offset; i < offset + perWriter; i++) {
+                    index.add(vectors.get(i), "answer-" + i, i);
+                }
+                return null;
+            }));
+        }
+        for (int r = 0; r < 4; r++) {
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 500; i++) {
+                    index.search(randomVector(), 32);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(writers * perWriter, index.size());
+        int exact = 0;
+        for (int i = 0; i < vectors.size(); i++) {
+            HnswIndex.Match match = index.nearest(vectors.get(i), 64);
+            assertNotNull(match);
+            if (("answer-" + i).equals(match.getAnswer())) {
+                exact++;
+            }
+        }
+        assertTrue(exact >= vectors.size() * 0.95, exact + " of " + vectors.size() + " entries found");
+    }
+
+    private int bruteForceNearest(List<float[]> vectors, float[] query) {
+        int best = -1;
+        double bestSimilarity = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < vectors.size(); i++) {
+            double similarity = cosine(vectors.get(i), query);
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, na = 0, nb = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return dot / Math.sqrt(na * nb);
+    }
+
+    private float[] randomVector() {
+        float[] v = new float[DIMENSION];
+        synchronized (random) {
+            for (int i = 0; i < DIMENSION; i++) {
+                v[i] = (float) random.nextGaussian();
+            }
+        }
+        return v;
+    }
+}
@@ -0,0 +1,48 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.OllamaConfig;
+import com.g4.chatbot.exception.BadRequestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ModelCatalogServiceTest {
+
+    private final ModelCatalogService modelCatalogService = new ModelCatalogService();
+
+    @BeforeEach
+    void setUp() {
+        OllamaConfig ollamaConfig = new OllamaConfig();
+        ollamaConfig.setModels(List.of("mistral"));
+        OllamaBackendPool backendPool = mock(OllamaBackendPool.class);
+        when(backendPool.servedModels()).thenReturn(Set.of("qwen2.5:7b"));
+        ReflectionTestUtils.setField(modelCatalogService, "ollamaConfig", ollamaConfig);
+        ReflectionTestUtils.setField(modelCatalogService, "backendPool", backendPool);
+    }
+
+    @Test
+    void spellingsOfAServedModelResolveToItsConfiguredName() {
+        assertEquals("llama3", modelCatalogService.resolve("LLAMA3"));
+        assertEquals("llama3", modelCatalogService.resolve("llama3 "));
+        assertEquals("llama3", modelCatalogService.resolve("llama3:latest"));
+        assertEquals("mistral", modelCatalogService.resolve("Mistral"));
+        assertEquals("qwen2.5:7b", modelCatalogService.resolve("qwen2.5:7B"));
+        assertEquals("llama3", modelCatalogService.resolve(null));
+    }
+
+    @Test
+    void unknownModelsAreRejectedUnlessStored() {
+        assertThrows(BadRequestException.class, () -> modelCatalogService.resolve("random-model-123"));
+        assertThrows(BadRequestException.class, () -> modelCatalogService.resolve("qwen2.5"));
+        // Sessions created before the model was removed keep working on the default model
+        assertEquals("llama3", modelCatalogService.resolveStored("gpt-3.5-turbo"));
+    }
+}
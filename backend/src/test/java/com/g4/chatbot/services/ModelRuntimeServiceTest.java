@@ -0,0 +1,47 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.ContextBudgetConfig;
+import com.g4.chatbot.config.ModelRuntimeConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Runtime options sent with each Ollama request
+ */
+class ModelRuntimeServiceTest {
+
+    private final ModelRuntimeConfig modelRuntimeConfig = new ModelRuntimeConfig();
+    private final ContextBudgetConfig contextBudgetConfig = new ContextBudgetConfig();
+    private final ModelRuntimeService modelRuntimeService = new ModelRuntimeService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(modelRuntimeService, "modelRuntimeConfig", modelRuntimeConfig);
+        ReflectionTestUtils.setField(modelRuntimeService, "contextBudgetConfig", contextBudgetConfig);
+    }
+
+    @Test
+    void contextWindowFollowsTheBudgetWithoutCappingTheAnswer() {
+        Map<String, Object> options = modelRuntimeService.optionsFor("llama3", Map.of("temperature", 0.2));
+
+        assertEquals(contextBudgetConfig.getContextTokensFor("llama3"), options.get("num_ctx"));
+        assertEquals(0.2, options.get("temperature"));
+        assertFalse(options.containsKey("num_predict"));
+    }
+
+    @Test
+    void answerLengthIsCappedOnlyWhenConfiguredForTheModel() {
+        ModelRuntimeConfig.Model codeModel = new ModelRuntimeConfig.Model();
+        codeModel.getOptions().put("num_predict", 4096);
+        modelRuntimeConfig.getModels().put("codellama", codeModel);
+
+        assertEquals(4096, modelRuntimeService.optionsFor("codellama", null).get("num_predict"));
+        assertFalse(modelRuntimeService.optionsFor("llama3", null).containsKey("num_predict"));
+    }
+}
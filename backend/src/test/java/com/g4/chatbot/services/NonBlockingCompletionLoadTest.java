@@ -0,0 +1,144 @@
+package com.g4.chatbot.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.g4.chatbot.config.HedgingConfig;
+import com.g4.chatbot.config.ModelRuntimeConfig;
+import com.g4.chatbot.config.OllamaConfig;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Concurrent non-streaming completions against a stub Ollama host that takes a fixed time per answer,
+ * issued from a small worker pool standing in for Tomcat's request threads (throughput is printed).
+ * Blocking calls are capped at workers / latency; non-blocking calls release the worker at once.
+ */
+class NonBlockingCompletionLoadTest {
+
+    private static final int WORKERS = 8;
+    private static final int REQUESTS = 64;
+    private static final long GENERATION_MS = 200;
+
+    private static final String ANSWER =
+            "{\"model\":\"llama3\",\"message\":{\"role\":\"assistant\",\"content\":\"ok\"},\"done\":true,\"eval_count\":1}";
+
+    private HttpServer server;
+    private ExecutorService workers;
+    private OllamaService ollamaService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/chat", exchange -> {
+            try {
+                Thread.sleep(GENERATION_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = ANSWER.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        OllamaConfig ollamaConfig = new OllamaConfig();
+        ollamaConfig.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort());
+
+        OllamaBackendPool pool = new OllamaBackendPool();
+        ReflectionTestUtils.setField(pool, "ollamaConfig", ollamaConfig);
+        ReflectionTestUtils.setField(pool, "meterRegistry", meterRegistry);
+        pool.init();
+
+        ModelRuntimeConfig modelRuntimeConfig = new ModelRuntimeConfig();
+        modelRuntimeConfig.setEnabled(false);
+        ModelRuntimeService modelRuntimeService = new ModelRuntimeService();
+        ReflectionTestUtils.setField(modelRuntimeService, "modelRuntimeConfig", modelRuntimeConfig);
+
+        HedgingConfig hedgingConfig = new HedgingConfig();
+        HedgingService hedgingService = new HedgingService();
+        ReflectionTestUtils.setField(hedgingService, "hedgingConfig", hedgingConfig);
+
+        ollamaService = new OllamaService();
+        ReflectionTestUtils.setField(ollamaService, "ollamaConfig", ollamaConfig);
+        ReflectionTestUtils.setField(ollamaService, "backendPool", pool);
+        ReflectionTestUtils.setField(ollamaService, "modelRuntimeService", modelRuntimeService);
+        ReflectionTestUtils.setField(ollamaService, "hedgingService", hedgingService);
+        ReflectionTestUtils.setField(ollamaService, "hedgingConfig", hedgingConfig);
+        ReflectionTestUtils.setField(ollamaService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(ollamaService, "objectMapper", new ObjectMapper());
+
+        workers = Executors.newFixedThreadPool(WORKERS);
+        // Warm up the connection pool and codecs
+        ollamaService.chatCompletion("llama3", prompt(), null, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        workers.shutdownNow();
+        server.stop(0);
+    }
+
+    @Test
+    void nonBlockingCompletionsAreNotCappedByTheWorkerPool() throws Exception {
+        double blocking = blockingThroughput();
+        double nonBlocking = nonBlockingThroughput();
+        System.out.printf("%d requests, %d workers, %d ms per answer%n", REQUESTS, WORKERS, GENERATION_MS);
+        System.out.printf("%-14s %10.1f req/s%n", "blocking", blocking);
+        System.out.printf("%-14s %10.1f req/s%n", "non-blocking", nonBlocking);
+
+        assertTrue(nonBlocking > 2 * blocking, "non-blocking " + nonBlocking + " vs blocking " + blocking);
+    }
+
+    private double blockingThroughput() throws Exception {
+        long start = System.nanoTime();
+        List<Future<?>> calls = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            calls.add(workers.submit(() -> ollamaService.chatCompletion("llama3", prompt(), null, null)));
+        }
+        for (Future<?> call : calls) {
+            call.get(30, TimeUnit.SECONDS);
+        }
+        return REQUESTS / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private double nonBlockingThroughput() throws Exception {
+        CountDownLatch answered = new CountDownLatch(REQUESTS);
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            // The worker only subscribes and is free again, like a servlet thread returning a DeferredResult
+            workers.submit(() -> ollamaService.chatCompletionAsync("llama3", prompt(), null, null)
+                    .subscribe(response -> answered.countDown()));
+        }
+        assertTrue(answered.await(30, TimeUnit.SECONDS), "not all requests were answered");
+        return REQUESTS / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private List<OllamaMessage> prompt() {
+        return List.of(
+                OllamaMessage.builder().role("system").content("You are a helpful assistant.").build(),
+                OllamaMessage.builder().role("user").content("Hello").build());
+    }
+}
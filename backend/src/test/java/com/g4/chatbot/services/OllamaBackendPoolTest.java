@@ -0,0 +1,248 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.OllamaConfig;
+import com.g4.chatbot.exception.ModelUnavailableException;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Routes requests through OllamaBackendPool to local stub servers
+ */
+class OllamaBackendPoolTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void stopServers() {
+        release.countDown();
+        servers.forEach(server -> server.stop(0));
+    }
+
+    @Test
+    void routesOnlyToBackendsServingTheModel() throws IOException {
+        OllamaBackendPool pool = pool(
+                backend(stub("a", 200, false), "llama3"),
+                backend(stub("b", 200, false), "mistral"));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("b", call(pool, "mistral"));
+            assertEquals("a", call(pool, "llama3"));
+        }
+    }
+
+    @Test
+    void prefersBackendWithFewestOutstandingRequests() throws Exception {
+        OllamaBackendPool pool = pool(
+                backend(stub("a", 200, true)),
+                backend(stub("b", 200, true)));
+
+        // Park a request on the first backend that gets one
+        Disposable parked = pool.routeMono("llama3", client -> client.get().uri("/api/tags")
+                .retrieve().bodyToMono(String.class)).subscribe();
+        waitFor(() -> pool.getBackends().stream().anyMatch(b -> b.inFlight.get() == 1));
+        String parkedOn = pool.getBackends().stream().filter(b -> b.inFlight.get() == 1)
+                .findFirst().orElseThrow().url;
+
+        for (int i = 0; i < 5; i++) {
+            OllamaBackendPool.Backend selected = pool.select("llama3");
+            assertFalse(selected.url.equals(parkedOn), "should avoid the backend with a request in flight");
+        }
+        parked.dispose();
+    }
+
+    @Test
+    void ejectsFailingBackendAndReadmitsAfterBackoff() throws Exception {
+        OllamaBackendPool pool = pool(
+                backend(stub("bad", 500, false)),
+                backend(stub("good", 200, false)));
+        OllamaBackendPool.Backend bad = pool.getBackends().get(0);
+
+        // Three consecutive failures eject the backend
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RuntimeException.class, () -> bad.track(bad.client.get().uri("/api/tags")
+                    .retrieve().bodyToMono(String.class).flux()).blockLast());
+        }
+        assertFalse(bad.isAvailable(System.nanoTime()));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("good", call(pool, "llama3"));
+        }
+
+        // Ejection lasts one second in this setup
+        waitFor(() -> bad.isAvailable(System.nanoTime()));
+        assertTrue(pool.getBackendStatus().stream().allMatch(status -> status.getAvailable()));
+    }
+
+    @Test
+    void failsFastWhileCircuitIsOpenAndProbeClosesIt() throws Exception {
+        AtomicInteger status = new AtomicInteger(500);
+        OllamaBackendPool pool = pool(backend(stub("only", status::get, false)));
+        OllamaBackendPool.Backend only = pool.getBackends().get(0);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RuntimeException.class, () -> call(pool, "llama3"));
+        }
+        assertEquals(OllamaBackendPool.CircuitState.OPEN, only.state);
+
+        long start = System.nanoTime();
+        ModelUnavailableException rejected = assertThrows(ModelUnavailableException.class, () -> call(pool, "llama3"));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200), "should fail without a request");
+        assertTrue(rejected.getRetryAfterSeconds() >= 1);
+
+        // Host recovers; once the open period is over the probe is the half-open trial
+        status.set(200);
+        waitFor(() -> only.isAvailable(System.nanoTime()));
+        pool.probeBackends();
+        waitFor(() -> only.state == OllamaBackendPool.CircuitState.CLOSED);
+        assertEquals(List.of("llama3:latest"), only.loadedModels);
+        assertTrue(only.lastProbeLatencyMs != null);
+        assertEquals("only", call(pool, "llama3"));
+    }
+
+    @Test
+    void opensCircuitOnFailureRateWithoutConsecutiveFailures() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        OllamaBackendPool pool = pool(backend(stub("flaky", () -> calls.incrementAndGet() % 2 == 0 ? 500 : 200, false)));
+        OllamaBackendPool.Backend flaky = pool.getBackends().get(0);
+
+        // Every other call fails: never three in a row, but half of the window
+        for (int i = 0; i < 10; i++) {
+            try {
+                call(pool, "llama3");
+            } catch (RuntimeException e) {
+                // expected for the failing half
+            }
+        }
+        assertEquals(OllamaBackendPool.CircuitState.OPEN, flaky.state);
+        assertEquals("OPEN", pool.getBackendStatus().get(0).getCircuitState());
+    }
+
+    @Test
+    void keepsSessionsOnTheirBackendAndMovesFewWhenOneLeaves() {
+        OllamaBackendPool three = pool(backend("http://node-1"), backend("http://node-2"), backend("http://node-3"));
+        OllamaBackendPool two = pool(backend("http://node-1"), backend("http://node-2"));
+
+        Map<String, Integer> perBackend = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            String sessionId = UUID.nameUUIDFromBytes(("session-" + i).getBytes(StandardCharsets.UTF_8)).toString();
+            String owner = three.select("llama3", sessionId).url;
+            assertEquals(owner, three.select("llama3", sessionId).url, "same session must map to the same backend");
+            perBackend.merge(owner, 1, Integer::sum);
+
+            // Only sessions owned by the removed node may move
+            if (!owner.equals("http://node-3")) {
+                assertEquals(owner, two.select("llama3", sessionId).url);
+            }
+        }
+        perBackend.values().forEach(count -> assertTrue(count > 800, "uneven spread: " + perBackend));
+    }
+
+    @Test
+    void failsOverWhenSessionBackendIsOverloaded() {
+        OllamaBackendPool pool = pool(backend("http://node-1"), backend("http://node-2"));
+        OllamaBackendPool.Backend owner = pool.select("llama3", "session-42");
+
+        owner.inFlight.set(10);
+        assertFalse(owner == pool.select("llama3", "session-42"), "overloaded owner should be skipped");
+
+        owner.inFlight.set(0);
+        assertTrue(owner == pool.select("llama3", "session-42"));
+    }
+
+    private String call(OllamaBackendPool pool, String model) {
+        return pool.routeMono(model, client -> client.get().uri("/api/tags")
+                .retrieve().bodyToMono(String.class)).block(Duration.ofSeconds(5));
+    }
+
+    private OllamaBackendPool pool(OllamaConfig.Backend... backends) {
+        OllamaConfig config = new OllamaConfig();
+        config.setBackends(List.of(backends));
+        config.getRouting().setFailureThreshold(3);
+        config.getRouting().setEjectionSeconds(1);
+
+        OllamaBackendPool pool = new OllamaBackendPool();
+        ReflectionTestUtils.setField(pool, "ollamaConfig", config);
+        ReflectionTestUtils.setField(pool, "meterRegistry", new SimpleMeterRegistry());
+        pool.init();
+        return pool;
+    }
+
+    private OllamaConfig.Backend backend(String url, String... models) {
+        OllamaConfig.Backend backend = new OllamaConfig.Backend();
+        backend.setUrl(url);
+        backend.setModels(List.of(models));
+        return backend;
+    }
+
+    /**
+     * Stub Ollama host answering every request with its name; optionally holds the first request open
+     */
+    private String stub(String name, int status, boolean holdFirst) throws IOException {
+        return stub(name, () -> status, holdFirst);
+    }
+
+    private String stub(String name, IntSupplier status, boolean holdFirst) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        CountDownLatch first = new CountDownLatch(1);
+        server.createContext("/", exchange -> {
+            if (holdFirst && first.getCount() == 1) {
+                first.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            boolean ps = exchange.getRequestURI().getPath().equals("/api/ps");
+            byte[] body = (ps ? "{\"models\":[{\"name\":\"llama3:latest\"}]}" : name).getBytes(StandardCharsets.UTF_8);
+            if (ps) {
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+            }
+            exchange.sendResponseHeaders(ps ? 200 : status.getAsInt(), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("condition not met in time");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.dto.ollama.OllamaChatResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of decoding one streamed Ollama answer (300 token chunks and the stats chunk) as it arrives in
+ * network buffers: the NDJSON decoder used by OllamaService.chatStream against the line splitting and indexOf
+ * scraping it replaced. Both return the total content length.
+ * Skipped in normal builds; run with: mvn test -Dtest=OllamaStreamDecodingBenchmark -Djmh=true
+ * (add -Djmh.prof=gc to see allocation per answer).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OllamaStreamDecodingBenchmark {
+
+    private static final String[] TOKENS = {"The", " capital", " of", " France", " is", " Paris", ".", "\\n",
+            " It", "\\u2019s", " \\\"the", " city", " of", " light", "\\\"", " \\u2014", " \\ud83d\\uddfc"};
+
+    // Bytes per network read (a small TCP segment, a typical socket read)
+    @Param({"512", "8192"})
+    public int bufferSize;
+
+    private final Jackson2JsonDecoder jsonDecoder = new Jackson2JsonDecoder();
+    private final StringDecoder stringDecoder = StringDecoder.allMimeTypes();
+    private final ResolvableType chunkType = ResolvableType.forClass(OllamaChatResponse.class);
+    private final ResolvableType stringType = ResolvableType.forClass(String.class);
+
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder stream = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            stream.append("{\"model\":\"llama3\",\"created_at\":\"2024-05-01T10:00:00.000000Z\",")
+                    .append("\"message\":{\"role\":\"assistant\",\"content\":\"")
+                    .append(TOKENS[i % TOKENS.length])
+                    .append("\"},\"done\":false}\n");
+        }
+        stream.append("{\"model\":\"llama3\",\"created_at\":\"2024-05-01T10:00:05.000000Z\",")
+                .append("\"message\":{\"role\":\"assistant\",\"content\":\"\"},\"done\":true,\"done_reason\":\"stop\",")
+                .append("\"total_duration\":5191566416,\"load_duration\":2154458,\"prompt_eval_count\":26,")
+                .append("\"prompt_eval_duration\":383809000,\"eval_count\":300,\"eval_duration\":4799921000}\n");
+        body = stream.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long ndjson() {
+        return jsonDecoder.decode(buffers(), chunkType, MediaType.APPLICATION_NDJSON, null)
+                .cast(OllamaChatResponse.class)
+                .map(chunk -> chunk.getMessage() != null && chunk.getMessage().getContent() != null
+                        ? chunk.getMessage().getContent().length() : 0)
+                .reduce(0L, Long::sum)
+                .block();
+    }
+
+    @Benchmark
+    public long indexOf() {
+        return stringDecoder.decode(buffers(), stringType, MimeTypeUtils.TEXT_PLAIN, null)
+                .map(line -> parseChunkContent(line).length())
+                .reduce(0L, Long::sum)
+                .block();
+    }
+
+    private Flux<DataBuffer> buffers() {
+        DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+        return Flux.range(0, (body.length + bufferSize - 1) / bufferSize)
+                .map(i -> factory.wrap(Arrays.copyOfRange(body, i * bufferSize, Math.min(body.length, (i + 1) * bufferSize))));
+    }
+
+    /**
+     * The parser ChatService used before typed decoding (kept here only as the baseline)
+     */
+    private static String parseChunkContent(String chunk) {
+        if (chunk.contains("\"content\":\"")) {
+            int start = chunk.indexOf("\"content\":\"") + 11;
+            int end = chunk.indexOf("\"", start);
+            if (end > start) {
+                return chunk.substring(start, end)
+                        .replace("\\n", "\n")
+                        .replace("\\\"", "\"")
+                        .replace("\\\\", "\\");
+            }
+        }
+        return "";
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "jmh", matches = "true")
+    void run() throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(OllamaStreamDecodingBenchmark.class.getSimpleName());
+        if (System.getProperty("jmh.prof") != null) {
+            options.addProfiler(System.getProperty("jmh.prof"));
+        }
+        new Runner(options.build()).run();
+    }
+}
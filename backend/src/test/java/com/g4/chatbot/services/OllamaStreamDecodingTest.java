@@ -0,0 +1,222 @@
+package com.g4.chatbot.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.g4.chatbot.config.HedgingConfig;
+import com.g4.chatbot.config.OllamaConfig;
+import com.g4.chatbot.dto.ollama.OllamaChatResponse;
+import com.g4.chatbot.dto.ollama.OllamaGenerationStats;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Verifies the NDJSON decoding used by OllamaService.chatStream, on its own and through chatStream against
+ * a stub Ollama host that writes the stream in small pieces
+ */
+class OllamaStreamDecodingTest {
+
+    private static final String STREAM = "{\"model\":\"llama3\",\"message\":{\"role\":\"assistant\",\"content\":\"G\\u00fcnayd\\u0131n \\\"d\\u00fcnya\\\"\\n\"},\"done\":false}\n"
+            + "{\"model\":\"llama3\",\"message\":{\"role\":\"assistant\",\"content\":\"\\ud83d\\ude00 \\\\o/\"},\"done\":false}\n"
+            + "{\"model\":\"llama3\",\"message\":{\"role\":\"assistant\",\"content\":\"\"},\"done\":true,\"done_reason\":\"stop\","
+            + "\"total_duration\":5191566416,\"load_duration\":2154458,\"prompt_eval_count\":26,"
+            + "\"prompt_eval_duration\":383809000,\"eval_count\":298,\"eval_duration\":4799921000}\n";
+
+    private final Jackson2JsonDecoder decoder = new Jackson2JsonDecoder();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HttpServer server;
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void chatStreamDecodesChunksArrivingInPieces() throws IOException {
+        AtomicReference<String> accept = new AtomicReference<>();
+        AtomicReference<String> requestBody = new AtomicReference<>();
+        OllamaService ollamaService = ollamaService(stub(accept, requestBody, 7));
+
+        List<OllamaChatResponse> chunks = ollamaService.chatStream("llama3",
+                        List.of(OllamaMessage.builder().role("user").content("Merhaba").build()), "session-1")
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertTrue(accept.get().contains(MediaType.APPLICATION_NDJSON_VALUE), "accept header: " + accept.get());
+        assertTrue(requestBody.get().contains("\"stream\":true"), requestBody.get());
+        assertEquals(List.of("G\u00fcnayd\u0131n \"d\u00fcnya\"\n", "\uD83D\uDE00 \\o/", ""),
+                chunks.stream().map(chunk -> chunk.getMessage().getContent()).toList());
+        assertFalse(chunks.get(1).getDone());
+        assertTrue(chunks.get(2).getDone());
+        assertEquals(298, chunks.get(2).getEvalCount());
+        // The done chunk's stats are recorded once
+        assertEquals(298.0, meterRegistry.counter("ollama.generation.tokens", "model", "llama3").count());
+        assertEquals(1, meterRegistry.get("ollama.prompt.eval.duration").timer().count());
+    }
+
+    @Test
+    void chatStreamFailsOnAnErrorStatus() throws IOException {
+        HttpServer failing = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        failing.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        failing.start();
+        server = failing;
+
+        OllamaService ollamaService = ollamaService("http://127.0.0.1:" + failing.getAddress().getPort());
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> ollamaService.chatStream("llama3",
+                        List.of(OllamaMessage.builder().role("user").content("Merhaba").build()), "session-1")
+                .collectList()
+                .block(Duration.ofSeconds(10)));
+        assertTrue(error.getMessage().startsWith("Failed to get response from Ollama"), error.getMessage());
+    }
+
+    @Test
+    void decodesChunksSplitAcrossBuffersWithEscapes() {
+        List<OllamaChatResponse> chunks = decode(STREAM, 7);
+
+        assertEquals(3, chunks.size());
+        assertEquals("G\u00fcnayd\u0131n \"d\u00fcnya\"\n", chunks.get(0).getMessage().getContent());
+        assertEquals("\uD83D\uDE00 \\o/", chunks.get(1).getMessage().getContent());
+        assertFalse(chunks.get(1).getDone());
+
+        OllamaChatResponse last = chunks.get(2);
+        assertTrue(last.getDone());
+        assertEquals("stop", last.getDoneReason());
+        assertEquals(26, last.getPromptEvalCount());
+        assertEquals(298, last.getEvalCount());
+        assertEquals(4799921000L, last.getEvalDuration());
+        assertEquals(5191566416L, last.getTotalDuration());
+    }
+
+    @Test
+    void finalChunkStatsSerializeAsMessageMetadata() throws Exception {
+        String body = "{\"model\":\"llama3\",\"message\":{\"role\":\"assistant\",\"content\":\"hi\"},\"done\":false}\n"
+                + "{\"model\":\"llama3\",\"done\":true,\"done_reason\":\"stop\",\"total_duration\":5191566416,"
+                + "\"load_duration\":2154458,\"prompt_eval_count\":26,\"prompt_eval_duration\":383809000,"
+                + "\"eval_count\":298,\"eval_duration\":4799921000}\n";
+
+        List<OllamaChatResponse> chunks = decode(body, 16);
+
+        assertNull(OllamaGenerationStats.from(chunks.get(0)));
+        JsonNode metadata = new ObjectMapper().readTree(
+                new ObjectMapper().writeValueAsString(OllamaGenerationStats.from(chunks.get(1))));
+        assertEquals("stop", metadata.get("done_reason").asText());
+        assertEquals(298, metadata.get("eval_count").asInt());
+        assertEquals(2154458L, metadata.get("load_duration").asLong());
+        assertEquals(62.1, metadata.get("tokens_per_second").asDouble());
+        assertEquals("llama3", metadata.get("model").asText());
+    }
+
+    @Test
+    void toleratesUnknownFields() {
+        String body = "{\"model\":\"llama3\",\"message\":{\"role\":\"assistant\",\"content\":\"hi\",\"images\":null},\"done\":false,\"extra\":1}\n";
+
+        List<OllamaChatResponse> chunks = decode(body, 3);
+
+        assertEquals(1, chunks.size());
+        assertEquals("hi", chunks.get(0).getMessage().getContent());
+    }
+
+    /**
+     * OllamaService routed to one backend, without hedging and with no model runtime options
+     */
+    private OllamaService ollamaService(String url) {
+        OllamaConfig.Backend backend = new OllamaConfig.Backend();
+        backend.setUrl(url);
+        backend.setModels(List.of());
+        OllamaConfig ollamaConfig = new OllamaConfig();
+        ollamaConfig.setBackends(List.of(backend));
+        OllamaBackendPool backendPool = new OllamaBackendPool();
+        ReflectionTestUtils.setField(backendPool, "ollamaConfig", ollamaConfig);
+        ReflectionTestUtils.setField(backendPool, "meterRegistry", meterRegistry);
+        backendPool.init();
+
+        HedgingConfig hedgingConfig = new HedgingConfig();
+        HedgingService hedgingService = new HedgingService();
+        ReflectionTestUtils.setField(hedgingService, "hedgingConfig", hedgingConfig);
+        ReflectionTestUtils.setField(hedgingService, "meterRegistry", meterRegistry);
+
+        OllamaService ollamaService = new OllamaService();
+        ReflectionTestUtils.setField(ollamaService, "ollamaConfig", ollamaConfig);
+        ReflectionTestUtils.setField(ollamaService, "backendPool", backendPool);
+        ReflectionTestUtils.setField(ollamaService, "modelRuntimeService", mock(ModelRuntimeService.class));
+        ReflectionTestUtils.setField(ollamaService, "hedgingService", hedgingService);
+        ReflectionTestUtils.setField(ollamaService, "hedgingConfig", hedgingConfig);
+        ReflectionTestUtils.setField(ollamaService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(ollamaService, "objectMapper", new ObjectMapper());
+        return ollamaService;
+    }
+
+    /**
+     * Stub Ollama host streaming STREAM as chunked NDJSON, flushing every pieceSize bytes
+     */
+    private String stub(AtomicReference<String> accept, AtomicReference<String> requestBody, int pieceSize)
+            throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/chat", exchange -> {
+            accept.set(exchange.getRequestHeaders().getFirst("Accept"));
+            requestBody.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] body = STREAM.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", MediaType.APPLICATION_NDJSON_VALUE);
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int from = 0; from < body.length; from += pieceSize) {
+                    out.write(body, from, Math.min(pieceSize, body.length - from));
+                    out.flush();
+                }
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private List<OllamaChatResponse> decode(String body, int bufferSize) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+
+        Flux<DataBuffer> buffers = Flux.range(0, (bytes.length + bufferSize - 1) / bufferSize)
+                .map(i -> {
+                    int from = i * bufferSize;
+                    int length = Math.min(bufferSize, bytes.length - from);
+                    return factory.wrap(Arrays.copyOfRange(bytes, from, from + length));
+                });
+
+        return decoder.decode(buffers, ResolvableType.forClass(OllamaChatResponse.class),
+                        MediaType.APPLICATION_NDJSON, null)
+                .cast(OllamaChatResponse.class)
+                .collectList()
+                .block();
+    }
+}
@@ -0,0 +1,130 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.ResponseCacheConfig;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Exact tiers only (the semantic cache is off): two nodes with their own Caffeine tier and one shared Redis
+ */
+class ResponseCacheServiceTest {
+
+    private static final String ANSWER = "Paris is the capital of France.";
+
+    private final ResponseCacheConfig cacheConfig = new ResponseCacheConfig();
+    private final Map<String, Object> redis = new ConcurrentHashMap<>();
+    private final ValueOperations<String, Object> values = sharedValues();
+
+    private ResponseCacheService nodeA;
+    private ResponseCacheService nodeB;
+
+    @BeforeEach
+    void setUp() {
+        cacheConfig.setEnabled(true);
+        nodeA = node();
+        nodeB = node();
+    }
+
+    @Test
+    void keyIgnoresWhitespaceButNotSystemPromptOrTemperature() {
+        cacheConfig.setAllowNonDeterministic(true);
+        String key = nodeA.lookup("llama3", prompt("Be brief.", "What is the capital of France?"), 0.0).getKey();
+
+        assertEquals(key, nodeA.lookup("llama3", prompt("Be brief.", "  What is the\n capital of  France? "), 0.0).getKey());
+        assertNotEquals(key, nodeA.lookup("llama3", prompt("Be verbose.", "What is the capital of France?"), 0.0).getKey());
+        assertNotEquals(key, nodeA.lookup("llama3", prompt("Be brief.", "What is the capital of France?"), 0.7).getKey());
+        assertNotEquals(key, nodeA.lookup("mistral", prompt("Be brief.", "What is the capital of France?"), 0.0).getKey());
+    }
+
+    @Test
+    void sampledRequestsBypassTheCache() {
+        nodeA.store(nodeA.lookup("llama3", prompt("Be brief.", "What is the capital of France?"), 0.0), ANSWER);
+
+        assertSame(ResponseCacheService.Lookup.NONE, nodeA.lookup("llama3", prompt("Be brief.", "What is the capital of France?"), 0.7));
+        assertSame(ResponseCacheService.Lookup.NONE, nodeA.lookup("llama3", prompt("Be brief.", "What is the capital of France?"), null));
+        assertEquals(2.0, meterRegistry(nodeA).counter("llm.response.cache.requests", "result", "bypass", "tier", "none").count());
+    }
+
+    @Test
+    void remoteHitIsCopiedIntoTheLocalTier() {
+        nodeA.store(nodeA.lookup("llama3", prompt("Be brief.", "What is the capital of France?"), 0.0), ANSWER);
+
+        assertEquals(ANSWER, nodeB.lookup("llama3", prompt("Be brief.", "What is the capital of France?"), 0.0).getResponse());
+        assertEquals(ANSWER, nodeB.lookup("llama3", prompt("Be brief.", "What is the capital of France?"), 0.0).getResponse());
+
+        SimpleMeterRegistry meterRegistry = meterRegistry(nodeB);
+        assertEquals(1.0, meterRegistry.counter("llm.response.cache.requests", "result", "hit", "tier", "l2").count());
+        assertEquals(1.0, meterRegistry.counter("llm.response.cache.requests", "result", "hit", "tier", "l1").count());
+        // Node A's miss before storing and node B's first lookup; the second one is served locally
+        verify(values, times(2)).get(anyString());
+    }
+
+    @Test
+    void answerOverTheSizeLimitIsNotStored() {
+        cacheConfig.setMaxResponseChars(ANSWER.length() - 1);
+
+        nodeA.store(nodeA.lookup("llama3", prompt("Be brief.", "What is the capital of France?"), 0.0), ANSWER);
+
+        assertNull(nodeA.lookup("llama3", prompt("Be brief.", "What is the capital of France?"), 0.0).getResponse());
+        verify(values, never()).set(anyString(), any(), any(Duration.class));
+        assertTrue(redis.isEmpty());
+    }
+
+    private ResponseCacheService node() {
+        SemanticCacheService semanticCacheService = mock(SemanticCacheService.class);
+        @SuppressWarnings("unchecked")
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+
+        ResponseCacheService service = new ResponseCacheService();
+        ReflectionTestUtils.setField(service, "cacheConfig", cacheConfig);
+        ReflectionTestUtils.setField(service, "semanticCacheService", semanticCacheService);
+        ReflectionTestUtils.setField(service, "tokenizerService", mock(TokenizerService.class));
+        ReflectionTestUtils.setField(service, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        service.init();
+        return service;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ValueOperations<String, Object> sharedValues() {
+        ValueOperations<String, Object> operations = mock(ValueOperations.class);
+        when(operations.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(operations).set(anyString(), any(), any(Duration.class));
+        return operations;
+    }
+
+    private static SimpleMeterRegistry meterRegistry(ResponseCacheService service) {
+        return (SimpleMeterRegistry) ReflectionTestUtils.getField(service, "meterRegistry");
+    }
+
+    private static List<OllamaMessage> prompt(String systemPrompt, String question) {
+        return List.of(OllamaMessage.builder().role("system").content(systemPrompt).build(),
+                OllamaMessage.builder().role("user").content(question).build());
+    }
+}
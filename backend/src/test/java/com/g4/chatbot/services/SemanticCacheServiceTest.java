@@ -0,0 +1,127 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.SemanticCacheConfig;
+import com.g4.chatbot.dto.ollama.OllamaMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Threshold, TTL, refresh and eviction behaviour of the semantic cache, with prompts embedded to fixed vectors
+ */
+class SemanticCacheServiceTest {
+
+    private final Map<String, float[]> embeddings = new HashMap<>();
+    private final SemanticCacheConfig config = new SemanticCacheConfig();
+    private final SemanticCacheService service = new SemanticCacheService();
+
+    @TempDir
+    Path indexDirectory;
+
+    @BeforeEach
+    void setUp() {
+        embeddings.put("capital of france", new float[]{1, 0, 0, 0});
+        embeddings.put("france capital", new float[]{1, 0.2f, 0, 0});    // similarity ~0.98
+        embeddings.put("weather in paris", new float[]{1, 0.8f, 0, 0});  // similarity ~0.78
+        embeddings.put("rust lifetimes", new float[]{0, 0, 1, 0});
+
+        OllamaService ollamaService = mock(OllamaService.class);
+        when(ollamaService.embed(anyString(), anyString()))
+                .thenAnswer(invocation -> embeddings.get(invocation.getArgument(1, String.class).strip()));
+
+        config.setEnabled(true);
+        config.setIndexDirectory(indexDirectory.toString());
+        ReflectionTestUtils.setField(service, "semanticCacheConfig", config);
+        ReflectionTestUtils.setField(service, "ollamaService", ollamaService);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        service.init();
+    }
+
+    @Test
+    void servesParaphrasesAboveTheThresholdOnly() {
+        service.store(service.probe("llama3", prompt("capital of france")), "Paris");
+
+        assertEquals("Paris", service.probe("llama3", prompt("france capital")).getAnswer());
+        assertNull(service.probe("llama3", prompt("weather in paris")).getAnswer());
+        // Other models have their own index
+        assertNull(service.probe("mistral", prompt("capital of france")).getAnswer());
+    }
+
+    @Test
+    void expiredEntryIsRefreshedInPlaceAndServedAgain() {
+        config.setTtlSeconds(0);
+        service.store(service.probe("llama3", prompt("capital of france")), "Paris (old)");
+
+        for (int i = 0; i < 3; i++) {
+            SemanticCacheService.Probe probe = service.probe("llama3", prompt("capital of france"));
+            assertNull(probe.getAnswer());
+            service.store(probe, "Paris " + i);
+        }
+        assertEquals(1, index().size());
+        assertEquals(0, index().removedCount());
+
+        config.setTtlSeconds(3600);
+        assertEquals("Paris 2", service.probe("llama3", prompt("capital of france")).getAnswer());
+    }
+
+    @Test
+    void expiredNeighbourIsSkippedForAFreshOne() {
+        service.store(service.probe("llama3", prompt("france capital")), "Paris (old)");
+        HnswIndex.Match old = index().nearest(embeddings.get("france capital"), 8);
+        index().replace(old, "Paris (old)", System.currentTimeMillis() - 7_200_000);
+        index().add(new float[]{1, 0.3f, 0, 0}, "Paris (fresh)", System.currentTimeMillis()); // similarity ~0.96
+        config.setTtlSeconds(3600);
+
+        // The nearest entry is expired and dropped; the next candidate above the threshold answers
+        assertEquals("Paris (fresh)", service.probe("llama3", prompt("capital of france")).getAnswer());
+        assertEquals(1, index().size());
+    }
+
+    @Test
+    void fullIndexEvictsItsOldestEntries() {
+        config.setMaxEntriesPerIndex(2);
+        service.store(service.probe("llama3", prompt("capital of france")), "Paris");
+        service.store(service.probe("llama3", prompt("rust lifetimes")), "Borrowing");
+        service.store(service.probe("llama3", prompt("weather in paris")), "Sunny");
+
+        assertEquals(2, index().size());
+        assertNull(service.probe("llama3", prompt("capital of france")).getAnswer());
+        assertEquals("Sunny", service.probe("llama3", prompt("weather in paris")).getAnswer());
+    }
+
+    @Test
+    void sweepRemovesExpiredEntriesAndCompacts() {
+        service.store(service.probe("llama3", prompt("capital of france")), "Paris");
+        service.store(service.probe("llama3", prompt("rust lifetimes")), "Borrowing");
+        config.setTtlSeconds(0);
+
+        service.persist();
+        assertEquals(0, index().size());
+        assertEquals(0, index().removedCount());
+    }
+
+    private HnswIndex index() {
+        @SuppressWarnings("unchecked")
+        Map<String, HnswIndex> indexes = (Map<String, HnswIndex>) ReflectionTestUtils.getField(service, "indexes");
+        return indexes.values().iterator().next();
+    }
+
+    private List<OllamaMessage> prompt(String question) {
+        return List.of(
+                OllamaMessage.builder().role("system").content("You are a helpful assistant.").build(),
+                OllamaMessage.builder().role("user").content(question).build());
+    }
+}
@@ -0,0 +1,297 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.AsyncConfig;
+import com.g4.chatbot.config.ExecutionConfig;
+import com.g4.chatbot.config.StreamingConfig;
+import com.g4.chatbot.dto.chat.stream.ChatStreamEvent;
+import com.g4.chatbot.dto.chat.stream.StreamSummaryData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Streams drained on the platform-mode SSE writer executor, with subscribers that stop reading
+ * (their onNext blocks like an SseEmitter write to a full socket) or read only once the answer is complete
+ */
+class StreamOutboxServiceTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<StreamOutboxService> services = new ArrayList<>();
+    private final List<AsyncTaskExecutor> executors = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        services.forEach(StreamOutboxService::shutdown);
+        executors.forEach(executor -> ((ThreadPoolTaskExecutor) executor).shutdown());
+    }
+
+    @Test
+    void stalledSubscriberDoesNotDelayAnotherStream() throws InterruptedException {
+        StreamOutboxService outboxService = outboxService(4, 10, 60000);
+        for (int i = 0; i < 3; i++) {
+            stall(outboxService, "stalled-" + i, release);
+        }
+
+        long start = System.nanoTime();
+        List<ChatStreamEvent> events = outboxService.isolate(answer(), "fast", 2L).collectList().block(Duration.ofSeconds(5));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(4, events.size());
+        assertTrue(elapsedMs < 500, "fast stream took " + elapsedMs + " ms");
+    }
+
+    @Test
+    void queuedStreamGetsTheFirstWriterThatFreesUp() throws InterruptedException {
+        StreamOutboxService outboxService = outboxService(2, 10, 60000);
+        CountDownLatch firstRelease = new CountDownLatch(1);
+        stall(outboxService, "stalled-0", firstRelease);
+        stall(outboxService, "stalled-1", release);
+
+        CountDownLatch completed = new CountDownLatch(1);
+        outboxService.isolate(answer(), "waiting", 2L).subscribe(event -> {}, error -> {}, completed::countDown);
+        assertEquals(1, completed.getCount(), "both writer threads are held");
+
+        // Only the first stalled stream frees its thread; the waiting one must not sit behind the second
+        firstRelease.countDown();
+        assertTrue(completed.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void blockedWriteTimesOutEndsItsStreamAndFreesTheWriter() throws InterruptedException {
+        StreamOutboxService outboxService = outboxService(1, 10, 200);
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+        Flux<ChatStreamEvent> endless = answer().concatWith(Flux.never()).doOnCancel(() -> upstreamCancelled.set(true));
+        StallingSubscriber stalled = stall(outboxService, endless, release);
+
+        // Queued behind the stalled write on the only writer thread
+        List<ChatStreamEvent> events = outboxService.isolate(answer(), "fast", 2L).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(4, events.size());
+        assertTrue(stalled.errored.await(2, TimeUnit.SECONDS));
+        assertTrue(stalled.interrupted.get(), "the blocked write is interrupted");
+        assertTrue(upstreamCancelled.get(), "the generation is cancelled");
+        assertEquals(1.0, meterRegistry.counter("chat.stream.aborted", "reason", "write-timeout").count());
+    }
+
+    @Test
+    void streamFindingTheWriterQueueFullIsEnded() throws InterruptedException {
+        StreamOutboxService outboxService = outboxService(1, 1, 60000);
+        stall(outboxService, "stalled", release);
+        outboxService.isolate(answer(), "queued", 2L).subscribe();
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        outboxService.isolate(answer(), "rejected", 3L).subscribe(event -> {}, error::set);
+
+        assertNotNull(error.get());
+        assertInstanceOf(IllegalStateException.class, error.get());
+        assertEquals(1.0, meterRegistry.counter("chat.stream.aborted", "reason", "writers-busy").count());
+    }
+
+    @Test
+    void coalesceMergesTokensIntoTheNewestFrame() throws InterruptedException {
+        StreamOutboxService outboxService = outboxService(policy(StreamingConfig.SlowClientPolicy.COALESCE, 1024));
+
+        List<ChatStreamEvent> events = readLate(outboxService, Flux.just(ChatStreamEvent.session("session-1", 1L),
+                ChatStreamEvent.message("a"), ChatStreamEvent.message("b"), ChatStreamEvent.message("c"),
+                ChatStreamEvent.message("d"), ChatStreamEvent.done(2L)));
+
+        assertEquals(List.of(ChatStreamEvent.EventType.SESSION, ChatStreamEvent.EventType.MESSAGE,
+                ChatStreamEvent.EventType.DONE), types(events));
+        assertEquals("abcd", events.get(1).getData());
+    }
+
+    @Test
+    void coalesceAbortsOnceTheMergedFrameReachesItsCap() throws InterruptedException {
+        StreamOutboxService outboxService = outboxService(policy(StreamingConfig.SlowClientPolicy.COALESCE, 3));
+
+        List<ChatStreamEvent> events = readLate(outboxService, Flux.just(ChatStreamEvent.session("session-1", 1L),
+                ChatStreamEvent.message("a"), ChatStreamEvent.message("b"), ChatStreamEvent.message("c"),
+                ChatStreamEvent.message("d"), ChatStreamEvent.done(2L)));
+
+        assertEquals(List.of(ChatStreamEvent.EventType.ERROR), types(events));
+    }
+
+    @Test
+    void coalesceAbortsWhenAControlEventIsNewestInAFullOutbox() throws InterruptedException {
+        StreamOutboxService outboxService = outboxService(policy(StreamingConfig.SlowClientPolicy.COALESCE, 1024));
+
+        List<ChatStreamEvent> events = readLate(outboxService, Flux.just(ChatStreamEvent.session("session-1", 1L),
+                ChatStreamEvent.queued(1), ChatStreamEvent.message("a"), ChatStreamEvent.done(2L)));
+
+        assertEquals(List.of(ChatStreamEvent.EventType.ERROR), types(events));
+    }
+
+    @Test
+    void dropToSummarySendsTheFullTextOnceTheAnswerIsComplete() throws InterruptedException {
+        StreamOutboxService outboxService = outboxService(policy(StreamingConfig.SlowClientPolicy.DROP_TO_SUMMARY, 1024));
+
+        List<ChatStreamEvent> events = readLate(outboxService, Flux.just(ChatStreamEvent.session("session-1", 1L),
+                ChatStreamEvent.message("a"), ChatStreamEvent.message("b"), ChatStreamEvent.message("c"),
+                ChatStreamEvent.done(2L)));
+
+        assertEquals(List.of(ChatStreamEvent.EventType.SESSION, ChatStreamEvent.EventType.MESSAGE,
+                ChatStreamEvent.EventType.SUMMARY, ChatStreamEvent.EventType.DONE), types(events));
+        assertEquals("a", events.get(1).getData());
+        assertEquals("abc", ((StreamSummaryData) events.get(2).getData()).getContent());
+    }
+
+    @Test
+    void abortSendsTheErrorEventAndCancelsTheGeneration() throws InterruptedException {
+        StreamOutboxService outboxService = outboxService(policy(StreamingConfig.SlowClientPolicy.ABORT, 1024));
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+
+        List<ChatStreamEvent> events = readLate(outboxService, Flux.just(ChatStreamEvent.session("session-1", 1L),
+                        ChatStreamEvent.message("a"), ChatStreamEvent.message("b"), ChatStreamEvent.message("c"),
+                        ChatStreamEvent.message("d"))
+                .concatWith(Flux.never())
+                .doOnCancel(() -> upstreamCancelled.set(true)));
+
+        assertEquals(List.of(ChatStreamEvent.EventType.ERROR), types(events));
+        assertTrue(upstreamCancelled.get());
+        assertEquals(1.0, meterRegistry.counter("chat.stream.aborted", "reason", "overflow").count());
+    }
+
+    private StreamingConfig policy(StreamingConfig.SlowClientPolicy policy, int maxCoalescedBytes) {
+        StreamingConfig streamingConfig = new StreamingConfig();
+        streamingConfig.getSlowClient().setBufferSize(2);
+        streamingConfig.getSlowClient().setPolicy(policy);
+        streamingConfig.getSlowClient().setMaxCoalescedBytes(maxCoalescedBytes);
+        return streamingConfig;
+    }
+
+    private StreamOutboxService outboxService(int writerThreads, int writerQueueCapacity, long writeTimeoutMs) {
+        StreamingConfig streamingConfig = new StreamingConfig();
+        streamingConfig.getSlowClient().setWriterThreads(writerThreads);
+        streamingConfig.getSlowClient().setWriterQueueCapacity(writerQueueCapacity);
+        streamingConfig.getSlowClient().setWriteTimeoutMs(writeTimeoutMs);
+        return outboxService(streamingConfig);
+    }
+
+    private StreamOutboxService outboxService(StreamingConfig streamingConfig) {
+
+        AsyncConfig asyncConfig = new AsyncConfig();
+        ReflectionTestUtils.setField(asyncConfig, "executionConfig", new ExecutionConfig());
+        ReflectionTestUtils.setField(asyncConfig, "meterRegistry", meterRegistry);
+        AsyncTaskExecutor writerExecutor = asyncConfig.streamWriterExecutor(streamingConfig);
+        executors.add(writerExecutor);
+
+        StreamOutboxService outboxService = new StreamOutboxService();
+        ReflectionTestUtils.setField(outboxService, "streamingConfig", streamingConfig);
+        ReflectionTestUtils.setField(outboxService, "writerExecutor", writerExecutor);
+        ReflectionTestUtils.setField(outboxService, "meterRegistry", meterRegistry);
+        outboxService.init();
+        services.add(outboxService);
+        return outboxService;
+    }
+
+    /**
+     * Subscribe a client that reads nothing until the whole answer was produced, then everything
+     */
+    private static List<ChatStreamEvent> readLate(StreamOutboxService outboxService, Flux<ChatStreamEvent> events)
+            throws InterruptedException {
+        List<ChatStreamEvent> received = new CopyOnWriteArrayList<>();
+        CountDownLatch terminated = new CountDownLatch(1);
+        BaseSubscriber<ChatStreamEvent> client = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+            }
+
+            @Override
+            protected void hookOnNext(ChatStreamEvent event) {
+                received.add(event);
+            }
+
+            @Override
+            protected void hookFinally(SignalType type) {
+                terminated.countDown();
+            }
+        };
+        outboxService.isolate(events, "late", 1L).subscribe(client);
+        client.request(Long.MAX_VALUE);
+        assertTrue(terminated.await(2, TimeUnit.SECONDS));
+        return received;
+    }
+
+    private static List<ChatStreamEvent.EventType> types(List<ChatStreamEvent> events) {
+        return events.stream().map(ChatStreamEvent::getType).toList();
+    }
+
+    private void stall(StreamOutboxService outboxService, String streamId, CountDownLatch until) throws InterruptedException {
+        StallingSubscriber subscriber = new StallingSubscriber(until);
+        outboxService.isolate(answer(), streamId, 1L).subscribe(subscriber);
+        assertTrue(subscriber.writing.await(2, TimeUnit.SECONDS));
+    }
+
+    private StallingSubscriber stall(StreamOutboxService outboxService, Flux<ChatStreamEvent> events, CountDownLatch until)
+            throws InterruptedException {
+        StallingSubscriber subscriber = new StallingSubscriber(until);
+        outboxService.isolate(events, "stalled", 1L).subscribe(subscriber);
+        assertTrue(subscriber.writing.await(2, TimeUnit.SECONDS));
+        return subscriber;
+    }
+
+    private static Flux<ChatStreamEvent> answer() {
+        return Flux.just(ChatStreamEvent.session("session-1", 1L), ChatStreamEvent.message("Paris"),
+                ChatStreamEvent.message(" it is."), ChatStreamEvent.done(2L));
+    }
+
+    /**
+     * A client whose first write blocks until the latch opens (or the write is interrupted)
+     */
+    private static class StallingSubscriber extends BaseSubscriber<ChatStreamEvent> {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch errored = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        private final CountDownLatch until;
+
+        StallingSubscriber(CountDownLatch until) {
+            this.until = until;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        protected void hookOnNext(ChatStreamEvent event) {
+            if (writing.getCount() == 0) {
+                return;
+            }
+            writing.countDown();
+            try {
+                until.await();
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            errored.countDown();
+        }
+    }
+}
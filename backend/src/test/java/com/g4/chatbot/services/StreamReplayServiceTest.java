@@ -0,0 +1,126 @@
+package com.g4.chatbot.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.g4.chatbot.config.StreamingConfig;
+import com.g4.chatbot.dto.chat.stream.ChatStreamEvent;
+import com.g4.chatbot.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Streams published with the smallest ring (4 KB, never grown), driven by a sink standing in for the generation
+ */
+class StreamReplayServiceTest {
+
+    // 1000-byte payloads make 1013-byte records: four fill the ring, the fifth wraps around its end
+    private static final int PAYLOAD_BYTES = 1000;
+    private static final int RING_BYTES = 4 * 1024;
+
+    private final StreamingConfig streamingConfig = new StreamingConfig();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StreamReplayService replayService = new StreamReplayService();
+
+    @BeforeEach
+    void setUp() {
+        streamingConfig.getResume().setMaxBytesPerStream(RING_BYTES);
+        ReflectionTestUtils.setField(replayService, "streamingConfig", streamingConfig);
+        ReflectionTestUtils.setField(replayService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(replayService, "meterRegistry", meterRegistry);
+        replayService.registerMetrics();
+    }
+
+    @Test
+    void recordsWrappingAroundTheRingAreReplayedIntact() {
+        Sinks.Many<ChatStreamEvent> generation = Sinks.many().unicast().onBackpressureBuffer();
+        Disposable client = replayService.publish("stream-1", 7L, generation.asFlux()).subscribe();
+        for (int i = 0; i < 6; i++) {
+            generation.tryEmitNext(ChatStreamEvent.message(token(i)));
+        }
+        client.dispose();
+
+        // Records 1 and 2 were overwritten; 5 straddles the end of the buffer and 6 starts after its wrap
+        List<ChatStreamEvent> replayed = replayService.resume("stream-1:3", 7L)
+                .take(3)
+                .collectList()
+                .block(Duration.ofSeconds(2));
+
+        assertEquals(List.of(token(3), token(4), token(5)), replayed.stream().map(ChatStreamEvent::getData).toList());
+        assertEquals(List.of("stream-1:4", "stream-1:5", "stream-1:6"), replayed.stream().map(ChatStreamEvent::getId).toList());
+    }
+
+    @Test
+    void resumeAfterAnOverwrittenEventGetsTheGapError() {
+        Sinks.Many<ChatStreamEvent> generation = Sinks.many().unicast().onBackpressureBuffer();
+        Disposable client = replayService.publish("stream-1", 7L, generation.asFlux()).subscribe();
+        for (int i = 0; i < 6; i++) {
+            generation.tryEmitNext(ChatStreamEvent.message(token(i)));
+        }
+        client.dispose();
+
+        List<ChatStreamEvent> replayed = replayService.resume("stream-1:1", 7L).collectList().block(Duration.ofSeconds(2));
+
+        assertEquals(List.of(ChatStreamEvent.EventType.ERROR), replayed.stream().map(ChatStreamEvent::getType).toList());
+        assertEquals(1.0, meterRegistry.counter("chat.stream.replay.gaps").count());
+    }
+
+    @Test
+    void anotherUsersStreamIsNotFound() {
+        Sinks.Many<ChatStreamEvent> generation = Sinks.many().unicast().onBackpressureBuffer();
+        replayService.publish("stream-1", 7L, generation.asFlux()).subscribe();
+        generation.tryEmitNext(ChatStreamEvent.message("Paris"));
+
+        assertThrows(ResourceNotFoundException.class, () -> replayService.resume("stream-1:1", 8L));
+    }
+
+    @Test
+    void generationIsCancelledWhenNobodyReattachesWithinTheGracePeriod() throws InterruptedException {
+        streamingConfig.getResume().setDetachGraceSeconds(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        Flux<ChatStreamEvent> generation = Flux.<ChatStreamEvent>never().doOnCancel(cancelled::countDown);
+
+        Disposable client = replayService.publish("stream-1", 7L, generation).subscribe();
+        client.dispose();
+
+        assertFalse(cancelled.await(300, TimeUnit.MILLISECONDS), "still generating inside the grace period");
+        assertTrue(cancelled.await(3, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void finishedStreamsAreEvictedOldestFirstAtTheGlobalCap() {
+        streamingConfig.getResume().setMaxTotalBytes(3L * RING_BYTES);
+        List<Disposable> clients = new CopyOnWriteArrayList<>();
+        clients.add(replayService.publish("finished-1", 7L, Flux.just(ChatStreamEvent.message("Paris"))).subscribe());
+        clients.add(replayService.publish("finished-2", 7L, Flux.just(ChatStreamEvent.message("Rome"))).subscribe());
+        clients.add(replayService.publish("live", 7L, Flux.never()).subscribe());
+
+        clients.add(replayService.publish("new", 7L, Flux.never()).subscribe());
+
+        assertThrows(ResourceNotFoundException.class, () -> replayService.resume("finished-1:1", 7L));
+        assertEquals(List.of("Rome"), replayService.resume("finished-2:0", 7L)
+                .map(ChatStreamEvent::getData)
+                .collectList()
+                .block(Duration.ofSeconds(2)));
+        assertEquals(3.0, meterRegistry.get("chat.stream.replay.bytes").gauge().value() / RING_BYTES);
+        clients.forEach(Disposable::dispose);
+    }
+
+    private static String token(int i) {
+        return String.valueOf((char) ('a' + i)).repeat(PAYLOAD_BYTES);
+    }
+}
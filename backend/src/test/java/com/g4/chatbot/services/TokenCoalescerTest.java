@@ -0,0 +1,139 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.StreamingConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.PublisherProbe;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Flushes of each policy on virtual time: 8-byte frames, a 30 ms TIME window and a 200 ms SENTENCE delay
+ */
+class TokenCoalescerTest {
+
+    private final StreamingConfig streamingConfig = new StreamingConfig();
+    private final TimerScheduler scheduler = new TimerScheduler();
+    private final TokenCoalescer coalescer = new TokenCoalescer();
+
+    @BeforeEach
+    void setUp() {
+        streamingConfig.getCoalescing().setMaxBytes(8);
+        streamingConfig.getCoalescing().setWindowMs(30);
+        streamingConfig.getCoalescing().setMaxDelayMs(200);
+        ReflectionTestUtils.setField(coalescer, "streamingConfig", streamingConfig);
+        ReflectionTestUtils.setField(coalescer, "timerScheduler", scheduler);
+    }
+
+    @Test
+    void firstTokenIsSentAtOnce() {
+        StepVerifier.withVirtualTime(() -> coalesce(StreamingConfig.CoalescePolicy.TIME, "Paris"), () -> scheduler, Long.MAX_VALUE)
+                .expectNext("Paris")
+                .thenCancel()
+                .verify(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void frameIsFlushedOnceItReachesMaxBytes() {
+        StepVerifier.withVirtualTime(() -> coalesce(StreamingConfig.CoalescePolicy.TIME, "The", " cap", "ital", " of"),
+                        () -> scheduler, Long.MAX_VALUE)
+                .expectNext("The", " capital")
+                .expectNoEvent(Duration.ofMillis(29))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext(" of")
+                .thenCancel()
+                .verify(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void sentencePolicyFlushesAtTheEndOfASentence() {
+        streamingConfig.getCoalescing().setMaxBytes(256);
+
+        StepVerifier.withVirtualTime(() -> coalesce(StreamingConfig.CoalescePolicy.SENTENCE, "Yes", ",", " it", " is.", " It"),
+                        () -> scheduler, Long.MAX_VALUE)
+                .expectNext("Yes", ", it is.")
+                .expectNoEvent(Duration.ofMillis(199))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext(" It")
+                .thenCancel()
+                .verify(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void timePolicyFlushesWhenTheWindowEnds() {
+        StepVerifier.withVirtualTime(() -> coalesce(StreamingConfig.CoalescePolicy.TIME, "It", " is"),
+                        () -> scheduler, Long.MAX_VALUE)
+                .expectNext("It")
+                .expectNoEvent(Duration.ofMillis(29))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext(" is")
+                .thenCancel()
+                .verify(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void bufferIsFlushedBeforeCompletion() {
+        StepVerifier.withVirtualTime(() -> coalescer.coalesce(Flux.just("It", " is", "!"), StreamingConfig.CoalescePolicy.TIME),
+                        () -> scheduler, Long.MAX_VALUE)
+                .expectNext("It", " is!")
+                .verifyComplete();
+    }
+
+    @Test
+    void bufferIsFlushedBeforeAnError() {
+        Flux<String> failing = Flux.just("It", " is").concatWith(Flux.error(new IllegalStateException("model crashed")));
+
+        StepVerifier.withVirtualTime(() -> coalescer.coalesce(failing, StreamingConfig.CoalescePolicy.TIME),
+                        () -> scheduler, Long.MAX_VALUE)
+                .expectNext("It", " is")
+                .verifyErrorMessage("model crashed");
+    }
+
+    @Test
+    void disposingCancelsUpstreamAndThePendingTimer() {
+        PublisherProbe<String> upstream = PublisherProbe.of(Flux.just("It", " is").concatWith(Flux.never()));
+
+        StepVerifier.withVirtualTime(() -> coalescer.coalesce(upstream.flux(), StreamingConfig.CoalescePolicy.TIME),
+                        () -> scheduler, Long.MAX_VALUE)
+                .expectNext("It")
+                .thenCancel()
+                .verify(Duration.ofSeconds(2));
+
+        upstream.assertWasCancelled();
+        assertEquals(1, scheduler.timers.size());
+        assertTrue(scheduler.timers.get(0).isDisposed());
+    }
+
+    private Flux<String> coalesce(StreamingConfig.CoalescePolicy policy, String... tokens) {
+        return coalescer.coalesce(Flux.just(tokens).concatWith(Flux.never()), policy);
+    }
+
+    /**
+     * Virtual-time scheduler that keeps the flush timers it handed out
+     */
+    private static class TimerScheduler extends VirtualTimeScheduler {
+        final List<Disposable> timers = new CopyOnWriteArrayList<>();
+
+        TimerScheduler() {
+            super(true);
+        }
+
+        @Override
+        public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+            Disposable timer = super.schedule(task, delay, unit);
+            timers.add(timer);
+            return timer;
+        }
+    }
+}
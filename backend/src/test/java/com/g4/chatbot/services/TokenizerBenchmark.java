@@ -0,0 +1,90 @@
+package com.g4.chatbot.services;
+
+import com.g4.chatbot.config.TokenizerConfig;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of token counting: BpeTokenizer and the estimate against JTokkit's cl100k_base.
+ * Skipped in normal builds; run with: mvn test -Dtest=TokenizerBenchmark -Djmh=true
+ * (add -Djmh.prof=gc to see allocation per call).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    @Param({"prose", "code", "cjk"})
+    public String text;
+
+    private String input;
+    private BpeTokenizer bpe;
+    private Encoding jtokkit;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        try (InputStream in = TokenizerBenchmark.class.getResourceAsStream("/com/knuddels/jtokkit/cl100k_base.tiktoken")) {
+            bpe = BpeTokenizer.load("cl100k", in, TokenizerConfig.CL100K_PATTERN);
+        }
+        jtokkit = Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+        input = switch (text) {
+            case "prose" -> "The assistant keeps the conversation history of each session and packs it into the "
+                    .repeat(40);
+            case "code" -> Files.readString(Path.of("src/main/java/com/g4/chatbot/services/ContextPacker.java"));
+            default -> "你好，世界！今天天气很好，我们去公园散步吧。日本語のテキストも混ぜます。".repeat(40);
+        };
+    }
+
+    @Benchmark
+    public int bpe() {
+        return bpe.countTokens(input);
+    }
+
+    @Benchmark
+    public int jtokkit() {
+        return jtokkit.countTokensOrdinary(input);
+    }
+
+    @Benchmark
+    public int estimate() {
+        return EstimateTokenizer.INSTANCE.countTokens(input);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "jmh", matches = "true")
+    void run() throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(TokenizerBenchmark.class.getSimpleName());
+        if (System.getProperty("jmh.prof") != null) {
+            options.addProfiler(System.getProperty("jmh.prof"));
+        }
+        new Runner(options.build()).run();
+    }
+}